@@ -33,7 +33,7 @@ public class Maze implements KEventProducer<MazeEvent> {
 	protected Map<GridNode, Integer> mVisits;
 	
 	//Object in charge of maintaining list of listeners, and broadcasting Events
-	KEventBroadcaster mEventBroadcaster;
+	KEventBroadcaster<MazeEvent> mEventBroadcaster;
 	
 	/**
 	 * Contructor:  Create a maze of the given dimensions.
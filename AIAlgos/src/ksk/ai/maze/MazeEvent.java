@@ -1,9 +1,11 @@
 package ksk.ai.maze;
 
+import java.util.Arrays;
+
 import ksk.ai.util.KEvent;
 
 
-public class MazeEvent extends GridEvent {
+public class MazeEvent extends KEvent {
 	
 	protected EventType mType;
 	protected GridNode mNode;
@@ -30,4 +32,42 @@ public class MazeEvent extends GridEvent {
 		mType = type;
 		mNode = n;
 	}
+
+	/**
+	 * Get the type of this event
+	 */
+	@Override
+	public EventType getType()
+	{
+		return mType;
+	}
+
+	/**
+	 * Get the node at which this event occurred, or null if it isn't about a specific location
+	 */
+	public GridNode getNode()
+	{
+		return mNode;
+	}
+
+	@Override
+	public Object getKey()
+	{
+		return mNode;
+	}
+
+	/**
+	 * Repeated events of the same type for the same node can be coalesced.  Events that aren't about
+	 * a specific location are always delivered.
+	 */
+	@Override
+	public Object getCoalescingKey()
+	{
+		if (mNode == null)
+		{
+			return null;
+		}
+
+		return Arrays.asList(mType, mNode);
+	}
 }
@@ -1,15 +1,59 @@
 package ksk.ai.util;
 
+/**
+ * Base class for all events sent through a KEventBroadcaster.
+ *
+ * Subclasses can optionally describe what kind of event they are (getType), what they are about
+ * (getKey) and whether repeated events may be collapsed into a single delivery (getCoalescingKey).
+ * The broadcaster uses these to route events only to the listeners that asked for them.
+ *
+ * @author Kern Lewin
+ * @version 0.5
+ */
 public abstract class KEvent {
 	Object mSource;
-	
+
 	public KEvent(Object src)
 	{
 		mSource = src;
 	}
-	
+
 	public Object getSource()
 	{
 		return mSource;
 	}
+
+	/**
+	 * Get the type of this event (typically an enum constant).  Listeners may subscribe to a
+	 * single type of event.
+	 *
+	 * @return The event type, or null if this event is untyped
+	 */
+	public Object getType()
+	{
+		return null;
+	}
+
+	/**
+	 * Get the object that this event is about (e.g. a GridNode).  Listeners may subscribe to
+	 * events for a single key.
+	 *
+	 * @return The event key, or null if this event isn't about anything in particular
+	 */
+	public Object getKey()
+	{
+		return null;
+	}
+
+	/**
+	 * Get the key under which repeated events can be collapsed.  When coalescing is enabled on a
+	 * broadcaster, events with equal coalescing keys that arrive within the same window are
+	 * delivered only once (the most recent one wins).
+	 *
+	 * @return The coalescing key, or null if this event must always be delivered
+	 */
+	public Object getCoalescingKey()
+	{
+		return null;
+	}
 }
@@ -1,13 +1,38 @@
 package ksk.ai.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Generic class for generating a specific type of Event.
  * Any class that needs to fire events can either extend this class, or just use
  * an object of this class and implement the EventProducer interface.
- * 
+ *
+ * Listeners can subscribe to every event, to a single event type, or to a single type/key
+ * combination (e.g. NODE_EVENTs for one GridNode), so they never have to filter events themselves.
+ * Subscriptions don't add up:  a listener gets each event once, however many of its subscriptions match.
+ *
+ * Optionally, the broadcaster can coalesce events:  if a coalescing window is set, events that have
+ * a coalescing key are held back for that long, and repeated events with the same key are collapsed
+ * into one delivery of the most recent event.  Coalesced events are delivered from a timer thread
+ * shared by every broadcaster, but listeners are never invoked by two threads at once.  An exception
+ * thrown by a listener during a coalesced delivery goes to the timer thread's uncaught exception
+ * handler, and the timer carries on.
+ *
+ * The broadcaster can also be instrumented, in which case it records how long each listener takes,
+ * how long each event takes to deliver and how long it waited first (see KEventStats).
+ *
  * @author Kern Lewin
  * @version 0.5
  *
@@ -15,32 +40,353 @@ import java.util.List;
  */
 public class KEventBroadcaster<E extends KEvent> {
 
-	List<KEventListener<E>> mListeners;
+	//Listeners, indexed by event type, then by event key.  A null type or key matches anything,
+	//so listeners for every event are stored under (null, null)
+	Map<Object, Map<Object, List<KEventListener<E>>>> mListeners;
+
+	//Coalescing window in milliseconds (0 means events are delivered immediately).  Guarded by mLock
+	long mCoalescingWindow;
+
+	//Events waiting for the coalescing window to close, by coalescing key (in arrival order)
+	Map<Object, Pending<E>> mPending;
+
+	//Timer used to deliver coalesced events for every broadcaster, created the first time it is needed
+	private static ScheduledExecutorService sTimer;
+	boolean mFlushScheduled;
+
+	//Listeners are only ever invoked while holding this lock
+	final Object mLock;
+
+	//Timing statistics, or null if the broadcaster isn't instrumented
+	volatile KEventStats mStats;
 
 	public KEventBroadcaster()
 	{
-		mListeners = new ArrayList<KEventListener<E>>();
+		mListeners = new HashMap<Object, Map<Object, List<KEventListener<E>>>>();
+		mCoalescingWindow = 0;
+		mPending = new LinkedHashMap<Object, Pending<E>>();
+		mFlushScheduled = false;
+		mLock = new Object();
+		mStats = null;
 	}
 
-
+	/**
+	 * Subscribe to every event from this broadcaster
+	 */
 	public void addListener(KEventListener<E> listener)
 	{
-		if (listener!=null)
+		addListener(listener, null, null);
+	}
+
+	/**
+	 * Subscribe to events of a single type
+	 *
+	 * @param listener The listener to notify
+	 * @param type The event type to listen for (see KEvent.getType()), or null for all types
+	 */
+	public void addListener(KEventListener<E> listener, Object type)
+	{
+		addListener(listener, type, null);
+	}
+
+	/**
+	 * Subscribe to events of a single type that are about a particular key.  Subscribing the same
+	 * listener again for the same type and key has no effect.
+	 *
+	 * @param listener The listener to notify
+	 * @param type The event type to listen for (see KEvent.getType()), or null for all types
+	 * @param key The key to listen for (see KEvent.getKey()), or null for all keys
+	 */
+	public void addListener(KEventListener<E> listener, Object type, Object key)
+	{
+		if (listener==null)
 		{
-			mListeners.add(listener);
+			return;
+		}
+
+		synchronized (mLock)
+		{
+			Map<Object, List<KEventListener<E>>> keyMap = mListeners.get(type);
+			if (keyMap == null)
+			{
+				keyMap = new HashMap<Object, List<KEventListener<E>>>();
+				mListeners.put(type, keyMap);
+			}
+
+			//Copy-on-write, so that listeners can subscribe/unsubscribe while handling an event
+			List<KEventListener<E>> listeners = keyMap.get(key);
+			if (listeners == null)
+			{
+				listeners = new CopyOnWriteArrayList<KEventListener<E>>();
+				keyMap.put(key, listeners);
+			}
+
+			if (!listeners.contains(listener))
+			{
+				listeners.add(listener);
+			}
 		}
 	}
 
+	/**
+	 * Remove every subscription belonging to a listener
+	 */
 	public void removeListener(KEventListener<E> listener)
 	{
-		mListeners.remove(listener);
+		synchronized (mLock)
+		{
+			for (Map<Object, List<KEventListener<E>>> keyMap : mListeners.values())
+			{
+				for (List<KEventListener<E>> listeners : keyMap.values())
+				{
+					while (listeners.remove(listener));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Set the coalescing window.  Events with a coalescing key are held for up to this long, and
+	 * only the most recent event for each key is delivered.
+	 *
+	 * @param millis Length of the window in milliseconds; zero (the default) disables coalescing
+	 */
+	public void setCoalescingWindow(long millis)
+	{
+		synchronized (mLock)
+		{
+			mCoalescingWindow = Math.max(0, millis);
+
+			//Don't strand anything that was waiting
+			if (mCoalescingWindow == 0)
+			{
+				flushPending();
+			}
+		}
+	}
+
+	public long getCoalescingWindow()
+	{
+		synchronized (mLock)
+		{
+			return mCoalescingWindow;
+		}
+	}
+
+	/**
+	 * Turn instrumentation on or off.  Turning it on starts a fresh set of statistics.
+	 */
+	public void setInstrumented(boolean instrumented)
+	{
+		mStats = instrumented?new KEventStats():null;
+	}
+
+	public boolean isInstrumented()
+	{
+		return (mStats != null);
+	}
+
+	/**
+	 * Get the live statistics for this broadcaster (use KEventStats.snapshot() for a stable copy)
+	 *
+	 * @return The statistics, or null if the broadcaster isn't instrumented
+	 */
+	public KEventStats getStats()
+	{
+		return mStats;
 	}
 
 	public void broadcast(E event)
 	{
-		for (KEventListener<E> listener : mListeners)
+		Object coalescingKey = event.getCoalescingKey();
+		long time = (mStats != null)?System.nanoTime():0;
+
+		synchronized (mLock)
+		{
+			if ((mCoalescingWindow > 0)&&(coalescingKey != null))
+			{
+				//Hold the event back; a later event with the same key will replace it
+				mPending.put(coalescingKey, new Pending<E>(event, time));
+				scheduleFlush();
+			}
+			else
+			{
+				//Deliver anything that's been held back first, so events stay in order
+				flushPending();
+				dispatch(event, time);
+			}
+		}
+	}
+
+	/**
+	 * Immediately deliver any events that are waiting for the coalescing window to close
+	 */
+	public void flush()
+	{
+		synchronized (mLock)
+		{
+			flushPending();
+		}
+	}
+
+	//Deliver the pending events.  Must be called while holding mLock
+	void flushPending()
+	{
+		if (mPending.isEmpty())
+		{
+			return;
+		}
+
+		//Copy first; a listener may broadcast again while we're delivering
+		List<Pending<E>> events = new ArrayList<Pending<E>>(mPending.values());
+		mPending.clear();
+
+		for (Pending<E> pending : events)
+		{
+			dispatch(pending.mEvent, pending.mTime);
+		}
+	}
+
+	//Deliver one event to every matching subscription.  Must be called while holding mLock
+	//The time is when the event was broadcast (only meaningful when instrumented)
+	void dispatch(E event, long broadcastTime)
+	{
+		Object type = event.getType();
+		Object key = event.getKey();
+		KEventStats stats = mStats;
+		long start = (stats != null)?System.nanoTime():0;
+
+		//Subscriptions that match:  every type, then this type, each for every key and for this key
+		Map<Object, List<KEventListener<E>>> anyType = mListeners.get(null);
+		Map<Object, List<KEventListener<E>>> thisType = (type != null)?mListeners.get(type):null;
+		List<List<KEventListener<E>>> matches = new ArrayList<List<KEventListener<E>>>(4);
+		addMatches(matches, anyType, key);
+		addMatches(matches, thisType, key);
+
+		if (matches.size() == 1)
+		{
+			deliver(matches.get(0), event, stats);
+		}
+		else if (matches.size() > 1)
+		{
+			//A listener with more than one matching subscription still only hears the event once
+			Set<KEventListener<E>> listeners = new LinkedHashSet<KEventListener<E>>();
+			for (List<KEventListener<E>> match : matches)
+			{
+				listeners.addAll(match);
+			}
+			deliver(listeners, event, stats);
+		}
+
+		if (stats != null)
+		{
+			//Events broadcast before instrumentation was turned on have no broadcast time
+			long queueTime = (broadcastTime != 0)?(start - broadcastTime):0;
+			stats.recordDispatch(queueTime, System.nanoTime() - start);
+		}
+	}
+
+	//Add the non-empty lists of listeners in one type's map that match the event key
+	private void addMatches(List<List<KEventListener<E>>> matches, Map<Object, List<KEventListener<E>>> keyMap, Object key)
+	{
+		if (keyMap == null)
+		{
+			return;
+		}
+
+		addMatch(matches, keyMap.get(null));
+		if (key != null)
+		{
+			addMatch(matches, keyMap.get(key));
+		}
+	}
+
+	private void addMatch(List<List<KEventListener<E>>> matches, List<KEventListener<E>> listeners)
+	{
+		if ((listeners != null)&&!listeners.isEmpty())
+		{
+			matches.add(listeners);
+		}
+	}
+
+	private void deliver(Collection<KEventListener<E>> listeners, E event, KEventStats stats)
+	{
+		for (KEventListener<E> listener : listeners)
+		{
+			if (stats == null)
+			{
+				listener.onEvent(event);
+			}
+			else
+			{
+				//Time each listener separately, so we can tell which one is slow
+				long start = System.nanoTime();
+				listener.onEvent(event);
+				stats.recordListener(listener, System.nanoTime() - start);
+			}
+		}
+	}
+
+	//Make sure the pending events get delivered once the window closes.  Must be called while holding mLock
+	private void scheduleFlush()
+	{
+		if (mFlushScheduled)
+		{
+			return;
+		}
+
+		mFlushScheduled = true;
+		getTimer().schedule(new Runnable() {
+			public void run()
+			{
+				try
+				{
+					synchronized (mLock)
+					{
+						mFlushScheduled = false;
+						flushPending();
+					}
+				}
+				catch (RuntimeException e)
+				{
+					//A failing listener mustn't stop the timer, which every broadcaster shares.  Nobody is
+					//waiting for this delivery, so report it as uncaught
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		}, mCoalescingWindow, TimeUnit.MILLISECONDS);
+	}
+
+	//The shared timer, started the first time a broadcaster coalesces.  It runs as a daemon, so it
+	//doesn't keep the program alive
+	private static synchronized ScheduledExecutorService getTimer()
+	{
+		if (sTimer == null)
+		{
+			sTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "KEventBroadcaster");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return sTimer;
+	}
+
+	//An event that is waiting to be delivered, and when it was broadcast
+	private static class Pending<E>
+	{
+		E mEvent;
+		long mTime;
+
+		public Pending(E event, long time)
 		{
-			listener.onEvent(event);
+			mEvent = event;
+			mTime = time;
 		}
 	}
 }
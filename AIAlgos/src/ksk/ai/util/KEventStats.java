@@ -0,0 +1,252 @@
+package ksk.ai.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timing statistics for a KEventBroadcaster:  per-listener invocation time, total dispatch time,
+ * queue latency (how long an event waited before delivery started) and event rate.
+ *
+ * Stats are collected while the broadcaster is instrumented, and can be read at any time through
+ * snapshot(), or over JMX once registerMBean() has been called.
+ *
+ * @author Kern Lewin
+ * @version 0.5
+ */
+public class KEventStats implements KEventStatsMBean {
+
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	//Histograms of nanosecond timings
+	private KLatencyHistogram mDispatchTimes;
+	private KLatencyHistogram mQueueLatencies;
+	private ConcurrentHashMap<Object, KLatencyHistogram> mListenerTimes;
+
+	//When we started counting (for events per second)
+	private volatile long mStartTime;
+
+	public KEventStats()
+	{
+		mDispatchTimes = new KLatencyHistogram();
+		mQueueLatencies = new KLatencyHistogram();
+		mListenerTimes = new ConcurrentHashMap<Object, KLatencyHistogram>();
+		mStartTime = System.nanoTime();
+	}
+
+	//Copy constructor, used for snapshots
+	private KEventStats(KEventStats src)
+	{
+		mDispatchTimes = new KLatencyHistogram(src.mDispatchTimes);
+		mQueueLatencies = new KLatencyHistogram(src.mQueueLatencies);
+		mListenerTimes = new ConcurrentHashMap<Object, KLatencyHistogram>();
+		for (Map.Entry<Object, KLatencyHistogram> e : src.mListenerTimes.entrySet())
+		{
+			mListenerTimes.put(e.getKey(), new KLatencyHistogram(e.getValue()));
+		}
+		mStartTime = src.mStartTime;
+	}
+
+	/**
+	 * Get a copy of the current statistics, which won't change as more events are recorded
+	 */
+	public KEventStats snapshot()
+	{
+		return new KEventStats(this);
+	}
+
+	/**
+	 * Register these stats with the platform MBean server, under
+	 * ksk.ai.util:type=KEventBroadcaster,name=(name)
+	 *
+	 * @param name Name identifying the broadcaster
+	 * @return The name that the MBean was registered under
+	 */
+	public ObjectName registerMBean(String name) throws JMException
+	{
+		ObjectName objectName = new ObjectName("ksk.ai.util:type=KEventBroadcaster,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+		return objectName;
+	}
+
+	//Recording methods (called by the broadcaster)
+	void recordListener(Object listener, long nanos)
+	{
+		KLatencyHistogram histogram = mListenerTimes.get(listener);
+		if (histogram == null)
+		{
+			histogram = new KLatencyHistogram();
+			KLatencyHistogram existing = mListenerTimes.putIfAbsent(listener, histogram);
+			if (existing != null)
+			{
+				histogram = existing;
+			}
+		}
+
+		histogram.record(nanos);
+	}
+
+	void recordDispatch(long queueNanos, long dispatchNanos)
+	{
+		mQueueLatencies.record(queueNanos);
+		mDispatchTimes.record(dispatchNanos);
+	}
+
+	//Raw histograms (nanoseconds)
+	public KLatencyHistogram getDispatchTimes()
+	{
+		return mDispatchTimes;
+	}
+
+	public KLatencyHistogram getQueueLatencies()
+	{
+		return mQueueLatencies;
+	}
+
+	/**
+	 * Get the invocation times for one listener
+	 *
+	 * @return The listener's histogram, or null if it hasn't received any events
+	 */
+	public KLatencyHistogram getListenerTimes(KEventListener<?> listener)
+	{
+		return mListenerTimes.get(listener);
+	}
+
+	/**
+	 * Get every listener that has received events, slowest (most total time) first
+	 */
+	public List<Object> getListeners()
+	{
+		List<Map.Entry<Object, KLatencyHistogram>> times = getSortedListenerTimes();
+
+		List<Object> result = new ArrayList<Object>(times.size());
+		for (Map.Entry<Object, KLatencyHistogram> e : times)
+		{
+			result.add(e.getKey());
+		}
+
+		return result;
+	}
+
+	//A copy of each listener's histogram, slowest first.  Everything is read from the copies:  the live
+	//histograms keep changing (or vanish on reset) while we sort and report
+	private List<Map.Entry<Object, KLatencyHistogram>> getSortedListenerTimes()
+	{
+		List<Map.Entry<Object, KLatencyHistogram>> times = new ArrayList<Map.Entry<Object, KLatencyHistogram>>();
+		for (Map.Entry<Object, KLatencyHistogram> e : mListenerTimes.entrySet())
+		{
+			times.add(new AbstractMap.SimpleImmutableEntry<Object, KLatencyHistogram>(e.getKey(), new KLatencyHistogram(e.getValue())));
+		}
+
+		Collections.sort(times, new Comparator<Map.Entry<Object, KLatencyHistogram>>() {
+			public int compare(Map.Entry<Object, KLatencyHistogram> e1, Map.Entry<Object, KLatencyHistogram> e2)
+			{
+				long t1 = e1.getValue().getTotal();
+				long t2 = e2.getValue().getTotal();
+
+				return (t1 > t2)?-1:((t1 < t2)?1:0);
+			}
+		});
+
+		return times;
+	}
+
+	//KEventStatsMBean methods
+	@Override
+	public long getEventCount()
+	{
+		return mDispatchTimes.getCount();
+	}
+
+	@Override
+	public double getEventsPerSecond()
+	{
+		double seconds = (System.nanoTime() - mStartTime)/1e9;
+
+		return (seconds <= 0)?0:(getEventCount()/seconds);
+	}
+
+	@Override
+	public double getMeanDispatchMicros()
+	{
+		return mDispatchTimes.getMean()/NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getDispatch99thPercentileMicros()
+	{
+		return mDispatchTimes.getValueAtPercentile(99)/NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getMeanQueueLatencyMicros()
+	{
+		return mQueueLatencies.getMean()/NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getQueueLatency99thPercentileMicros()
+	{
+		return mQueueLatencies.getValueAtPercentile(99)/NANOS_PER_MICRO;
+	}
+
+	@Override
+	public String getSlowestListener()
+	{
+		List<Object> listeners = getListeners();
+
+		return listeners.isEmpty()?null:listeners.get(0).toString();
+	}
+
+	@Override
+	public String[] getListenerReport()
+	{
+		List<Map.Entry<Object, KLatencyHistogram>> times = getSortedListenerTimes();
+		String[] result = new String[times.size()];
+
+		for (int i=0; i<result.length; i++)
+		{
+			KLatencyHistogram h = times.get(i).getValue();
+			result[i] = times.get(i).getKey() + ": calls=" + h.getCount()
+					+ " totalMicros=" + (long)(h.getTotal()/NANOS_PER_MICRO)
+					+ " meanMicros=" + h.getMean()/NANOS_PER_MICRO
+					+ " p99Micros=" + h.getValueAtPercentile(99)/NANOS_PER_MICRO
+					+ " maxMicros=" + h.getMax()/NANOS_PER_MICRO;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void reset()
+	{
+		mDispatchTimes.reset();
+		mQueueLatencies.reset();
+		mListenerTimes.clear();
+		mStartTime = System.nanoTime();
+	}
+
+	public String toString()
+	{
+		String result = "events=" + getEventCount() + " (" + (long)getEventsPerSecond() + "/s)"
+				+ " dispatch[" + mDispatchTimes + "]"
+				+ " queue[" + mQueueLatencies + "]";
+
+		for (String line : getListenerReport())
+		{
+			result += "\n  " + line;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,33 @@
+package ksk.ai.util;
+
+/**
+ * JMX management interface for KEventStats, so that event-bus timings can be watched from
+ * JConsole or Mission Control while an application is running.  All times are in microseconds.
+ *
+ * @author Kern Lewin
+ * @version 0.5
+ */
+public interface KEventStatsMBean {
+
+	public long getEventCount();
+
+	public double getEventsPerSecond();
+
+	//Time taken to deliver one event to all of its listeners
+	public double getMeanDispatchMicros();
+
+	public double getDispatch99thPercentileMicros();
+
+	//Time between an event being broadcast and its delivery starting
+	public double getMeanQueueLatencyMicros();
+
+	public double getQueueLatency99thPercentileMicros();
+
+	//Listener that has spent the most time handling events
+	public String getSlowestListener();
+
+	//One line per listener, slowest first
+	public String[] getListenerReport();
+
+	public void reset();
+}
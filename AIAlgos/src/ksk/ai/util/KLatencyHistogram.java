@@ -0,0 +1,178 @@
+package ksk.ai.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, thread-safe histogram of non-negative long values (typically nanosecond timings).
+ *
+ * Values are counted in log-linear buckets, the same way HdrHistogram does it:  small values get
+ * a bucket each, and every power of two above that is split into SUB_BUCKETS equal buckets, so any
+ * recorded value is reported to within about 3% no matter how large it is.  Recording never
+ * allocates or locks, so it is cheap enough to use on every event.
+ *
+ * @author Kern Lewin
+ * @version 0.5
+ */
+public class KLatencyHistogram {
+
+	//Number of buckets per power of two (must be a power of two itself)
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	//Values below this get a bucket each
+	private static final int LINEAR_LIMIT = 2*SUB_BUCKETS;
+
+	//Enough buckets for any positive long
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS - 1)*SUB_BUCKETS + LINEAR_LIMIT;
+
+	private AtomicLongArray mCounts;
+	private AtomicLong mTotalCount;
+	private AtomicLong mSum;
+	private AtomicLong mMax;
+
+	public KLatencyHistogram()
+	{
+		mCounts = new AtomicLongArray(BUCKET_COUNT);
+		mTotalCount = new AtomicLong();
+		mSum = new AtomicLong();
+		mMax = new AtomicLong();
+	}
+
+	//Copy constructor; gives a consistent-enough snapshot of a histogram that is still being recorded to
+	public KLatencyHistogram(KLatencyHistogram src)
+	{
+		this();
+
+		long total = 0;
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			long count = src.mCounts.get(i);
+			mCounts.set(i, count);
+			total += count;
+		}
+
+		mTotalCount.set(total);
+		mSum.set(src.mSum.get());
+		mMax.set(src.mMax.get());
+	}
+
+	/**
+	 * Record a single value.  Negative values are counted as zero.
+	 */
+	public void record(long value)
+	{
+		value = Math.max(0, value);
+
+		mCounts.incrementAndGet(bucketIndex(value));
+		mTotalCount.incrementAndGet();
+		mSum.addAndGet(value);
+
+		//Update the maximum
+		long max = mMax.get();
+		while ((value > max)&&(!mMax.compareAndSet(max, value)))
+		{
+			max = mMax.get();
+		}
+	}
+
+	public long getCount()
+	{
+		return mTotalCount.get();
+	}
+
+	public long getTotal()
+	{
+		return mSum.get();
+	}
+
+	public long getMax()
+	{
+		return mMax.get();
+	}
+
+	public double getMean()
+	{
+		long count = mTotalCount.get();
+
+		return (count == 0)?0:((double)mSum.get()/count);
+	}
+
+	/**
+	 * Get the value below which the given percentage of recorded values fall
+	 *
+	 * @param percentile Percentile to look for, from 0 to 100
+	 * @return The (approximate) value at that percentile, or zero if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long count = mTotalCount.get();
+		if (count == 0)
+		{
+			return 0;
+		}
+
+		//Rank of the value we're looking for (at least the first value)
+		long rank = Math.max(1, (long)Math.ceil(Math.min(100, Math.max(0, percentile))/100.0 * count));
+
+		long seen = 0;
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			seen += mCounts.get(i);
+			if (seen >= rank)
+			{
+				//Never report more than we've actually seen
+				return Math.min(bucketHighestValue(i), mMax.get());
+			}
+		}
+
+		return mMax.get();
+	}
+
+	public void reset()
+	{
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			mCounts.set(i, 0);
+		}
+
+		mTotalCount.set(0);
+		mSum.set(0);
+		mMax.set(0);
+	}
+
+	public String toString()
+	{
+		return "count=" + getCount() + " mean=" + (long)getMean() + " p50=" + getValueAtPercentile(50)
+				+ " p99=" + getValueAtPercentile(99) + " max=" + getMax();
+	}
+
+	//Find the bucket for a (non-negative) value
+	private static int bucketIndex(long value)
+	{
+		if (value < LINEAR_LIMIT)
+		{
+			return (int)value;
+		}
+
+		//Keep the top SUB_BUCKET_BITS+1 bits of the value
+		int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+
+		return shift*SUB_BUCKETS + (int)(value >>> shift);
+	}
+
+	//Largest value that falls into a bucket
+	private static long bucketHighestValue(int index)
+	{
+		if (index < LINEAR_LIMIT)
+		{
+			return index;
+		}
+
+		int shift = index/SUB_BUCKETS - 1;
+		long subBucket = index - shift*SUB_BUCKETS;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
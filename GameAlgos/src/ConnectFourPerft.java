@@ -0,0 +1,46 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import ksk.game.Move;
+import ksk.game.Perft;
+import ksk.game.connect4.ConnectFourState;
+
+//Checks Connect Four move generation against the known perft counts from the empty board, prints the
+//divide counts for the deepest depth, and optionally appends the timings to a CSV file.
+//
+//Usage:  ConnectFourPerft [threads] [hash entries] [csv file]
+
+public class ConnectFourPerft {
+
+	//Known counts for the empty board, depths 1 to 7
+	private static final long[] EXPECTED = {7, 49, 343, 2401, 16807, 117649, 823536};
+
+	public static void main(String[] args) throws IOException
+	{
+		int threads = (args.length > 0)?Integer.parseInt(args[0]):Runtime.getRuntime().availableProcessors();
+		int hashEntries = (args.length > 1)?Integer.parseInt(args[1]):0;
+		File csv = (args.length > 2)?new File(args[2]):null;
+
+		Perft perft = new Perft(threads, hashEntries);
+		ConnectFourState start = new ConnectFourState();
+
+		List<Perft.Result> results = perft.verify(start, EXPECTED);
+		for (Perft.Result result : results)
+		{
+			System.out.println(result);
+		}
+
+		System.out.println("Divide, depth " + EXPECTED.length + ":");
+		for (Map.Entry<Move, Long> entry : perft.divide(start, EXPECTED.length).entrySet())
+		{
+			System.out.println(entry.getKey() + ": " + entry.getValue());
+		}
+
+		if (csv != null)
+		{
+			Perft.appendCsv(csv, results);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+import java.util.Random;
+
+import ksk.game.GameState;
+import ksk.game.HistoryOrdering;
+import ksk.game.KillerOrdering;
+import ksk.game.MinimaxAlgo;
+import ksk.game.MinimaxPlayer;
+import ksk.game.Move;
+import ksk.game.Player;
+import ksk.game.TimeAllocation;
+import ksk.game.Tournament;
+import ksk.game.TranspositionTable;
+import ksk.game.connect4.ConnectFourAlgo;
+import ksk.game.connect4.ConnectFourGame;
+
+//Plays a Connect Four tournament between a random player and minimax players searching to different
+//depths, and prints the ratings.
+//
+//Usage:  ConnectFourTournament [games per pair] [move time (ms)] [threads]
+
+public class ConnectFourTournament {
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int gamesPerPair = (args.length > 0)?Integer.parseInt(args[0]):20;
+		long moveTime = (args.length > 1)?Long.parseLong(args[1]):100;
+		int threads = (args.length > 2)?Integer.parseInt(args[2]):Runtime.getRuntime().availableProcessors();
+
+		Tournament tournament = new Tournament(new Tournament.GameFactory() {
+			public ConnectFourGame createGame()
+			{
+				return new ConnectFourGame();
+			}
+		}, moveTime, threads);
+
+		tournament.addEntrant("random", new Tournament.PlayerFactory() {
+			public Player createPlayer(int seat)
+			{
+				return new RandomPlayer();
+			}
+		});
+
+		for (final int depth : new int[] {1, 3, 5, 7})
+		{
+			tournament.addEntrant("minimax depth " + depth, new Tournament.PlayerFactory() {
+				public Player createPlayer(int seat)
+				{
+					MinimaxAlgo algo = new ConnectFourAlgo();
+					algo.addMoveOrdering(new KillerOrdering());
+					algo.addMoveOrdering(new HistoryOrdering());
+					algo.setTranspositionTable(new TranspositionTable(1 << 16));
+
+					return new MinimaxPlayer(algo, seat == 0, new TimeAllocation(), depth);
+				}
+			});
+		}
+
+		tournament.play(gamesPerPair);
+		System.out.print(tournament.getReport());
+	}
+
+	//Plays a random legal move
+	private static class RandomPlayer extends Player
+	{
+		private Random mRandom = new Random();
+
+		@Override
+		protected Move think(GameState state, long deadline)
+		{
+			Move[] moves = state.getNextMoves();
+
+			return (moves.length == 0)?null:moves[mRandom.nextInt(moves.length)];
+		}
+	}
+}
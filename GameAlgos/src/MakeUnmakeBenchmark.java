@@ -0,0 +1,79 @@
+import java.lang.management.ManagementFactory;
+
+import ksk.game.KillerOrdering;
+import ksk.game.MinimaxAlgo;
+import ksk.game.SearchStats;
+import ksk.game.connect4.ConnectFourAlgo;
+import ksk.game.connect4.ConnectFourState;
+
+//Compares searching with applyMove() (a new state for every node) against make/unmake (one state,
+//changed in place), on Connect Four.  Reports nodes per second, and how much memory is allocated.
+//
+//Usage:  MakeUnmakeBenchmark [depth] [repeats]
+
+public class MakeUnmakeBenchmark {
+
+	public static void main(String[] args)
+	{
+		int depth = (args.length > 0)?Integer.parseInt(args[0]):10;
+		int repeats = (args.length > 1)?Integer.parseInt(args[1]):5;
+
+		ConnectFourState start = new ConnectFourState();
+
+		//Warm up the JIT for both
+		run(start, depth - 2, false);
+		run(start, depth - 2, true);
+
+		System.out.println(String.format("%-14s %12s %12s %14s %12s", "mode", "nodes", "nodes/sec", "bytes/node", "MB/sec"));
+
+		for (int i=0; i<repeats; i++)
+		{
+			report("applyMove", start, depth, false);
+			report("make/unmake", start, depth, true);
+		}
+	}
+
+	private static void report(String name, ConnectFourState start, int depth, boolean makeUnmake)
+	{
+		long before = allocatedBytes();
+		SearchStats stats = run(start, depth, makeUnmake);
+		long allocated = allocatedBytes() - before;
+
+		String bytesPerNode = "n/a";
+		String megabytesPerSecond = "n/a";
+		if (before >= 0)
+		{
+			bytesPerNode = String.format("%.1f", (double)allocated/stats.getNodes());
+			megabytesPerSecond = String.format("%.1f", allocated/(stats.getElapsedMillis()/1000)/(1 << 20));
+		}
+
+		System.out.println(String.format("%-14s %12d %12d %14s %12s", name, stats.getNodes(),
+				Math.round(stats.getNodesPerSecond()), bytesPerNode, megabytesPerSecond));
+	}
+
+	private static SearchStats run(ConnectFourState start, int depth, boolean makeUnmake)
+	{
+		MinimaxAlgo algo = new ConnectFourAlgo();
+		algo.addMoveOrdering(new KillerOrdering());
+		algo.setUseMakeUnmake(makeUnmake);
+
+		return algo.search(start, depth, true);
+	}
+
+	//Bytes allocated by this thread so far, or -1 if the JVM can't say
+	private static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+			if (sunBean.isThreadAllocatedMemorySupported())
+			{
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+
+		return -1;
+	}
+}
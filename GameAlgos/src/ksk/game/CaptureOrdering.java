@@ -0,0 +1,16 @@
+package ksk.game;
+
+//Move ordering that searches captures before quiet moves.  Captures are the moves most likely to
+//change the evaluation, so they tend to produce early cutoffs.
+
+public class CaptureOrdering extends MoveOrdering {
+
+	//Captures outrank anything that the other standard orderings can produce
+	public static final int CAPTURE_SCORE = 1 << 24;
+
+	@Override
+	public int score(GameState state, Move move, int ply)
+	{
+		return move.isCapture()?CAPTURE_SCORE:0;
+	}
+}
@@ -0,0 +1,218 @@
+package ksk.game;
+
+import java.util.Arrays;
+
+//A static evaluation for MinimaxAlgo.evaluate(), as a weighted sum of EvaluationTerms.
+//
+//Attached to a MutableGameState (see MutableGameState.setEvaluation()), the incremental terms are kept up
+//to date as moves are made and unmade, instead of being worked out again for every leaf:  doMove() calls
+//beforeMove() and afterMove(), which take away each term's score for the part of the position the move
+//changes and add back the new one, and undoMove() calls moveUnmade(), which restores the scores saved
+//before the move.  Terms that aren't incremental are worked out when the position is evaluated.
+//
+//With an EvaluationCache, evaluate() remembers scores by hash key, so positions that come up again aren't
+//evaluated again.
+//
+//An Evaluation belongs to one state at a time; copy() makes another with the same terms (and cache) for
+//another state.  Terms must all be added before the evaluation is attached.
+
+public class Evaluation {
+
+	private EvaluationTerm[] mTerms;
+	private int[] mWeights;
+	private EvaluationCache mCache;
+
+	//The state this is attached to (and up to date for), or null
+	private GameState mState;
+
+	//Current unweighted score of each incremental term
+	private int[] mScores;
+
+	//Scores saved by beforeMove(), one set per move
+	private int[] mSaved;
+	private int mSavedCount;
+
+	public Evaluation()
+	{
+		mTerms = new EvaluationTerm[0];
+		mWeights = new int[0];
+		mCache = null;
+
+		mState = null;
+		mScores = new int[0];
+		mSaved = new int[0];
+		mSavedCount = 0;
+	}
+
+	//Add a term; its score is multiplied by the weight
+	public void addTerm(EvaluationTerm term, int weight)
+	{
+		if (mState != null)
+		{
+			throw new IllegalStateException("Terms can't be added to an attached Evaluation");
+		}
+
+		mTerms = Arrays.copyOf(mTerms, mTerms.length + 1);
+		mWeights = Arrays.copyOf(mWeights, mWeights.length + 1);
+		mTerms[mTerms.length - 1] = term;
+		mWeights[mWeights.length - 1] = weight;
+		mScores = new int[mTerms.length];
+	}
+
+	public int getTermCount()
+	{
+		return mTerms.length;
+	}
+
+	public EvaluationTerm getTerm(int index)
+	{
+		return mTerms[index];
+	}
+
+	public int getWeight(int index)
+	{
+		return mWeights[index];
+	}
+
+	//Remember scores in this cache (null for none)
+	public void setCache(EvaluationCache cache)
+	{
+		mCache = cache;
+	}
+
+	public EvaluationCache getCache()
+	{
+		return mCache;
+	}
+
+	//A new evaluation with the same terms, weights and cache, not attached to anything
+	public Evaluation copy()
+	{
+		Evaluation copy = new Evaluation();
+		copy.mTerms = mTerms;
+		copy.mWeights = mWeights;
+		copy.mCache = mCache;
+		copy.mScores = new int[mTerms.length];
+
+		return copy;
+	}
+
+	/******
+	 * Keeping up to date
+	 ******/
+
+	//Work out the incremental terms for a state from scratch, and keep them up to date for it from now on
+	public void reset(GameState state)
+	{
+		for (int i=0; i<mTerms.length; i++)
+		{
+			mScores[i] = mTerms[i].isIncremental()?mTerms[i].evaluate(state):0;
+		}
+
+		mState = state;
+		mSavedCount = 0;
+	}
+
+	//Stop keeping up to date with a state
+	public void detach()
+	{
+		mState = null;
+		mSavedCount = 0;
+	}
+
+	//Called just before a move is made on the state; the scores are saved for moveUnmade()
+	public void beforeMove(GameState state, Move move)
+	{
+		int count = mTerms.length;
+		if (mSavedCount + count > mSaved.length)
+		{
+			mSaved = Arrays.copyOf(mSaved, Math.max(16*count, 2*mSaved.length));
+		}
+		System.arraycopy(mScores, 0, mSaved, mSavedCount, count);
+		mSavedCount += count;
+
+		for (int i=0; i<count; i++)
+		{
+			if (mTerms[i].isIncremental())
+			{
+				mScores[i] -= mTerms[i].evaluateAffected(state, move, false);
+			}
+		}
+	}
+
+	//Called just after the move has been made
+	public void afterMove(GameState state, Move move)
+	{
+		for (int i=0; i<mTerms.length; i++)
+		{
+			if (mTerms[i].isIncremental())
+			{
+				mScores[i] += mTerms[i].evaluateAffected(state, move, true);
+			}
+		}
+	}
+
+	//Called when the last move is unmade (or turned out to be illegal after beforeMove())
+	public void moveUnmade()
+	{
+		mSavedCount -= mTerms.length;
+		System.arraycopy(mSaved, mSavedCount, mScores, 0, mTerms.length);
+	}
+
+	/******
+	 * Evaluating
+	 ******/
+
+	//The weighted score of a state:  from the cache if it's there, otherwise the incremental terms (if this
+	//is attached to the state) plus the others
+	public int evaluate(GameState state)
+	{
+		long key = (mCache == null)?0:state.getHashKey();
+		if (key != 0)
+		{
+			long cached = mCache.probe(key);
+			if (cached != EvaluationCache.MISS)
+			{
+				return (int)cached;
+			}
+		}
+
+		int score = 0;
+		for (int i=0; i<mTerms.length; i++)
+		{
+			if ((state == mState)&&mTerms[i].isIncremental())
+			{
+				score += mWeights[i]*mScores[i];
+			}
+			else
+			{
+				score += mWeights[i]*mTerms[i].evaluate(state);
+			}
+		}
+
+		if (key != 0)
+		{
+			mCache.store(key, score);
+		}
+
+		return score;
+	}
+
+	//The weighted score of a state with every term worked out from scratch, without the cache
+	public int evaluateFromScratch(GameState state)
+	{
+		int score = 0;
+		for (int i=0; i<mTerms.length; i++)
+		{
+			score += mWeights[i]*mTerms[i].evaluate(state);
+		}
+
+		return score;
+	}
+
+	//The current (unweighted) score of an incremental term, for the attached state
+	public int getTermScore(int index)
+	{
+		return mScores[index];
+	}
+}
@@ -0,0 +1,104 @@
+package ksk.game;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Small fixed-size hash table of static evaluations, keyed by GameState.getHashKey(), so a position that's
+//evaluated again (reached by another move order, or in the next iteration of iterative deepening) doesn't
+//cost another evaluation.
+//
+//Each slot holds one position, and a new one simply replaces it.  As in TranspositionTable, a slot is two
+//longs, the key XOR'ed with the data and the data, so threads can share a cache without locking; a torn
+//read just looks like a miss.  (The statistics are plain counters, since a probe costs little more than
+//an atomic increment would, so they're only approximate for a shared cache.)
+
+public class EvaluationCache {
+
+	//Returned by probe() for a position that isn't in the cache
+	public static final long MISS = Long.MIN_VALUE;
+
+	//Marks a slot as used, so that a score of zero isn't mistaken for an empty slot
+	private static final long USED = 1L << 32;
+
+	private AtomicLongArray mEntries;
+	private int mMask;
+
+	private long mProbes;
+	private long mHits;
+
+	//Create a cache with room for (at least) the given number of positions
+	public EvaluationCache(int entries)
+	{
+		int slots = Integer.highestOneBit(Math.max(1, Math.min(entries, 1 << 28) - 1)) << 1;
+
+		mEntries = new AtomicLongArray(slots*2);
+		mMask = slots - 1;
+	}
+
+	//Number of positions the cache holds
+	public int size()
+	{
+		return mEntries.length()/2;
+	}
+
+	//Empty the cache, and reset the statistics
+	public void clear()
+	{
+		for (int i=0; i<mEntries.length(); i++)
+		{
+			mEntries.set(i, 0);
+		}
+
+		mProbes = 0;
+		mHits = 0;
+	}
+
+	//The score stored for a position, or MISS
+	public long probe(long key)
+	{
+		mProbes++;
+
+		int slot = slot(key);
+		long data = mEntries.get(slot + 1);
+		if ((data != 0)&&((mEntries.get(slot) ^ data) == key))
+		{
+			mHits++;
+			return (int)data;
+		}
+
+		return MISS;
+	}
+
+	public void store(long key, int score)
+	{
+		long data = (score & 0xFFFFFFFFL) | USED;
+		int slot = slot(key);
+
+		//Clear the data first, so a concurrent reader can't match the new key with the old data
+		mEntries.set(slot + 1, 0);
+		mEntries.set(slot, key ^ data);
+		mEntries.set(slot + 1, data);
+	}
+
+	private int slot(long key)
+	{
+		return ((int)(key ^ (key >>> 32)) & mMask)*2;
+	}
+
+	//Statistics
+	public long getProbes()
+	{
+		return mProbes;
+	}
+
+	public long getHits()
+	{
+		return mHits;
+	}
+
+	public double getHitRate()
+	{
+		long probes = mProbes;
+
+		return (probes == 0)?0:((double)mHits/probes);
+	}
+}
@@ -0,0 +1,30 @@
+package ksk.game;
+
+//One feature of an Evaluation, e.g. material, mobility, or where the pieces stand.  Scores are from the
+//maximizing player's point of view.
+//
+//A term that can be updated incrementally says so with isIncremental(), and scores the part of the
+//position that a move can change with evaluateAffected().  That's called just before the move is made
+//and again just after; the difference between the two is the change the move makes to evaluate().  E.g.
+//a material term scores the pieces on the squares the move touches:  the moving piece and anything it
+//captures before, the moved (or promoted) piece after.  The part scored must be the same before and
+//after, apart from what the move itself changes.
+
+public abstract class EvaluationTerm {
+
+	//The term's score for a whole position, worked out from scratch
+	public abstract int evaluate(GameState state);
+
+	//True if evaluateAffected() can be used to keep the score up to date as moves are made
+	public boolean isIncremental()
+	{
+		return false;
+	}
+
+	//The score of the part of the position that move changes:  with made false, before the move is made on
+	//state; with made true, after it has been.  Only called for incremental terms
+	public int evaluateAffected(GameState state, Move move, boolean made)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " isn't incremental");
+	}
+}
@@ -1,6 +1,8 @@
 package ksk.game;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 
@@ -11,6 +13,8 @@ import java.util.Set;
  * - A set of players
  * - A current game state
  * 
+ * Players take turns in the order they registered.
+ * 
  */
 
 public abstract class Game {
@@ -35,8 +39,8 @@ public abstract class Game {
 	//Constructor; call the implementation-specific "reset()" method to initialize
 	public Game(PlayStyle style)
 	{
-		//Empty player list
-		mPlayers = new HashSet<Player>();
+		//Empty player list; kept in registration order, which is the turn order
+		mPlayers = new LinkedHashSet<Player>();
 		mState = null;
 		mTurn = null;
 		mPlayStyle = style;
@@ -50,37 +54,93 @@ public abstract class Game {
 	}
 
 	//This method is used by Players attempting to make a move
-	//If the Move is valid, then we will apply it, resulting in a new GameState.
+	//If the Move is valid, then we will apply it, resulting in a new GameState, and move on to the
+	//next player's turn.
 	//Returns true if the move was legal, otherwise
 	//false.
-	public final boolean submitMove(Move m)
+	public final boolean submitMove(Player caller, Move m)
 	{
-		Player caller = m.getPlayer();
-
 		if ((caller.equals(mTurn)) && (mState.isValidMove(m)) )
 		{
 			//Call implementation-specific method to actually process the move
-			GameState nextState = mState.apply(m);
+			GameState nextState = implementMove(caller, m);
 			
-			return (nextState != null)?true:false;
+			if (nextState != null)
+			{
+				mState = nextState;
+				advanceTurn();
+				return true;
+			}
 		}
 		
 		return false;
 	}
 
+	//Get the current game state
+	public GameState getState()
+	{
+		return mState;
+	}
+
+	//Get the player whose turn it is
+	public Player getTurn()
+	{
+		return mTurn;
+	}
+
+	//Get the players, in turn order
+	public List<Player> getPlayers()
+	{
+		return new ArrayList<Player>(mPlayers);
+	}
+
+	//Check whether the game has finished.  By default, the game is over when there are no moves left
+	public boolean isOver()
+	{
+		return mState.getNextMoves().length == 0;
+	}
+
+	//Pass the turn to the next player
+	protected void advanceTurn()
+	{
+		List<Player> players = getPlayers();
+		if (players.isEmpty())
+		{
+			mTurn = null;
+			return;
+		}
+
+		int index = players.indexOf(mTurn);
+		mTurn = players.get((index + 1) % players.size());
+	}
+
 	//Method to add/remove players from the active list
 	//Return true if the player list changed
 	public final boolean registerPlayer(Player p, boolean active)
 	{
 		if (active)
 		{
-			//Attempt to add a player
-			return mPlayers.add(p);
+			//Attempt to add a player; the first one to join goes first
+			boolean added = mPlayers.add(p);
+			if (mTurn == null)
+			{
+				mTurn = p;
+			}
+			return added;
 		}
 		else if (!active)
 		{
-			//Attempt to remove a player
-			return mPlayers.remove(p);
+			//Attempt to remove a player, passing the turn on if it was theirs
+			if (p.equals(mTurn))
+			{
+				advanceTurn();
+			}
+			boolean removed = mPlayers.remove(p);
+			if (mPlayers.isEmpty())
+			{
+				mTurn = null;
+			}
+			return removed;
 		}
 
 		return false;
@@ -94,8 +154,11 @@ public abstract class Game {
 	protected abstract void reset();
 
 	//Child classes need to override this if there's anything they need to do other than just
-	//changing states.  Return true if the transition is approved, othewise, false
+	//changing states.  Return the new state if the transition is approved, othewise, null
 	protected abstract GameState implementMove(Player caller, Move move);
+
+	//Result of a finished game for this player:  1 for a win, 0.5 for a draw, 0 for a loss
+	public abstract double getResult(Player player);
 }
 
 
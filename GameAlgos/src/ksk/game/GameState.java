@@ -1,56 +1,142 @@
 package ksk.game;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 //Abstract base class representing the state of a game
 //GameStates are nodes in a graph; this class makes no assumptions about how node transitions
 //occur, or how many states you can transition to from each state, it just allows you to navigate the graph
+//
+//Moves are generated on demand, in stages (see generateMoves()), so a search that only looks at the
+//first few moves from a state doesn't pay for generating the rest.  Child classes either override
+//generateMoves(), or implement populateNextMoves() to produce all the moves in one go.
 public abstract class GameState {
 
-	//Maintain a list of possible next states (this may change as the game goes on)
+	//All the moves, in generation order; made the first time getNextMoves() is called
+	private volatile Move[] mMoveArray;
+
+	//Moves added by populateNextMoves()
 	private List<Move> mNextMoves;
 	
-	//Constructor; optionally populate the list of possible next states
-	//If it's not done at construction time, it will be done "just in time"
+	public GameState()
+	{
+		mMoveArray = null;
+		mNextMoves = null;
+	}
+
+	//The lookahead is no longer used; moves are always generated when they are first needed
 	public GameState(int lookahead)
 	{
-		if (lookahead > 0)
-		{
-			mNextMoves = new ArrayList<Move>();
-			populateNextMoves(lookahead-1);
-		}
-		else
-		{
-			mNextMoves = null;
-		}
+		this();
 	}
 
 
-	//Get a list of the possible state transitions
+	//Get all the possible moves.  The array is shared (it is made once and kept), so don't modify it
 	public Move[] getNextMoves()
 	{
-		if (mNextMoves==null)
+		Move[] moves = mMoveArray;
+		if (moves == null)
 		{
-			populateNextMoves(1);
+			moves = new MoveIterator(this).toArray();
+			mMoveArray = moves;
 		}
 		
-		Move[] result = new Move[mNextMoves.size()];
-		
-		int i=0;
-		for (Iterator<Move> iter = mNextMoves.iterator(); iter.hasNext();)
+		return moves;
+	}
+
+	//Iterate over the possible moves, generating them as they are needed
+	public MoveIterator moves()
+	{
+		return new MoveIterator(this);
+	}
+
+	//Check if a particular next state is a valid transition from this one
+	public boolean isValidMove(Move move)
+	{
+		if (mMoveArray != null)
+		{
+			return MinimaxAlgo.indexOf(mMoveArray, move) >= 0;
+		}
+
+		//Only generate as far as the move
+		for (MoveIterator iter = moves(); iter.hasNext();)
 		{
-			result[i++] = iter.next();
+			if (iter.next().equals(move))
+			{
+				return true;
+			}
 		}
 		
-		return result;
+		return false;
 	}
+	
+	//Forget the moves generated so far; for states that change in place (see MutableGameState)
+	protected void movesChanged()
+	{
+		if (mMoveArray != null)
+		{
+			mMoveArray = null;
+		}
 
-	//Check if a particular next state is a valid transition from this one
-	public boolean isValidMove(Move move)
+		if (mNextMoves != null)
+		{
+			synchronized (this)
+			{
+				mNextMoves = null;
+			}
+		}
+	}
+
+	//Number of stages that moves are generated in; see generateMoves()
+	protected int getMoveStageCount()
+	{
+		return 1;
+	}
+
+	//Generate the moves for one stage (0 to getMoveStageCount()-1), passing each one to moves.add().
+	//Likely good moves should come in the early stages (e.g. captures, then quiet moves), since a search
+	//that gets a cutoff from them never generates the later ones.  The order must be the same every time.
+	//By default, everything is generated in one stage by populateNextMoves()
+	protected void generateMoves(int stage, MoveIterator moves)
+	{
+		for (Move move : populatedMoves())
+		{
+			moves.add(move);
+		}
+	}
+
+	//The moves from populateNextMoves(), made the first time they are needed
+	private synchronized List<Move> populatedMoves()
+	{
+		if (mNextMoves == null)
+		{
+			mNextMoves = new ArrayList<Move>();
+			populateNextMoves(1);
+		}
+
+		return mNextMoves;
+	}
+	
+	//Get a 64-bit key identifying this position, for use in a TranspositionTable.
+	//Equal positions must have equal keys, and different positions should (almost always) have different
+	//ones.  The usual way to do this is Zobrist hashing (see ZobristKeys), updating the key incrementally
+	//in applyMove().  Zero means "not hashed"; states with a key of zero are never stored.
+	public long getHashKey()
+	{
+		return 0;
+	}
+	
+	//Used by populateNextMoves() to add each of the possible moves
+	protected void addNextMove(Move move)
+	{
+		mNextMoves.add(move);
+	}
+	
+	
+	//Populate the list of possible moves from this GameState, calling addNextMove() for each one.  Only used
+	//by the default generateMoves(); child classes that override that don't need this
+	protected void populateNextMoves(int lookahead)
 	{
-		return mNextMoves.contains(move);
 	}
 	
 	
@@ -58,12 +144,9 @@ public abstract class GameState {
 	 * Abstract methods
 	 ***************************/
 	
-	//Abstract method to populate the list of possible moves from this GameState
-	protected abstract void populateNextMoves(int lookahead);
-	
 	//Apply this move to the current GameState.
 	//Returns the resulting GameState, or null if the move is illegal
 	//Note that this method must update the turn, if applicable
-	public abstract GameState applyMove(GameState state);	
+	public abstract GameState applyMove(Move move);	
 
 }
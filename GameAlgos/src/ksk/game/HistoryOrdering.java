@@ -0,0 +1,59 @@
+package ksk.game;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//History heuristic:  moves that have caused cutoffs anywhere in the tree are tried earlier.  Each
+//cutoff adds depth*depth to the move's score, so cutoffs near the root count the most.
+
+public class HistoryOrdering extends MoveOrdering {
+
+	//History scores stay below the killer move scores
+	public static final int MAX_SCORE = (1 << 22) - 1;
+
+	private Map<Move, Integer> mHistory;
+
+	public HistoryOrdering()
+	{
+		mHistory = new HashMap<Move, Integer>();
+	}
+
+	@Override
+	public int score(GameState state, Move move, int ply)
+	{
+		Integer score = mHistory.get(move);
+
+		return (score == null)?0:score;
+	}
+
+	@Override
+	public void recordCutoff(GameState state, Move move, int ply, int depth)
+	{
+		if (move.isCapture())
+		{
+			return;
+		}
+
+		int score = score(state, move, ply) + depth*depth;
+		mHistory.put(move, score);
+
+		//Scale everything down once a score gets too big, keeping the relative order
+		if (score > MAX_SCORE)
+		{
+			for (Map.Entry<Move, Integer> e : mHistory.entrySet())
+			{
+				e.setValue(e.getValue()/2);
+			}
+		}
+	}
+
+	@Override
+	public void newSearch()
+	{
+		//Old history is still useful, but shouldn't dominate the new search
+		for (Map.Entry<Move, Integer> e : mHistory.entrySet())
+		{
+			e.setValue(e.getValue()/2);
+		}
+	}
+}
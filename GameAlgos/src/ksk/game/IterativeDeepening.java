@@ -0,0 +1,124 @@
+package ksk.game;
+
+//Iterative deepening driver for a MinimaxAlgo.
+//
+//Searches to depth 1, then 2, then 3..., starting each iteration with the previous iteration's best
+//move.  This means that a good answer is always available (the result of the last completed depth),
+//so the search can be given a time limit instead of a fixed depth.  The extra shallow searches are
+//cheap compared to the last one, and they improve the move ordering for it.
+
+public class IterativeDeepening {
+
+	//Receives the result of each completed depth
+	public static interface Listener
+	{
+		public void depthCompleted(SearchStats stats);
+	}
+
+	public static final int DEFAULT_MAX_DEPTH = 64;
+
+	private MinimaxAlgo mAlgo;
+	private int mMaxDepth;
+
+	public IterativeDeepening(MinimaxAlgo algo, int maxDepth)
+	{
+		mAlgo = algo;
+		mMaxDepth = maxDepth;
+	}
+
+	public IterativeDeepening(MinimaxAlgo algo)
+	{
+		this(algo, DEFAULT_MAX_DEPTH);
+	}
+
+	public MinimaxAlgo getAlgo()
+	{
+		return mAlgo;
+	}
+
+	public int getMaxDepth()
+	{
+		return mMaxDepth;
+	}
+
+	public void setMaxDepth(int maxDepth)
+	{
+		mMaxDepth = maxDepth;
+	}
+
+	//Search to the maximum depth, with no time limit
+	public SearchStats search(GameState state, boolean maximizing, Listener listener)
+	{
+		return search(state, maximizing, -1, -1, listener);
+	}
+
+	//Search for up to timeLimit milliseconds (negative for no limit), dividing the time up according to
+	//the given allocation
+	public SearchStats search(GameState state, boolean maximizing, long timeLimit, TimeAllocation allocation, Listener listener)
+	{
+		if (timeLimit < 0)
+		{
+			return search(state, maximizing, listener);
+		}
+
+		long now = System.currentTimeMillis();
+
+		return search(state, maximizing, now + allocation.getSoftLimit(timeLimit),
+				now + allocation.getHardLimit(timeLimit), listener);
+	}
+
+	//Search until the deadlines (System.currentTimeMillis() values, or -1 for none) pass.  No new depth is
+	//started after the soft deadline; the search in progress is abandoned at the hard deadline.
+	//Returns the result of the deepest completed search, or null if not even depth 1 was completed
+	public SearchStats search(GameState state, boolean maximizing, long softDeadline, long hardDeadline, Listener listener)
+	{
+		long oldDeadline = mAlgo.getDeadline();
+		mAlgo.setDeadline(hardDeadline);
+
+		SearchStats best = null;
+
+		try
+		{
+			for (int depth = 1; depth <= mMaxDepth; depth++)
+			{
+				//Don't start another iteration we probably can't finish
+				if ((best != null)&&(softDeadline >= 0)&&(System.currentTimeMillis() >= softDeadline))
+				{
+					break;
+				}
+
+				SearchStats stats;
+				try
+				{
+					stats = mAlgo.search(state, depth, maximizing, (best == null)?null:best.getBestMove());
+				}
+				catch (SearchAbortedException e)
+				{
+					break;
+				}
+
+				//If the tree didn't get any bigger, we've seen all of it.  That doesn't follow if some of it
+				//came from the table, which may hold deeper results (e.g. from other threads)
+				boolean exhausted = ((best != null)&&(stats.getNodes() == best.getNodes())
+						&&(stats.getTableCutoffs() == 0));
+				best = stats;
+
+				if (listener != null)
+				{
+					listener.depthCompleted(stats);
+				}
+
+				if ((exhausted)||(stats.getBestMove() == null))
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			mAlgo.setDeadline(oldDeadline);
+		}
+
+		return best;
+	}
+}
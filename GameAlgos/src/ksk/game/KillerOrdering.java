@@ -0,0 +1,79 @@
+package ksk.game;
+
+//Killer move heuristic:  a quiet move that caused a cutoff at some ply will probably cause a cutoff
+//in the sibling positions at the same ply too.  Two killers are remembered for each ply.
+
+public class KillerOrdering extends MoveOrdering {
+
+	//Killers score below captures, but above anything the history heuristic can produce
+	public static final int FIRST_KILLER_SCORE = 1 << 23;
+	public static final int SECOND_KILLER_SCORE = 1 << 22;
+
+	//Killer moves, indexed by [ply][slot].  Grows as deeper plies are reached
+	private Move[][] mKillers;
+
+	public KillerOrdering()
+	{
+		mKillers = new Move[64][2];
+	}
+
+	@Override
+	public int score(GameState state, Move move, int ply)
+	{
+		if (ply >= mKillers.length)
+		{
+			return 0;
+		}
+
+		if (move.equals(mKillers[ply][0]))
+		{
+			return FIRST_KILLER_SCORE;
+		}
+
+		if (move.equals(mKillers[ply][1]))
+		{
+			return SECOND_KILLER_SCORE;
+		}
+
+		return 0;
+	}
+
+	@Override
+	public void recordCutoff(GameState state, Move move, int ply, int depth)
+	{
+		//Captures are already ordered first
+		if (move.isCapture())
+		{
+			return;
+		}
+
+		if (ply >= mKillers.length)
+		{
+			Move[][] killers = new Move[Math.max(ply+1, mKillers.length*2)][];
+			System.arraycopy(mKillers, 0, killers, 0, mKillers.length);
+			for (int i=mKillers.length; i<killers.length; i++)
+			{
+				killers[i] = new Move[2];
+			}
+			mKillers = killers;
+		}
+
+		//Newest killer goes in the first slot
+		if (!move.equals(mKillers[ply][0]))
+		{
+			mKillers[ply][1] = mKillers[ply][0];
+			mKillers[ply][0] = move;
+		}
+	}
+
+	@Override
+	public void newSearch()
+	{
+		//Killers only make sense for the positions they were found in
+		for (int i=0; i<mKillers.length; i++)
+		{
+			mKillers[i][0] = null;
+			mKillers[i][1] = null;
+		}
+	}
+}
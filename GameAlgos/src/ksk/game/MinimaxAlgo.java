@@ -1,24 +1,657 @@
 package ksk.game;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /*
  * This abstract base class implements the minimax algorithm, for a two-player zero-sum game.
  * It is assumed that there are two players, one trying to maximize their score, one trying to minimize it.
- * 
+ *
  * Child classes need to implement a method to calculate a value for each game state (node), potentially
  * using a heuristic.
+ *
+ * The search uses alpha-beta pruning, which gives the same result as plain minimax while skipping
+ * branches that can't affect it.  How much gets skipped depends on searching good moves first, so
+ * moves are ordered by any MoveOrderings that have been added (e.g. captures first, killer moves,
+ * history heuristic).  Moves are generated a stage at a time (see GameState.generateMoves()) and ordered
+ * within each stage, so a cutoff from an early stage saves generating the later ones.  Statistics for the
+ * most recent search are available from getLastSearchStats().
+ *
+ * If a TranspositionTable is attached, positions that are reached more than once (by different move orders,
+ * or in successive iterative deepening searches) are only searched once, and the best move found last
+ * time is searched first.  This requires the GameState to provide hash keys.
+ *
+ * A search can be given a deadline, or stopped from another thread; it then gives up by throwing a
+ * SearchAbortedException (see IterativeDeepening, which keeps the result of the last completed depth).
+ *
+ * If the GameState is a MutableGameState, the search plays and takes back moves on one copy of the root
+ * state (make/unmake) instead of creating a new state for every node; setUseMakeUnmake(false) turns
+ * this off.
+ *
+ * A single MinimaxAlgo searches on one thread; see ParallelSearch for searching with several.
  */
 
 public abstract class MinimaxAlgo {
-	
+
+	//Move orderings; move scores from each are added together
+	protected List<MoveOrdering> mOrderings;
+
+	//Statistics from the most recent search
+	protected SearchStats mLastStats;
+
+	//How often (in nodes) to check whether the search should stop
+	private static final long STOP_CHECK_INTERVAL = 1024;
+
+	//Time (System.currentTimeMillis()) at which searches must stop, or -1 for no limit
+	protected volatile long mDeadline;
+
+	//Set when a search has been asked to stop
+	protected volatile boolean mStopped;
+
+	//Transposition table shared by all searches, or null
+	protected TranspositionTable mTable;
+
+	//Whether to search MutableGameStates with doMove()/undoMove()
+	protected boolean mMakeUnmake;
+
+	//Set by ParallelSearch while this algo searches under one of its splits, which gives up on the subtree
+	//once the split has been cut off; null otherwise
+	ParallelSearch.Split mSplit;
+
+	//Move lists and ordering scratch space for each ply, reused from search to search.  This is why an algo
+	//can only be used by one thread at a time
+	private MoveIterator[] mPlyMoves;
+	private int[][] mPlyOrder;
+	private int[][] mPlyScores;
+
+	//Hash key for "minimizing player to move"
+	private static final long MINIMIZING_KEY = new ZobristKeys(1, 0x4D494E494D495AL).get(0);
+
+	public MinimaxAlgo()
+	{
+		mOrderings = new ArrayList<MoveOrdering>();
+		mLastStats = null;
+		mDeadline = -1;
+		mStopped = false;
+		mTable = null;
+		mMakeUnmake = true;
+		mSplit = null;
+
+		mPlyMoves = new MoveIterator[0];
+		mPlyOrder = new int[0][];
+		mPlyScores = new int[0][];
+	}
+
+	//Attach a transposition table (or null for none).  The table can be shared between searches
+	public void setTranspositionTable(TranspositionTable table)
+	{
+		mTable = table;
+	}
+
+	public TranspositionTable getTranspositionTable()
+	{
+		return mTable;
+	}
+
+	//Whether to use make/unmake for MutableGameStates, or create a new state for each node with applyMove()
+	public void setUseMakeUnmake(boolean makeUnmake)
+	{
+		mMakeUnmake = makeUnmake;
+	}
+
+	public boolean isUsingMakeUnmake()
+	{
+		return mMakeUnmake;
+	}
+
+	//Set the time (as a System.currentTimeMillis() value) at which searches will be aborted; -1 for no limit
+	public void setDeadline(long deadline)
+	{
+		mDeadline = deadline;
+	}
+
+	public long getDeadline()
+	{
+		return mDeadline;
+	}
+
+	//Abort the search in progress (if any), and any further searches until resume() is called
+	public void stop()
+	{
+		mStopped = true;
+	}
+
+	public void resume()
+	{
+		mStopped = false;
+	}
+
+	//Add a move ordering strategy
+	public void addMoveOrdering(MoveOrdering ordering)
+	{
+		if (ordering != null)
+		{
+			mOrderings.add(ordering);
+		}
+	}
+
+	public void clearMoveOrderings()
+	{
+		mOrderings.clear();
+	}
+
 	//Calculate a value for the current game state by looking ahead, assuming that each player will appropriately
 	//maximize/minimize their score
 	public double minimax(GameState state, int depth, boolean maximizing)
 	{
-		return Double.NaN;
+		return search(state, depth, maximizing).getScore();
+	}
+
+	//Find the best move for the player to move in this state.  Returns null if there are no moves
+	public Move findBestMove(GameState state, int depth, boolean maximizing)
+	{
+		return search(state, depth, maximizing).getBestMove();
+	}
+
+	//Search this state to the given depth, and return the statistics (including best move and score)
+	//Throws SearchAbortedException if the deadline passes or the search is stopped
+	public SearchStats search(GameState state, int depth, boolean maximizing)
+	{
+		return search(state, depth, maximizing, null);
+	}
+
+	//Search, trying a particular move first at the root (typically the best move from a shallower search)
+	public SearchStats search(GameState state, int depth, boolean maximizing, Move firstMove)
+	{
+		if (mTable != null)
+		{
+			mTable.newSearch();
+		}
+
+		return helpSearch(state, depth, maximizing, firstMove);
+	}
+
+	//As search(), but without starting a new search in the transposition table; used when several algos
+	//sharing a table are working on the same search (see ParallelSearch)
+	SearchStats helpSearch(GameState state, int depth, boolean maximizing, Move firstMove)
+	{
+		SearchStats stats = new SearchStats(depth);
+
+		newSearch();
+		searchRoot(state, depth, maximizing, firstMove, stats);
+		mLastStats = stats;
+
+		return stats;
+	}
+
+	//Reset the move orderings at the start of a search
+	protected void newSearch()
+	{
+		for (MoveOrdering ordering : mOrderings)
+		{
+			ordering.newSearch();
+		}
+	}
+
+	//Get the statistics from the most recent search, or null if there hasn't been one
+	public SearchStats getLastSearchStats()
+	{
+		return mLastStats;
 	}
-	
+
 	//Abstract method for evaluating a node without minimax (either because it's a leaf, or because we've looked ahead
 	//as far as we plan to
 	public abstract double evaluate(GameState state);
-	
+
+	//Search the root of the tree, remembering which move was best
+	protected void searchRoot(GameState state, int depth, boolean maximizing, Move firstMove, SearchStats stats)
+	{
+		stats.mNodes++;
+		checkStop(stats);
+
+		//Make/unmake changes the state, so work on a copy; if the search is aborted, it is left half way down the tree
+		if (makeUnmake(state))
+		{
+			state = ((MutableGameState)state).copy();
+		}
+
+		long key = tableKey(state, maximizing);
+
+		Move[] moves = (depth > 0)?state.getNextMoves():new Move[0];
+		int[] order = orderMoves(state, moves, 0);
+
+		//Try the suggested move first, otherwise the move the table remembers
+		int firstIndex = indexOf(moves, firstMove);
+		if ((firstIndex < 0)&&(key != 0))
+		{
+			long entry = mTable.probe(key);
+			if (entry != 0)
+			{
+				firstIndex = TranspositionTable.getMoveIndex(entry);
+			}
+		}
+		moveToFront(order, firstIndex);
+
+		double alpha = Double.NEGATIVE_INFINITY;
+		double beta = Double.POSITIVE_INFINITY;
+		double best = maximizing?Double.NEGATIVE_INFINITY:Double.POSITIVE_INFINITY;
+		int bestIndex = -1;
+
+		for (int i=0; i<order.length; i++)
+		{
+			GameState next = play(state, moves[order[i]]);
+			if (next == null)
+			{
+				continue;
+			}
+
+			double value = alphaBeta(next, depth-1, 1, alpha, beta, !maximizing, stats);
+			undo(state);
+
+			//Strictly better only, so that ties go to the earlier (better ordered) move
+			if ((bestIndex < 0)||(maximizing?(value > best):(value < best)))
+			{
+				best = value;
+				bestIndex = order[i];
+			}
+
+			if (maximizing)
+			{
+				alpha = Math.max(alpha, best);
+			}
+			else
+			{
+				beta = Math.min(beta, best);
+			}
+		}
+
+		//No moves (or out of depth):  this is a leaf
+		if (bestIndex < 0)
+		{
+			stats.mLeaves++;
+			best = evaluate(state);
+		}
+		else if (key != 0)
+		{
+			mTable.store(key, depth, TranspositionTable.EXACT, best, bestIndex);
+		}
+
+		stats.finish((bestIndex < 0)?null:moves[bestIndex], best);
+	}
+
+	//Alpha-beta search.  Alpha is the score the maximizing player is already guaranteed elsewhere in the tree,
+	//beta is the score the minimizing player is guaranteed; once alpha >= beta, this node can't affect the result.
+	//Ply is the distance from the root
+	protected double alphaBeta(GameState state, int depth, int ply, double alpha, double beta, boolean maximizing, SearchStats stats)
+	{
+		stats.mNodes++;
+		if (stats.mNodes % STOP_CHECK_INTERVAL == 0)
+		{
+			checkStop(stats);
+		}
+		if (mSplit != null)
+		{
+			mSplit.check();
+		}
+
+		if (depth <= 0)
+		{
+			stats.mLeaves++;
+			return evaluate(state);
+		}
+
+		//Check whether this position has already been searched deeply enough
+		long key = tableKey(state, maximizing);
+		int tableMove = -1;
+		if (key != 0)
+		{
+			long entry = mTable.probe(key);
+			if (entry != 0)
+			{
+				tableMove = TranspositionTable.getMoveIndex(entry);
+
+				if (TranspositionTable.getDepth(entry) >= depth)
+				{
+					double score = TranspositionTable.getScore(entry);
+
+					switch (TranspositionTable.getBound(entry))
+					{
+					case TranspositionTable.EXACT:
+						stats.mTableCutoffs++;
+						return score;
+					case TranspositionTable.LOWER_BOUND:
+						alpha = Math.max(alpha, score);
+						break;
+					case TranspositionTable.UPPER_BOUND:
+						beta = Math.min(beta, score);
+						break;
+					}
+
+					if (alpha >= beta)
+					{
+						stats.mTableCutoffs++;
+						return score;
+					}
+				}
+			}
+		}
+
+		double originalAlpha = alpha;
+		double originalBeta = beta;
+
+		//Moves are generated a stage at a time, so a cutoff saves generating the later stages
+		MoveIterator moves = plyMoves(ply).reset(state);
+		int[] order = null;
+		int orderCount = 0;
+		int orderPosition = 0;
+
+		//The move the table remembers goes first
+		int pending = -1;
+		if ((tableMove >= 0)&&(moves.get(tableMove) != null))
+		{
+			pending = tableMove;
+		}
+
+		double best = maximizing?Double.NEGATIVE_INFINITY:Double.POSITIVE_INFINITY;
+		int bestIndex = -1;
+		int searched = 0;
+
+		while (true)
+		{
+			int index;
+			if (pending >= 0)
+			{
+				index = pending;
+				pending = -1;
+			}
+			else if (orderPosition < orderCount)
+			{
+				index = order[orderPosition++];
+				if (index == tableMove)
+				{
+					continue;
+				}
+			}
+			else if (moves.nextStage())
+			{
+				order = orderStage(state, moves, ply);
+				orderCount = moves.getStageEnd() - moves.getStageStart();
+				orderPosition = 0;
+				continue;
+			}
+			else
+			{
+				break;
+			}
+
+			Move move = moves.get(index);
+			GameState next = play(state, move);
+			if (next == null)
+			{
+				continue;
+			}
+
+			double value = alphaBeta(next, depth-1, ply+1, alpha, beta, !maximizing, stats);
+			undo(state);
+			searched++;
+
+			if ((bestIndex < 0)||(maximizing?(value > best):(value < best)))
+			{
+				best = value;
+				bestIndex = index;
+			}
+
+			if (maximizing)
+			{
+				alpha = Math.max(alpha, best);
+			}
+			else
+			{
+				beta = Math.min(beta, best);
+			}
+
+			//Cutoff; the opponent will never let the game reach this state
+			if (alpha >= beta)
+			{
+				stats.cutoff(searched == 1);
+
+				for (MoveOrdering ordering : mOrderings)
+				{
+					ordering.recordCutoff(state, move, ply, depth);
+				}
+				break;
+			}
+		}
+
+		//No legal moves; the game is over, so let the evaluation decide
+		if (bestIndex < 0)
+		{
+			stats.mLeaves++;
+			return evaluate(state);
+		}
+
+		//Remember the result; if it fell outside the window, it's only a bound on the real score
+		if (key != 0)
+		{
+			int bound = TranspositionTable.EXACT;
+			if (best <= originalAlpha)
+			{
+				bound = TranspositionTable.UPPER_BOUND;
+			}
+			else if (best >= originalBeta)
+			{
+				bound = TranspositionTable.LOWER_BOUND;
+			}
+
+			mTable.store(key, depth, bound, best, bestIndex);
+		}
+
+		return best;
+	}
+
+	//Play a move, returning the state to search next, or null if the move is illegal.  With make/unmake this
+	//is the same state, changed, and undo() must be called once it has been searched
+	protected GameState play(GameState state, Move move)
+	{
+		if (makeUnmake(state))
+		{
+			return ((MutableGameState)state).doMove(move)?state:null;
+		}
+
+		return state.applyMove(move);
+	}
+
+	protected void undo(GameState state)
+	{
+		if (makeUnmake(state))
+		{
+			((MutableGameState)state).undoMove();
+		}
+	}
+
+	private boolean makeUnmake(GameState state)
+	{
+		return (mMakeUnmake)&&(state instanceof MutableGameState);
+	}
+
+	//Give up on the search if it has been stopped, interrupted, or has run out of time
+	protected void checkStop(SearchStats stats)
+	{
+		if ((mStopped)||(Thread.currentThread().isInterrupted())||
+				((mDeadline >= 0)&&(System.currentTimeMillis() >= mDeadline)))
+		{
+			throw new SearchAbortedException(stats);
+		}
+	}
+
+	//Key to use for this state in the transposition table, or 0 if the table can't be used.  The same
+	//position has a different value depending on who is to move, so that is part of the key
+	protected long tableKey(GameState state, boolean maximizing)
+	{
+		if (mTable == null)
+		{
+			return 0;
+		}
+
+		long key = state.getHashKey();
+		if ((key != 0)&&(!maximizing))
+		{
+			key ^= MINIMIZING_KEY;
+		}
+
+		return key;
+	}
+
+	//Find a move in a list, returning -1 if it isn't there
+	protected static int indexOf(Move[] moves, Move move)
+	{
+		if (move != null)
+		{
+			for (int i=0; i<moves.length; i++)
+			{
+				if (move.equals(moves[i]))
+				{
+					return i;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	//Move a particular move index (if present) to the front of the search order, keeping the rest in order
+	protected static void moveToFront(int[] order, int index)
+	{
+		if (index < 0)
+		{
+			return;
+		}
+
+		for (int i=0; i<order.length; i++)
+		{
+			if (order[i] == index)
+			{
+				System.arraycopy(order, 0, order, 1, i);
+				order[0] = index;
+				return;
+			}
+		}
+	}
+
+	//Work out the order to search the moves in:  the ones with the highest total ordering score come first.
+	//Returns indices into the moves array.  Moves with equal scores keep their original order, so searches
+	//are repeatable
+	protected int[] orderMoves(GameState state, Move[] moves, int ply)
+	{
+		int[] order = new int[moves.length];
+		for (int i=0; i<order.length; i++)
+		{
+			order[i] = i;
+		}
+
+		if ((mOrderings.isEmpty())||(moves.length < 2))
+		{
+			return order;
+		}
+
+		int[] scores = new int[moves.length];
+		for (int i=0; i<moves.length; i++)
+		{
+			scores[i] = scoreMove(state, moves[i], ply);
+		}
+
+		sortByScore(order, scores, order.length);
+		return order;
+	}
+
+	//The same, for the current stage of a MoveIterator.  Returns the move indices (the first
+	//getStageEnd()-getStageStart() entries) in an array that is reused for each search at this ply
+	protected int[] orderStage(GameState state, MoveIterator moves, int ply)
+	{
+		int start = moves.getStageStart();
+		int count = moves.getStageEnd() - start;
+
+		if (mPlyOrder[ply].length < count)
+		{
+			mPlyOrder[ply] = new int[Math.max(count, 2*mPlyOrder[ply].length)];
+			mPlyScores[ply] = new int[mPlyOrder[ply].length];
+		}
+
+		int[] order = mPlyOrder[ply];
+		int[] scores = mPlyScores[ply];
+		for (int i=0; i<count; i++)
+		{
+			order[i] = start + i;
+		}
+
+		if ((mOrderings.isEmpty())||(count < 2))
+		{
+			return order;
+		}
+
+		for (int i=0; i<count; i++)
+		{
+			scores[i] = scoreMove(state, moves.get(start + i), ply);
+		}
+
+		sortByScore(order, scores, count);
+		return order;
+	}
+
+	//Total score from all the move orderings
+	private int scoreMove(GameState state, Move move, int ply)
+	{
+		int score = 0;
+		for (MoveOrdering ordering : mOrderings)
+		{
+			score += ordering.score(state, move, ply);
+		}
+
+		return score;
+	}
+
+	//Sort the first count entries, highest score first.  Insertion sort; move lists are short, and this is stable
+	private static void sortByScore(int[] order, int[] scores, int count)
+	{
+		for (int i=1; i<count; i++)
+		{
+			int index = order[i];
+			int score = scores[i];
+			int j = i - 1;
+
+			while ((j >= 0)&&(scores[j] < score))
+			{
+				order[j+1] = order[j];
+				scores[j+1] = scores[j];
+				j--;
+			}
+
+			order[j+1] = index;
+			scores[j+1] = score;
+		}
+	}
+
+	//Move iterator for a ply, growing the per-ply arrays as needed
+	private MoveIterator plyMoves(int ply)
+	{
+		if (ply >= mPlyMoves.length)
+		{
+			int length = Math.max(ply + 1, 2*mPlyMoves.length);
+			int old = mPlyMoves.length;
+
+			mPlyMoves = Arrays.copyOf(mPlyMoves, length);
+			mPlyOrder = Arrays.copyOf(mPlyOrder, length);
+			mPlyScores = Arrays.copyOf(mPlyScores, length);
+
+			for (int i=old; i<length; i++)
+			{
+				mPlyMoves[i] = new MoveIterator();
+				mPlyOrder[i] = new int[16];
+				mPlyScores[i] = new int[16];
+			}
+		}
+
+		return mPlyMoves[ply];
+	}
 }
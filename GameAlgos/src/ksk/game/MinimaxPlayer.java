@@ -0,0 +1,61 @@
+package ksk.game;
+
+//A computer player that chooses moves with an iterative deepening minimax search.
+//The working move is updated after every completed depth, so if time runs out the best move from the
+//deepest completed search is played.
+
+public class MinimaxPlayer extends Player {
+
+	private IterativeDeepening mSearch;
+	private TimeAllocation mAllocation;
+	private boolean mMaximizing;
+
+	//Statistics from the last completed depth of the last move
+	private volatile SearchStats mLastStats;
+
+	//Create a player that searches with the given algorithm, playing as the maximizing or minimizing player
+	public MinimaxPlayer(MinimaxAlgo algo, boolean maximizing, TimeAllocation allocation, int maxDepth)
+	{
+		super();
+
+		mSearch = new IterativeDeepening(algo, maxDepth);
+		mAllocation = allocation;
+		mMaximizing = maximizing;
+		mLastStats = null;
+	}
+
+	public MinimaxPlayer(MinimaxAlgo algo, boolean maximizing)
+	{
+		this(algo, maximizing, new TimeAllocation(), IterativeDeepening.DEFAULT_MAX_DEPTH);
+	}
+
+	public SearchStats getLastSearchStats()
+	{
+		return mLastStats;
+	}
+
+	@Override
+	protected Move think(GameState state, long deadline)
+	{
+		IterativeDeepening.Listener listener = new IterativeDeepening.Listener() {
+			public void depthCompleted(SearchStats stats)
+			{
+				mLastStats = stats;
+				setWorkingMove(stats.getBestMove());
+			}
+		};
+
+		SearchStats result;
+		if (deadline < 0)
+		{
+			result = mSearch.search(state, mMaximizing, listener);
+		}
+		else
+		{
+			long available = deadline - System.currentTimeMillis();
+			result = mSearch.search(state, mMaximizing, available, mAllocation, listener);
+		}
+
+		return (result == null)?null:result.getBestMove();
+	}
+}
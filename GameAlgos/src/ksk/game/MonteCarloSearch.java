@@ -0,0 +1,722 @@
+package ksk.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+//Monte Carlo Tree Search, for games whose branching factor is too big for minimax.
+//
+//Each iteration walks down the tree from the root, choosing moves with UCT (the move's average result
+//plus an exploration bonus for moves that haven't been tried much), adds the children of the node it
+//ends up at, plays a random game from there, and adds the result to every node on the way back up.
+//After enough iterations, the most visited move at the root is the best one.
+//
+//As with MinimaxAlgo, there are two players who alternate, one maximizing and one minimizing.  Child
+//classes implement evaluate(), the result of a finished game (1 for a maximizing player win, 0 for a
+//loss, 0.5 for a draw), and can override playout() with something faster or smarter than random moves.
+//
+//The tree is kept in arrays of primitives, indexed by node number; a node stores the index of its move in
+//its parent state's getNextMoves(), and states are recreated by replaying moves from the root.  Calling
+//advance() with each move played keeps the subtree that is still relevant for the next search, and
+//recycles the rest of the nodes.
+//
+//With more than one thread, each thread grows its own tree from the root (root parallelization), and
+//the root statistics are added together at the end.  Threads don't share anything during the search, so
+//this scales to as many cores as there are.
+
+public abstract class MonteCarloSearch {
+
+	public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+	public static final int DEFAULT_MAX_NODES = 1 << 20;
+	public static final int DEFAULT_MAX_PLAYOUT_LENGTH = 1000;
+	public static final long DEFAULT_SEED = 0x4D435453L;
+
+	//How often (in iterations) to check the time
+	private static final int TIME_CHECK_INTERVAL = 64;
+
+	//Marks a node whose children haven't been added yet
+	private static final int UNEXPANDED = -1;
+
+	private double mExploration;
+	private int mMaxNodes;
+	private int mMaxPlayoutLength;
+	private long mSeed;
+
+	//One tree per thread
+	private Tree[] mTrees;
+	private ExecutorService mExecutor;
+
+	//The state at the root of the trees
+	private GameState mRootState;
+
+	private volatile boolean mStopped;
+
+	//Set when the thread running a parallel search is interrupted
+	private volatile boolean mAborted;
+
+	private SearchStats mLastStats;
+
+	public MonteCarloSearch(int threads, int maxNodes)
+	{
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+
+		mExploration = DEFAULT_EXPLORATION;
+		mMaxNodes = maxNodes;
+		mMaxPlayoutLength = DEFAULT_MAX_PLAYOUT_LENGTH;
+		mSeed = DEFAULT_SEED;
+
+		mTrees = new Tree[threads];
+		for (int i=0; i<threads; i++)
+		{
+			mTrees[i] = new Tree(maxNodes, mSeed + i);
+		}
+
+		mExecutor = null;
+		mRootState = null;
+		mStopped = false;
+		mAborted = false;
+		mLastStats = null;
+	}
+
+	public MonteCarloSearch()
+	{
+		this(1, DEFAULT_MAX_NODES);
+	}
+
+	//Exploration constant for UCT; higher values try more moves, lower values concentrate on the best ones
+	public void setExploration(double exploration)
+	{
+		mExploration = exploration;
+	}
+
+	public double getExploration()
+	{
+		return mExploration;
+	}
+
+	//Playouts are abandoned (and the state evaluated as it is) after this many moves
+	public void setMaxPlayoutLength(int length)
+	{
+		mMaxPlayoutLength = length;
+	}
+
+	//Reseed the random number generators; searches with one thread and an iteration limit are repeatable
+	public void setSeed(long seed)
+	{
+		mSeed = seed;
+		clear();
+	}
+
+	public int getThreads()
+	{
+		return mTrees.length;
+	}
+
+	//Abort the search in progress (if any), and any further searches until resume() is called.  An aborted
+	//search still returns the best move found so far
+	public void stop()
+	{
+		mStopped = true;
+	}
+
+	public void resume()
+	{
+		mStopped = false;
+	}
+
+	//Throw away the trees
+	public void clear()
+	{
+		for (int i=0; i<mTrees.length; i++)
+		{
+			mTrees[i].reset(mSeed + i);
+		}
+		mRootState = null;
+	}
+
+	//Number of nodes in use (in the first tree)
+	public int getTreeSize()
+	{
+		return mTrees[0].mCount;
+	}
+
+	public SearchStats getLastSearchStats()
+	{
+		return mLastStats;
+	}
+
+	//Stop the search threads.  Further searches will use one thread
+	public synchronized void shutdown()
+	{
+		if (mExecutor != null)
+		{
+			mExecutor.shutdownNow();
+			mExecutor = null;
+		}
+
+		Tree first = mTrees[0];
+		mTrees = new Tree[] {first};
+	}
+
+	//Search for up to timeLimit milliseconds and/or maxIterations iterations (-1 for no limit; at least one
+	//must be given).  Returns the statistics:  the node count is the number of iterations, the depth is the
+	//deepest the tree reached, and the score is the expected result of the best move for the player making it
+	public SearchStats search(GameState state, boolean maximizing, long timeLimit, long maxIterations)
+	{
+		if ((timeLimit < 0)&&(maxIterations < 0))
+		{
+			throw new IllegalArgumentException("Need a time limit or an iteration limit");
+		}
+
+		SearchStats stats = new SearchStats(0);
+		long deadline = (timeLimit < 0)?-1:(System.currentTimeMillis() + timeLimit);
+
+		//Keep the trees if they're for this position; otherwise start again
+		if ((mRootState != state)&&((state.getHashKey() == 0)||(mRootState == null)||
+				(state.getHashKey() != mRootState.getHashKey())))
+		{
+			clear();
+		}
+		mRootState = state;
+
+		//Fill the root's move list now; the threads will all read it
+		Move[] moves = state.getNextMoves();
+
+		if (mTrees.length == 1)
+		{
+			mTrees[0].search(state, maximizing, deadline, maxIterations);
+		}
+		else
+		{
+			searchParallel(state, maximizing, deadline, maxIterations);
+		}
+
+		//Add up the root statistics, by move
+		int[] visits = new int[moves.length];
+		double[] wins = new double[moves.length];
+		for (Tree tree : mTrees)
+		{
+			stats.mNodes += tree.mIterations;
+			stats.mLeaves += tree.mIterations;
+			stats.mDepth = Math.max(stats.mDepth, tree.mMaxDepth);
+
+			tree.addRootStatistics(visits, wins);
+		}
+
+		//The most visited move is the most reliable
+		int best = -1;
+		for (int i=0; i<moves.length; i++)
+		{
+			if ((visits[i] > 0)&&((best < 0)||(visits[i] > visits[best])))
+			{
+				best = i;
+			}
+		}
+
+		stats.finish((best < 0)?null:moves[best], (best < 0)?Double.NaN:(wins[best]/visits[best]));
+		mLastStats = stats;
+
+		return stats;
+	}
+
+	//The game has moved on; keep the part of the trees under this move, and recycle the rest
+	public void advance(Move move)
+	{
+		if (mRootState == null)
+		{
+			return;
+		}
+
+		int index = MinimaxAlgo.indexOf(mRootState.getNextMoves(), move);
+		GameState next = (index < 0)?null:mRootState.applyMove(move);
+		if (next == null)
+		{
+			clear();
+			return;
+		}
+
+		for (Tree tree : mTrees)
+		{
+			tree.advance(index);
+		}
+		mRootState = next;
+	}
+
+	//Visit counts and average results for each move at the root, most visited first
+	public String getRootReport()
+	{
+		if (mRootState == null)
+		{
+			return "";
+		}
+
+		Move[] moves = mRootState.getNextMoves();
+		int[] visits = new int[moves.length];
+		double[] wins = new double[moves.length];
+		for (Tree tree : mTrees)
+		{
+			tree.addRootStatistics(visits, wins);
+		}
+
+		Integer[] order = new Integer[moves.length];
+		for (int i=0; i<order.length; i++)
+		{
+			order[i] = i;
+		}
+		final int[] counts = visits;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return counts[b] - counts[a];
+			}
+		});
+
+		StringBuilder report = new StringBuilder();
+		for (int i : order)
+		{
+			if (visits[i] > 0)
+			{
+				report.append(String.format("%-10s %10d %8.3f%n", moves[i], visits[i], wins[i]/visits[i]));
+			}
+		}
+
+		return report.toString();
+	}
+
+	/****************************
+	 * Methods for child classes
+	 ***************************/
+
+	//The result of the game in this state, from the maximizing player's point of view:  1 for a win, 0 for
+	//a loss, 0.5 for a draw.  Called at the end of playouts, which is normally when there are no moves left;
+	//if the playout was cut short, this should estimate the result
+	public abstract double evaluate(GameState state);
+
+	//Play the game out from this state, and return the result (see evaluate()).  By default this plays random
+	//moves until the game is over
+	protected double playout(GameState state, Random random)
+	{
+		for (int length = 0; length < mMaxPlayoutLength; length++)
+		{
+			Move[] moves = state.getNextMoves();
+			if (moves.length == 0)
+			{
+				break;
+			}
+
+			GameState next = state.applyMove(moves[random.nextInt(moves.length)]);
+
+			//If that was illegal, pick from the rest until one is legal.  The move array is shared, so copy it first
+			if (next == null)
+			{
+				moves = moves.clone();
+				int remaining = moves.length;
+				while ((next == null)&&(remaining > 0))
+				{
+					int i = random.nextInt(remaining);
+					next = state.applyMove(moves[i]);
+					moves[i] = moves[--remaining];
+				}
+			}
+
+			if (next == null)
+			{
+				break;
+			}
+
+			state = next;
+		}
+
+		return evaluate(state);
+	}
+
+	/****************************
+	 * Multithreading
+	 ***************************/
+
+	private void searchParallel(final GameState state, final boolean maximizing, final long deadline, long maxIterations)
+	{
+		ExecutorService executor = getExecutor();
+		mAborted = false;
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+
+		for (int i=0; i<mTrees.length; i++)
+		{
+			final Tree tree = mTrees[i];
+
+			//Share out the iterations
+			final long iterations = (maxIterations < 0)?-1:
+				(maxIterations/mTrees.length + ((i < maxIterations % mTrees.length)?1:0));
+
+			results.add(executor.submit(new Callable<Object>() {
+				public Object call()
+				{
+					tree.search(state, maximizing, deadline, iterations);
+					return null;
+				}
+			}));
+		}
+
+		//If we're interrupted, stop the other threads, and use whatever they've done so far
+		boolean interrupted = false;
+		try
+		{
+			for (Future<Object> result : results)
+			{
+				while (true)
+				{
+					try
+					{
+						result.get();
+						break;
+					}
+					catch (InterruptedException e)
+					{
+						interrupted = true;
+						mAborted = true;
+					}
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Search thread failed", e.getCause());
+		}
+		finally
+		{
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private synchronized ExecutorService getExecutor()
+	{
+		if (mExecutor == null)
+		{
+			mExecutor = Executors.newFixedThreadPool(mTrees.length, new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "MonteCarloSearch worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return mExecutor;
+	}
+
+	/****************************
+	 * The tree
+	 ***************************/
+
+	//A search tree, used by one thread at a time.  Node 0 is the root, and each node's children are stored
+	//next to each other
+	private class Tree
+	{
+		//Index of the move to this node in the parent's getNextMoves(), or -1 if the move turned out to be illegal
+		private int[] mMove;
+		private int[] mFirstChild;
+		private int[] mChildCount;
+		private int[] mVisits;
+
+		//Total of the results, from the point of view of the player who made the move to this node
+		private double[] mWins;
+
+		private int mCount;
+
+		//A second set of arrays, which advance() copies the surviving nodes into
+		private int[] mSpareMove;
+		private int[] mSpareFirstChild;
+		private int[] mSpareChildCount;
+		private int[] mSpareVisits;
+		private double[] mSpareWins;
+		private int[] mOldIndex;
+
+		//Nodes on the current path from the root
+		private int[] mPath;
+
+		private Random mRandom;
+		private long mIterations;
+		private int mMaxDepth;
+
+		Tree(int maxNodes, long seed)
+		{
+			maxNodes = Math.max(1, maxNodes);
+
+			mMove = new int[maxNodes];
+			mFirstChild = new int[maxNodes];
+			mChildCount = new int[maxNodes];
+			mVisits = new int[maxNodes];
+			mWins = new double[maxNodes];
+
+			mSpareMove = new int[maxNodes];
+			mSpareFirstChild = new int[maxNodes];
+			mSpareChildCount = new int[maxNodes];
+			mSpareVisits = new int[maxNodes];
+			mSpareWins = new double[maxNodes];
+			mOldIndex = new int[maxNodes];
+
+			mPath = new int[64];
+			reset(seed);
+		}
+
+		//Go back to just the root, reusing the arrays
+		void reset(long seed)
+		{
+			mRandom = new Random(seed);
+			mCount = 1;
+			initNode(0, -1);
+		}
+
+		void search(GameState root, boolean maximizing, long deadline, long maxIterations)
+		{
+			mIterations = 0;
+			mMaxDepth = 0;
+
+			while (((maxIterations < 0)||(mIterations < maxIterations))&&(!mStopped)&&(!mAborted))
+			{
+				if ((deadline >= 0)&&(mIterations % TIME_CHECK_INTERVAL == 0)&&
+						(System.currentTimeMillis() >= deadline))
+				{
+					break;
+				}
+
+				if (Thread.currentThread().isInterrupted())
+				{
+					break;
+				}
+
+				iterate(root, maximizing);
+				mIterations++;
+			}
+		}
+
+		//One iteration:  select a path, expand, play out, and back the result up the path
+		private void iterate(GameState state, boolean maximizing)
+		{
+			int node = 0;
+			int depth = 0;
+			mPath[0] = 0;
+
+			//Selection; go down through expanded nodes with UCT
+			while (mChildCount[node] > 0)
+			{
+				Move[] moves = state.getNextMoves();
+				GameState next = null;
+				int child = -1;
+
+				while ((next == null)&&((child = select(node)) >= 0))
+				{
+					next = state.applyMove(moves[mMove[child]]);
+					if (next == null)
+					{
+						mMove[child] = -1;
+					}
+				}
+
+				if (next == null)
+				{
+					//Every move was illegal
+					mChildCount[node] = 0;
+					break;
+				}
+
+				node = child;
+				state = next;
+				push(++depth, node);
+			}
+
+			//Expansion; add the children, if there's room, and move to one of them
+			if (mChildCount[node] == UNEXPANDED)
+			{
+				int count = expand(node, state);
+				if (count > 0)
+				{
+					int child = mFirstChild[node] + mRandom.nextInt(count);
+					GameState next = state.applyMove(state.getNextMoves()[mMove[child]]);
+					if (next == null)
+					{
+						mMove[child] = -1;
+					}
+					else
+					{
+						node = child;
+						state = next;
+						push(++depth, node);
+					}
+				}
+			}
+
+			//Simulation
+			double result = playout(state, mRandom);
+
+			//Backpropagation; each node keeps results from the point of view of the player who moved to it
+			for (int i=depth; i>=0; i--)
+			{
+				node = mPath[i];
+				mVisits[node]++;
+
+				boolean moverMaximizing = ((i % 2 == 1) == maximizing);
+				mWins[node] += moverMaximizing?result:(1 - result);
+			}
+
+			mMaxDepth = Math.max(mMaxDepth, depth);
+		}
+
+		//Choose the child with the highest UCT value, or -1 if there are no legal moves
+		private int select(int node)
+		{
+			int first = mFirstChild[node];
+			double logVisits = Math.log(Math.max(1, mVisits[node]));
+			double bestValue = Double.NEGATIVE_INFINITY;
+			int best = -1;
+
+			for (int child = first; child < first + mChildCount[node]; child++)
+			{
+				if (mMove[child] < 0)
+				{
+					continue;
+				}
+
+				//Untried moves first
+				if (mVisits[child] == 0)
+				{
+					return child;
+				}
+
+				double value = mWins[child]/mVisits[child] + mExploration*Math.sqrt(logVisits/mVisits[child]);
+				if (value > bestValue)
+				{
+					bestValue = value;
+					best = child;
+				}
+			}
+
+			return best;
+		}
+
+		//Add the children of a node.  Returns the number added; zero if there are no moves, or no room
+		private int expand(int node, GameState state)
+		{
+			int count = state.getNextMoves().length;
+			if (mCount + count > mMove.length)
+			{
+				return 0;
+			}
+
+			mFirstChild[node] = mCount;
+			mChildCount[node] = count;
+
+			for (int i=0; i<count; i++)
+			{
+				initNode(mCount++, i);
+			}
+
+			return count;
+		}
+
+		private void initNode(int node, int move)
+		{
+			mMove[node] = move;
+			mFirstChild[node] = 0;
+			mChildCount[node] = UNEXPANDED;
+			mVisits[node] = 0;
+			mWins[node] = 0;
+		}
+
+		private void push(int depth, int node)
+		{
+			if (depth >= mPath.length)
+			{
+				mPath = Arrays.copyOf(mPath, mPath.length*2);
+			}
+			mPath[depth] = node;
+		}
+
+		//Add this tree's statistics for each move at the root
+		void addRootStatistics(int[] visits, double[] wins)
+		{
+			int first = mFirstChild[0];
+			for (int child = first; child < first + Math.max(0, mChildCount[0]); child++)
+			{
+				if (mMove[child] >= 0)
+				{
+					visits[mMove[child]] += mVisits[child];
+					wins[mMove[child]] += mWins[child];
+				}
+			}
+		}
+
+		//Make the child for this move the new root, copying its subtree to the start of the spare arrays
+		//(breadth first, so children stay together), then swap the arrays over
+		void advance(int move)
+		{
+			int newRoot = -1;
+			int first = mFirstChild[0];
+			for (int child = first; child < first + Math.max(0, mChildCount[0]); child++)
+			{
+				if (mMove[child] == move)
+				{
+					newRoot = child;
+				}
+			}
+
+			if (newRoot < 0)
+			{
+				mCount = 1;
+				initNode(0, -1);
+				return;
+			}
+
+			copyNode(newRoot, 0);
+			mSpareMove[0] = -1;
+			mOldIndex[0] = newRoot;
+			int count = 1;
+
+			for (int node = 0; node < count; node++)
+			{
+				int old = mOldIndex[node];
+				if (mChildCount[old] > 0)
+				{
+					mSpareFirstChild[node] = count;
+					for (int i=0; i<mChildCount[old]; i++)
+					{
+						copyNode(mFirstChild[old] + i, count);
+						mOldIndex[count++] = mFirstChild[old] + i;
+					}
+				}
+			}
+
+			int[] swap = mMove; mMove = mSpareMove; mSpareMove = swap;
+			swap = mFirstChild; mFirstChild = mSpareFirstChild; mSpareFirstChild = swap;
+			swap = mChildCount; mChildCount = mSpareChildCount; mSpareChildCount = swap;
+			swap = mVisits; mVisits = mSpareVisits; mSpareVisits = swap;
+			double[] swapWins = mWins; mWins = mSpareWins; mSpareWins = swapWins;
+
+			mCount = count;
+		}
+
+		private void copyNode(int from, int to)
+		{
+			mSpareMove[to] = mMove[from];
+			mSpareFirstChild[to] = 0;
+			mSpareChildCount[to] = mChildCount[from];
+			mSpareVisits[to] = mVisits[from];
+			mSpareWins[to] = mWins[from];
+		}
+	}
+}
@@ -12,6 +12,10 @@ public abstract class Move {
 		{
 			mMoveString = "";
 		}
+		else
+		{
+			mMoveString = str;
+		}
 		
 		decode();
 	}
@@ -22,6 +26,27 @@ public abstract class Move {
 		return mMoveString;
 	}
 	
+	//Check whether this move captures (or otherwise changes the material balance).  Searches use
+	//this to try captures first, so games with captures should override it.
+	public boolean isCapture()
+	{
+		return false;
+	}
+	
+	//Two moves are the same if they are the same type of move, with the same move string
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if ((o == null)||(o.getClass() != getClass())) return false;
+		
+		return mMoveString.equals(((Move)o).mMoveString);
+	}
+	
+	public int hashCode()
+	{
+		return mMoveString.hashCode();
+	}
+	
 	//Abstract method to interpret the MoveString
 	//This will presumably modify some fields of the abstract subclass, which can be
 	//used in applying the move.
@@ -0,0 +1,199 @@
+package ksk.game;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+//Iterates over the moves from a GameState, generating them a stage at a time as they are needed (see
+//GameState.generateMoves()).  A search that gets a cutoff from the early stages never pays for
+//generating the later ones.
+//
+//Moves are numbered in the order they are generated, which is the same order as GameState.getNextMoves(),
+//so an index can be stored (e.g. in a TranspositionTable) and used to get the move back later.
+//
+//An iterator can be reused for another state with reset(); its buffer is kept, so a search that keeps
+//one iterator per ply doesn't allocate anything for move lists once it's warmed up.
+
+public class MoveIterator implements Iterator<Move> {
+
+	private GameState mState;
+
+	//Moves generated so far
+	private Move[] mMoves;
+	private int mCount;
+
+	//Where each generated stage ends in mMoves
+	private int[] mStageEnd;
+	private int mStages;
+	private int mGeneratedStages;
+
+	//Stage most recently returned by nextStage(), and position for next()
+	private int mCurrentStage;
+	private int mPosition;
+
+	public MoveIterator()
+	{
+		mMoves = new Move[32];
+		mStageEnd = new int[4];
+		reset(null);
+	}
+
+	public MoveIterator(GameState state)
+	{
+		this();
+		reset(state);
+	}
+
+	//Start again, with the moves from this state
+	public MoveIterator reset(GameState state)
+	{
+		//Let go of the old moves
+		Arrays.fill(mMoves, 0, mCount, null);
+
+		mState = state;
+		mCount = 0;
+		mStages = (state == null)?0:state.getMoveStageCount();
+		mGeneratedStages = 0;
+		mCurrentStage = -1;
+		mPosition = 0;
+
+		if (mStageEnd.length < mStages)
+		{
+			mStageEnd = new int[mStages];
+		}
+
+		return this;
+	}
+
+	public GameState getState()
+	{
+		return mState;
+	}
+
+	/****************************
+	 * Iterator
+	 ***************************/
+
+	public boolean hasNext()
+	{
+		while ((mPosition >= mCount)&&(mGeneratedStages < mStages))
+		{
+			generateStage();
+		}
+
+		return (mPosition < mCount);
+	}
+
+	public Move next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+
+		return mMoves[mPosition++];
+	}
+
+	//Index of the move last returned by next()
+	public int index()
+	{
+		return mPosition - 1;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/****************************
+	 * Stage at a time
+	 ***************************/
+
+	//Move on to the next stage, generating it if that hasn't been done yet.  Returns false when there are
+	//no stages left.  The moves of the stage are numbered getStageStart() to getStageEnd()-1
+	public boolean nextStage()
+	{
+		if (mCurrentStage + 1 >= mStages)
+		{
+			return false;
+		}
+
+		mCurrentStage++;
+		while (mGeneratedStages <= mCurrentStage)
+		{
+			generateStage();
+		}
+
+		return true;
+	}
+
+	public int getStage()
+	{
+		return mCurrentStage;
+	}
+
+	public int getStageStart()
+	{
+		return (mCurrentStage <= 0)?0:mStageEnd[mCurrentStage-1];
+	}
+
+	public int getStageEnd()
+	{
+		return (mCurrentStage < 0)?0:mStageEnd[mCurrentStage];
+	}
+
+	/****************************
+	 * Random access
+	 ***************************/
+
+	//Get a move by index, generating stages up to it if necessary.  Returns null if there aren't that many moves
+	public Move get(int index)
+	{
+		while ((index >= mCount)&&(mGeneratedStages < mStages))
+		{
+			generateStage();
+		}
+
+		return ((index >= 0)&&(index < mCount))?mMoves[index]:null;
+	}
+
+	//Total number of moves.  This generates all the stages
+	public int size()
+	{
+		while (mGeneratedStages < mStages)
+		{
+			generateStage();
+		}
+
+		return mCount;
+	}
+
+	//Copy of all the moves.  This generates all the stages
+	public Move[] toArray()
+	{
+		//size() can grow the buffer, so it has to be called first
+		int count = size();
+		return Arrays.copyOf(mMoves, count);
+	}
+
+	/****************************
+	 * Generation
+	 ***************************/
+
+	//Called by GameState.generateMoves() for each move
+	public void add(Move move)
+	{
+		if (mCount == mMoves.length)
+		{
+			mMoves = Arrays.copyOf(mMoves, mMoves.length*2);
+		}
+
+		mMoves[mCount++] = move;
+	}
+
+	private void generateStage()
+	{
+		mState.generateMoves(mGeneratedStages, this);
+		mStageEnd[mGeneratedStages++] = mCount;
+	}
+}
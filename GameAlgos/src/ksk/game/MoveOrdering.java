@@ -0,0 +1,25 @@
+package ksk.game;
+
+/*
+ * Strategy for ordering moves during a search.  Alpha-beta prunes the most when the best move is
+ * searched first, so MinimaxAlgo asks each of its MoveOrderings to score every move, and searches
+ * the moves with the highest total score first.
+ *
+ * Orderings can learn as the search goes along; they are told whenever a move causes a cutoff.
+ */
+
+public abstract class MoveOrdering {
+
+	//Score a move; higher scores are searched first.  Ply is the distance from the root of the search
+	public abstract int score(GameState state, Move move, int ply);
+
+	//Called when a move was good enough to cut off the search at this ply, with this much depth remaining
+	public void recordCutoff(GameState state, Move move, int ply, int depth)
+	{
+	}
+
+	//Called at the start of each new search
+	public void newSearch()
+	{
+	}
+}
@@ -0,0 +1,176 @@
+package ksk.game;
+
+import java.util.Arrays;
+
+//A GameState that can be changed in place:  doMove() plays a move on this state, and undoMove() takes
+//it back.  A search that goes down the tree and back up again (like MinimaxAlgo) can then use one state
+//for the whole search, instead of allocating a new state for every node.
+//
+//The immutable API still works:  applyMove() copies the state and plays the move on the copy.
+//
+//Child classes implement makeMove(), unmakeMove() and copy().  Anything that unmakeMove() needs and
+//can't work out from the move itself (e.g. the piece that was captured) can be saved with pushUndo() and
+//got back with popUndo().  The move and undo stacks are arrays that are reused, so playing and undoing
+//moves doesn't allocate anything.
+//
+//An Evaluation can be attached with setEvaluation(); doMove() and undoMove() then keep its incremental
+//terms up to date.
+
+public abstract class MutableGameState extends GameState {
+
+	//Moves played with doMove(), most recent last
+	private Move[] mMoveStack;
+	private int mMoveCount;
+
+	//Undo information saved by makeMove()
+	private long[] mUndoStack;
+	private int mUndoCount;
+
+	//Kept up to date as moves are played, or null
+	private Evaluation mEvaluation;
+
+	public MutableGameState()
+	{
+		super();
+
+		mMoveStack = new Move[16];
+		mMoveCount = 0;
+		mUndoStack = new long[16];
+		mUndoCount = 0;
+	}
+
+	//Play a move on this state.  Returns false (leaving the state unchanged) if the move is illegal
+	public boolean doMove(Move move)
+	{
+		int undoMark = mUndoCount;
+		if (mEvaluation != null)
+		{
+			mEvaluation.beforeMove(this, move);
+		}
+
+		if (!makeMove(move))
+		{
+			mUndoCount = undoMark;
+			if (mEvaluation != null)
+			{
+				mEvaluation.moveUnmade();
+			}
+			return false;
+		}
+
+		if (mEvaluation != null)
+		{
+			mEvaluation.afterMove(this, move);
+		}
+
+		if (mMoveCount == mMoveStack.length)
+		{
+			mMoveStack = Arrays.copyOf(mMoveStack, mMoveCount*2);
+		}
+		mMoveStack[mMoveCount++] = move;
+
+		movesChanged();
+		return true;
+	}
+
+	//Take back the last move played with doMove(), and return it
+	public Move undoMove()
+	{
+		if (mMoveCount == 0)
+		{
+			throw new IllegalStateException("No move to undo");
+		}
+
+		Move move = mMoveStack[--mMoveCount];
+		mMoveStack[mMoveCount] = null;
+
+		unmakeMove(move);
+		if (mEvaluation != null)
+		{
+			mEvaluation.moveUnmade();
+		}
+		movesChanged();
+
+		return move;
+	}
+
+	//Number of moves that can be undone
+	public int getUndoDepth()
+	{
+		return mMoveCount;
+	}
+
+	//The last move played with doMove(), or null
+	public Move getLastMove()
+	{
+		return (mMoveCount == 0)?null:mMoveStack[mMoveCount-1];
+	}
+
+	//Keep an evaluation up to date as moves are played on this state (null for none).  It's reset to the
+	//current position, and moves played before now can't be undone while it's attached
+	public void setEvaluation(Evaluation evaluation)
+	{
+		if (mEvaluation != null)
+		{
+			mEvaluation.detach();
+		}
+
+		mEvaluation = evaluation;
+		if (evaluation != null)
+		{
+			evaluation.reset(this);
+		}
+	}
+
+	public Evaluation getEvaluation()
+	{
+		return mEvaluation;
+	}
+
+	//Copy this state, and play the move on the copy
+	@Override
+	public GameState applyMove(Move move)
+	{
+		MutableGameState next = copy();
+
+		return next.doMove(move)?next:null;
+	}
+
+	//Save a value for unmakeMove()
+	protected void pushUndo(long value)
+	{
+		if (mUndoCount == mUndoStack.length)
+		{
+			mUndoStack = Arrays.copyOf(mUndoStack, mUndoCount*2);
+		}
+		mUndoStack[mUndoCount++] = value;
+	}
+
+	//Get back the last value saved with pushUndo()
+	protected long popUndo()
+	{
+		return mUndoStack[--mUndoCount];
+	}
+
+	//The last value saved with pushUndo(), left on the stack
+	protected long peekUndo()
+	{
+		return mUndoStack[mUndoCount - 1];
+	}
+
+
+	/****************************
+	 * Abstract methods
+	 ***************************/
+
+	//Copy of the current position.  The copy starts with nothing to undo.  If this state has an Evaluation,
+	//the copy should be given a copy of it (see Evaluation.copy())
+	public abstract MutableGameState copy();
+
+	//Change this state by playing the move.  Returns false if the move is illegal; the state must then be
+	//unchanged (values saved with pushUndo() are discarded automatically).  Must update the turn and hash key
+	protected abstract boolean makeMove(Move move);
+
+	//Reverse makeMove() for this move, which was the last one made
+	protected abstract void unmakeMove(Move move);
+}
@@ -0,0 +1,850 @@
+package ksk.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+
+//A MinimaxAlgo that searches with several threads.
+//
+//Two ways of dividing up the work are available:
+//
+//LAZY_SMP:  every thread searches the whole tree, sharing one transposition table.  The helper threads
+//get out of step with the main thread (every other one searches a ply deeper), so each thread finds
+//positions in the table that another thread has already searched.  The main thread's result is used.
+//
+//YOUNG_BROTHERS_WAIT:  at each node, the first ("eldest") move is searched on its own, to get a good
+//alpha-beta window, and then the remaining moves are searched in parallel on a ForkJoinPool.  Below
+//the split depth the tree is searched serially, since small subtrees cost more to split than they save.
+//The younger brothers of a node share a Split; once one of them causes a cutoff, it cuts the split off,
+//and the others (and everything below them, serial or split) give up at the next node they reach.
+//
+//Move orderings keep state (killer moves, history scores) that isn't thread safe, so each thread
+//searches with its own MinimaxAlgo, made by an AlgoFactory.  The factory should set up the move
+//orderings; addMoveOrdering() on this class has no effect.
+//
+//The transposition table is made on the first search (DEFAULT_TABLE_MEGABYTES), unless one has been set.
+//
+//With one thread, a search is exactly the serial search of a single algo, so results at a fixed depth
+//are repeatable.  With more threads, the amount of work done, and possibly the result, depends on the
+//order in which the threads fill the transposition table.
+
+public class ParallelSearch extends MinimaxAlgo {
+
+	//Makes an algo for each search thread
+	public static interface AlgoFactory
+	{
+		public MinimaxAlgo createAlgo();
+	}
+
+	public static enum Mode {LAZY_SMP, YOUNG_BROTHERS_WAIT};
+
+	public static final int DEFAULT_TABLE_MEGABYTES = 64;
+	public static final int DEFAULT_SPLIT_DEPTH = 3;
+
+	private AlgoFactory mFactory;
+	private Mode mMode;
+	private int mThreads;
+
+	//Minimum remaining depth at which Young Brothers Wait splits a node
+	private int mSplitDepth;
+
+	//Searches on the calling thread; also used for evaluate()
+	private MinimaxAlgo mMain;
+
+	//Lazy SMP helpers, and the threads they run on
+	private List<MinimaxAlgo> mHelpers;
+	private ExecutorService mExecutor;
+
+	//Young Brothers Wait pool, and an algo for each of its threads.  The pool starts and retires threads
+	//as it sees fit, so the algos that took part in the current search are listed afresh for each search;
+	//an algo whose thread has gone is dropped from the list at the next search.
+	private ForkJoinPool mPool;
+	private ThreadLocal<Worker> mWorker;
+	private List<MinimaxAlgo> mWorkers;
+	private volatile int mSearchNumber;
+
+	//A pool thread's algo, and the last search it was listed for
+	private static class Worker
+	{
+		MinimaxAlgo mAlgo;
+		int mSearchNumber;
+
+		Worker(MinimaxAlgo algo)
+		{
+			mAlgo = algo;
+			mSearchNumber = -1;
+		}
+	}
+
+	public ParallelSearch(AlgoFactory factory, int threads, Mode mode)
+	{
+		super();
+
+		if (threads < 1)
+		{
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+
+		mFactory = factory;
+		mMode = mode;
+		mThreads = threads;
+		mSplitDepth = DEFAULT_SPLIT_DEPTH;
+
+		mMain = factory.createAlgo();
+		mHelpers = new ArrayList<MinimaxAlgo>();
+		mExecutor = null;
+		mPool = null;
+		mWorkers = new ArrayList<MinimaxAlgo>();
+		mSearchNumber = 0;
+
+		mWorker = new ThreadLocal<Worker>() {
+			protected Worker initialValue()
+			{
+				return new Worker(mFactory.createAlgo());
+			}
+		};
+	}
+
+	public int getThreads()
+	{
+		return mThreads;
+	}
+
+	public Mode getMode()
+	{
+		return mMode;
+	}
+
+	public void setSplitDepth(int splitDepth)
+	{
+		mSplitDepth = Math.max(1, splitDepth);
+	}
+
+	public int getSplitDepth()
+	{
+		return mSplitDepth;
+	}
+
+	//All threads share the table.  Lazy SMP depends on it, so a null table is ignored
+	@Override
+	public void setTranspositionTable(TranspositionTable table)
+	{
+		if (table == null)
+		{
+			return;
+		}
+
+		super.setTranspositionTable(table);
+
+		for (MinimaxAlgo algo : allAlgos())
+		{
+			algo.setTranspositionTable(table);
+		}
+	}
+
+	@Override
+	public void setDeadline(long deadline)
+	{
+		super.setDeadline(deadline);
+
+		for (MinimaxAlgo algo : allAlgos())
+		{
+			algo.setDeadline(deadline);
+		}
+	}
+
+	@Override
+	public void stop()
+	{
+		super.stop();
+
+		for (MinimaxAlgo algo : allAlgos())
+		{
+			algo.stop();
+		}
+	}
+
+	@Override
+	public void resume()
+	{
+		super.resume();
+
+		for (MinimaxAlgo algo : allAlgos())
+		{
+			algo.resume();
+		}
+	}
+
+	@Override
+	public double evaluate(GameState state)
+	{
+		return mMain.evaluate(state);
+	}
+
+	@Override
+	public SearchStats search(GameState state, int depth, boolean maximizing, Move firstMove)
+	{
+		SearchStats stats;
+
+		if (mTable == null)
+		{
+			setTranspositionTable(TranspositionTable.withMegabytes(DEFAULT_TABLE_MEGABYTES));
+		}
+
+		if ((mThreads == 1)||(depth <= 1))
+		{
+			stats = mMain.search(state, depth, maximizing, firstMove);
+		}
+		else if (mMode == Mode.LAZY_SMP)
+		{
+			stats = searchLazySMP(state, depth, maximizing, firstMove);
+		}
+		else
+		{
+			stats = searchYoungBrothers(state, depth, maximizing, firstMove);
+		}
+
+		mLastStats = stats;
+		return stats;
+	}
+
+	//Stop the search threads.  The algo can still be used, but only on the calling thread
+	public synchronized void shutdown()
+	{
+		if (mExecutor != null)
+		{
+			mExecutor.shutdownNow();
+			mExecutor = null;
+		}
+
+		if (mPool != null)
+		{
+			mPool.shutdownNow();
+			mPool = null;
+		}
+
+		mThreads = 1;
+	}
+
+	/****************************
+	 * Lazy SMP
+	 ***************************/
+
+	private SearchStats searchLazySMP(final GameState state, final int depth, final boolean maximizing, final Move firstMove)
+	{
+		ExecutorService executor = getExecutor();
+		long startTime = System.nanoTime();
+
+		//Fill the root's move list now; the threads will all read it
+		state.getNextMoves();
+		mTable.newSearch();
+
+		List<Future<SearchStats>> helpers = new ArrayList<Future<SearchStats>>();
+		for (int i=1; i<mThreads; i++)
+		{
+			final MinimaxAlgo helper = mHelpers.get(i-1);
+			final int helperDepth = depth + (i % 2);
+
+			helpers.add(executor.submit(new Callable<SearchStats>() {
+				public SearchStats call()
+				{
+					return help(helper, state, helperDepth, maximizing, firstMove);
+				}
+			}));
+		}
+
+		SearchStats stats = null;
+		try
+		{
+			stats = mMain.helpSearch(state, depth, maximizing, firstMove);
+			stats.mStartTime = startTime;
+		}
+		finally
+		{
+			//The main thread is done (or has given up), so the helpers' work is no longer needed
+			for (MinimaxAlgo helper : mHelpers)
+			{
+				helper.stop();
+			}
+
+			for (Future<SearchStats> helper : helpers)
+			{
+				SearchStats helped = waitFor(helper);
+				if (stats != null)
+				{
+					stats.add(helped);
+				}
+			}
+
+			if (!mStopped)
+			{
+				for (MinimaxAlgo helper : mHelpers)
+				{
+					helper.resume();
+				}
+			}
+		}
+
+		//Time the whole parallel search, not just the main thread's part of it
+		stats.finish(stats.getBestMove(), stats.getScore());
+		return stats;
+	}
+
+	//Run one helper thread:  keep searching deeper until told to stop, or the whole tree has been seen
+	private static SearchStats help(MinimaxAlgo helper, GameState state, int depth, boolean maximizing, Move firstMove)
+	{
+		SearchStats total = new SearchStats(depth);
+		long lastNodes = -1;
+
+		try
+		{
+			for (int d = depth; d <= TranspositionTable.MAX_DEPTH; d++)
+			{
+				SearchStats stats = helper.helpSearch(state, d, maximizing, firstMove);
+				total.add(stats);
+
+				if ((stats.getNodes() == lastNodes)||(stats.getBestMove() == null))
+				{
+					break;
+				}
+
+				lastNodes = stats.getNodes();
+				firstMove = stats.getBestMove();
+			}
+		}
+		catch (SearchAbortedException e)
+		{
+			total.add(e.getStats());
+		}
+
+		return total;
+	}
+
+	private static SearchStats waitFor(Future<SearchStats> future)
+	{
+		boolean interrupted = false;
+
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return future.get();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Search thread failed", e.getCause());
+		}
+		finally
+		{
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private synchronized ExecutorService getExecutor()
+	{
+		if (mExecutor == null)
+		{
+			while (mHelpers.size() < mThreads - 1)
+			{
+				mHelpers.add(newAlgo());
+			}
+
+			mExecutor = Executors.newFixedThreadPool(mThreads - 1, new DaemonThreadFactory());
+		}
+
+		return mExecutor;
+	}
+
+	/****************************
+	 * Young Brothers Wait
+	 ***************************/
+
+	private SearchStats searchYoungBrothers(GameState state, int depth, boolean maximizing, Move firstMove)
+	{
+		ForkJoinPool pool = getPool();
+
+		mTable.newSearch();
+		synchronized (this)
+		{
+			mSearchNumber++;
+			mWorkers.clear();
+		}
+
+		SearchStats stats = new SearchStats(depth);
+		SplitTask root = new SplitTask(state, depth, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+				maximizing, firstMove, stats, null, false);
+
+		double score = pool.invoke(root);
+
+		Move[] moves = state.getNextMoves();
+		stats.finish((root.mBestIndex < 0)?null:moves[root.mBestIndex], score);
+
+		return stats;
+	}
+
+	//The younger brothers of one node, searched in parallel.  Cut off when one of them refutes the node, which
+	//also cuts off every split below it
+	static class Split
+	{
+		private Split mParent;
+		private volatile boolean mCutoff;
+
+		Split(Split parent)
+		{
+			mParent = parent;
+			mCutoff = false;
+		}
+
+		void cutOff()
+		{
+			mCutoff = true;
+		}
+
+		boolean isCutoff()
+		{
+			for (Split split = this; split != null; split = split.mParent)
+			{
+				if (split.mCutoff)
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		//Give up on the subtree if this split has been cut off
+		void check()
+		{
+			if (isCutoff())
+			{
+				throw CUTOFF;
+			}
+		}
+	}
+
+	//Thrown out of a subtree whose split has been cut off, and caught by the younger brother at the top of it.
+	//It's thrown a lot, so there's one instance, without a stack trace
+	private static class CutoffException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		CutoffException()
+		{
+			super("Split cut off", null, false, false);
+		}
+	}
+
+	private static final CutoffException CUTOFF = new CutoffException();
+
+	//Search of one subtree; splits if it is deep enough, otherwise searches serially
+	private class SplitTask extends RecursiveTask<Double>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private GameState mState;
+		private int mDepth;
+		private int mPly;
+		private double mAlpha;
+		private double mBeta;
+		private boolean mMaximizing;
+		private Move mFirstMove;
+
+		private SearchStats mStats;
+		private int mBestIndex;
+
+		//The split this subtree is under (null for none), whether this is one of its younger brothers, and if
+		//so, whether it gave up because the split was cut off
+		private Split mSplit;
+		private boolean mYounger;
+		private boolean mAborted;
+
+		SplitTask(GameState state, int depth, int ply, double alpha, double beta, boolean maximizing, Move firstMove, SearchStats stats,
+				Split split, boolean younger)
+		{
+			mState = state;
+			mDepth = depth;
+			mPly = ply;
+			mAlpha = alpha;
+			mBeta = beta;
+			mMaximizing = maximizing;
+			mFirstMove = firstMove;
+			mStats = stats;
+			mBestIndex = -1;
+			mSplit = split;
+			mYounger = younger;
+			mAborted = false;
+		}
+
+		@Override
+		protected Double compute()
+		{
+			if (!mYounger)
+			{
+				return search();
+			}
+
+			//A younger brother either refutes its parent, and cuts the others off, or gives up when they do
+			try
+			{
+				double value = search();
+				if (mMaximizing?(value <= mAlpha):(value >= mBeta))
+				{
+					mSplit.cutOff();
+				}
+				return value;
+			}
+			catch (CutoffException e)
+			{
+				mAborted = true;
+				return Double.NaN;
+			}
+		}
+
+		private double search()
+		{
+			MinimaxAlgo algo = workerAlgo();
+
+			if ((mDepth < mSplitDepth)&&(mPly > 0))
+			{
+				Split saved = algo.mSplit;
+				algo.mSplit = mSplit;
+				try
+				{
+					return algo.alphaBeta(mState, mDepth, mPly, mAlpha, mBeta, mMaximizing, mStats);
+				}
+				finally
+				{
+					algo.mSplit = saved;
+				}
+			}
+
+			mStats.mNodes++;
+			if (mSplit != null)
+			{
+				mSplit.check();
+			}
+			algo.checkStop(mStats);
+
+			double alpha = mAlpha;
+			double beta = mBeta;
+
+			//Check the table, as in MinimaxAlgo.alphaBeta(); the root has to be searched to find the best move
+			long key = algo.tableKey(mState, mMaximizing);
+			long entry = (key == 0)?0:mTable.probe(key);
+			if ((entry != 0)&&(mPly > 0)&&(TranspositionTable.getDepth(entry) >= mDepth))
+			{
+				double score = TranspositionTable.getScore(entry);
+
+				switch (TranspositionTable.getBound(entry))
+				{
+				case TranspositionTable.EXACT:
+					mStats.mTableCutoffs++;
+					return score;
+				case TranspositionTable.LOWER_BOUND:
+					alpha = Math.max(alpha, score);
+					break;
+				case TranspositionTable.UPPER_BOUND:
+					beta = Math.min(beta, score);
+					break;
+				}
+
+				if (alpha >= beta)
+				{
+					mStats.mTableCutoffs++;
+					return score;
+				}
+			}
+
+			Move[] moves = (mDepth > 0)?mState.getNextMoves():new Move[0];
+			int[] order = algo.orderMoves(mState, moves, mPly);
+
+			//Search the suggested move first, otherwise the move the table remembers
+			int firstIndex = indexOf(moves, mFirstMove);
+			if ((firstIndex < 0)&&(entry != 0))
+			{
+				firstIndex = TranspositionTable.getMoveIndex(entry);
+			}
+			moveToFront(order, firstIndex);
+
+			double originalAlpha = alpha;
+			double originalBeta = beta;
+			double best = mMaximizing?Double.NEGATIVE_INFINITY:Double.POSITIVE_INFINITY;
+
+			//The eldest brother is searched first, on this thread
+			int i = 0;
+			while ((i < order.length)&&(mBestIndex < 0))
+			{
+				GameState next = mState.applyMove(moves[order[i]]);
+				if (next != null)
+				{
+					best = new SplitTask(next, mDepth-1, mPly+1, alpha, beta, !mMaximizing, null, mStats, mSplit, false).compute();
+					mBestIndex = order[i];
+
+					if (mMaximizing)
+					{
+						alpha = Math.max(alpha, best);
+					}
+					else
+					{
+						beta = Math.min(beta, best);
+					}
+				}
+				i++;
+			}
+
+			if (mBestIndex < 0)
+			{
+				mStats.mLeaves++;
+				return algo.evaluate(mState);
+			}
+
+			if (alpha >= beta)
+			{
+				mStats.cutoff(true);
+				recordCutoff(algo, moves[mBestIndex]);
+			}
+			else
+			{
+				//Then the younger brothers, in parallel, with the window the eldest gave us
+				Split split = new Split(mSplit);
+				List<SplitTask> brothers = new ArrayList<SplitTask>();
+				List<Integer> indices = new ArrayList<Integer>();
+				for (; i<order.length; i++)
+				{
+					GameState next = mState.applyMove(moves[order[i]]);
+					if (next != null)
+					{
+						brothers.add(new SplitTask(next, mDepth-1, mPly+1, alpha, beta, !mMaximizing, null,
+								new SearchStats(mDepth-1), split, true));
+						indices.add(order[i]);
+					}
+				}
+
+				ForkJoinTask.invokeAll(brothers);
+
+				//Combine in search order, so that ties go to the earlier move as in the serial search.  Brothers
+				//that gave up are skipped:  either one that finished caused a cutoff, or a split further up
+				//was cut off, and this node's result doesn't matter
+				boolean cutoff = false;
+				boolean aborted = false;
+				for (int j=0; j<brothers.size(); j++)
+				{
+					SplitTask brother = brothers.get(j);
+					mStats.add(brother.mStats);
+
+					if (brother.mAborted)
+					{
+						aborted = true;
+					}
+					if ((cutoff)||(brother.mAborted))
+					{
+						continue;
+					}
+
+					double value = brother.join();
+					if (mMaximizing?(value > best):(value < best))
+					{
+						best = value;
+						mBestIndex = indices.get(j);
+					}
+
+					if (mMaximizing)
+					{
+						alpha = Math.max(alpha, best);
+					}
+					else
+					{
+						beta = Math.min(beta, best);
+					}
+
+					if (alpha >= beta)
+					{
+						cutoff = true;
+						mStats.cutoff(false);
+						recordCutoff(algo, moves[indices.get(j)]);
+					}
+				}
+
+				if ((aborted)&&(!cutoff))
+				{
+					throw CUTOFF;
+				}
+			}
+
+			if (key != 0)
+			{
+				int bound = TranspositionTable.EXACT;
+				if (best <= originalAlpha)
+				{
+					bound = TranspositionTable.UPPER_BOUND;
+				}
+				else if (best >= originalBeta)
+				{
+					bound = TranspositionTable.LOWER_BOUND;
+				}
+
+				mTable.store(key, mDepth, bound, best, mBestIndex);
+			}
+
+			return best;
+		}
+
+		private void recordCutoff(MinimaxAlgo algo, Move move)
+		{
+			for (MoveOrdering ordering : algo.mOrderings)
+			{
+				ordering.recordCutoff(mState, move, mPly, mDepth);
+			}
+		}
+	}
+
+	//The algo for this pool thread, listed (and brought up to date) the first time it's used in a search
+	private MinimaxAlgo workerAlgo()
+	{
+		Worker worker = mWorker.get();
+
+		if (worker.mSearchNumber != mSearchNumber)
+		{
+			synchronized (this)
+			{
+				worker.mSearchNumber = mSearchNumber;
+				setUp(worker.mAlgo);
+				worker.mAlgo.newSearch();
+				mWorkers.add(worker.mAlgo);
+			}
+		}
+
+		return worker.mAlgo;
+	}
+
+	private synchronized ForkJoinPool getPool()
+	{
+		if (mPool == null)
+		{
+			mPool = new ForkJoinPool(mThreads);
+		}
+
+		return mPool;
+	}
+
+	/****************************
+	 * Helpers
+	 ***************************/
+
+	//Make an algo for another thread, set up the same way as this one
+	private MinimaxAlgo newAlgo()
+	{
+		MinimaxAlgo algo = mFactory.createAlgo();
+		setUp(algo);
+
+		return algo;
+	}
+
+	//Give an algo this one's table, deadline and stopped state
+	private void setUp(MinimaxAlgo algo)
+	{
+		algo.setTranspositionTable(mTable);
+		algo.setDeadline(mDeadline);
+
+		if (mStopped)
+		{
+			algo.stop();
+		}
+		else
+		{
+			algo.resume();
+		}
+	}
+
+	private List<MinimaxAlgo> allAlgos()
+	{
+		List<MinimaxAlgo> result = new ArrayList<MinimaxAlgo>();
+
+		result.add(mMain);
+		synchronized (this)
+		{
+			result.addAll(mHelpers);
+			result.addAll(mWorkers);
+		}
+
+		return result;
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory
+	{
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "ParallelSearch helper");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/****************************
+	 * Speedup measurement
+	 ***************************/
+
+	//Search the same position to a fixed depth with each number of threads, and report the time taken and
+	//the speedup relative to the first thread count (normally 1).  Each run starts with a new table and algos
+	public static String measureSpeedup(AlgoFactory factory, Mode mode, GameState state, int depth, boolean maximizing, int[] threadCounts)
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%s, depth %d%n", mode, depth));
+		report.append(String.format("%8s %10s %12s %12s %8s %10s %10s  %s%n",
+				"threads", "time(ms)", "nodes", "nps", "speedup", "efficiency", "score", "best"));
+
+		//Warm up the JIT, so the first run isn't slowed down by it
+		ParallelSearch warmUp = new ParallelSearch(factory, threadCounts[0], mode);
+		warmUp.search(state, depth, maximizing);
+		warmUp.shutdown();
+
+		double baseTime = 0;
+
+		for (int i=0; i<threadCounts.length; i++)
+		{
+			ParallelSearch search = new ParallelSearch(factory, threadCounts[i], mode);
+
+			try
+			{
+				SearchStats stats = search.search(state, depth, maximizing);
+				double time = Math.max(stats.getElapsedMillis(), 1e-3);
+				if (i == 0)
+				{
+					baseTime = time;
+				}
+
+				double speedup = baseTime/time;
+				double efficiency = speedup*threadCounts[0]/threadCounts[i];
+				report.append(String.format("%8d %10.1f %12d %12d %8.2f %9.0f%% %10.3f  %s%n",
+						threadCounts[i], time, stats.getNodes(), Math.round(stats.getNodesPerSecond()),
+						speedup, efficiency*100, stats.getScore(), stats.getBestMove()));
+			}
+			finally
+			{
+				search.shutdown();
+			}
+		}
+
+		return report.toString();
+	}
+}
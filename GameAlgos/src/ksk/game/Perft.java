@@ -0,0 +1,403 @@
+package ksk.game;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Perft ("performance test"):  counts the positions reachable in exactly N moves, for checking and timing
+//move generation.  The counts for well known positions are published for many games, so a wrong count
+//means a bug in move generation (or in make/unmake), and a slower time means a performance regression.
+//
+//Divide mode gives the count under each move from the starting position, which narrows down where a
+//wrong count comes from.  The moves at the root can be shared out between several threads, and a hash
+//table can remember the counts under positions that are reached more than once (this needs the
+//GameState to provide hash keys).
+//
+//Results can be appended to a CSV file, to keep track of generation speed over time.
+
+public class Perft {
+
+	//The result of one perft run
+	public static class Result
+	{
+		public static final String CSV_HEADER = "time,game,depth,leaves,nodes,ms,nodes_per_sec,threads,hash_entries";
+
+		//When the run finished (System.currentTimeMillis())
+		private long mTimestamp;
+
+		private String mGame;
+		private int mDepth;
+		private long mLeaves;
+		private long mNodes;
+		private long mElapsedTime;
+		private int mThreads;
+		private int mHashEntries;
+
+		Result(String game, int depth, long leaves, long nodes, long elapsedTime, int threads, int hashEntries)
+		{
+			mTimestamp = System.currentTimeMillis();
+			mGame = game;
+			mDepth = depth;
+			mLeaves = leaves;
+			mNodes = nodes;
+			mElapsedTime = elapsedTime;
+			mThreads = threads;
+			mHashEntries = hashEntries;
+		}
+
+		public int getDepth()
+		{
+			return mDepth;
+		}
+
+		//The perft count:  positions exactly depth moves from the start
+		public long getLeaves()
+		{
+			return mLeaves;
+		}
+
+		//Moves actually made, including those inside the tree; less than the full tree with hashing
+		public long getNodes()
+		{
+			return mNodes;
+		}
+
+		public double getElapsedMillis()
+		{
+			return mElapsedTime/1e6;
+		}
+
+		public double getNodesPerSecond()
+		{
+			return (mElapsedTime == 0)?0:(mNodes*1e9/mElapsedTime);
+		}
+
+		public String toCsv()
+		{
+			return String.format("%d,%s,%d,%d,%d,%.3f,%d,%d,%d", mTimestamp, mGame, mDepth, mLeaves,
+					mNodes, getElapsedMillis(), Math.round(getNodesPerSecond()), mThreads, mHashEntries);
+		}
+
+		public String toString()
+		{
+			return String.format("depth %d leaves %d nodes %d time %.1fms nps %d", mDepth, mLeaves, mNodes,
+					getElapsedMillis(), Math.round(getNodesPerSecond()));
+		}
+	}
+
+	private int mThreads;
+	private int mHashEntries;
+	private HashTable mTable;
+
+	public Perft(int threads, int hashEntries)
+	{
+		mThreads = Math.max(1, threads);
+		mHashEntries = Math.max(0, hashEntries);
+		mTable = (mHashEntries > 0)?new HashTable(mHashEntries):null;
+	}
+
+	//One thread, no hash table
+	public Perft()
+	{
+		this(1, 0);
+	}
+
+	//Count the positions depth moves from this one
+	public Result run(GameState state, int depth)
+	{
+		return run(state, depth, null);
+	}
+
+	//As run(), and also fill in the count under each move from this position (in move order)
+	public Result divide(GameState state, int depth, Map<Move, Long> counts)
+	{
+		return run(state, Math.max(1, depth), counts);
+	}
+
+	//Convenience method for divide mode; returns the count under each move
+	public Map<Move, Long> divide(GameState state, int depth)
+	{
+		Map<Move, Long> counts = new LinkedHashMap<Move, Long>();
+		divide(state, depth, counts);
+
+		return counts;
+	}
+
+	//Run perft to each depth from 1 up to expected.length, and check the counts.  Returns the results;
+	//throws IllegalStateException at the first wrong count
+	public List<Result> verify(GameState state, long[] expected)
+	{
+		List<Result> results = new ArrayList<Result>();
+
+		for (int depth=1; depth<=expected.length; depth++)
+		{
+			Result result = run(state, depth);
+			results.add(result);
+
+			if (result.getLeaves() != expected[depth-1])
+			{
+				throw new IllegalStateException("Perft " + depth + " gave " + result.getLeaves()
+						+ ", expected " + expected[depth-1]);
+			}
+		}
+
+		return results;
+	}
+
+	//Append results to a CSV file, writing the header first if the file is new
+	public static void appendCsv(File file, List<Result> results) throws IOException
+	{
+		boolean header = (!file.exists())||(file.length() == 0);
+
+		try (PrintWriter out = new PrintWriter(new FileWriter(file, true)))
+		{
+			if (header)
+			{
+				out.println(Result.CSV_HEADER);
+			}
+
+			for (Result result : results)
+			{
+				out.println(result.toCsv());
+			}
+		}
+	}
+
+	private Result run(final GameState state, final int depth, Map<Move, Long> counts)
+	{
+		long startTime = System.nanoTime();
+		long leaves = 0;
+		long nodes = 0;
+
+		if (depth <= 0)
+		{
+			leaves = 1;
+		}
+		else
+		{
+			//Each root move is a separate job, so the work can be shared out between threads
+			final Move[] moves = state.getNextMoves();
+			List<Callable<long[]>> jobs = new ArrayList<Callable<long[]>>();
+			for (final Move move : moves)
+			{
+				jobs.add(new Callable<long[]>() {
+					public long[] call()
+					{
+						return perftMove(state, move, depth);
+					}
+				});
+			}
+
+			List<long[]> results = runJobs(jobs);
+			for (int i=0; i<moves.length; i++)
+			{
+				long[] result = results.get(i);
+				if (result == null)
+				{
+					continue;
+				}
+
+				leaves += result[0];
+				nodes += result[1];
+
+				if (counts != null)
+				{
+					counts.put(moves[i], result[0]);
+				}
+			}
+		}
+
+		String game = state.getClass().getSimpleName();
+		return new Result(game, depth, leaves, nodes, System.nanoTime() - startTime, mThreads, mHashEntries);
+	}
+
+	//Perft under one root move.  Returns {leaves, nodes}, or null if the move is illegal
+	private long[] perftMove(GameState root, Move move, int depth)
+	{
+		//Each job gets its own copy of the state, so make/unmake is safe
+		GameState state = root.applyMove(move);
+		if (state == null)
+		{
+			return null;
+		}
+
+		Counter counter = new Counter(depth);
+		long leaves = perft(state, depth - 1, counter);
+
+		return new long[] {leaves, counter.mNodes + 1};
+	}
+
+	private long perft(GameState state, int depth, Counter counter)
+	{
+		if (depth == 0)
+		{
+			return 1;
+		}
+
+		long key = (mTable == null)?0:state.getHashKey();
+		if ((key != 0)&&(depth > 1))
+		{
+			long count = mTable.get(key, depth);
+			if (count >= 0)
+			{
+				return count;
+			}
+		}
+
+		boolean mutable = (state instanceof MutableGameState);
+		MoveIterator moves = counter.mMoves[depth].reset(state);
+		long count = 0;
+
+		while (moves.hasNext())
+		{
+			Move move = moves.next();
+
+			if (mutable)
+			{
+				MutableGameState mutableState = (MutableGameState)state;
+				if (mutableState.doMove(move))
+				{
+					counter.mNodes++;
+					count += perft(mutableState, depth - 1, counter);
+					mutableState.undoMove();
+				}
+			}
+			else
+			{
+				GameState next = state.applyMove(move);
+				if (next != null)
+				{
+					counter.mNodes++;
+					count += perft(next, depth - 1, counter);
+				}
+			}
+		}
+
+		if ((key != 0)&&(depth > 1))
+		{
+			mTable.put(key, depth, count);
+		}
+
+		return count;
+	}
+
+	//Run jobs on the threads, returning their results in order
+	private List<long[]> runJobs(List<Callable<long[]>> jobs)
+	{
+		List<long[]> results = new ArrayList<long[]>();
+
+		try
+		{
+			if (mThreads == 1)
+			{
+				for (Callable<long[]> job : jobs)
+				{
+					results.add(job.call());
+				}
+				return results;
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "Perft");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+			try
+			{
+				for (Future<long[]> result : executor.invokeAll(jobs))
+				{
+					results.add(result.get());
+				}
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Perft failed", e.getCause());
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Perft interrupted", e);
+		}
+
+		return results;
+	}
+
+	//Per-thread move iterators (one per depth) and node count
+	private static class Counter
+	{
+		private MoveIterator[] mMoves;
+		private long mNodes;
+
+		Counter(int depth)
+		{
+			mMoves = new MoveIterator[depth + 1];
+			for (int i=0; i<mMoves.length; i++)
+			{
+				mMoves[i] = new MoveIterator();
+			}
+			mNodes = 0;
+		}
+	}
+
+	//Counts under (position, depth) pairs.  Lock-free, like TranspositionTable:  each entry is the key
+	//XOR'ed with the count, and the count, so a torn entry just looks like a miss
+	private static class HashTable
+	{
+		private static final ZobristKeys DEPTH_KEYS = new ZobristKeys(256, 0x5045524654L);
+
+		private AtomicLongArray mEntries;
+		private int mMask;
+
+		HashTable(int entries)
+		{
+			int size = Integer.highestOneBit(Math.max(1, entries));
+			mEntries = new AtomicLongArray(2*size);
+			mMask = size - 1;
+		}
+
+		//The count, or -1 if it isn't in the table
+		long get(long key, int depth)
+		{
+			key ^= DEPTH_KEYS.get(depth & 0xFF);
+
+			int index = 2*((int)(key ^ (key >>> 32)) & mMask);
+			long count = mEntries.get(index + 1);
+
+			return ((mEntries.get(index) ^ count) == key)?count:-1;
+		}
+
+		void put(long key, int depth, long count)
+		{
+			key ^= DEPTH_KEYS.get(depth & 0xFF);
+
+			int index = 2*((int)(key ^ (key >>> 32)) & mMask);
+			mEntries.set(index + 1, -1);
+			mEntries.set(index, key ^ count);
+			mEntries.set(index + 1, count);
+		}
+	}
+}
@@ -1,5 +1,14 @@
 package ksk.game;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 //Represents a player in a game
 //May or may not be a human player.
 
@@ -7,27 +16,127 @@ public abstract class Player {
 	//The Player class has methods to remember the last move it made, as well as the current
 	//move it's working on (this working move will be used if time runs out while the program
 	//is "thinking"
-	Move lastMove, workingMove;
-	
+	Move lastMove;
+
+	//One call to getMove(), and the best move found during it.  Each call gets a new turn, and a thinker
+	//can only change the working move of the turn it was started for, so a thinker that was abandoned
+	//(but hasn't stopped yet) can't touch the working move of a later call.
+	private static class Turn {
+		volatile Move workingMove;
+	}
+
+	//The current (or last) turn
+	private volatile Turn mTurn;
+
+	//The turn the current thread is thinking for, if any
+	private static final ThreadLocal<Turn> sTurn = new ThreadLocal<Turn>();
+
+	//Players think on pooled threads, so that a player that runs out of time can be abandoned
+	private static final ExecutorService sThinkers = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "Player thinker");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
 	//Constructor
 	public Player()
 	{
 		lastMove = null;
-		workingMove = null;
+		mTurn = new Turn();
 	}
-	
+
 	//Get a move from this player, timing out after timeOut milliseconds
-	public final Move getMove(Gamestate, long timeOut)
+	//If time runs out, the thinking thread is interrupted and the working move (possibly null) is used
+	public final Move getMove(final GameState state, long timeOut)
 	{
 		long startTime = System.currentTimeMillis();
-		
-		while ()
+		final long deadline = (timeOut < 0)?-1:(startTime + timeOut);
+
+		final Turn turn = new Turn();
+		mTurn = turn;
+
+		Future<Move> thinking = sThinkers.submit(new Callable<Move>() {
+			public Move call()
+			{
+				sTurn.set(turn);
+				try
+				{
+					return think(state, deadline);
+				}
+				finally
+				{
+					sTurn.remove();
+				}
+			}
+		});
+
+		Move result;
+		try
+		{
+			result = (timeOut < 0)?thinking.get():thinking.get(timeOut, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e)
+		{
+			result = null;
+		}
+		catch (InterruptedException e)
+		{
+			//Pass the interruption on to whoever is waiting for us
+			Thread.currentThread().interrupt();
+			result = null;
+		}
+		catch (ExecutionException e)
+		{
+			thinking.cancel(true);
+			throw new RuntimeException("Player failed while choosing a move", e.getCause());
+		}
+
+		//Stop thinking; if it carries on regardless, it can only change this turn's working move
+		thinking.cancel(true);
+
+		if (result == null)
+		{
+			result = turn.workingMove;
+		}
+
+		lastMove = result;
+		return result;
 	}
-	
+
 	//Get a move from this Player, unlimited time
 	public final Move getMove(GameState state)
 	{
 		return getMove(state, -1);
 	}
 
+	//Get the last move returned by getMove()
+	public Move getLastMove()
+	{
+		return lastMove;
+	}
+
+	//Get the best move found so far by the move in progress
+	public Move getWorkingMove()
+	{
+		return mTurn.workingMove;
+	}
+
+	//Called while thinking, whenever a better move has been found
+	protected void setWorkingMove(Move move)
+	{
+		Turn turn = sTurn.get();
+		if ((turn != null)&&(turn == mTurn))
+		{
+			turn.workingMove = move;
+		}
+	}
+
+	//Choose a move.  Deadline is a System.currentTimeMillis() value, or -1 for no limit.
+	//Implementations should keep the working move up to date, and stop promptly when the deadline passes
+	//or the thread is interrupted; if they don't, their answer is ignored and the working move is used instead.
+	protected abstract Move think(GameState state, long deadline);
+
 }
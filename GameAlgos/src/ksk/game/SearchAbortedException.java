@@ -0,0 +1,22 @@
+package ksk.game;
+
+//Thrown out of a search when it runs out of time or is stopped.  Carries the statistics of the
+//partial search, so callers can still see how much work was done
+
+public class SearchAbortedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private SearchStats mStats;
+
+	public SearchAbortedException(SearchStats stats)
+	{
+		super("Search aborted");
+		mStats = stats;
+	}
+
+	public SearchStats getStats()
+	{
+		return mStats;
+	}
+}
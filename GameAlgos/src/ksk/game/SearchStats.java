@@ -0,0 +1,128 @@
+package ksk.game;
+
+//Statistics collected during a single search:  how much work was done, how well the move ordering
+//worked, and what the result was.
+
+public class SearchStats {
+
+	//Work done
+	long mNodes;
+	long mLeaves;
+	long mCutoffs;
+	long mFirstMoveCutoffs;
+	long mTableCutoffs;
+
+	//Search parameters and results
+	int mDepth;
+	long mStartTime;
+	long mElapsedTime;
+	double mScore;
+	Move mBestMove;
+
+	public SearchStats(int depth)
+	{
+		mDepth = depth;
+		mStartTime = System.nanoTime();
+		mElapsedTime = 0;
+		mScore = Double.NaN;
+		mBestMove = null;
+	}
+
+	//Called when the search is complete
+	void finish(Move bestMove, double score)
+	{
+		mBestMove = bestMove;
+		mScore = score;
+		mElapsedTime = System.nanoTime() - mStartTime;
+	}
+
+	//Add the work done by another search (e.g. by another thread working on the same search)
+	void add(SearchStats other)
+	{
+		mNodes += other.mNodes;
+		mLeaves += other.mLeaves;
+		mCutoffs += other.mCutoffs;
+		mFirstMoveCutoffs += other.mFirstMoveCutoffs;
+		mTableCutoffs += other.mTableCutoffs;
+	}
+
+	//Called for every beta cutoff; first is true if it was the first move searched
+	void cutoff(boolean first)
+	{
+		mCutoffs++;
+		if (first)
+		{
+			mFirstMoveCutoffs++;
+		}
+	}
+
+	public long getNodes()
+	{
+		return mNodes;
+	}
+
+	public long getLeaves()
+	{
+		return mLeaves;
+	}
+
+	public long getCutoffs()
+	{
+		return mCutoffs;
+	}
+
+	//Number of nodes whose value came straight from the transposition table
+	public long getTableCutoffs()
+	{
+		return mTableCutoffs;
+	}
+
+	//Fraction of cutoffs that came from the first move searched; a measure of move ordering quality
+	public double getFirstMoveCutoffRate()
+	{
+		return (mCutoffs == 0)?0:((double)mFirstMoveCutoffs/mCutoffs);
+	}
+
+	//Branching factor of a uniform tree with the same number of nodes and depth
+	public double getEffectiveBranchingFactor()
+	{
+		return (mDepth <= 0)?0:Math.pow(mNodes, 1.0/mDepth);
+	}
+
+	public int getDepth()
+	{
+		return mDepth;
+	}
+
+	//Search time in milliseconds
+	public double getElapsedMillis()
+	{
+		return mElapsedTime/1e6;
+	}
+
+	public double getNodesPerSecond()
+	{
+		return (mElapsedTime == 0)?0:(mNodes*1e9/mElapsedTime);
+	}
+
+	public double getScore()
+	{
+		return mScore;
+	}
+
+	public Move getBestMove()
+	{
+		return mBestMove;
+	}
+
+	public String toString()
+	{
+		return "depth " + mDepth + " score " + mScore + " best " + mBestMove
+				+ " nodes " + mNodes + " cutoffs " + mCutoffs
+				+ " (" + Math.round(getFirstMoveCutoffRate()*100) + "% first)"
+				+ " table " + mTableCutoffs
+				+ " ebf " + String.format("%.2f", getEffectiveBranchingFactor())
+				+ " time " + String.format("%.1f", getElapsedMillis()) + "ms"
+				+ " nps " + Math.round(getNodesPerSecond());
+	}
+}
@@ -0,0 +1,62 @@
+package ksk.game;
+
+//Decides how much of the available time to spend on a move.
+//
+//The soft limit is checked between iterations:  once it has passed, no new depth is started.
+//The hard limit is checked during the search:  once it has passed, the search in progress is abandoned
+//and the result of the last completed depth is used.  Both are given as fractions of the time available
+//for the move, and can be capped in milliseconds.
+
+public class TimeAllocation {
+
+	//Defaults leave a little margin before the caller's own time-out
+	public static final double DEFAULT_SOFT_FRACTION = 0.5;
+	public static final double DEFAULT_HARD_FRACTION = 0.9;
+
+	private double mSoftFraction;
+	private double mHardFraction;
+	private long mMaxSoftMillis;
+	private long mMaxHardMillis;
+
+	public TimeAllocation(double softFraction, double hardFraction, long maxSoftMillis, long maxHardMillis)
+	{
+		if ((softFraction <= 0)||(hardFraction <= 0)||(softFraction > hardFraction)||(hardFraction > 1))
+		{
+			throw new IllegalArgumentException("Need 0 < soft fraction <= hard fraction <= 1");
+		}
+
+		mSoftFraction = softFraction;
+		mHardFraction = hardFraction;
+		mMaxSoftMillis = maxSoftMillis;
+		mMaxHardMillis = maxHardMillis;
+	}
+
+	public TimeAllocation(double softFraction, double hardFraction)
+	{
+		this(softFraction, hardFraction, -1, -1);
+	}
+
+	public TimeAllocation()
+	{
+		this(DEFAULT_SOFT_FRACTION, DEFAULT_HARD_FRACTION);
+	}
+
+	//Soft time limit (in milliseconds) for a move with this much time available
+	public long getSoftLimit(long available)
+	{
+		return limit(available, mSoftFraction, mMaxSoftMillis);
+	}
+
+	//Hard time limit (in milliseconds) for a move with this much time available
+	public long getHardLimit(long available)
+	{
+		return limit(available, mHardFraction, mMaxHardMillis);
+	}
+
+	private static long limit(long available, double fraction, long max)
+	{
+		long result = (long)(Math.max(0, available)*fraction);
+
+		return (max < 0)?result:Math.min(result, max);
+	}
+}
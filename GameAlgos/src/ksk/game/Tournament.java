@@ -0,0 +1,484 @@
+package ksk.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Plays many games between Players, to find out which is strongest.
+//
+//Entrants are added with a PlayerFactory; each game gets new Player objects, since a Player keeps track
+//of the game it is playing.  Every pair of entrants plays the same number of games, taking turns to go
+//first, and games are played concurrently on a pool of threads.
+//
+//Each move is limited by the time control.  A player that runs out of time plays its working move; a
+//player with no move, or an illegal one, forfeits the game.  Games that go on too long are drawn.
+//
+//getReport() gives an Elo rating for each entrant (relative to an average of zero) with a 95% confidence
+//interval, the number of games per minute, and move time percentiles.  The interval comes from the Fisher
+//information of the rating fit, and assumes the games are independent.  Deterministic players can play
+//the same game over and over, which adds no information, so the report also counts the distinct games.
+
+public class Tournament {
+
+	//Makes a new game, ready for players to register
+	public static interface GameFactory
+	{
+		public Game createGame();
+	}
+
+	//Makes a player for one game; seat is the player's place in the turn order (0 moves first)
+	public static interface PlayerFactory
+	{
+		public Player createPlayer(int seat);
+	}
+
+	public static final int DEFAULT_MAX_PLIES = 1000;
+
+	//z for a 95% confidence interval
+	private static final double Z_95 = 1.96;
+
+	private GameFactory mGameFactory;
+	private List<Entrant> mEntrants;
+
+	//Time limit for each move, in milliseconds
+	private long mMoveTime;
+
+	private int mThreads;
+	private int mMaxPlies;
+
+	//Results between each pair of entrants:  total score of [i] against [j], and number of games
+	private double[][] mScores;
+	private int[][] mGames;
+
+	//Totals
+	private AtomicLong mGamesPlayed;
+	private AtomicLong mMoves;
+	private AtomicLong mTimeouts;
+	private AtomicLong mForfeits;
+	private long mElapsedTime;
+
+	public Tournament(GameFactory gameFactory, long moveTime, int threads)
+	{
+		mGameFactory = gameFactory;
+		mEntrants = new ArrayList<Entrant>();
+		mMoveTime = moveTime;
+		mThreads = Math.max(1, threads);
+		mMaxPlies = DEFAULT_MAX_PLIES;
+
+		mScores = new double[0][0];
+		mGames = new int[0][0];
+
+		mGamesPlayed = new AtomicLong();
+		mMoves = new AtomicLong();
+		mTimeouts = new AtomicLong();
+		mForfeits = new AtomicLong();
+		mElapsedTime = 0;
+	}
+
+	//One thread per processor
+	public Tournament(GameFactory gameFactory, long moveTime)
+	{
+		this(gameFactory, moveTime, Runtime.getRuntime().availableProcessors());
+	}
+
+	public synchronized void addEntrant(String name, PlayerFactory factory)
+	{
+		mEntrants.add(new Entrant(name, factory));
+
+		int n = mEntrants.size();
+		mScores = Arrays.copyOf(mScores, n);
+		mGames = Arrays.copyOf(mGames, n);
+		for (int i=0; i<n; i++)
+		{
+			mScores[i] = (mScores[i] == null)?new double[n]:Arrays.copyOf(mScores[i], n);
+			mGames[i] = (mGames[i] == null)?new int[n]:Arrays.copyOf(mGames[i], n);
+		}
+	}
+
+	//Games that reach this many moves are drawn
+	public void setMaxPlies(int maxPlies)
+	{
+		mMaxPlies = maxPlies;
+	}
+
+	//Play a round robin:  each pair of entrants plays this many games.  Results are added to those of
+	//earlier rounds.  Returns when all the games are finished
+	public void play(int gamesPerPair) throws InterruptedException
+	{
+		List<Callable<Object>> games = new ArrayList<Callable<Object>>();
+		for (int i=0; i<mEntrants.size(); i++)
+		{
+			for (int j=i+1; j<mEntrants.size(); j++)
+			{
+				for (int k=0; k<gamesPerPair; k++)
+				{
+					//Take turns going first
+					final int first = (k % 2 == 0)?i:j;
+					final int second = (k % 2 == 0)?j:i;
+
+					games.add(new Callable<Object>() {
+						public Object call()
+						{
+							playGame(first, second);
+							return null;
+						}
+					});
+				}
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "Tournament game");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		long startTime = System.nanoTime();
+		try
+		{
+			for (Future<Object> game : executor.invokeAll(games))
+			{
+				game.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Game failed", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+
+			synchronized (this)
+			{
+				mElapsedTime += System.nanoTime() - startTime;
+			}
+		}
+	}
+
+	//Play one game, and record the result
+	private void playGame(int first, int second)
+	{
+		Game game = mGameFactory.createGame();
+		Entrant[] entrants = {mEntrants.get(first), mEntrants.get(second)};
+		Player[] players = new Player[2];
+
+		for (int seat=0; seat<2; seat++)
+		{
+			players[seat] = entrants[seat].mFactory.createPlayer(seat);
+			game.registerPlayer(players[seat], true);
+		}
+
+		//Result for the first player; -1 until it's decided
+		double result = -1;
+		int plies = 0;
+
+		//Identifies the game:  who went first, and the moves played
+		long signature = 31L*first + second;
+
+		while ((result < 0)&&(!game.isOver()))
+		{
+			if (plies >= mMaxPlies)
+			{
+				result = 0.5;
+				break;
+			}
+
+			Player player = game.getTurn();
+			int seat = (player == players[0])?0:1;
+
+			long startTime = System.nanoTime();
+			Move move = player.getMove(game.getState(), mMoveTime);
+			long time = System.nanoTime() - startTime;
+
+			entrants[seat].recordMove(time);
+			mMoves.incrementAndGet();
+			if ((mMoveTime >= 0)&&(time >= mMoveTime*1000000L))
+			{
+				mTimeouts.incrementAndGet();
+			}
+
+			signature = 31*signature + ((move == null)?0:move.hashCode());
+			if ((move == null)||(!game.submitMove(player, move)))
+			{
+				mForfeits.incrementAndGet();
+				result = (seat == 0)?0:1;
+			}
+
+			plies++;
+		}
+
+		if (result < 0)
+		{
+			result = game.getResult(players[0]);
+		}
+
+		recordResult(first, second, result, signature);
+	}
+
+	private synchronized void recordResult(int first, int second, double result, long signature)
+	{
+		mScores[first][second] += result;
+		mScores[second][first] += 1 - result;
+		mGames[first][second]++;
+		mGames[second][first]++;
+
+		mEntrants.get(first).recordResult(result, signature);
+		mEntrants.get(second).recordResult(1 - result, signature);
+
+		mGamesPlayed.incrementAndGet();
+	}
+
+	/****************************
+	 * Results
+	 ***************************/
+
+	public long getGamesPlayed()
+	{
+		return mGamesPlayed.get();
+	}
+
+	public synchronized double getGamesPerMinute()
+	{
+		return (mElapsedTime == 0)?0:(mGamesPlayed.get()*60e9/mElapsedTime);
+	}
+
+	//Elo ratings, in the order the entrants were added
+	public synchronized double[] getRatings()
+	{
+		int n = mEntrants.size();
+		double[] ratings = new double[n];
+
+		//Find the ratings that make each entrant's expected score equal its actual score (the maximum
+		//likelihood estimate), with Newton's method
+		for (int iteration=0; iteration<200; iteration++)
+		{
+			double change = 0;
+
+			for (int i=0; i<n; i++)
+			{
+				double score = 0;
+				double expected = 0;
+				double information = 0;
+				int games = 0;
+
+				for (int j=0; j<n; j++)
+				{
+					if ((j == i)||(mGames[i][j] == 0))
+					{
+						continue;
+					}
+
+					double p = expectedScore(ratings[i] - ratings[j]);
+					score += mScores[i][j];
+					expected += mGames[i][j]*p;
+					information += mGames[i][j]*p*(1 - p);
+					games += mGames[i][j];
+				}
+
+				if (games == 0)
+				{
+					continue;
+				}
+
+				//A perfect score would need an infinite rating; treat it as half a game short
+				score = Math.max(0.5, Math.min(games - 0.5, score));
+
+				double step = (score - expected)/(information*Math.log(10)/400);
+				step = Math.max(-400, Math.min(400, step));
+				ratings[i] += step;
+				change = Math.max(change, Math.abs(step));
+			}
+
+			//Ratings are relative; center them on zero
+			double mean = 0;
+			for (double rating : ratings)
+			{
+				mean += rating/n;
+			}
+			for (int i=0; i<n; i++)
+			{
+				ratings[i] -= mean;
+			}
+
+			if (change < 0.01)
+			{
+				break;
+			}
+		}
+
+		return ratings;
+	}
+
+	//Results table, ratings, and timing
+	public synchronized String getReport()
+	{
+		final double[] ratings = getRatings();
+		int n = mEntrants.size();
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%d entrants, %d games in %.1fs (%.1f games/min), %d moves, %d timeouts, %d forfeits%n",
+				n, mGamesPlayed.get(), mElapsedTime/1e9, getGamesPerMinute(), mMoves.get(), mTimeouts.get(), mForfeits.get()));
+		report.append(String.format("%-20s %6s %8s %5s %5s %5s %6s %7s %17s %9s %9s %9s %9s%n", "entrant", "games", "distinct",
+				"won", "drawn", "lost", "score", "Elo", "95% interval", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+
+		double[] information = getInformation(ratings);
+
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++)
+		{
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return Double.compare(ratings[b], ratings[a]);
+			}
+		});
+
+		for (int i : order)
+		{
+			Entrant entrant = mEntrants.get(i);
+			int games = entrant.mWins + entrant.mDraws + entrant.mLosses;
+			double score = (games == 0)?0:((entrant.mWins + 0.5*entrant.mDraws)/games);
+			double error = (information[i] > 0)?(1/Math.sqrt(information[i])):Double.NaN;
+			long[] times = entrant.getMoveTimes();
+
+			report.append(String.format("%-20s %6d %8d %5d %5d %5d %5.1f%% %7.0f %8.0f..%-7.0f %9.2f %9.2f %9.2f %9.2f%n",
+					entrant.mName, games, entrant.getDistinctGames(), entrant.mWins, entrant.mDraws, entrant.mLosses,
+					score*100, ratings[i], ratings[i] - Z_95*error, ratings[i] + Z_95*error,
+					percentile(times, 0.5)/1e6, percentile(times, 0.9)/1e6, percentile(times, 0.99)/1e6, percentile(times, 1)/1e6));
+		}
+
+		report.append(String.format("Intervals assume independent games.  Deterministic players repeat the same games, which add no%n"
+				+ "information; where distinct is well below games, the true intervals are wider.%n"));
+
+		return report.toString();
+	}
+
+	//Fisher information of each entrant's rating (per Elo point squared) at the fitted ratings, taking the
+	//opponents' ratings as known.  One over its square root is the rating's standard error; unlike the
+	//spread of the entrant's own results, it doesn't vanish at a score of 0% or 100%
+	private double[] getInformation(double[] ratings)
+	{
+		int n = mEntrants.size();
+		double scale = Math.log(10)/400;
+		double[] information = new double[n];
+
+		for (int i=0; i<n; i++)
+		{
+			for (int j=0; j<n; j++)
+			{
+				if ((j != i)&&(mGames[i][j] > 0))
+				{
+					double p = expectedScore(ratings[i] - ratings[j]);
+					information[i] += mGames[i][j]*p*(1 - p)*scale*scale;
+				}
+			}
+		}
+
+		return information;
+	}
+
+	//Expected score for a player rated this much higher than their opponent
+	private static double expectedScore(double difference)
+	{
+		return 1/(1 + Math.pow(10, -difference/400));
+	}
+
+	//Value at a percentile (0 to 1) of sorted values
+	private static long percentile(long[] sorted, double fraction)
+	{
+		if (sorted.length == 0)
+		{
+			return 0;
+		}
+
+		int index = (int)Math.ceil(fraction*sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	//An entrant, with its results and move times
+	private static class Entrant
+	{
+		private String mName;
+		private PlayerFactory mFactory;
+
+		private int mWins;
+		private int mDraws;
+		private int mLosses;
+
+		//Time taken for each move, in nanoseconds
+		private List<Long> mMoveTimes;
+
+		//Signatures of the games played (see playGame()), to count the distinct ones
+		private Set<Long> mDistinct;
+
+		Entrant(String name, PlayerFactory factory)
+		{
+			mName = name;
+			mFactory = factory;
+			mMoveTimes = Collections.synchronizedList(new ArrayList<Long>());
+			mDistinct = new HashSet<Long>();
+		}
+
+		int getDistinctGames()
+		{
+			return mDistinct.size();
+		}
+
+		void recordMove(long time)
+		{
+			mMoveTimes.add(time);
+		}
+
+		void recordResult(double result, long signature)
+		{
+			mDistinct.add(signature);
+
+			if (result > 0.5)
+			{
+				mWins++;
+			}
+			else if (result < 0.5)
+			{
+				mLosses++;
+			}
+			else
+			{
+				mDraws++;
+			}
+		}
+
+		//Move times, sorted
+		long[] getMoveTimes()
+		{
+			long[] times;
+			synchronized (mMoveTimes)
+			{
+				times = new long[mMoveTimes.size()];
+				for (int i=0; i<times.length; i++)
+				{
+					times[i] = mMoveTimes.get(i);
+				}
+			}
+
+			Arrays.sort(times);
+			return times;
+		}
+	}
+}
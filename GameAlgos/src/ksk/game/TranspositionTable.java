@@ -0,0 +1,273 @@
+package ksk.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Fixed-size hash table of search results, keyed by GameState.getHashKey().
+//
+//The same position is often reached by different move orders; the table lets a search reuse the
+//result instead of searching the position again, and remembers the best move to try first.
+//
+//Each entry is two longs:  the packed data (score, depth, bound type, best move index, age) and the
+//key XOR'ed with the data.  A reader only trusts an entry whose key checks out, so threads can share
+//the table without locking; a torn read just looks like a miss.
+//
+//Entries are stored in buckets of two.  When a bucket is full, the entry for the same position is
+//replaced; otherwise the new entry replaces one left over from an older search, or failing that, the
+//shallower of the two.
+
+public class TranspositionTable {
+
+	//Bound types:  whether the stored score is exact, or only a bound on the real score
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int UPPER_BOUND = 3;
+
+	//Stored in place of the move index when there is no best move
+	public static final int NO_MOVE = 0x3FFF;
+
+	public static final int MAX_DEPTH = 0xFF;
+
+	//Layout of the packed data
+	private static final int DEPTH_SHIFT = 32;
+	private static final int BOUND_SHIFT = 40;
+	private static final int MOVE_SHIFT = 42;
+	private static final int AGE_SHIFT = 56;
+
+	private static final int BUCKET_SIZE = 2;
+
+	//Entries; [2i] is the key XOR data, [2i+1] is the data.  Data of zero marks an empty entry
+	private AtomicLongArray mEntries;
+	private int mBucketMask;
+
+	//Incremented for every new search, so old entries can be recognized
+	private volatile int mAge;
+
+	//Statistics
+	private AtomicLong mProbes;
+	private AtomicLong mHits;
+	private AtomicLong mStores;
+	private AtomicLong mCollisions;
+
+	//Create a table with room for (at least) the given number of entries
+	public TranspositionTable(int entries)
+	{
+		int buckets = Integer.highestOneBit(Math.max(BUCKET_SIZE, entries - 1) / BUCKET_SIZE) << 1;
+		buckets = Math.max(1, Math.min(buckets, 1 << 26));
+
+		mEntries = new AtomicLongArray(buckets*BUCKET_SIZE*2);
+		mBucketMask = buckets - 1;
+		mAge = 0;
+
+		mProbes = new AtomicLong();
+		mHits = new AtomicLong();
+		mStores = new AtomicLong();
+		mCollisions = new AtomicLong();
+	}
+
+	//Create a table that uses (about) the given number of megabytes
+	public static TranspositionTable withMegabytes(int megabytes)
+	{
+		return new TranspositionTable((int)Math.min(1 << 27, ((long)megabytes << 20)/16));
+	}
+
+	//Number of entries in the table
+	public int size()
+	{
+		return mEntries.length()/2;
+	}
+
+	//Called at the start of each search; entries from earlier searches become the first to be replaced
+	public void newSearch()
+	{
+		mAge = (mAge + 1) & 0xFF;
+	}
+
+	//Empty the table, and reset the statistics
+	public void clear()
+	{
+		for (int i=0; i<mEntries.length(); i++)
+		{
+			mEntries.set(i, 0);
+		}
+
+		mProbes.set(0);
+		mHits.set(0);
+		mStores.set(0);
+		mCollisions.set(0);
+	}
+
+	//Look up a position.  Returns the packed entry data, or zero if the position isn't in the table
+	public long probe(long key)
+	{
+		mProbes.incrementAndGet();
+
+		int first = bucketStart(key);
+		for (int i=first; i<first + BUCKET_SIZE*2; i+=2)
+		{
+			long data = mEntries.get(i+1);
+			if ((data != 0)&&((mEntries.get(i) ^ data) == key))
+			{
+				mHits.incrementAndGet();
+				return data;
+			}
+		}
+
+		return 0;
+	}
+
+	//Store a search result.  Depth is the remaining search depth; moveIndex is the index of the best move
+	//in the state's move list, or NO_MOVE
+	public void store(long key, int depth, int bound, double score, int moveIndex)
+	{
+		long data = pack(depth, bound, score, moveIndex, mAge);
+		int first = bucketStart(key);
+		int target = -1;
+		long targetData = 0;
+
+		for (int i=first; i<first + BUCKET_SIZE*2; i+=2)
+		{
+			long old = mEntries.get(i+1);
+
+			//Empty, or the same position
+			if ((old == 0)||((mEntries.get(i) ^ old) == key))
+			{
+				target = i;
+				targetData = 0;
+				break;
+			}
+
+			//Otherwise prefer entries from old searches, then shallow entries
+			if ((target < 0)||(replacementValue(old) < replacementValue(targetData)))
+			{
+				target = i;
+				targetData = old;
+			}
+		}
+
+		if (targetData != 0)
+		{
+			mCollisions.incrementAndGet();
+		}
+
+		mStores.incrementAndGet();
+
+		//Clear the data first, so a concurrent reader can't match the new key with the old data
+		mEntries.set(target+1, 0);
+		mEntries.set(target, key ^ data);
+		mEntries.set(target+1, data);
+	}
+
+	//Statistics
+	public long getProbes()
+	{
+		return mProbes.get();
+	}
+
+	public long getHits()
+	{
+		return mHits.get();
+	}
+
+	public double getHitRate()
+	{
+		long probes = mProbes.get();
+
+		return (probes == 0)?0:((double)mHits.get()/probes);
+	}
+
+	public long getStores()
+	{
+		return mStores.get();
+	}
+
+	//Number of stores that replaced a different position
+	public long getCollisions()
+	{
+		return mCollisions.get();
+	}
+
+	//Fraction of entries in use.  This scans the whole table
+	public double getOccupancy()
+	{
+		long used = 0;
+		for (int i=1; i<mEntries.length(); i+=2)
+		{
+			if (mEntries.get(i) != 0)
+			{
+				used++;
+			}
+		}
+
+		return (double)used/size();
+	}
+
+	public String toString()
+	{
+		return "entries " + size() + " probes " + getProbes() + " hits " + getHits()
+				+ " (" + Math.round(getHitRate()*100) + "%) stores " + getStores()
+				+ " collisions " + getCollisions();
+	}
+
+	//Unpacking entry data
+	public static int getDepth(long data)
+	{
+		return (int)((data >>> DEPTH_SHIFT) & 0xFF);
+	}
+
+	public static int getBound(long data)
+	{
+		return (int)((data >>> BOUND_SHIFT) & 0x3);
+	}
+
+	public static double getScore(long data)
+	{
+		return Float.intBitsToFloat((int)data);
+	}
+
+	public static int getMoveIndex(long data)
+	{
+		return (int)((data >>> MOVE_SHIFT) & NO_MOVE);
+	}
+
+	public static int getAge(long data)
+	{
+		return (int)((data >>> AGE_SHIFT) & 0xFF);
+	}
+
+	//Scores are kept with float precision
+	private static long pack(int depth, int bound, double score, int moveIndex, int age)
+	{
+		if ((moveIndex < 0)||(moveIndex > NO_MOVE))
+		{
+			moveIndex = NO_MOVE;
+		}
+
+		return (Float.floatToIntBits((float)score) & 0xFFFFFFFFL)
+				| ((long)Math.max(0, Math.min(depth, MAX_DEPTH)) << DEPTH_SHIFT)
+				| ((long)(bound & 0x3) << BOUND_SHIFT)
+				| ((long)moveIndex << MOVE_SHIFT)
+				| ((long)age << AGE_SHIFT);
+	}
+
+	//How much we'd like to keep an entry; lower values get replaced first
+	private int replacementValue(long data)
+	{
+		int value = getDepth(data);
+
+		if (getAge(data) != mAge)
+		{
+			value -= 2*MAX_DEPTH;
+		}
+
+		return value;
+	}
+
+	private int bucketStart(long key)
+	{
+		//Mix the high bits in, in case the game's keys aren't random in their low bits
+		int hash = (int)(key ^ (key >>> 32));
+
+		return (hash & mBucketMask)*BUCKET_SIZE*2;
+	}
+}
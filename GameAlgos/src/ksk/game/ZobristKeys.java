@@ -0,0 +1,56 @@
+package ksk.game;
+
+//A table of random 64-bit keys for Zobrist hashing.
+//
+//Each feature of a game state (e.g. "piece type 3 on square 17", or "player 2 to move") gets its own
+//key, and a state's hash key is the XOR of the keys of all of its features.  Because XOR is its own
+//inverse, applyMove() can update the hash incrementally:  XOR out the keys of the features that went
+//away, XOR in the keys of the new ones.
+//
+//Keys are generated from a seed, so hash keys are the same every time the program runs.
+
+public class ZobristKeys {
+
+	public static final long DEFAULT_SEED = 0x5DEECE66DL;
+
+	private long[] mKeys;
+
+	//Create a table of keys for features numbered 0..size-1
+	public ZobristKeys(int size, long seed)
+	{
+		mKeys = new long[size];
+
+		//SplitMix64; every output is distinct and well mixed, even for small seeds
+		long state = seed;
+		for (int i=0; i<size; i++)
+		{
+			state += 0x9E3779B97F4A7C15L;
+			long z = state;
+			z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+			mKeys[i] = z ^ (z >>> 31);
+
+			//Zero is reserved for "not hashed"
+			if (mKeys[i] == 0)
+			{
+				i--;
+			}
+		}
+	}
+
+	public ZobristKeys(int size)
+	{
+		this(size, DEFAULT_SEED);
+	}
+
+	//Get the key for a feature
+	public long get(int feature)
+	{
+		return mKeys[feature];
+	}
+
+	public int size()
+	{
+		return mKeys.length;
+	}
+}
@@ -0,0 +1,15 @@
+package ksk.game.connect4;
+
+import ksk.game.GameState;
+import ksk.game.MinimaxAlgo;
+
+//Minimax for Connect Four, using ConnectFourState's score
+
+public class ConnectFourAlgo extends MinimaxAlgo {
+
+	@Override
+	public double evaluate(GameState state)
+	{
+		return ((ConnectFourState)state).getScore();
+	}
+}
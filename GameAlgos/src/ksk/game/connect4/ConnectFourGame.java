@@ -0,0 +1,49 @@
+package ksk.game.connect4;
+
+import java.util.List;
+
+import ksk.game.Game;
+import ksk.game.GameState;
+import ksk.game.Move;
+import ksk.game.Player;
+
+//A game of Connect Four between two players; the first player to register moves first
+
+public class ConnectFourGame extends Game {
+
+	public ConnectFourGame()
+	{
+		super(PlayStyle.TURN_BASED);
+	}
+
+	@Override
+	protected void reset()
+	{
+		mState = new ConnectFourState();
+	}
+
+	@Override
+	protected GameState implementMove(Player caller, Move move)
+	{
+		return mState.applyMove(move);
+	}
+
+	@Override
+	public boolean isOver()
+	{
+		return ((ConnectFourState)mState).isOver();
+	}
+
+	@Override
+	public double getResult(Player player)
+	{
+		int winner = ((ConnectFourState)mState).getWinner();
+		if (winner < 0)
+		{
+			return 0.5;
+		}
+
+		List<Player> players = getPlayers();
+		return (players.indexOf(player) == winner)?1:0;
+	}
+}
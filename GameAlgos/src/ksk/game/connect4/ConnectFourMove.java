@@ -0,0 +1,55 @@
+package ksk.game.connect4;
+
+import ksk.game.Move;
+
+//A Connect Four move:  the column (0-6) to drop a piece into.  The move string is the column number
+
+public class ConnectFourMove extends Move {
+
+	//One move per column, so move generation doesn't have to allocate
+	private static final ConnectFourMove[] COLUMNS = new ConnectFourMove[ConnectFourState.COLUMNS];
+	static
+	{
+		for (int i=0; i<COLUMNS.length; i++)
+		{
+			COLUMNS[i] = new ConnectFourMove(i);
+		}
+	}
+
+	//Set by decode(), which runs in the Move constructor, so it mustn't have an initializer
+	private int mColumn;
+
+	public ConnectFourMove(int column)
+	{
+		super(Integer.toString(column));
+	}
+
+	public ConnectFourMove(String str)
+	{
+		super(str);
+	}
+
+	//The shared move for a column
+	public static ConnectFourMove forColumn(int column)
+	{
+		return COLUMNS[column];
+	}
+
+	public int getColumn()
+	{
+		return mColumn;
+	}
+
+	@Override
+	protected void decode()
+	{
+		try
+		{
+			mColumn = Integer.parseInt(mMoveString.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			mColumn = -1;
+		}
+	}
+}
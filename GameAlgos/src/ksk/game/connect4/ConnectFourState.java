@@ -0,0 +1,282 @@
+package ksk.game.connect4;
+
+import ksk.game.Move;
+import ksk.game.MoveIterator;
+import ksk.game.MutableGameState;
+import ksk.game.ZobristKeys;
+
+//Connect Four, as a MutableGameState.  Player 0 moves first, and is the maximizing player.
+//
+//The board is a pair of bitboards, one per player.  Each column takes 7 bits (6 squares, plus an empty
+//bit on top so that lines can't wrap from one column to the next), with bit 0 at the bottom left:
+//
+//   5 12 19 26 33 40 47
+//   4 11 18 25 32 39 46
+//   3 10 17 24 31 38 45
+//   2  9 16 23 30 37 44
+//   1  8 15 22 29 36 43
+//   0  7 14 21 28 35 42
+
+public class ConnectFourState extends MutableGameState {
+
+	public static final int COLUMNS = 7;
+	public static final int ROWS = 6;
+
+	//Score for a win; wins that take fewer moves score higher
+	public static final int WIN_SCORE = 1000;
+
+	private static final int COLUMN_BITS = ROWS + 1;
+
+	//Shifts between neighbouring squares:  horizontal, the two diagonals, vertical
+	private static final int[] DIRECTIONS = {COLUMN_BITS, COLUMN_BITS - 1, COLUMN_BITS + 1, 1};
+
+	//Columns are searched from the middle out, since middle columns are usually better
+	private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+	//Number of lines of four through each square; a rough measure of how useful a square is
+	private static final int[] SQUARE_VALUE = new int[COLUMNS*COLUMN_BITS];
+	static
+	{
+		int[][] values = {
+				{3, 4, 5, 7, 5, 4, 3},
+				{4, 6, 8, 10, 8, 6, 4},
+				{5, 8, 11, 13, 11, 8, 5},
+				{5, 8, 11, 13, 11, 8, 5},
+				{4, 6, 8, 10, 8, 6, 4},
+				{3, 4, 5, 7, 5, 4, 3}};
+
+		for (int row=0; row<ROWS; row++)
+		{
+			for (int column=0; column<COLUMNS; column++)
+			{
+				SQUARE_VALUE[column*COLUMN_BITS + row] = values[row][column];
+			}
+		}
+	}
+
+	private static final ZobristKeys KEYS = new ZobristKeys(2*COLUMNS*COLUMN_BITS);
+
+	//Pieces of each player
+	private long[] mBoards;
+
+	//Bit number of the next empty square in each column
+	private int[] mHeights;
+
+	//Number of pieces on the board; player (mMoves & 1) is to move
+	private int mMoves;
+
+	//Player who has four in a row, or -1
+	private int mWinner;
+
+	//Total square value for player 0, minus player 1
+	private int mPositional;
+
+	private long mHashKey;
+
+	//The empty board
+	public ConnectFourState()
+	{
+		super();
+
+		mBoards = new long[2];
+		mHeights = new int[COLUMNS];
+		for (int i=0; i<COLUMNS; i++)
+		{
+			mHeights[i] = i*COLUMN_BITS;
+		}
+
+		mMoves = 0;
+		mWinner = -1;
+		mPositional = 0;
+		mHashKey = 0;
+	}
+
+	private ConnectFourState(ConnectFourState other)
+	{
+		super();
+
+		mBoards = other.mBoards.clone();
+		mHeights = other.mHeights.clone();
+		mMoves = other.mMoves;
+		mWinner = other.mWinner;
+		mPositional = other.mPositional;
+		mHashKey = other.mHashKey;
+	}
+
+	//The position after playing a sequence of columns, e.g. "4453"; columns are numbered 1-7, as is usual
+	//for Connect Four.  Throws IllegalArgumentException if a move is illegal
+	public static ConnectFourState fromMoves(String moves)
+	{
+		ConnectFourState state = new ConnectFourState();
+
+		for (int i=0; i<moves.length(); i++)
+		{
+			int column = moves.charAt(i) - '1';
+			if ((column < 0)||(column >= COLUMNS)||(!state.doMove(ConnectFourMove.forColumn(column))))
+			{
+				throw new IllegalArgumentException("Illegal move " + (i+1) + " in " + moves);
+			}
+		}
+
+		return state;
+	}
+
+	//Player to move (0 or 1)
+	public int getCurrentPlayer()
+	{
+		return mMoves & 1;
+	}
+
+	public int getMoveCount()
+	{
+		return mMoves;
+	}
+
+	//Player with four in a row, or -1 if there isn't one
+	public int getWinner()
+	{
+		return mWinner;
+	}
+
+	//Whether someone has won, or the board is full
+	public boolean isOver()
+	{
+		return (mWinner >= 0)||(mMoves == COLUMNS*ROWS);
+	}
+
+	//Score from player 0's point of view:  +/- WIN_SCORE (less the number of moves) for a win, otherwise
+	//the difference in square values
+	public int getScore()
+	{
+		if (mWinner >= 0)
+		{
+			int score = WIN_SCORE - mMoves;
+			return (mWinner == 0)?score:-score;
+		}
+
+		return mPositional;
+	}
+
+	//Piece at a square:  0 or 1 for a player's piece, -1 for empty.  Row 0 is the bottom
+	public int getPiece(int column, int row)
+	{
+		long bit = 1L << (column*COLUMN_BITS + row);
+
+		if ((mBoards[0] & bit) != 0)
+		{
+			return 0;
+		}
+
+		return ((mBoards[1] & bit) != 0)?1:-1;
+	}
+
+	@Override
+	public long getHashKey()
+	{
+		return mHashKey;
+	}
+
+	@Override
+	public ConnectFourState copy()
+	{
+		return new ConnectFourState(this);
+	}
+
+	@Override
+	protected void generateMoves(int stage, MoveIterator moves)
+	{
+		if (mWinner >= 0)
+		{
+			return;
+		}
+
+		for (int column : COLUMN_ORDER)
+		{
+			if (!isFull(column))
+			{
+				moves.add(ConnectFourMove.forColumn(column));
+			}
+		}
+	}
+
+	@Override
+	protected boolean makeMove(Move move)
+	{
+		int column = ((ConnectFourMove)move).getColumn();
+		if ((mWinner >= 0)||(column < 0)||(column >= COLUMNS)||(isFull(column)))
+		{
+			return false;
+		}
+
+		int player = mMoves & 1;
+		int square = mHeights[column]++;
+
+		mBoards[player] |= 1L << square;
+		mHashKey ^= KEYS.get(player*COLUMNS*COLUMN_BITS + square);
+		mPositional += (player == 0)?SQUARE_VALUE[square]:-SQUARE_VALUE[square];
+		mMoves++;
+
+		//Only the player who just moved can have won
+		if (isWin(mBoards[player]))
+		{
+			mWinner = player;
+		}
+
+		return true;
+	}
+
+	@Override
+	protected void unmakeMove(Move move)
+	{
+		int column = ((ConnectFourMove)move).getColumn();
+
+		mMoves--;
+		int player = mMoves & 1;
+		int square = --mHeights[column];
+
+		mBoards[player] &= ~(1L << square);
+		mHashKey ^= KEYS.get(player*COLUMNS*COLUMN_BITS + square);
+		mPositional -= (player == 0)?SQUARE_VALUE[square]:-SQUARE_VALUE[square];
+
+		//Nobody can have won before, or the game would have been over
+		mWinner = -1;
+	}
+
+	private boolean isFull(int column)
+	{
+		return mHeights[column] == column*COLUMN_BITS + ROWS;
+	}
+
+	//Check for four in a row, by shifting the board along each direction
+	private static boolean isWin(long board)
+	{
+		for (int i=0; i<DIRECTIONS.length; i++)
+		{
+			long pairs = board & (board >>> DIRECTIONS[i]);
+			if ((pairs & (pairs >>> (2*DIRECTIONS[i]))) != 0)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//The board, top row first; X is player 0, O is player 1
+	public String toString()
+	{
+		StringBuilder result = new StringBuilder();
+
+		for (int row=ROWS-1; row>=0; row--)
+		{
+			for (int column=0; column<COLUMNS; column++)
+			{
+				int piece = getPiece(column, row);
+				result.append((piece < 0)?'.':((piece == 0)?'X':'O'));
+			}
+			result.append('\n');
+		}
+
+		return result.toString();
+	}
+}
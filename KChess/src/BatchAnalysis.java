@@ -0,0 +1,273 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ksk.game.IterativeDeepening;
+import ksk.game.SearchStats;
+
+//Analyses a file of positions, several at once.  Each line is a FEN, or an EPD record (the first four FEN
+//fields followed by operations such as  bm Nf3; id "WAC.001";).  Blank lines and lines starting with #
+//are skipped.  Where a position has a best move (bm) or avoid move (am) operation, the search's choice is
+//checked against it, which makes this a test suite runner.
+//
+//Positions are shared out among a fixed pool of threads, each with its own ChessSearch (so its own
+//transposition table, cleared for each position so results don't depend on the order of the work).
+//Results are printed in the order of the input.
+//
+//Usage:  BatchAnalysis <file, or - for stdin> [depth] [move time ms] [threads]
+//A depth or move time of 0 means no limit (but there must be one or the other).
+
+public class BatchAnalysis {
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if (args.length == 0)
+		{
+			System.err.println("Usage:  BatchAnalysis <file, or - for stdin> [depth] [move time ms] [threads]");
+			return;
+		}
+
+		final int depth = (args.length > 1)?Integer.parseInt(args[1]):6;
+		final long moveTime = (args.length > 2)?Long.parseLong(args[2]):0;
+		int threads = (args.length > 3)?Integer.parseInt(args[3]):Runtime.getRuntime().availableProcessors();
+
+		if ((depth <= 0)&&(moveTime <= 0))
+		{
+			System.err.println("Needs a depth or a move time");
+			return;
+		}
+
+		List<String> lines = readLines(args[0]);
+
+		//Each pool thread gets its own search
+		final ThreadLocal<ChessSearch> searches = new ThreadLocal<ChessSearch>() {
+			@Override
+			protected ChessSearch initialValue()
+			{
+				return new ChessSearch();
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long startTime = System.nanoTime();
+
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		for (final String line : lines)
+		{
+			results.add(executor.submit(new Callable<Result>() {
+				public Result call()
+				{
+					return analyze(line, searches.get(), depth, moveTime);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		long nodes = 0;
+		int tested = 0;
+		int solved = 0;
+		for (Future<Result> future : results)
+		{
+			Result result;
+			try
+			{
+				result = future.get();
+			}
+			catch (ExecutionException e)
+			{
+				System.out.println("error: " + e.getCause());
+				continue;
+			}
+
+			System.out.println(result.mLine);
+			nodes += result.mNodes;
+			if (result.mTested)
+			{
+				tested++;
+				solved += result.mSolved?1:0;
+			}
+		}
+
+		double seconds = (System.nanoTime() - startTime)/1e9;
+
+		System.out.println(String.format("%d positions, %d nodes in %.2fs on %d threads (%.0f nodes/sec)",
+				results.size(), nodes, seconds, threads, nodes/seconds));
+		if (tested > 0)
+		{
+			System.out.println(String.format("Solved %d of %d", solved, tested));
+		}
+	}
+
+	private static List<String> readLines(String name) throws IOException
+	{
+		List<String> lines = new ArrayList<String>();
+
+		try (BufferedReader in = new BufferedReader(name.equals("-")?new InputStreamReader(System.in):new FileReader(name)))
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if (!line.isEmpty()&&!line.startsWith("#"))
+				{
+					lines.add(line);
+				}
+			}
+		}
+
+		return lines;
+	}
+
+	//What came of one position
+	private static class Result
+	{
+		String mLine;
+		long mNodes;
+		boolean mTested;
+		boolean mSolved;
+	}
+
+	//Search one FEN or EPD line
+	private static Result analyze(String line, ChessSearch search, int depth, long moveTime)
+	{
+		Result result = new Result();
+
+		//The position is the first four fields, plus the move clocks if this is a FEN
+		String[] fields = line.split("\\s+", 7);
+		int positionFields = ((fields.length >= 6)&&fields[4].matches("\\d+")&&fields[5].matches("\\d+"))?6:4;
+
+		StringBuilder fen = new StringBuilder();
+		for (int i=0; i<Math.min(positionFields, fields.length); i++)
+		{
+			fen.append(fields[i]).append(' ');
+		}
+
+		ChessBoard board;
+		try
+		{
+			board = ChessBoard.fromFen(fen.toString());
+		}
+		catch (IllegalArgumentException e)
+		{
+			result.mLine = "error: " + e.getMessage();
+			return result;
+		}
+
+		//Whatever follows is EPD operations
+		String[] parts = line.split("\\s+", positionFields + 1);
+		String operations = (parts.length > positionFields)?parts[positionFields]:"";
+		String id = getOperation(operations, "id");
+		String[] best = split(getOperation(operations, "bm"));
+		String[] avoid = split(getOperation(operations, "am"));
+
+		final long[] nodes = {0};
+		search.clear();
+		search.resume();
+		SearchStats stats = search.search(board, depth, (moveTime > 0)?(System.currentTimeMillis() + moveTime):-1,
+				new IterativeDeepening.Listener() {
+					public void depthCompleted(SearchStats completed)
+					{
+						nodes[0] += completed.getNodes();
+					}
+				});
+
+		int move = ChessSearch.getBestMove(stats);
+		String san = (move == ChessMove.NONE)?"(none)":new ChessJudge().toSan(board, move);
+
+		StringBuilder out = new StringBuilder();
+		out.append((id == null)?fen.toString().trim():id).append(":  ").append(san);
+		if (stats != null)
+		{
+			out.append("  ").append(ChessSearch.formatScore(stats.getScore(), board));
+			out.append("  depth ").append(stats.getDepth());
+		}
+		out.append("  nodes ").append(nodes[0]);
+
+		if ((best.length > 0)||(avoid.length > 0))
+		{
+			String played = stripSuffixes(san);
+			result.mTested = true;
+			result.mSolved = ((best.length == 0)||contains(best, played))&&!contains(avoid, played);
+
+			out.append(result.mSolved?"  ok":"  FAILED");
+			if (best.length > 0)
+			{
+				out.append(" (bm ").append(join(best)).append(')');
+			}
+			if (avoid.length > 0)
+			{
+				out.append(" (am ").append(join(avoid)).append(')');
+			}
+		}
+
+		result.mLine = out.toString();
+		result.mNodes = nodes[0];
+		return result;
+	}
+
+	/******
+	 * EPD operations
+	 ******/
+
+	//The operands of an EPD operation (without quotes), or null if it isn't there
+	private static String getOperation(String operations, String opcode)
+	{
+		for (String operation : operations.split(";"))
+		{
+			String[] parts = operation.trim().split("\\s+", 2);
+			if (parts[0].equals(opcode))
+			{
+				return (parts.length > 1)?parts[1].replace("\"", "").trim():"";
+			}
+		}
+
+		return null;
+	}
+
+	//Split a list of SAN moves, without check marks or annotations
+	private static String[] split(String moves)
+	{
+		if ((moves == null)||moves.isEmpty())
+		{
+			return new String[0];
+		}
+
+		String[] list = moves.split("\\s+");
+		for (int i=0; i<list.length; i++)
+		{
+			list[i] = stripSuffixes(list[i]);
+		}
+
+		return list;
+	}
+
+	private static String stripSuffixes(String san)
+	{
+		return san.replaceAll("[+#!?]+$", "");
+	}
+
+	private static boolean contains(String[] list, String value)
+	{
+		return Arrays.asList(list).contains(value);
+	}
+
+	private static String join(String[] list)
+	{
+		StringBuilder result = new StringBuilder();
+		for (String s : list)
+		{
+			result.append((result.length() == 0)?"":" ").append(s);
+		}
+
+		return result.toString();
+	}
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import ksk.game.CaptureOrdering;
+import ksk.game.Evaluation;
+import ksk.game.GameState;
+import ksk.game.MinimaxAlgo;
+import ksk.game.Move;
+import ksk.game.MoveIterator;
+import ksk.game.MoveOrdering;
+import ksk.game.TranspositionTable;
+
+//Minimax for chess, on a ChessState.  White maximizes.
+//
+//Positions are evaluated by a ChessEvaluation (material, piece squares and mobility, in centipawns), kept
+//up to date move by move on states that have one (see newEvaluation()).  A position with
+//no legal moves scores as mate or stalemate; mates score MATE_SCORE less the number of half moves played
+//in the game, so quicker mates are preferred and the score doesn't depend on how the position was reached
+//(which keeps transposition table entries valid).  The fifty move rule is respected; repetition isn't
+//tracked.
+//
+//The evaluation doesn't use an EvaluationCache unless one is set on getEvaluation():  with terms this
+//cheap, EvaluationBenchmark's cached mode is slower than evaluating.
+//
+//Given Tablebases, positions with few enough pieces are looked up instead of evaluated, and score as the
+//mate (or draw) the tablebase says is coming.
+
+public class ChessAlgo extends MinimaxAlgo {
+
+	public static final int MATE_SCORE = 100000;
+
+	//Scores this close to MATE_SCORE are mates
+	public static final int MATE_THRESHOLD = MATE_SCORE - 10000;
+
+	//Centipawn values, by ChessPieceType
+	public static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+
+	private ChessEvaluation mEvaluation;
+	private Tablebases mTablebases;
+
+	public ChessAlgo()
+	{
+		mEvaluation = new ChessEvaluation();
+	}
+
+	@Override
+	public double evaluate(GameState state)
+	{
+		ChessState chess = (ChessState)state;
+		ChessBoard board = chess.getBoard();
+
+		if (chess.isKnownToHaveNoMoves())
+		{
+			if (!chess.getJudge().isCheck(board))
+			{
+				return 0;
+			}
+
+			int score = MATE_SCORE - chess.getPly();
+			return (board.getTurn() == ChessBoard.WHITE)?-score:score;
+		}
+
+		if (board.getHalfMoveClock() >= 100)
+		{
+			return 0;
+		}
+
+		if (mTablebases != null)
+		{
+			int code = mTablebases.probe(board);
+			if (code != Tablebases.NOT_FOUND)
+			{
+				if (code == Tablebase.DRAW)
+				{
+					return 0;
+				}
+
+				//Scored like the mate found by searching all the way to it
+				int score = MATE_SCORE - chess.getPly() - Tablebase.getPlies(code);
+				return (Tablebase.isWin(code) == (board.getTurn() == ChessBoard.WHITE))?score:-score;
+			}
+		}
+
+		Evaluation evaluation = chess.getEvaluation();
+		return ((evaluation != null)?evaluation:mEvaluation).evaluate(state);
+	}
+
+	//A new evaluation for a state to keep up to date as it's searched (see MutableGameState.setEvaluation()).
+	//States without one are evaluated from scratch
+	public Evaluation newEvaluation()
+	{
+		return mEvaluation.copy();
+	}
+
+	public ChessEvaluation getEvaluation()
+	{
+		return mEvaluation;
+	}
+
+	//Look positions up in these tablebases (null for none)
+	public void setTablebases(Tablebases tablebases)
+	{
+		mTablebases = tablebases;
+	}
+
+	public Tablebases getTablebases()
+	{
+		return mTablebases;
+	}
+
+	//The ChessEvaluation score of a board, from white's point of view
+	public static int getStaticScore(ChessBoard board)
+	{
+		return new ChessEvaluation().evaluateFromScratch(new ChessState(board));
+	}
+
+	//Follow the best moves stored in the transposition table from this state, for up to maxLength moves.
+	//The state is left as it was
+	public List<Move> getPrincipalVariation(ChessState state, int maxLength)
+	{
+		List<Move> line = new ArrayList<Move>();
+		if (mTable == null)
+		{
+			return line;
+		}
+
+		ChessState position = state.copy();
+		while (line.size() < maxLength)
+		{
+			long key = tableKey(position, position.getTurn() == ChessBoard.WHITE);
+			long entry = (key == 0)?0:mTable.probe(key);
+			if (entry == 0)
+			{
+				break;
+			}
+
+			Move move = new MoveIterator(position).get(TranspositionTable.getMoveIndex(entry));
+			if ((move == null)||!position.doMove(move))
+			{
+				break;
+			}
+			line.add(move);
+		}
+
+		return line;
+	}
+
+	//True if a score (from either side's point of view) is a forced mate
+	public static boolean isMateScore(double score)
+	{
+		return Math.abs(score) >= MATE_THRESHOLD;
+	}
+
+	//The number of half moves until the mate, for a mate score from a search of a position rootPly half
+	//moves into the game (see ChessState.getPly())
+	public static int getMatePlies(double score, int rootPly)
+	{
+		return MATE_SCORE - (int)Math.abs(score) - rootPly;
+	}
+
+	//Orders captures by the value of the piece taken, then (most valuable victim, least valuable attacker)
+	//by the value of the piece taking it.  Needs a ChessState
+	public static class CaptureValueOrdering extends MoveOrdering
+	{
+		@Override
+		public int score(GameState state, Move move, int ply)
+		{
+			if (!move.isCapture())
+			{
+				return 0;
+			}
+
+			ChessBoard board = ((ChessState)state).getBoard();
+			int code = ((ChessMove)move).getCode();
+			int victim = board.getPieceIndex(ChessMove.getTo(code));
+			int attacker = board.getPieceIndex(ChessMove.getFrom(code));
+
+			//En passant lands on an empty square
+			int victimValue = (victim == ChessBoard.EMPTY)?PIECE_VALUES[0]:PIECE_VALUES[victim % ChessPiece.TYPES];
+			return CaptureOrdering.CAPTURE_SCORE + 16*victimValue - PIECE_VALUES[attacker % ChessPiece.TYPES]/16;
+		}
+	}
+}
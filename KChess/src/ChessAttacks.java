@@ -0,0 +1,269 @@
+//Precomputed attack bitboards for every piece on every square.
+//
+//Knights, kings and pawns just look their attacks up by square.  Bishops and rooks use "magic bitboards":
+//the occupied squares on a slider's lines (excluding the edge squares, which can't block anything) are
+//multiplied by a magic number and shifted, which maps every possible set of blockers to a distinct index
+//into a table of attacks.  So a sliding attack costs an AND, a multiply, a shift and a lookup.
+//
+//The magic numbers are found when the class loads, by trying random sparse numbers until one maps every
+//blocker set without a collision.  The random numbers are seeded per rank, with seeds known to find magics
+//quickly (the ones Stockfish uses with the same generator), so this takes a fraction of a second.
+//
+//The attack patterns come from ChessPiece's move offsets, so they agree with the offset-walking rules.
+
+public class ChessAttacks {
+
+	public static final long FILE_A = 0x0101010101010101L;
+	public static final long FILE_H = FILE_A << 7;
+	public static final long RANK_1 = 0xFFL;
+	public static final long RANK_8 = RANK_1 << 56;
+
+	private static final long[] MAGIC_SEEDS = {728, 10316, 55013, 32803, 12281, 15100, 16645, 255};
+
+	private static final long[] KNIGHT = new long[64];
+	private static final long[] KING = new long[64];
+	private static final long[][] PAWN = new long[2][64];
+
+	private static final long[] ROOK_MASK = new long[64];
+	private static final long[] ROOK_MAGIC = new long[64];
+	private static final int[] ROOK_SHIFT = new int[64];
+	private static final int[] ROOK_OFFSET = new int[64];
+	private static final long[] ROOK_TABLE;
+
+	private static final long[] BISHOP_MASK = new long[64];
+	private static final long[] BISHOP_MAGIC = new long[64];
+	private static final int[] BISHOP_SHIFT = new int[64];
+	private static final int[] BISHOP_OFFSET = new int[64];
+	private static final long[] BISHOP_TABLE;
+
+	//Squares strictly between two squares on a line (or 0 if they're not on a line)
+	private static final long[][] BETWEEN = new long[64][64];
+
+	static
+	{
+		for (int square=0; square<64; square++)
+		{
+			KNIGHT[square] = stepAttacks(square, ChessPiece.get(ChessPiece.ChessPieceType.KNIGHT, 0).getMoveOffsets());
+			KING[square] = stepAttacks(square, ChessPiece.get(ChessPiece.ChessPieceType.KING, 0).getMoveOffsets());
+			PAWN[0][square] = stepAttacks(square, ChessPiece.get(ChessPiece.ChessPieceType.PAWN, 0).getCaptureOffset());
+			PAWN[1][square] = stepAttacks(square, ChessPiece.get(ChessPiece.ChessPieceType.PAWN, 1).getCaptureOffset());
+		}
+
+		int[] rookOffsets = ChessPiece.get(ChessPiece.ChessPieceType.ROOK, 0).getMoveOffsets();
+		int[] bishopOffsets = ChessPiece.get(ChessPiece.ChessPieceType.BISHOP, 0).getMoveOffsets();
+		ROOK_TABLE = initMagics(rookOffsets, ROOK_MASK, ROOK_MAGIC, ROOK_SHIFT, ROOK_OFFSET);
+		BISHOP_TABLE = initMagics(bishopOffsets, BISHOP_MASK, BISHOP_MAGIC, BISHOP_SHIFT, BISHOP_OFFSET);
+
+		int[] queenOffsets = ChessPiece.get(ChessPiece.ChessPieceType.QUEEN, 0).getMoveOffsets();
+		for (int from=0; from<64; from++)
+		{
+			for (int i=0; i<queenOffsets.length; i+=2)
+			{
+				long between = 0;
+				int rank = ChessBoard.getRank(from) + queenOffsets[i];
+				int file = ChessBoard.getFile(from) + queenOffsets[i+1];
+
+				while (onBoard(rank, file))
+				{
+					int to = ChessBoard.square(rank, file);
+					BETWEEN[from][to] = between;
+					between |= 1L << to;
+
+					rank += queenOffsets[i];
+					file += queenOffsets[i+1];
+				}
+			}
+		}
+	}
+
+	public static long knight(int square)
+	{
+		return KNIGHT[square];
+	}
+
+	public static long king(int square)
+	{
+		return KING[square];
+	}
+
+	//Squares attacked by a pawn belonging to player, on square
+	public static long pawn(int player, int square)
+	{
+		return PAWN[player][square];
+	}
+
+	public static long rook(int square, long occupied)
+	{
+		return ROOK_TABLE[ROOK_OFFSET[square] + (int)(((occupied & ROOK_MASK[square])*ROOK_MAGIC[square]) >>> ROOK_SHIFT[square])];
+	}
+
+	public static long bishop(int square, long occupied)
+	{
+		return BISHOP_TABLE[BISHOP_OFFSET[square] + (int)(((occupied & BISHOP_MASK[square])*BISHOP_MAGIC[square]) >>> BISHOP_SHIFT[square])];
+	}
+
+	public static long queen(int square, long occupied)
+	{
+		return rook(square, occupied) | bishop(square, occupied);
+	}
+
+	//Squares strictly between from and to, if they share a rank, file or diagonal; otherwise 0
+	public static long between(int from, int to)
+	{
+		return BETWEEN[from][to];
+	}
+
+	/******
+	 * Table generation
+	 ******/
+
+	private static boolean onBoard(int rank, int file)
+	{
+		return (rank >= 0)&&(rank < 8)&&(file >= 0)&&(file < 8);
+	}
+
+	private static long stepAttacks(int square, int[] offsets)
+	{
+		long attacks = 0;
+
+		for (int i=0; i<offsets.length; i+=2)
+		{
+			int rank = ChessBoard.getRank(square) + offsets[i];
+			int file = ChessBoard.getFile(square) + offsets[i+1];
+			if (onBoard(rank, file))
+			{
+				attacks |= 1L << ChessBoard.square(rank, file);
+			}
+		}
+
+		return attacks;
+	}
+
+	//Walk each direction until a blocker (included) or the edge
+	private static long slidingAttacks(int square, long occupied, int[] offsets)
+	{
+		long attacks = 0;
+
+		for (int i=0; i<offsets.length; i+=2)
+		{
+			int rank = ChessBoard.getRank(square) + offsets[i];
+			int file = ChessBoard.getFile(square) + offsets[i+1];
+
+			while (onBoard(rank, file))
+			{
+				long bit = 1L << ChessBoard.square(rank, file);
+				attacks |= bit;
+				if ((occupied & bit) != 0)
+				{
+					break;
+				}
+
+				rank += offsets[i];
+				file += offsets[i+1];
+			}
+		}
+
+		return attacks;
+	}
+
+	//The squares whose occupancy matters:  the lines from square, without the last square on each
+	private static long relevantMask(int square, int[] offsets)
+	{
+		long mask = 0;
+
+		for (int i=0; i<offsets.length; i+=2)
+		{
+			int rank = ChessBoard.getRank(square) + offsets[i];
+			int file = ChessBoard.getFile(square) + offsets[i+1];
+
+			while (onBoard(rank + offsets[i], file + offsets[i+1]))
+			{
+				mask |= 1L << ChessBoard.square(rank, file);
+				rank += offsets[i];
+				file += offsets[i+1];
+			}
+		}
+
+		return mask;
+	}
+
+	//xorshift64*; random[0] is the state
+	private static long nextRandom(long[] random)
+	{
+		long x = random[0];
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		random[0] = x;
+
+		return x*0x2545F4914F6CDD1DL;
+	}
+
+	//Fill in the masks, magics, shifts and table offsets for one kind of slider, and return its table
+	private static long[] initMagics(int[] offsets, long[] masks, long[] magics, int[] shifts, int[] tableOffsets)
+	{
+		int size = 0;
+		for (int square=0; square<64; square++)
+		{
+			masks[square] = relevantMask(square, offsets);
+			shifts[square] = 64 - Long.bitCount(masks[square]);
+			tableOffsets[square] = size;
+			size += 1 << Long.bitCount(masks[square]);
+		}
+
+		long[] table = new long[size];
+		long[] occupancies = new long[4096];
+		long[] attacks = new long[4096];
+
+		//used[index] == attempt marks the table entries filled by the current attempt
+		int[] used = new int[4096];
+		int attempt = 0;
+
+		for (int square=0; square<64; square++)
+		{
+			//Every subset of the mask (the "carry-rippler" trick)
+			int count = 0;
+			long subset = 0;
+			do
+			{
+				occupancies[count] = subset;
+				attacks[count] = slidingAttacks(square, subset, offsets);
+				count++;
+				subset = (subset - masks[square]) & masks[square];
+			}
+			while (subset != 0);
+
+			long[] random = {MAGIC_SEEDS[ChessBoard.getRank(square)]};
+
+			search:
+			while (true)
+			{
+				long magic = nextRandom(random) & nextRandom(random) & nextRandom(random);
+				if (Long.bitCount((masks[square]*magic) & 0xFF00000000000000L) < 6)
+				{
+					continue;
+				}
+
+				attempt++;
+				for (int i=0; i<count; i++)
+				{
+					int index = (int)((occupancies[i]*magic) >>> shifts[square]);
+					if (used[index] != attempt)
+					{
+						used[index] = attempt;
+						table[tableOffsets[square] + index] = attacks[i];
+					}
+					else if (table[tableOffsets[square] + index] != attacks[i])
+					{
+						continue search;
+					}
+				}
+
+				magics[square] = magic;
+				break;
+			}
+		}
+
+		return table;
+	}
+}
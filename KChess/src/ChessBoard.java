@@ -1,4 +1,872 @@
+import java.util.Arrays;
+
+import ksk.game.ZobristKeys;
+
+//Tracks the location of all pieces on the board.  Nobody should ever get a reference to this object except
+//the ChessEngine (and the ChessJudge, which it hands the board to).
+//
+//Pieces are held as twelve bitboards, one 64-bit mask per piece (see ChessPiece.getIndex()), with bit
+//(rank*8 + file) set for each square holding that piece.  Rank 0 is white's back rank and file 0 is the
+//a-file, so a1 is square 0 and h8 is square 63.  The piece on each square is also kept in a plain array,
+//so getPiece() doesn't have to search the bitboards.
+//
+//The board also holds the rest of the position:  the player to move (white is player 0), castling rights,
+//the en passant square and the move clocks.  Moves can be made and unmade in place, and pseudo-legal moves
+//are generated straight into an int array (see ChessMove for the packing), so neither allocates.  Moves
+//that leave the king in check, and castling out of or through check, are left for the ChessJudge to
+//reject.
+//
+//A Zobrist hash key of the position (pieces, player to move, castling rights and en passant square) is
+//kept up to date as pieces move, for transposition tables and opening books.
 
 public class ChessBoard {
 
+	public static final int WHITE = 0;
+	public static final int BLACK = 1;
+
+	//No piece on a square; no en passant square
+	public static final int EMPTY = -1;
+	public static final int NO_SQUARE = -1;
+
+	//Castling rights
+	public static final int WHITE_KINGSIDE = 1;
+	public static final int WHITE_QUEENSIDE = 2;
+	public static final int BLACK_KINGSIDE = 4;
+	public static final int BLACK_QUEENSIDE = 8;
+
+	public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	//The most pseudo-legal moves in any reachable position is 218; leave some room
+	public static final int MAX_MOVES = 256;
+
+	private static final int PAWN = ChessPiece.ChessPieceType.PAWN.ordinal();
+	private static final int KNIGHT = ChessPiece.ChessPieceType.KNIGHT.ordinal();
+	private static final int BISHOP = ChessPiece.ChessPieceType.BISHOP.ordinal();
+	private static final int ROOK = ChessPiece.ChessPieceType.ROOK.ordinal();
+	private static final int QUEEN = ChessPiece.ChessPieceType.QUEEN.ordinal();
+	private static final int KING = ChessPiece.ChessPieceType.KING.ordinal();
+
+	private static final long RANK_3 = 0xFFL << 16;
+	private static final long RANK_6 = 0xFFL << 40;
+
+	//Zobrist keys:  one per piece per square, then the player to move (black), castling rights, en passant file
+	private static final int TURN_KEY = ChessPiece.PIECES*64;
+	private static final int CASTLING_KEYS = TURN_KEY + 1;
+	private static final int EN_PASSANT_KEYS = CASTLING_KEYS + 16;
+	private static final ZobristKeys KEYS = new ZobristKeys(EN_PASSANT_KEYS + 8);
+
+	//Castling rights kept when a piece moves from or to each square
+	private static final int[] CASTLING_MASK = new int[64];
+	static
+	{
+		for (int i=0; i<64; i++)
+		{
+			CASTLING_MASK[i] = 0xF;
+		}
+		CASTLING_MASK[square(0, 4)] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+		CASTLING_MASK[square(0, 7)] &= ~WHITE_KINGSIDE;
+		CASTLING_MASK[square(0, 0)] &= ~WHITE_QUEENSIDE;
+		CASTLING_MASK[square(7, 4)] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+		CASTLING_MASK[square(7, 7)] &= ~BLACK_KINGSIDE;
+		CASTLING_MASK[square(7, 0)] &= ~BLACK_QUEENSIDE;
+	}
+
+	private long[] mPieces = new long[ChessPiece.PIECES];
+	private long[] mOccupied = new long[2];
+	private long mAll;
+	private int[] mBoard = new int[64];
+
+	private int mTurn;
+	private int mCastling;
+	private int mEnPassant = NO_SQUARE;
+	private int mHalfMoves;
+	private int mFullMoves = 1;
+
+	private long mHashKey;
+
+	//State that makeMove() can't recover from the move itself, packed into one long per move, and the hash
+	//key from before each move
+	private long[] mUndo = new long[64];
+	private long[] mUndoKeys = new long[64];
+	private int mUndoCount;
+
+	//Changed whenever the position changes, so position data can be cached against it
+	private int mModCount;
+
+	//Create an empty board
+	public ChessBoard()
+	{
+		for (int i=0; i<64; i++)
+		{
+			mBoard[i] = EMPTY;
+		}
+	}
+
+	//Copy an existing board (but not its undo history)
+	public ChessBoard(ChessBoard board)
+	{
+		mPieces = board.mPieces.clone();
+		mOccupied = board.mOccupied.clone();
+		mAll = board.mAll;
+		mBoard = board.mBoard.clone();
+
+		mTurn = board.mTurn;
+		mCastling = board.mCastling;
+		mEnPassant = board.mEnPassant;
+		mHalfMoves = board.mHalfMoves;
+		mFullMoves = board.mFullMoves;
+		mHashKey = board.mHashKey;
+	}
+
+	//Copy an existing board, but including only pieces belonging to one player
+	public ChessBoard(ChessBoard board, int player)
+	{
+		this();
+
+		for (int square=0; square<64; square++)
+		{
+			int piece = board.mBoard[square];
+			if ((piece != EMPTY)&&(piece/ChessPiece.TYPES == player))
+			{
+				put(piece, square);
+			}
+		}
+
+		mTurn = board.mTurn;
+		mCastling = board.mCastling & ((player == WHITE)?(WHITE_KINGSIDE | WHITE_QUEENSIDE):(BLACK_KINGSIDE | BLACK_QUEENSIDE));
+		mHalfMoves = board.mHalfMoves;
+		mFullMoves = board.mFullMoves;
+		mHashKey = computeHashKey();
+	}
+
+	//The standard starting position
+	public static ChessBoard newGame()
+	{
+		return fromFen(START_FEN);
+	}
+
+	//Load a position in Forsyth-Edwards Notation.  The move clocks are optional
+	public static ChessBoard fromFen(String fen)
+	{
+		String[] fields = fen.trim().split("\\s+");
+		if (fields.length < 4)
+		{
+			throw new IllegalArgumentException("Invalid FEN: " + fen);
+		}
+
+		ChessBoard board = new ChessBoard();
+
+		int rank = 7;
+		int file = 0;
+		for (char c : fields[0].toCharArray())
+		{
+			if (c == '/')
+			{
+				rank--;
+				file = 0;
+			}
+			else if ((c >= '1')&&(c <= '8'))
+			{
+				file += c - '0';
+			}
+			else
+			{
+				ChessPiece piece = ChessPiece.fromSymbol(c);
+				if ((piece == null)||(rank < 0)||(file > 7))
+				{
+					throw new IllegalArgumentException("Invalid FEN: " + fen);
+				}
+				board.put(piece.getIndex(), square(rank, file++));
+			}
+		}
+
+		board.mTurn = fields[1].equals("b")?BLACK:WHITE;
+
+		String rights = "KQkq";
+		for (int i=0; i<rights.length(); i++)
+		{
+			if (fields[2].indexOf(rights.charAt(i)) >= 0)
+			{
+				board.mCastling |= 1 << i;
+			}
+		}
+
+		board.mEnPassant = fields[3].equals("-")?NO_SQUARE:parseSquare(fields[3]);
+
+		try
+		{
+			board.mHalfMoves = (fields.length > 4)?Integer.parseInt(fields[4]):0;
+			board.mFullMoves = (fields.length > 5)?Integer.parseInt(fields[5]):1;
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid FEN: " + fen);
+		}
+
+		board.mHashKey = board.computeHashKey();
+		return board;
+	}
+
+	public String toFen()
+	{
+		StringBuilder fen = new StringBuilder();
+
+		for (int rank=7; rank>=0; rank--)
+		{
+			int empty = 0;
+			for (int file=0; file<8; file++)
+			{
+				int piece = mBoard[square(rank, file)];
+				if (piece == EMPTY)
+				{
+					empty++;
+					continue;
+				}
+
+				if (empty > 0)
+				{
+					fen.append(empty);
+					empty = 0;
+				}
+				fen.append(ChessPiece.get(piece).getSymbol());
+			}
+
+			if (empty > 0)
+			{
+				fen.append(empty);
+			}
+			if (rank > 0)
+			{
+				fen.append('/');
+			}
+		}
+
+		fen.append((mTurn == WHITE)?" w ":" b ");
+
+		String rights = "KQkq";
+		for (int i=0; i<rights.length(); i++)
+		{
+			if ((mCastling & (1 << i)) != 0)
+			{
+				fen.append(rights.charAt(i));
+			}
+		}
+		if (mCastling == 0)
+		{
+			fen.append('-');
+		}
+
+		fen.append(' ').append((mEnPassant == NO_SQUARE)?"-":getSquareName(mEnPassant));
+		fen.append(' ').append(mHalfMoves).append(' ').append(mFullMoves);
+
+		return fen.toString();
+	}
+
+	/******
+	 * Squares
+	 ******/
+
+	public static int square(int rank, int file)
+	{
+		return rank*8 + file;
+	}
+
+	public static int getRank(int square)
+	{
+		return square >>> 3;
+	}
+
+	public static int getFile(int square)
+	{
+		return square & 7;
+	}
+
+	//Algebraic name e.g. "e4"
+	public static String getSquareName(int square)
+	{
+		return "" + (char)('a' + getFile(square)) + (char)('1' + getRank(square));
+	}
+
+	public static int parseSquare(String name)
+	{
+		if ((name.length() != 2)||(name.charAt(0) < 'a')||(name.charAt(0) > 'h')||(name.charAt(1) < '1')||(name.charAt(1) > '8'))
+		{
+			throw new IllegalArgumentException("Invalid square " + name);
+		}
+
+		return square(name.charAt(1) - '1', name.charAt(0) - 'a');
+	}
+
+	/******
+	 * Pieces
+	 ******/
+
+	public ChessPiece getPiece(int rank, int file)
+	{
+		int piece = mBoard[square(rank, file)];
+		return (piece == EMPTY)?null:ChessPiece.get(piece);
+	}
+
+	//The piece index on a square (see ChessPiece.getIndex()), or EMPTY
+	public int getPieceIndex(int square)
+	{
+		return mBoard[square];
+	}
+
+	//Returns false if the square is already occupied
+	public boolean addPiece(ChessPiece piece, int rank, int file)
+	{
+		int square = square(rank, file);
+		if (mBoard[square] != EMPTY)
+		{
+			return false;
+		}
+
+		put(piece.getIndex(), square);
+		mModCount++;
+		return true;
+	}
+
+	//Returns the piece that was removed, or null if the square was empty
+	public ChessPiece removePiece(int rank, int file)
+	{
+		int square = square(rank, file);
+		int piece = mBoard[square];
+		if (piece == EMPTY)
+		{
+			return null;
+		}
+
+		remove(piece, square);
+		mModCount++;
+		return ChessPiece.get(piece);
+	}
+
+	//All of the pieces on the board, from a1 to h8
+	public ChessPiece[] getPieces()
+	{
+		return getPieces(mAll);
+	}
+
+	//All of the pieces belonging to a particular player
+	public ChessPiece[] getPieces(int player)
+	{
+		return getPieces(mOccupied[player]);
+	}
+
+	private ChessPiece[] getPieces(long squares)
+	{
+		ChessPiece[] pieces = new ChessPiece[Long.bitCount(squares)];
+
+		for (int i=0; squares!=0; i++, squares&=squares-1)
+		{
+			pieces[i] = ChessPiece.get(mBoard[Long.numberOfTrailingZeros(squares)]);
+		}
+
+		return pieces;
+	}
+
+	//Material balance from white's point of view:  white's value minus black's
+	public int getValue()
+	{
+		return getValue(WHITE) - getValue(BLACK);
+	}
+
+	//Total value of the pieces belonging to a particular player
+	public int getValue(int player)
+	{
+		int value = 0;
+
+		for (int type=0; type<ChessPiece.TYPES; type++)
+		{
+			int piece = player*ChessPiece.TYPES + type;
+			value += Long.bitCount(mPieces[piece])*ChessPiece.get(piece).getValue();
+		}
+
+		return value;
+	}
+
+	//The bitboard for one piece
+	public long getBitboard(ChessPiece.ChessPieceType type, int player)
+	{
+		return mPieces[player*ChessPiece.TYPES + type.ordinal()];
+	}
+
+	//The bitboard for a piece index
+	public long getBitboard(int piece)
+	{
+		return mPieces[piece];
+	}
+
+	//Squares occupied by one player
+	public long getOccupied(int player)
+	{
+		return mOccupied[player];
+	}
+
+	//Squares occupied by anyone
+	public long getOccupied()
+	{
+		return mAll;
+	}
+
+	public int getKingSquare(int player)
+	{
+		long king = mPieces[player*ChessPiece.TYPES + KING];
+		return (king == 0)?NO_SQUARE:Long.numberOfTrailingZeros(king);
+	}
+
+	private void put(int piece, int square)
+	{
+		long bit = 1L << square;
+		mPieces[piece] |= bit;
+		mOccupied[piece/ChessPiece.TYPES] |= bit;
+		mAll |= bit;
+		mBoard[square] = piece;
+		mHashKey ^= KEYS.get(piece*64 + square);
+	}
+
+	private void remove(int piece, int square)
+	{
+		long bit = ~(1L << square);
+		mPieces[piece] &= bit;
+		mOccupied[piece/ChessPiece.TYPES] &= bit;
+		mAll &= bit;
+		mBoard[square] = EMPTY;
+		mHashKey ^= KEYS.get(piece*64 + square);
+	}
+
+	private void move(int piece, int from, int to)
+	{
+		long bits = (1L << from) | (1L << to);
+		mPieces[piece] ^= bits;
+		mOccupied[piece/ChessPiece.TYPES] ^= bits;
+		mAll ^= bits;
+		mBoard[from] = EMPTY;
+		mBoard[to] = piece;
+		mHashKey ^= KEYS.get(piece*64 + from) ^ KEYS.get(piece*64 + to);
+	}
+
+	/******
+	 * Position state
+	 ******/
+
+	//The player to move
+	public int getTurn()
+	{
+		return mTurn;
+	}
+
+	public void setTurn(int player)
+	{
+		if (player != mTurn)
+		{
+			mHashKey ^= KEYS.get(TURN_KEY);
+		}
+		mTurn = player;
+		mModCount++;
+	}
+
+	//Castling rights still held (WHITE_KINGSIDE etc.).  Doesn't mean castling is possible right now
+	public int getCastlingRights()
+	{
+		return mCastling;
+	}
+
+	public void setCastlingRights(int rights)
+	{
+		mHashKey ^= KEYS.get(CASTLING_KEYS + mCastling);
+		mCastling = rights & 0xF;
+		mHashKey ^= KEYS.get(CASTLING_KEYS + mCastling);
+		mModCount++;
+	}
+
+	//The square a pawn can capture onto en passant, or NO_SQUARE
+	public int getEnPassantSquare()
+	{
+		return mEnPassant;
+	}
+
+	//Moves since the last capture or pawn move
+	public int getHalfMoveClock()
+	{
+		return mHalfMoves;
+	}
+
+	public int getFullMoveNumber()
+	{
+		return mFullMoves;
+	}
+
+	//Zobrist hash key of the position
+	public long getHashKey()
+	{
+		return mHashKey;
+	}
+
+	//The hash key worked out from scratch; the same as getHashKey(), unless something is broken
+	public long computeHashKey()
+	{
+		long key = KEYS.get(CASTLING_KEYS + mCastling);
+
+		for (int square=0; square<64; square++)
+		{
+			if (mBoard[square] != EMPTY)
+			{
+				key ^= KEYS.get(mBoard[square]*64 + square);
+			}
+		}
+		if (mTurn == BLACK)
+		{
+			key ^= KEYS.get(TURN_KEY);
+		}
+		if (mEnPassant != NO_SQUARE)
+		{
+			key ^= KEYS.get(EN_PASSANT_KEYS + getFile(mEnPassant));
+		}
+
+		return key;
+	}
+
+	//Changes every time the position does (but may repeat after a very long game)
+	public int getModCount()
+	{
+		return mModCount;
+	}
+
+	/******
+	 * Attacks
+	 ******/
+
+	//Pieces belonging to attacker that attack square, given the occupied squares
+	public long getAttackers(int square, int attacker, long occupied)
+	{
+		int base = attacker*ChessPiece.TYPES;
+		long queens = mPieces[base + QUEEN];
+
+		return (ChessAttacks.pawn(attacker ^ 1, square) & mPieces[base + PAWN])
+				| (ChessAttacks.knight(square) & mPieces[base + KNIGHT])
+				| (ChessAttacks.king(square) & mPieces[base + KING])
+				| (ChessAttacks.bishop(square, occupied) & (mPieces[base + BISHOP] | queens))
+				| (ChessAttacks.rook(square, occupied) & (mPieces[base + ROOK] | queens));
+	}
+
+	public boolean isAttacked(int square, int attacker)
+	{
+		return getAttackers(square, attacker, mAll) != 0;
+	}
+
+	/******
+	 * Making moves
+	 ******/
+
+	//Make a (pseudo-legal) move in place, for the player to move.  Nothing is checked; use the ChessJudge
+	//for legality
+	public void makeMove(int move)
+	{
+		int from = ChessMove.getFrom(move);
+		int to = ChessMove.getTo(move);
+		int kind = ChessMove.getKind(move);
+		int piece = mBoard[from];
+
+		int captureSquare = (kind == ChessMove.EN_PASSANT)?(to + ((mTurn == WHITE)?-8:8)):to;
+		int captured = mBoard[captureSquare];
+
+		if (mUndoCount == mUndo.length)
+		{
+			mUndo = Arrays.copyOf(mUndo, 2*mUndo.length);
+			mUndoKeys = Arrays.copyOf(mUndoKeys, 2*mUndoKeys.length);
+		}
+		mUndoKeys[mUndoCount] = mHashKey;
+		mUndo[mUndoCount++] = (captured + 1) | (mCastling << 4) | ((mEnPassant + 1) << 8) | ((long)mHalfMoves << 16);
+
+		if (captured != EMPTY)
+		{
+			remove(captured, captureSquare);
+		}
+		move(piece, from, to);
+
+		int promotion = ChessMove.getPromotion(move);
+		if (promotion != 0)
+		{
+			remove(piece, to);
+			put(mTurn*ChessPiece.TYPES + promotion, to);
+		}
+		else if (kind == ChessMove.CASTLE)
+		{
+			int rook = mTurn*ChessPiece.TYPES + ROOK;
+			if (to > from)
+			{
+				move(rook, to + 1, to - 1);
+			}
+			else
+			{
+				move(rook, to - 2, to + 1);
+			}
+		}
+
+		int castling = mCastling & CASTLING_MASK[from] & CASTLING_MASK[to];
+		mHashKey ^= KEYS.get(CASTLING_KEYS + mCastling) ^ KEYS.get(CASTLING_KEYS + castling) ^ KEYS.get(TURN_KEY);
+		mCastling = castling;
+
+		if (mEnPassant != NO_SQUARE)
+		{
+			mHashKey ^= KEYS.get(EN_PASSANT_KEYS + getFile(mEnPassant));
+		}
+		mEnPassant = (kind == ChessMove.DOUBLE_PUSH)?((from + to) >>> 1):NO_SQUARE;
+		if (mEnPassant != NO_SQUARE)
+		{
+			mHashKey ^= KEYS.get(EN_PASSANT_KEYS + getFile(mEnPassant));
+		}
+		mHalfMoves = ((captured != EMPTY)||(piece % ChessPiece.TYPES == PAWN))?0:(mHalfMoves + 1);
+		if (mTurn == BLACK)
+		{
+			mFullMoves++;
+		}
+		mTurn ^= 1;
+		mModCount++;
+	}
+
+	//Take back the last move made with makeMove()
+	public void unmakeMove(int move)
+	{
+		mModCount++;
+		mTurn ^= 1;
+		if (mTurn == BLACK)
+		{
+			mFullMoves--;
+		}
+
+		long undo = mUndo[--mUndoCount];
+		int captured = (int)(undo & 0xF) - 1;
+		mCastling = (int)(undo >>> 4) & 0xF;
+		mEnPassant = (int)((undo >>> 8) & 0xFF) - 1;
+		mHalfMoves = (int)(undo >>> 16);
+
+		int from = ChessMove.getFrom(move);
+		int to = ChessMove.getTo(move);
+		int kind = ChessMove.getKind(move);
+
+		if (ChessMove.getPromotion(move) != 0)
+		{
+			remove(mBoard[to], to);
+			put(mTurn*ChessPiece.TYPES + PAWN, to);
+		}
+		else if (kind == ChessMove.CASTLE)
+		{
+			int rook = mTurn*ChessPiece.TYPES + ROOK;
+			if (to > from)
+			{
+				move(rook, to - 1, to + 1);
+			}
+			else
+			{
+				move(rook, to + 1, to - 2);
+			}
+		}
+		move(mBoard[to], to, from);
+
+		if (captured != EMPTY)
+		{
+			put(captured, (kind == ChessMove.EN_PASSANT)?(to + ((mTurn == WHITE)?-8:8)):to);
+		}
+
+		mHashKey = mUndoKeys[mUndoCount];
+	}
+
+	/******
+	 * Move generation
+	 ******/
+
+	//Add the pseudo-legal moves for the player to move to moves, starting at index count.  Returns the new
+	//count.  moves needs room for MAX_MOVES more
+	public int generateMoves(int[] moves, int count)
+	{
+		return generateMoves(moves, count, ~0L, ~0L, true);
+	}
+
+	//As generateMoves(), but only captures (including en passant)
+	public int generateCaptures(int[] moves, int count)
+	{
+		long enemy = mOccupied[mTurn ^ 1];
+		return generateMoves(moves, count, enemy, enemy, false);
+	}
+
+	//Moves by the player to move that end on targets (en passant counts if the captured pawn is a target),
+	//except that king moves end on kingTargets.  Castling is included if castles is set
+	int generateMoves(int[] moves, int count, long targets, long kingTargets, boolean castles)
+	{
+		int us = mTurn;
+		int base = us*ChessPiece.TYPES;
+		long occupied = mAll;
+		targets &= ~mOccupied[us];
+
+		count = generatePawnMoves(moves, count, targets);
+
+		for (long pieces=mPieces[base + KNIGHT]; pieces!=0; pieces&=pieces-1)
+		{
+			int from = Long.numberOfTrailingZeros(pieces);
+			count = addMoves(moves, count, from, ChessAttacks.knight(from) & targets);
+		}
+
+		long queens = mPieces[base + QUEEN];
+		for (long pieces=mPieces[base + BISHOP] | queens; pieces!=0; pieces&=pieces-1)
+		{
+			int from = Long.numberOfTrailingZeros(pieces);
+			count = addMoves(moves, count, from, ChessAttacks.bishop(from, occupied) & targets);
+		}
+
+		for (long pieces=mPieces[base + ROOK] | queens; pieces!=0; pieces&=pieces-1)
+		{
+			int from = Long.numberOfTrailingZeros(pieces);
+			count = addMoves(moves, count, from, ChessAttacks.rook(from, occupied) & targets);
+		}
+
+		int king = getKingSquare(us);
+		if (king != NO_SQUARE)
+		{
+			count = addMoves(moves, count, king, ChessAttacks.king(king) & kingTargets & ~mOccupied[us]);
+
+			if (castles)
+			{
+				count = generateCastles(moves, count, king);
+			}
+		}
+
+		return count;
+	}
+
+	private static int addMoves(int[] moves, int count, int from, long targets)
+	{
+		for (; targets!=0; targets&=targets-1)
+		{
+			moves[count++] = from | (Long.numberOfTrailingZeros(targets) << 6);
+		}
+
+		return count;
+	}
+
+	private int generatePawnMoves(int[] moves, int count, long targets)
+	{
+		long pawns = mPieces[mTurn*ChessPiece.TYPES + PAWN];
+		long empty = ~mAll;
+		long enemy = mOccupied[mTurn ^ 1];
+
+		//Destinations, and the distance back to the pawn that moved there
+		long single;
+		long doubles;
+		long left;
+		long right;
+		int forward;
+		long lastRank;
+
+		if (mTurn == WHITE)
+		{
+			single = (pawns << 8) & empty;
+			doubles = ((single & RANK_3) << 8) & empty & targets;
+			left = ((pawns & ~ChessAttacks.FILE_A) << 7) & enemy & targets;
+			right = ((pawns & ~ChessAttacks.FILE_H) << 9) & enemy & targets;
+			forward = 8;
+			lastRank = ChessAttacks.RANK_8;
+		}
+		else
+		{
+			single = (pawns >>> 8) & empty;
+			doubles = ((single & RANK_6) >>> 8) & empty & targets;
+			left = ((pawns & ~ChessAttacks.FILE_A) >>> 9) & enemy & targets;
+			right = ((pawns & ~ChessAttacks.FILE_H) >>> 7) & enemy & targets;
+			forward = -8;
+			lastRank = ChessAttacks.RANK_1;
+		}
+		single &= targets;
+
+		count = addPawnMoves(moves, count, single, forward, lastRank);
+		count = addPawnMoves(moves, count, left, forward - 1, lastRank);
+		count = addPawnMoves(moves, count, right, forward + 1, lastRank);
+
+		for (; doubles!=0; doubles&=doubles-1)
+		{
+			int to = Long.numberOfTrailingZeros(doubles);
+			moves[count++] = ChessMove.encode(to - 2*forward, to, ChessMove.DOUBLE_PUSH, 0);
+		}
+
+		if (mEnPassant != NO_SQUARE)
+		{
+			long captured = 1L << (mEnPassant - forward);
+			if ((targets & ((1L << mEnPassant) | captured)) != 0)
+			{
+				for (long from=ChessAttacks.pawn(mTurn ^ 1, mEnPassant) & pawns; from!=0; from&=from-1)
+				{
+					moves[count++] = ChessMove.encode(Long.numberOfTrailingZeros(from), mEnPassant, ChessMove.EN_PASSANT, 0);
+				}
+			}
+		}
+
+		return count;
+	}
+
+	//Pawn moves to each of destinations, from offset squares back; promotions give a move for each piece
+	private static int addPawnMoves(int[] moves, int count, long destinations, int offset, long lastRank)
+	{
+		for (long promotions=destinations & lastRank; promotions!=0; promotions&=promotions-1)
+		{
+			int to = Long.numberOfTrailingZeros(promotions);
+			for (int piece=QUEEN; piece>=KNIGHT; piece--)
+			{
+				moves[count++] = ChessMove.encode(to - offset, to, ChessMove.NORMAL, piece);
+			}
+		}
+
+		for (destinations&=~lastRank; destinations!=0; destinations&=destinations-1)
+		{
+			int to = Long.numberOfTrailingZeros(destinations);
+			moves[count++] = (to - offset) | (to << 6);
+		}
+
+		return count;
+	}
+
+	//Castling, if the rights are held and the squares between king and rook are empty.  Whether the king
+	//is in check, or passes through or lands on an attacked square, is up to the ChessJudge
+	private int generateCastles(int[] moves, int count, int king)
+	{
+		int kingside = (mTurn == WHITE)?WHITE_KINGSIDE:BLACK_KINGSIDE;
+		int queenside = (mTurn == WHITE)?WHITE_QUEENSIDE:BLACK_QUEENSIDE;
+		int home = (mTurn == WHITE)?square(0, 4):square(7, 4);
+		int rook = mTurn*ChessPiece.TYPES + ROOK;
+
+		if ((king != home)||((mCastling & (kingside | queenside)) == 0))
+		{
+			return count;
+		}
+
+		if (((mCastling & kingside) != 0)&&(mBoard[home + 3] == rook)&&((mAll & ChessAttacks.between(home, home + 3)) == 0))
+		{
+			moves[count++] = ChessMove.encode(home, home + 2, ChessMove.CASTLE, 0);
+		}
+		if (((mCastling & queenside) != 0)&&(mBoard[home - 4] == rook)&&((mAll & ChessAttacks.between(home, home - 4)) == 0))
+		{
+			moves[count++] = ChessMove.encode(home, home - 2, ChessMove.CASTLE, 0);
+		}
+
+		return count;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder str = new StringBuilder();
+
+		for (int rank=7; rank>=0; rank--)
+		{
+			for (int file=0; file<8; file++)
+			{
+				int piece = mBoard[square(rank, file)];
+				str.append((piece == EMPTY)?'.':ChessPiece.get(piece).getSymbol());
+			}
+			str.append('\n');
+		}
+
+		return str.toString();
+	}
 }
@@ -0,0 +1,222 @@
+
+//A chess clock for two players.
+//
+//Each player starts with the same time.  After each move the player gets the increment added (Fischer
+//style), and at the start of each move there's a delay before their time starts running down (simple
+//or "US" delay:  a move made within the delay costs nothing).  Times are measured with System.nanoTime(),
+//and the running clock is read live, so getRemainingMillis() is accurate at any moment.
+//
+//A clock with no initial time is untimed:  it never runs out, but still measures the time each player
+//has used.  All methods are synchronized, so the engine and the players can read the clock at any time.
+
+public class ChessClock {
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private long mInitial;
+	private long mIncrement;
+	private long mDelay;
+
+	private long[] mRemaining = new long[2];
+	private long[] mUsed = new long[2];
+
+	//The player whose move it is (or -1), and whether their clock is actually running
+	private int mPlayer = -1;
+	private boolean mRunning;
+
+	//When the clock last started running, and how long the current move had already taken before that
+	//(from before a pause)
+	private long mStartTime;
+	private long mMoveTime;
+
+	public ChessClock(long initialMillis, long incrementMillis, long delayMillis)
+	{
+		mInitial = Math.max(0, initialMillis)*NANOS_PER_MILLI;
+		mIncrement = Math.max(0, incrementMillis)*NANOS_PER_MILLI;
+		mDelay = Math.max(0, delayMillis)*NANOS_PER_MILLI;
+
+		reset();
+	}
+
+	//Untimed
+	public ChessClock()
+	{
+		this(0, 0, 0);
+	}
+
+	public synchronized void reset()
+	{
+		mRemaining[0] = mRemaining[1] = mInitial;
+		mUsed[0] = mUsed[1] = 0;
+		mPlayer = -1;
+		mRunning = false;
+		mMoveTime = 0;
+	}
+
+	public boolean isTimed()
+	{
+		return mInitial > 0;
+	}
+
+	public long getInitialMillis()
+	{
+		return mInitial/NANOS_PER_MILLI;
+	}
+
+	public long getIncrementMillis()
+	{
+		return mIncrement/NANOS_PER_MILLI;
+	}
+
+	public long getDelayMillis()
+	{
+		return mDelay/NANOS_PER_MILLI;
+	}
+
+	//Start timing a move by player.  Any move in progress is stopped first (without an increment)
+	public synchronized void start(int player)
+	{
+		if (mPlayer >= 0)
+		{
+			charge();
+		}
+
+		mPlayer = player;
+		mMoveTime = 0;
+		mStartTime = System.nanoTime();
+		mRunning = true;
+	}
+
+	//Finish the move in progress.  Returns false (and adds no increment) if the player ran out of time
+	public synchronized boolean stop()
+	{
+		if (mPlayer < 0)
+		{
+			return true;
+		}
+
+		int player = mPlayer;
+		boolean inTime = charge();
+		if (inTime&&isTimed())
+		{
+			mRemaining[player] += mIncrement;
+		}
+
+		return inTime;
+	}
+
+	//Stop the clock without finishing the move; resume() carries on with the same move
+	public synchronized void pause()
+	{
+		if (mRunning)
+		{
+			mMoveTime += System.nanoTime() - mStartTime;
+			mRunning = false;
+		}
+	}
+
+	public synchronized void resume()
+	{
+		if ((mPlayer >= 0)&&!mRunning)
+		{
+			mStartTime = System.nanoTime();
+			mRunning = true;
+		}
+	}
+
+	//The player whose clock is running (or paused mid-move), or -1
+	public synchronized int getPlayer()
+	{
+		return mPlayer;
+	}
+
+	public synchronized boolean isRunning()
+	{
+		return mRunning;
+	}
+
+	//Time left, counting the move in progress.  Negative once the player's flag has fallen
+	public synchronized long getRemainingMillis(int player)
+	{
+		long remaining = mRemaining[player];
+		if (player == mPlayer)
+		{
+			remaining -= Math.max(0, moveTime() - mDelay);
+		}
+
+		return remaining/NANOS_PER_MILLI;
+	}
+
+	//Time used so far, counting the move in progress
+	public synchronized long getUsedMillis(int player)
+	{
+		long used = mUsed[player];
+		if (player == mPlayer)
+		{
+			used += moveTime();
+		}
+
+		return used/NANOS_PER_MILLI;
+	}
+
+	//Nanoseconds until the running player's flag falls, or Long.MAX_VALUE if it can't
+	public synchronized long getNanosUntilFlag()
+	{
+		if (!isTimed()||!mRunning)
+		{
+			return Long.MAX_VALUE;
+		}
+
+		return Math.max(0, mRemaining[mPlayer] + mDelay - moveTime());
+	}
+
+	//Time a player can spend on the current move if they expect movesToGo more moves (including this
+	//one) before the time control, keeping a small safety margin.  Untimed clocks give -1 (no limit)
+	public synchronized long getSuggestedMillis(int player, int movesToGo)
+	{
+		if (!isTimed())
+		{
+			return -1;
+		}
+
+		long remaining = getRemainingMillis(player);
+		long perMove = remaining/Math.max(1, movesToGo) + (mIncrement + mDelay)/NANOS_PER_MILLI;
+
+		return Math.max(0, Math.min(perMove, remaining - Math.min(remaining/10, 1000)));
+	}
+
+	//Time spent on the move in progress
+	private long moveTime()
+	{
+		return mRunning?(mMoveTime + System.nanoTime() - mStartTime):mMoveTime;
+	}
+
+	//Charge the move in progress to its player, and stop.  Returns false if they're out of time
+	private boolean charge()
+	{
+		long moveTime = moveTime();
+		int player = mPlayer;
+
+		mUsed[player] += moveTime;
+		mRemaining[player] -= Math.max(0, moveTime - mDelay);
+
+		mPlayer = -1;
+		mRunning = false;
+		mMoveTime = 0;
+
+		return !isTimed()||(mRemaining[player] >= 0);
+	}
+
+	//Time left for each player (time used, if untimed)
+	@Override
+	public synchronized String toString()
+	{
+		return format(0) + " / " + format(1) + (isTimed()?"":" (untimed)");
+	}
+
+	private String format(int player)
+	{
+		long millis = Math.max(0, isTimed()?getRemainingMillis(player):getUsedMillis(player));
+		return String.format("%d:%02d.%d", millis/60000, millis/1000 % 60, millis/100 % 10);
+	}
+}
@@ -1,4 +1,605 @@
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//Core component that controls the interaction between the ChessPlayers, ChessBoard, ChessJudge and the
+//ChessGUI.  It asks players for moves, uses the judge to validate them, applies them, runs the clock and
+//checks for the end of the game.
+//
+//The engine has no thread of its own, and players don't either.  When a player's turn starts, the player
+//is run on a shared executor, and a timer is set for when their flag would fall; when the move comes in
+//(or the timer fires) the next turn is set up.  So a game only uses a thread while a player is actually
+//thinking, and many games can run at once in one JVM.  The default executor is a cached pool shared by all
+//engines, which reuses threads between moves and games; engines with CPU-bound players can be given a
+//fixed pool sized to the machine instead.
+//
+//When time runs out, or the game is paused or ended, the player's thread is interrupted and any move it
+//sends afterwards is ignored.  While one player thinks, the other can ponder (see ChessPlayer.ponder()).
+//
+//All public methods are thread safe.
 
 public class ChessEngine {
-	
+
+	//How the game stands:  not started, running, paused, or the way it ended
+	public static enum ChessStatus {WAITING, RUNNING, PAUSED, CHECKMATE, STALEMATE, RESIGNATION, TIMEOUT, DRAW_AGREED,
+		FIFTY_MOVES, INSUFFICIENT_MATERIAL, FORFEIT};
+
+	private static final ThreadFactory DAEMONS = new ThreadFactory() {
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "Chess player");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	//Shared by all engines, unless they're given their own executor
+	private static final ExecutorService sPlayers = Executors.newCachedThreadPool(DAEMONS);
+
+	//Flag timers for all games
+	private static final ScheduledThreadPoolExecutor sTimers = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "Chess clock");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static
+	{
+		sTimers.setRemoveOnCancelPolicy(true);
+	}
+
+	private ChessBoard mInitialBoard;
+	private ChessBoard mBoard;
+	private ChessPlayer[] mPlayers;
+	private ChessJudge mJudge;
+	private ChessClock mClock = new ChessClock();
+	private ExecutorService mExecutor = sPlayers;
+	private boolean mPondering = true;
+
+	private ChessStatus mStatus = ChessStatus.WAITING;
+	private int mWinner = -1;
+	private Throwable mError;
+	private boolean mDrawOffered;
+	private CountDownLatch mFinished = new CountDownLatch(1);
+
+	//Moves made so far (ChessMove's packed form)
+	private int[] mMoves = new int[128];
+	private int mMoveCount;
+
+	//The current player's move, the other player's pondering, and the flag timer
+	private Task mThinking;
+	private Task mPonder;
+	private Future<?> mFlag;
+
+	//Create default Chess game; players must be added with setPlayer() before starting
+	public ChessEngine()
+	{
+		this(ChessBoard.newGame(), null, new ChessJudge());
+	}
+
+	//Specify player list
+	public ChessEngine(ChessPlayer[] players)
+	{
+		this(ChessBoard.newGame(), players, new ChessJudge());
+	}
+
+	//Allow a custom board
+	public ChessEngine(ChessBoard board)
+	{
+		this(board, null, new ChessJudge());
+	}
+
+	//Allow custom rules
+	public ChessEngine(ChessJudge judge)
+	{
+		this(ChessBoard.newGame(), null, judge);
+	}
+
+	public ChessEngine(ChessBoard board, ChessPlayer[] players)
+	{
+		this(board, players, new ChessJudge());
+	}
+
+	public ChessEngine(ChessBoard board, ChessPlayer[] players, ChessJudge judge)
+	{
+		mInitialBoard = new ChessBoard(board);
+		mBoard = new ChessBoard(board);
+		mJudge = judge;
+		mPlayers = new ChessPlayer[2];
+
+		if (players != null)
+		{
+			for (ChessPlayer player : players)
+			{
+				setPlayer(player);
+			}
+		}
+	}
+
+	//Add a player, in the seat given by its number
+	public synchronized void setPlayer(ChessPlayer player)
+	{
+		mPlayers[player.getNumber()] = player;
+		player.setEngine(this);
+	}
+
+	public synchronized ChessPlayer getPlayer(int number)
+	{
+		return mPlayers[number];
+	}
+
+	//The clock to use; must be set before the game starts
+	public synchronized void setClock(ChessClock clock)
+	{
+		mClock = clock;
+	}
+
+	public synchronized ChessClock getClock()
+	{
+		return mClock;
+	}
+
+	//Run players on this executor instead of the shared one
+	public synchronized void setExecutor(ExecutorService executor)
+	{
+		mExecutor = executor;
+	}
+
+	//Whether players get to think on their opponent's time (default true)
+	public synchronized void setPondering(boolean pondering)
+	{
+		mPondering = pondering;
+	}
+
+	//Return to starting configuration
+	public synchronized void reset()
+	{
+		cancelTasks();
+
+		mBoard = new ChessBoard(mInitialBoard);
+		mClock.reset();
+		mStatus = ChessStatus.WAITING;
+		mWinner = -1;
+		mError = null;
+		mDrawOffered = false;
+		mMoveCount = 0;
+
+		if (mFinished.getCount() == 0)
+		{
+			mFinished = new CountDownLatch(1);
+		}
+	}
+
+	//Temporarily stop the game (disallow any moves).  The player thinking is interrupted, and asked again
+	//when the game continues
+	public synchronized void pauseGame()
+	{
+		if (mStatus == ChessStatus.RUNNING)
+		{
+			mStatus = ChessStatus.PAUSED;
+			mClock.pause();
+			cancelTasks();
+		}
+	}
+
+	//Start the game, or continue allowing players to make moves after a pause
+	public synchronized void startGame()
+	{
+		if ((mStatus != ChessStatus.WAITING)&&(mStatus != ChessStatus.PAUSED))
+		{
+			return;
+		}
+		if ((mPlayers[0] == null)||(mPlayers[1] == null))
+		{
+			throw new IllegalStateException("Both players are needed to start");
+		}
+
+		if (mStatus == ChessStatus.WAITING)
+		{
+			mStatus = ChessStatus.RUNNING;
+			if (checkGameOver())
+			{
+				return;
+			}
+			mClock.start(mBoard.getTurn());
+		}
+		else
+		{
+			mStatus = ChessStatus.RUNNING;
+			mClock.resume();
+		}
+
+		startTurn();
+	}
+
+	//Return a value indicating if the game is running, or has ended, and if so, why
+	public synchronized ChessStatus getGameStatus()
+	{
+		return mStatus;
+	}
+
+	//True once the game has ended
+	public synchronized boolean isOver()
+	{
+		return mStatus.ordinal() > ChessStatus.PAUSED.ordinal();
+	}
+
+	//The number of the player who won, or -1 for a draw (or if the game isn't over)
+	public synchronized int getWinner()
+	{
+		return mWinner;
+	}
+
+	//What went wrong, if a player forfeited by throwing an exception
+	public synchronized Throwable getError()
+	{
+		return mError;
+	}
+
+	//Wait up to timeout milliseconds (or forever, if negative) for the game to end.  Returns true if it has
+	public boolean awaitEnd(long timeout) throws InterruptedException
+	{
+		CountDownLatch finished;
+		synchronized (this)
+		{
+			finished = mFinished;
+		}
+
+		if (timeout < 0)
+		{
+			finished.await();
+			return true;
+		}
+
+		return finished.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	//Check if a player is offering a draw; a move made meanwhile waits until the offer has been answered
+	public synchronized boolean isDrawOffered()
+	{
+		return mDrawOffered;
+	}
+
+	//Return a copy of the game board
+	public synchronized ChessBoard getBoard()
+	{
+		return new ChessBoard(mBoard);
+	}
+
+	//The moves made so far, in ChessMove's packed form
+	public synchronized int[] getMoves()
+	{
+		return Arrays.copyOf(mMoves, mMoveCount);
+	}
+
+	/******
+	 * Called by players
+	 ******/
+
+	//Make a move.  Returns true if the move was accepted.  Only the player to move can move, and only while
+	//the game is running; an illegal move forfeits the game.  A move made while a draw offer is being
+	//considered is kept until the offer has been answered, and then made unless the draw was agreed
+	public boolean move(ChessMove move)
+	{
+		synchronized (this)
+		{
+			while ((mDrawOffered)&&(mStatus == ChessStatus.RUNNING))
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					//The turn has been cancelled
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+
+			int turn = mBoard.getTurn();
+			if ((mStatus != ChessStatus.RUNNING)||(move.getPlayer() != mPlayers[turn]))
+			{
+				return false;
+			}
+
+			int code = mJudge.findMove(mBoard, move);
+			if (code == ChessMove.NONE)
+			{
+				endGame(ChessStatus.FORFEIT, turn ^ 1);
+				return false;
+			}
+
+			if (!mClock.stop())
+			{
+				timeOut(turn);
+				return false;
+			}
+
+			mBoard.makeMove(code);
+			if (mMoveCount == mMoves.length)
+			{
+				mMoves = Arrays.copyOf(mMoves, 2*mMoves.length);
+			}
+			mMoves[mMoveCount++] = code;
+
+			cancelTasks();
+			if (!checkGameOver())
+			{
+				mClock.start(turn ^ 1);
+				startTurn();
+			}
+
+			return true;
+		}
+	}
+
+	//Called when a player accepts defeat
+	public synchronized void resign(ChessPlayer player)
+	{
+		if (isPlaying(player))
+		{
+			endGame(ChessStatus.RESIGNATION, player.getNumber() ^ 1);
+		}
+	}
+
+	//Called when a player wants to offer a draw, which they can only do on their own turn.  Returns true if
+	//the opponent accepts (which ends the game).  The clock keeps running while the opponent decides
+	public boolean offerDraw(ChessPlayer player)
+	{
+		ChessPlayer opponent;
+		ChessBoard board;
+		synchronized (this)
+		{
+			if (!isPlaying(player)||(mStatus != ChessStatus.RUNNING)||mDrawOffered||(mBoard.getTurn() != player.getNumber()))
+			{
+				return false;
+			}
+
+			mDrawOffered = true;
+			opponent = mPlayers[player.getNumber() ^ 1];
+			board = new ChessBoard(mBoard);
+		}
+
+		boolean accepted = false;
+		try
+		{
+			accepted = opponent.acceptDraw(board);
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				mDrawOffered = false;
+				accepted &= (mStatus == ChessStatus.RUNNING);
+				if (accepted)
+				{
+					endGame(ChessStatus.DRAW_AGREED, -1);
+				}
+				notifyAll();
+			}
+		}
+
+		return accepted;
+	}
+
+	private boolean isPlaying(ChessPlayer player)
+	{
+		return (player != null)&&(mPlayers[player.getNumber()] == player)
+				&&((mStatus == ChessStatus.RUNNING)||(mStatus == ChessStatus.PAUSED));
+	}
+
+	/******
+	 * Turns
+	 ******/
+
+	//Ask the player to move for a move, let the other one ponder, and set the flag timer
+	private void startTurn()
+	{
+		int turn = mBoard.getTurn();
+		ChessBoard board = new ChessBoard(mBoard);
+
+		mThinking = new Task(mPlayers[turn], null);
+		mThinking.submit(mExecutor);
+
+		if (mPondering&&mPlayers[turn ^ 1].wantsToPonder())
+		{
+			mPonder = new Task(mPlayers[turn ^ 1], board);
+			mPonder.submit(mExecutor);
+		}
+
+		setFlagTimer();
+	}
+
+	private void setFlagTimer()
+	{
+		long nanos = mClock.getNanosUntilFlag();
+		if (nanos == Long.MAX_VALUE)
+		{
+			return;
+		}
+
+		final int moveCount = mMoveCount;
+		mFlag = sTimers.schedule(new Runnable() {
+			public void run()
+			{
+				checkFlag(moveCount);
+			}
+		}, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	//The flag timer went off
+	private synchronized void checkFlag(int moveCount)
+	{
+		if ((mStatus != ChessStatus.RUNNING)||(mMoveCount != moveCount))
+		{
+			return;
+		}
+
+		if (mClock.getNanosUntilFlag() > 0)
+		{
+			//Woken early (e.g. the delay); wait for the rest
+			setFlagTimer();
+			return;
+		}
+
+		mClock.stop();
+		timeOut(mBoard.getTurn());
+	}
+
+	//Player ran out of time; that's a loss, unless the opponent only has a king
+	private void timeOut(int player)
+	{
+		long opponent = mBoard.getOccupied(player ^ 1);
+		endGame(ChessStatus.TIMEOUT, ((opponent & (opponent - 1)) == 0)?-1:(player ^ 1));
+	}
+
+	//End the game if the position calls for it
+	private boolean checkGameOver()
+	{
+		if (mJudge.isMate(mBoard))
+		{
+			endGame(ChessStatus.CHECKMATE, mBoard.getTurn() ^ 1);
+		}
+		else if (mJudge.isStalemate(mBoard))
+		{
+			endGame(ChessStatus.STALEMATE, -1);
+		}
+		else if (mBoard.getHalfMoveClock() >= 100)
+		{
+			endGame(ChessStatus.FIFTY_MOVES, -1);
+		}
+		else if (mJudge.isInsufficientMaterial(mBoard))
+		{
+			endGame(ChessStatus.INSUFFICIENT_MATERIAL, -1);
+		}
+
+		return isOver();
+	}
+
+	private void endGame(ChessStatus status, int winner)
+	{
+		mStatus = status;
+		mWinner = winner;
+		mClock.pause();
+		cancelTasks();
+		mFinished.countDown();
+	}
+
+	private synchronized void playerFailed(ChessPlayer player, Throwable error)
+	{
+		if (isPlaying(player))
+		{
+			mError = error;
+			endGame(ChessStatus.FORFEIT, player.getNumber() ^ 1);
+		}
+	}
+
+	private void cancelTasks()
+	{
+		if (mThinking != null)
+		{
+			mThinking.cancel();
+			mThinking = null;
+		}
+		if (mPonder != null)
+		{
+			mPonder.cancel();
+			mPonder = null;
+		}
+		if (mFlag != null)
+		{
+			mFlag.cancel(false);
+			mFlag = null;
+		}
+	}
+
+	//A player's move (or pondering, if board is set), run on the executor.  Cancelling interrupts the
+	//thread running it, but only while it's running this task, so other games' tasks on the same pooled
+	//thread are never hit
+	private class Task implements Runnable
+	{
+		private ChessPlayer mPlayer;
+		private ChessBoard mPonderBoard;
+
+		private Future<?> mFuture;
+		private Thread mThread;
+		private boolean mCancelled;
+
+		Task(ChessPlayer player, ChessBoard ponderBoard)
+		{
+			mPlayer = player;
+			mPonderBoard = ponderBoard;
+		}
+
+		void submit(ExecutorService executor)
+		{
+			mFuture = executor.submit(this);
+		}
+
+		public void run()
+		{
+			synchronized (this)
+			{
+				if (mCancelled)
+				{
+					return;
+				}
+				mThread = Thread.currentThread();
+			}
+
+			try
+			{
+				if (mPonderBoard != null)
+				{
+					mPlayer.ponder(mPonderBoard);
+				}
+				else
+				{
+					mPlayer.run();
+				}
+			}
+			catch (RuntimeException | Error e)
+			{
+				if (mPonderBoard == null)
+				{
+					playerFailed(mPlayer, e);
+				}
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					mThread = null;
+				}
+
+				//Don't leave an interrupt behind for the next task on this thread
+				Thread.interrupted();
+			}
+		}
+
+		void cancel()
+		{
+			synchronized (this)
+			{
+				mCancelled = true;
+				if ((mThread != null)&&(mThread != Thread.currentThread()))
+				{
+					mThread.interrupt();
+				}
+			}
+
+			if (mFuture != null)
+			{
+				mFuture.cancel(false);
+			}
+		}
+	}
 }
@@ -0,0 +1,88 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Runs many games at once, each with its own ChessEngine and clock, to check that the engines share
+//threads rather than needing a thread per game or per move.  The players move at random, after an
+//optional pause to stand in for thinking.  By default the engines use their shared executor; given a
+//thread count, they all share a fixed pool of that size instead.
+//
+//Usage:  ChessEngineLoadTest [games] [initial ms] [increment ms] [think ms] [threads]
+
+public class ChessEngineLoadTest {
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int games = (args.length > 0)?Integer.parseInt(args[0]):500;
+		long initial = (args.length > 1)?Long.parseLong(args[1]):60000;
+		long increment = (args.length > 2)?Long.parseLong(args[2]):1000;
+		final long think = (args.length > 3)?Long.parseLong(args[3]):0;
+		int threads = (args.length > 4)?Integer.parseInt(args[4]):0;
+
+		ExecutorService executor = (threads > 0)?Executors.newFixedThreadPool(threads):null;
+
+		long startTime = System.nanoTime();
+
+		ChessEngine[] engines = new ChessEngine[games];
+		for (int i=0; i<games; i++)
+		{
+			engines[i] = new ChessEngine();
+			engines[i].setClock(new ChessClock(initial, increment, 0));
+			if (executor != null)
+			{
+				engines[i].setExecutor(executor);
+			}
+
+			for (int player=0; player<2; player++)
+			{
+				engines[i].setPlayer(new RandomChessPlayer(null, player, 2L*i + player) {
+					@Override
+					protected int chooseMove(ChessBoard board, ChessClock clock)
+					{
+						if (think > 0)
+						{
+							try
+							{
+								Thread.sleep(think);
+							}
+							catch (InterruptedException e)
+							{
+								return ChessMove.NONE;
+							}
+						}
+						return super.chooseMove(board, clock);
+					}
+				});
+			}
+		}
+
+		for (ChessEngine engine : engines)
+		{
+			engine.startGame();
+		}
+
+		Map<ChessEngine.ChessStatus, Integer> results = new EnumMap<ChessEngine.ChessStatus, Integer>(ChessEngine.ChessStatus.class);
+		long moves = 0;
+		for (ChessEngine engine : engines)
+		{
+			engine.awaitEnd(-1);
+
+			ChessEngine.ChessStatus status = engine.getGameStatus();
+			results.put(status, (results.containsKey(status)?results.get(status):0) + 1);
+			moves += engine.getMoves().length;
+		}
+
+		double seconds = (System.nanoTime() - startTime)/1e9;
+
+		System.out.println(String.format("%d games, %d moves in %.2fs (%.0f moves/sec)", games, moves, seconds, moves/seconds));
+		System.out.println("Results: " + results);
+		System.out.println("Peak threads: " + ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+		if (executor != null)
+		{
+			executor.shutdown();
+		}
+	}
+}
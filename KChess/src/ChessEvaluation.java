@@ -0,0 +1,294 @@
+import ksk.game.Evaluation;
+import ksk.game.EvaluationCache;
+import ksk.game.EvaluationTerm;
+import ksk.game.GameState;
+import ksk.game.Move;
+
+//The static evaluation of a ChessState, in centipawns from white's point of view:
+//
+//   material       ChessAlgo.PIECE_VALUES for each piece
+//   squares        a table for each piece type, so pieces are drawn towards good squares (knights to the
+//                  centre, pawns forward, the king to safety)
+//   mobility       MOBILITY_WEIGHT for each square a knight, bishop, rook or queen attacks that doesn't have
+//                  one of its own pieces on it
+//
+//All three terms are incremental (see ksk.game.Evaluation), and only look at what a move touches:  its
+//from and to squares, and the captured pawn for en passant or the rook for castling.  Material and squares
+//score the pieces on those squares.  A piece's mobility can only change if it attacks one of them, so
+//mobility scores the pieces on them and the pieces that attack them; attacks are worked out as if the
+//touched squares were empty, which finds the same pieces before and after the move.
+
+public class ChessEvaluation extends Evaluation {
+
+	public static final int MOBILITY_WEIGHT = 4;
+
+	private static final int KNIGHT = ChessPiece.ChessPieceType.KNIGHT.ordinal();
+	private static final int BISHOP = ChessPiece.ChessPieceType.BISHOP.ordinal();
+	private static final int ROOK = ChessPiece.ChessPieceType.ROOK.ordinal();
+	private static final int QUEEN = ChessPiece.ChessPieceType.QUEEN.ordinal();
+
+	//Piece-square tables by ChessPieceType, from white's point of view with a8 in the top left (so they
+	//read like a diagram).  Black uses the same tables upside down
+	private static final int[][] SQUARE_TABLES = {
+		{ //Pawn
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			 50,  50,  50,  50,  50,  50,  50,  50,
+			 10,  10,  20,  30,  30,  20,  10,  10,
+			  5,   5,  10,  25,  25,  10,   5,   5,
+			  0,   0,   0,  20,  20,   0,   0,   0,
+			  5,  -5, -10,   0,   0, -10,  -5,   5,
+			  5,  10,  10, -20, -20,  10,  10,   5,
+			  0,   0,   0,   0,   0,   0,   0,   0},
+		{ //Knight
+			-50, -40, -30, -30, -30, -30, -40, -50,
+			-40, -20,   0,   0,   0,   0, -20, -40,
+			-30,   0,  10,  15,  15,  10,   0, -30,
+			-30,   5,  15,  20,  20,  15,   5, -30,
+			-30,   0,  15,  20,  20,  15,   0, -30,
+			-30,   5,  10,  15,  15,  10,   5, -30,
+			-40, -20,   0,   5,   5,   0, -20, -40,
+			-50, -40, -30, -30, -30, -30, -40, -50},
+		{ //Bishop
+			-20, -10, -10, -10, -10, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,  10,  10,   5,   0, -10,
+			-10,   5,   5,  10,  10,   5,   5, -10,
+			-10,   0,  10,  10,  10,  10,   0, -10,
+			-10,  10,  10,  10,  10,  10,  10, -10,
+			-10,   5,   0,   0,   0,   0,   5, -10,
+			-20, -10, -10, -10, -10, -10, -10, -20},
+		{ //Rook
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			  5,  10,  10,  10,  10,  10,  10,   5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			  0,   0,   0,   5,   5,   0,   0,   0},
+		{ //Queen
+			-20, -10, -10,  -5,  -5, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,   5,   5,   5,   0, -10,
+			 -5,   0,   5,   5,   5,   5,   0,  -5,
+			  0,   0,   5,   5,   5,   5,   0,  -5,
+			-10,   5,   5,   5,   5,   5,   0, -10,
+			-10,   0,   5,   0,   0,   0,   0, -10,
+			-20, -10, -10,  -5,  -5, -10, -10, -20},
+		{ //King
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-20, -30, -30, -40, -40, -30, -30, -20,
+			-10, -20, -20, -20, -20, -20, -20, -10,
+			 20,  20,   0,   0,   0,   0,  20,  20,
+			 20,  30,  10,   0,   0,  10,  30,  20}};
+
+	//Material and square values of each piece index on each square, from white's point of view
+	private static final int[][] MATERIAL_VALUES = new int[ChessPiece.PIECES][64];
+	private static final int[][] SQUARE_VALUES = new int[ChessPiece.PIECES][64];
+	static
+	{
+		for (int type=0; type<ChessPiece.TYPES; type++)
+		{
+			for (int square=0; square<64; square++)
+			{
+				MATERIAL_VALUES[type][square] = ChessAlgo.PIECE_VALUES[type];
+				MATERIAL_VALUES[ChessPiece.TYPES + type][square] = -ChessAlgo.PIECE_VALUES[type];
+
+				//The tables have rank 8 first
+				SQUARE_VALUES[type][square] = SQUARE_TABLES[type][square ^ 56];
+				SQUARE_VALUES[ChessPiece.TYPES + type][square ^ 56] = -SQUARE_TABLES[type][square ^ 56];
+			}
+		}
+	}
+
+	//Material, squares and mobility, remembering scores in the cache (which may be null)
+	public ChessEvaluation(EvaluationCache cache)
+	{
+		addTerm(new PieceSquareTerm(MATERIAL_VALUES), 1);
+		addTerm(new PieceSquareTerm(SQUARE_VALUES), 1);
+		addTerm(new MobilityTerm(), MOBILITY_WEIGHT);
+		setCache(cache);
+	}
+
+	public ChessEvaluation()
+	{
+		this(null);
+	}
+
+	//The code of the move a term is looking at:  before the move, the move being made, after it, the move
+	//that was made
+	private static int getMoveCode(GameState state, Move move, boolean made)
+	{
+		ChessState chess = (ChessState)state;
+		return made?chess.getLastMoveCode():chess.resolveMove(move);
+	}
+
+	//The squares a move changes:  from and to, and the captured pawn for en passant or the rook's squares
+	//for castling
+	public static long getTouchedSquares(int move)
+	{
+		int from = ChessMove.getFrom(move);
+		int to = ChessMove.getTo(move);
+		long squares = (1L << from) | (1L << to);
+
+		switch (ChessMove.getKind(move))
+		{
+		case ChessMove.EN_PASSANT:
+			squares |= 1L << ((from & ~7) | (to & 7));
+			break;
+		case ChessMove.CASTLE:
+			squares |= (to > from)?((1L << (to + 1)) | (1L << (to - 1))):((1L << (to - 2)) | (1L << (to + 1)));
+			break;
+		}
+
+		return squares;
+	}
+
+	/******
+	 * Terms
+	 ******/
+
+	//A value for each piece on each square (material, or the square tables)
+	private static class PieceSquareTerm extends EvaluationTerm
+	{
+		private int[][] mValues;
+
+		public PieceSquareTerm(int[][] values)
+		{
+			mValues = values;
+		}
+
+		@Override
+		public int evaluate(GameState state)
+		{
+			return sum(((ChessState)state).getBoard(), ~0L);
+		}
+
+		@Override
+		public boolean isIncremental()
+		{
+			return true;
+		}
+
+		@Override
+		public int evaluateAffected(GameState state, Move move, boolean made)
+		{
+			int code = getMoveCode(state, move, made);
+			return (code == ChessMove.NONE)?0:sum(((ChessState)state).getBoard(), getTouchedSquares(code));
+		}
+
+		//The values of the pieces on some squares
+		private int sum(ChessBoard board, long squares)
+		{
+			int score = 0;
+			for (long bits = board.getOccupied() & squares; bits != 0; bits &= bits - 1)
+			{
+				int square = Long.numberOfTrailingZeros(bits);
+				score += mValues[board.getPieceIndex(square)][square];
+			}
+
+			return score;
+		}
+	}
+
+	//The number of squares the knights, bishops, rooks and queens can go to
+	private static class MobilityTerm extends EvaluationTerm
+	{
+		@Override
+		public int evaluate(GameState state)
+		{
+			ChessBoard board = ((ChessState)state).getBoard();
+			return sum(board, getMobilePieces(board));
+		}
+
+		@Override
+		public boolean isIncremental()
+		{
+			return true;
+		}
+
+		@Override
+		public int evaluateAffected(GameState state, Move move, boolean made)
+		{
+			int code = getMoveCode(state, move, made);
+			if (code == ChessMove.NONE)
+			{
+				return 0;
+			}
+
+			ChessBoard board = ((ChessState)state).getBoard();
+			long touched = getTouchedSquares(code);
+			long occupied = board.getOccupied();
+			long through = occupied & ~touched;
+
+			long knights = board.getBitboard(KNIGHT) | board.getBitboard(ChessPiece.TYPES + KNIGHT);
+			long queens = board.getBitboard(QUEEN) | board.getBitboard(ChessPiece.TYPES + QUEEN);
+			long diagonal = board.getBitboard(BISHOP) | board.getBitboard(ChessPiece.TYPES + BISHOP) | queens;
+			long straight = board.getBitboard(ROOK) | board.getBitboard(ChessPiece.TYPES + ROOK) | queens;
+
+			long affected = occupied & touched;
+			for (long bits = touched; bits != 0; bits &= bits - 1)
+			{
+				int square = Long.numberOfTrailingZeros(bits);
+				affected |= (ChessAttacks.knight(square) & knights) | (ChessAttacks.bishop(square, through) & diagonal)
+						| (ChessAttacks.rook(square, through) & straight);
+			}
+
+			return sum(board, affected & getMobilePieces(board));
+		}
+
+		private static long getMobilePieces(ChessBoard board)
+		{
+			long pieces = 0;
+			for (int player=0; player<2; player++)
+			{
+				int base = player*ChessPiece.TYPES;
+				pieces |= board.getBitboard(base + KNIGHT) | board.getBitboard(base + BISHOP)
+						| board.getBitboard(base + ROOK) | board.getBitboard(base + QUEEN);
+			}
+
+			return pieces;
+		}
+
+		//Mobility of the pieces on some squares, white's less black's
+		private static int sum(ChessBoard board, long squares)
+		{
+			long occupied = board.getOccupied();
+			int score = 0;
+
+			for (long bits = squares; bits != 0; bits &= bits - 1)
+			{
+				int square = Long.numberOfTrailingZeros(bits);
+				int piece = board.getPieceIndex(square);
+				int player = piece/ChessPiece.TYPES;
+
+				int type = piece % ChessPiece.TYPES;
+				long attacks;
+				if (type == KNIGHT)
+				{
+					attacks = ChessAttacks.knight(square);
+				}
+				else if (type == BISHOP)
+				{
+					attacks = ChessAttacks.bishop(square, occupied);
+				}
+				else if (type == ROOK)
+				{
+					attacks = ChessAttacks.rook(square, occupied);
+				}
+				else
+				{
+					attacks = ChessAttacks.queen(square, occupied);
+				}
+
+				int mobility = Long.bitCount(attacks & ~board.getOccupied(player));
+				score += (player == ChessBoard.WHITE)?mobility:-mobility;
+			}
+
+			return score;
+		}
+	}
+}
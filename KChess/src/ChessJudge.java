@@ -1,4 +1,582 @@
 
+//Checks validity of moves, and conditions such as check, mate and stalemate.  Changing the judge changes
+//the rules of play.  En passant and castling are controlled entirely by this class; ChessBoard only
+//generates them as candidates.
+//
+//For each position the judge works out, once, which enemy pieces give check, which of the mover's pieces
+//are pinned to their king (and along which line), and which squares a non-king move must land on to deal
+//with a check.  Any move can then be checked in constant time:  a king move needs its destination to be
+//unattacked, a pinned piece has to stay on its pin line, and in check a move has to capture or block the
+//checker.  Only en passant (which removes two pieces from a rank) needs a closer look.  Legal move
+//generation asks ChessBoard only for moves that deal with any check, and filters the few moves by the
+//king, by pinned pieces or en passant.
+//
+//The analysis is cached against the board and its modification count, so isCheck(), isMate() and
+//repeated isValidMove() calls on one position share it.  A judge is not thread safe; use one per game or
+//search thread.
+
 public class ChessJudge {
 
+	private static final int PAWN = ChessPiece.ChessPieceType.PAWN.ordinal();
+	private static final int KNIGHT = ChessPiece.ChessPieceType.KNIGHT.ordinal();
+	private static final int BISHOP = ChessPiece.ChessPieceType.BISHOP.ordinal();
+	private static final int ROOK = ChessPiece.ChessPieceType.ROOK.ordinal();
+	private static final int QUEEN = ChessPiece.ChessPieceType.QUEEN.ordinal();
+
+	//SAN piece letters, by ChessPieceType (pawns have none)
+	private static final String PIECE_LETTERS = "PNBRQK";
+
+	//The position the analysis below is for
+	private ChessBoard mBoard;
+	private int mModCount;
+
+	private int mKing;
+	private long mCheckers;
+	private long mPinned;
+
+	//Where non-king moves must end:  everything if not in check, the checker and the squares between it
+	//and the king if in check once, nothing in double check
+	private long mCheckMask;
+
+	//For each pinned piece, the squares it can move to without leaving the pin line
+	private long[] mPinLines = new long[64];
+
+	//Result of the last hasLegalMove() for this position; 0 = not known, 1 = no, 2 = yes
+	private int mHasMove;
+
+	private int[] mMoves = new int[ChessBoard.MAX_MOVES];
+
+	public ChessJudge()
+	{
+	}
+
+	//Check legality of a move by the player to move
+	public boolean isValidMove(ChessBoard board, ChessMove move)
+	{
+		return findMove(board, move) != ChessMove.NONE;
+	}
+
+	//Return a new board, after making the specified move.  null if the move is invalid
+	public ChessBoard applyMove(ChessBoard board, ChessMove move)
+	{
+		int code = findMove(board, move);
+		if (code == ChessMove.NONE)
+		{
+			return null;
+		}
+
+		ChessBoard next = new ChessBoard(board);
+		next.makeMove(code);
+		return next;
+	}
+
+	//The legal move (in ChessMove's packed form) with the same start, end and promotion, or ChessMove.NONE.
+	//Fills in what the player's move can't say:  castling, en passant and double pawn pushes.  A pawn move
+	//to the last rank without a promotion promotes to a queen
+	public int findMove(ChessBoard board, ChessMove move)
+	{
+		int code = move.getCode();
+		int from = ChessMove.getFrom(code);
+		int to = ChessMove.getTo(code);
+		int promotion = ChessMove.getPromotion(code);
+
+		int count = board.generateMoves(mMoves, 0);
+		for (int i=0; i<count; i++)
+		{
+			int candidate = mMoves[i];
+			if ((ChessMove.getFrom(candidate) == from)&&(ChessMove.getTo(candidate) == to)
+					&&((ChessMove.getPromotion(candidate) == promotion)||((promotion == 0)&&(ChessMove.getPromotion(candidate) == QUEEN))))
+			{
+				return isLegal(board, candidate)?candidate:ChessMove.NONE;
+			}
+		}
+
+		return ChessMove.NONE;
+	}
+
+	//True if a pseudo-legal move from board.generateMoves() doesn't leave the mover's king in check
+	public boolean isLegal(ChessBoard board, int move)
+	{
+		analyze(board);
+		return isLegalMove(board, move);
+	}
+
+	//Return true if the specified player's king is attacked
+	public boolean isCheck(ChessBoard board, int player)
+	{
+		if (player == board.getTurn())
+		{
+			return isCheck(board);
+		}
+
+		int king = board.getKingSquare(player);
+		return (king != ChessBoard.NO_SQUARE)&&board.isAttacked(king, player ^ 1);
+	}
+
+	//Return true if the player to move is in check
+	public boolean isCheck(ChessBoard board)
+	{
+		analyze(board);
+		return mCheckers != 0;
+	}
+
+	//Pieces giving check to the player to move
+	public long getCheckers(ChessBoard board)
+	{
+		analyze(board);
+		return mCheckers;
+	}
+
+	//Pieces of the player to move that are pinned to their king
+	public long getPinned(ChessBoard board)
+	{
+		analyze(board);
+		return mPinned;
+	}
+
+	//Return true if the player to move has been checkmated
+	public boolean isMate(ChessBoard board)
+	{
+		return isCheck(board)&&!hasLegalMove(board);
+	}
+
+	public boolean isStalemate(ChessBoard board)
+	{
+		return !isCheck(board)&&!hasLegalMove(board);
+	}
+
+	public boolean hasLegalMove(ChessBoard board)
+	{
+		analyze(board);
+		if (mHasMove == 0)
+		{
+			mHasMove = (generateLegalMoves(board, mMoves, 0) > 0)?2:1;
+		}
+
+		return mHasMove == 2;
+	}
+
+	//True if neither player can possibly mate:  only kings, plus at most one knight or bishop
+	public boolean isInsufficientMaterial(ChessBoard board)
+	{
+		long heavy = 0;
+		long minor = 0;
+		for (int player=0; player<2; player++)
+		{
+			int base = player*ChessPiece.TYPES;
+			heavy |= board.getBitboard(base + PAWN) | board.getBitboard(base + ROOK) | board.getBitboard(base + QUEEN);
+			minor |= board.getBitboard(base + KNIGHT) | board.getBitboard(base + BISHOP);
+		}
+
+		return (heavy == 0)&&((minor & (minor - 1)) == 0);
+	}
+
+	//True if castling is still an option for the player.  Does not imply that the player can castle right now
+	public boolean canCastle(ChessBoard board, int player)
+	{
+		int rights = (player == ChessBoard.WHITE)?(ChessBoard.WHITE_KINGSIDE | ChessBoard.WHITE_QUEENSIDE)
+				:(ChessBoard.BLACK_KINGSIDE | ChessBoard.BLACK_QUEENSIDE);
+		return (board.getCastlingRights() & rights) != 0;
+	}
+
+	/******
+	 * Legal move generation
+	 ******/
+
+	//Add the legal moves for the player to move to moves, starting at index count.  Returns the new count.
+	//moves needs room for ChessBoard.MAX_MOVES more
+	public int generateLegalMoves(ChessBoard board, int[] moves, int count)
+	{
+		analyze(board);
+		int end = board.generateMoves(moves, count, mCheckMask, ~0L, mCheckers == 0);
+		return filter(board, moves, count, end);
+	}
+
+	//As generateLegalMoves(), but only captures (including en passant)
+	public int generateLegalCaptures(ChessBoard board, int[] moves, int count)
+	{
+		analyze(board);
+		long enemy = board.getOccupied(board.getTurn() ^ 1);
+		int end = board.generateMoves(moves, count, mCheckMask & enemy, enemy, false);
+		return filter(board, moves, count, end);
+	}
+
+	//Remove the illegal moves from moves[start..end); only king moves, pinned pieces and en passant can be
+	private int filter(ChessBoard board, int[] moves, int start, int end)
+	{
+		long suspects = mPinned | (1L << mKing);
+		boolean enPassant = board.getEnPassantSquare() != ChessBoard.NO_SQUARE;
+
+		int count = start;
+		for (int i=start; i<end; i++)
+		{
+			int move = moves[i];
+			if ((((1L << ChessMove.getFrom(move)) & suspects) == 0)&&(!enPassant||(ChessMove.getKind(move) != ChessMove.EN_PASSANT))
+					||isLegalMove(board, move))
+			{
+				moves[count++] = move;
+			}
+		}
+
+		return count;
+	}
+
+	/******
+	 * Notation
+	 ******/
+
+	//Standard algebraic notation for a legal move, e.g. "Nbd2", "exd6", "O-O", "e8=Q+".  The board is used
+	//to try the move (for the check and mate suffix), but is left as it was
+	public String toSan(ChessBoard board, int move)
+	{
+		int from = ChessMove.getFrom(move);
+		int to = ChessMove.getTo(move);
+		int piece = board.getPieceIndex(from);
+		int type = piece % ChessPiece.TYPES;
+
+		StringBuilder san = new StringBuilder();
+		if (ChessMove.getKind(move) == ChessMove.CASTLE)
+		{
+			san.append((to > from)?"O-O":"O-O-O");
+		}
+		else
+		{
+			boolean capture = (board.getPieceIndex(to) != ChessBoard.EMPTY)||(ChessMove.getKind(move) == ChessMove.EN_PASSANT);
+
+			if (type == PAWN)
+			{
+				if (capture)
+				{
+					san.append((char)('a' + ChessBoard.getFile(from)));
+				}
+			}
+			else
+			{
+				san.append(ChessPiece.get(type).getSymbol());
+				appendDisambiguation(board, move, piece, san);
+			}
+
+			if (capture)
+			{
+				san.append('x');
+			}
+			san.append(ChessBoard.getSquareName(to));
+
+			int promotion = ChessMove.getPromotion(move);
+			if (promotion != 0)
+			{
+				san.append('=').append(ChessPiece.get(promotion).getSymbol());
+			}
+		}
+
+		board.makeMove(move);
+		if (isCheck(board))
+		{
+			san.append(hasLegalMove(board)?'+':'#');
+		}
+		board.unmakeMove(move);
+
+		return san.toString();
+	}
+
+	//The legal move (in ChessMove's packed form) for a move in standard algebraic notation, or ChessMove.NONE
+	//if it's illegal, ambiguous or unreadable.  Check marks and annotations ("+", "#", "!?") are ignored, as
+	//is a missing "x" or "="; "0-0" is accepted for castling, and a promotion without a piece is to a queen.
+	//Only moves to the destination square are generated, so this is much cheaper than matching the SAN of
+	//every legal move
+	public int parseSan(ChessBoard board, CharSequence san)
+	{
+		int end = san.length();
+		while ((end > 0)&&("+#!?".indexOf(san.charAt(end - 1)) >= 0))
+		{
+			end--;
+		}
+
+		analyze(board);
+		if (mKing == ChessBoard.NO_SQUARE)
+		{
+			return ChessMove.NONE;
+		}
+
+		//Castling is written as the king's move
+		int castle = getCastleLength(san, end);
+		if (castle > 0)
+		{
+			int count = board.generateMoves(mMoves, 0, 0, 0, true);
+			int to = mKing + ((castle == 3)?2:-2);
+			for (int i=0; i<count; i++)
+			{
+				if ((ChessMove.getKind(mMoves[i]) == ChessMove.CASTLE)&&(ChessMove.getTo(mMoves[i]) == to))
+				{
+					return isLegalMove(board, mMoves[i])?mMoves[i]:ChessMove.NONE;
+				}
+			}
+			return ChessMove.NONE;
+		}
+
+		int start = 0;
+		int type = PAWN;
+		if ((end > 0)&&(PIECE_LETTERS.indexOf(san.charAt(0)) > 0))
+		{
+			type = PIECE_LETTERS.indexOf(san.charAt(0));
+			start = 1;
+		}
+
+		int promotion = 0;
+		if ((type == PAWN)&&(end > 2)&&(PIECE_LETTERS.indexOf(san.charAt(end - 1)) > 0))
+		{
+			promotion = PIECE_LETTERS.indexOf(san.charAt(end - 1));
+			end -= (san.charAt(end - 2) == '=')?2:1;
+		}
+
+		if (end - start < 2)
+		{
+			return ChessMove.NONE;
+		}
+
+		int toFile = san.charAt(end - 2) - 'a';
+		int toRank = san.charAt(end - 1) - '1';
+		if ((toFile < 0)||(toFile > 7)||(toRank < 0)||(toRank > 7))
+		{
+			return ChessMove.NONE;
+		}
+
+		//Whatever is left says which piece moves
+		int fromFile = -1;
+		int fromRank = -1;
+		for (int i=start; i<end-2; i++)
+		{
+			char c = san.charAt(i);
+			if ((c >= 'a')&&(c <= 'h'))
+			{
+				fromFile = c - 'a';
+			}
+			else if ((c >= '1')&&(c <= '8'))
+			{
+				fromRank = c - '1';
+			}
+			else if ((c != 'x')&&(c != ':')&&(c != '-'))
+			{
+				return ChessMove.NONE;
+			}
+		}
+
+		int piece = board.getTurn()*ChessPiece.TYPES + type;
+		int to = ChessBoard.square(toRank, toFile);
+		int count = board.generateMoves(mMoves, 0, 1L << to, 1L << to, false);
+
+		int found = ChessMove.NONE;
+		for (int i=0; i<count; i++)
+		{
+			int move = mMoves[i];
+			int from = ChessMove.getFrom(move);
+			int movePromotion = ChessMove.getPromotion(move);
+
+			//En passant is generated for the captured pawn's square too
+			if ((ChessMove.getTo(move) != to)||(board.getPieceIndex(from) != piece)
+					||((fromFile >= 0)&&(ChessBoard.getFile(from) != fromFile))
+					||((fromRank >= 0)&&(ChessBoard.getRank(from) != fromRank))
+					||((movePromotion != promotion)&&!((promotion == 0)&&(movePromotion == QUEEN)))
+					||!isLegalMove(board, move))
+			{
+				continue;
+			}
+
+			if (found != ChessMove.NONE)
+			{
+				return ChessMove.NONE;
+			}
+			found = move;
+		}
+
+		return found;
+	}
+
+	//3 for "O-O", 5 for "O-O-O" (or with zeroes), otherwise 0
+	private static int getCastleLength(CharSequence san, int end)
+	{
+		if ((end != 3)&&(end != 5))
+		{
+			return 0;
+		}
+
+		char letter = san.charAt(0);
+		for (int i=0; i<end; i++)
+		{
+			char c = san.charAt(i);
+			if ((i % 2 == 0)?((c != letter)||((c != 'O')&&(c != '0'))):(c != '-'))
+			{
+				return 0;
+			}
+		}
+
+		return end;
+	}
+
+	//Add the file, rank or square of the start, if other pieces of the same kind could also move to the end
+	private void appendDisambiguation(ChessBoard board, int move, int piece, StringBuilder san)
+	{
+		int from = ChessMove.getFrom(move);
+		int to = ChessMove.getTo(move);
+
+		boolean ambiguous = false;
+		boolean sameFile = false;
+		boolean sameRank = false;
+
+		int count = generateLegalMoves(board, mMoves, 0);
+		for (int i=0; i<count; i++)
+		{
+			int other = ChessMove.getFrom(mMoves[i]);
+			if ((other != from)&&(ChessMove.getTo(mMoves[i]) == to)&&(board.getPieceIndex(other) == piece))
+			{
+				ambiguous = true;
+				sameFile |= ChessBoard.getFile(other) == ChessBoard.getFile(from);
+				sameRank |= ChessBoard.getRank(other) == ChessBoard.getRank(from);
+			}
+		}
+
+		if (!ambiguous)
+		{
+			return;
+		}
+
+		if (!sameFile)
+		{
+			san.append((char)('a' + ChessBoard.getFile(from)));
+		}
+		else if (!sameRank)
+		{
+			san.append((char)('1' + ChessBoard.getRank(from)));
+		}
+		else
+		{
+			san.append(ChessBoard.getSquareName(from));
+		}
+	}
+
+	/******
+	 * Position analysis
+	 ******/
+
+	//Work out the checkers, pins and check mask for the player to move, unless they're already known
+	private void analyze(ChessBoard board)
+	{
+		if ((board == mBoard)&&(board.getModCount() == mModCount))
+		{
+			return;
+		}
+
+		mBoard = board;
+		mModCount = board.getModCount();
+		mHasMove = 0;
+
+		int us = board.getTurn();
+		int them = us ^ 1;
+		long occupied = board.getOccupied();
+
+		mKing = board.getKingSquare(us);
+		mPinned = 0;
+
+		if (mKing == ChessBoard.NO_SQUARE)
+		{
+			//No king to protect (e.g. a test position); everything goes
+			mCheckers = 0;
+			mCheckMask = ~0L;
+			return;
+		}
+
+		mCheckers = board.getAttackers(mKing, them, occupied);
+
+		if (mCheckers == 0)
+		{
+			mCheckMask = ~0L;
+		}
+		else if ((mCheckers & (mCheckers - 1)) == 0)
+		{
+			mCheckMask = mCheckers | ChessAttacks.between(mKing, Long.numberOfTrailingZeros(mCheckers));
+		}
+		else
+		{
+			mCheckMask = 0;
+		}
+
+		//Enemy sliders that would attack the king if nothing of ours were in the way
+		int base = them*ChessPiece.TYPES;
+		long enemy = board.getOccupied(them);
+		long queens = board.getBitboard(base + QUEEN);
+		long snipers = (ChessAttacks.rook(mKing, enemy) & (board.getBitboard(base + ROOK) | queens))
+				| (ChessAttacks.bishop(mKing, enemy) & (board.getBitboard(base + BISHOP) | queens));
+
+		for (; snipers!=0; snipers&=snipers-1)
+		{
+			int sniper = Long.numberOfTrailingZeros(snipers);
+			long between = ChessAttacks.between(mKing, sniper);
+			long blockers = between & occupied;
+
+			if ((blockers != 0)&&((blockers & (blockers - 1)) == 0)&&((blockers & board.getOccupied(us)) != 0))
+			{
+				mPinned |= blockers;
+				mPinLines[Long.numberOfTrailingZeros(blockers)] = between | (1L << sniper);
+			}
+		}
+	}
+
+	//Legality of a pseudo-legal move, given the analysis of its position
+	private boolean isLegalMove(ChessBoard board, int move)
+	{
+		int from = ChessMove.getFrom(move);
+		int to = ChessMove.getTo(move);
+		int kind = ChessMove.getKind(move);
+		int them = board.getTurn() ^ 1;
+
+		if (from == mKing)
+		{
+			if (kind == ChessMove.CASTLE)
+			{
+				//Not out of, through, or into check
+				return (mCheckers == 0)&&!board.isAttacked((from + to) >>> 1, them)&&!board.isAttacked(to, them);
+			}
+
+			//The king mustn't shield the square it moves to from a slider
+			return board.getAttackers(to, them, board.getOccupied() ^ (1L << from)) == 0;
+		}
+
+		if (kind == ChessMove.EN_PASSANT)
+		{
+			return isLegalEnPassant(board, from, to);
+		}
+
+		if ((mCheckMask & (1L << to)) == 0)
+		{
+			return false;
+		}
+
+		return ((mPinned & (1L << from)) == 0)||((mPinLines[from] & (1L << to)) != 0);
+	}
+
+	//En passant takes two pieces off one rank, so check the king's lines with the capture made
+	private boolean isLegalEnPassant(ChessBoard board, int from, int to)
+	{
+		if (mKing == ChessBoard.NO_SQUARE)
+		{
+			return true;
+		}
+
+		int captured = ChessBoard.square(ChessBoard.getRank(from), ChessBoard.getFile(to));
+		long occupied = (board.getOccupied() ^ (1L << from) ^ (1L << captured)) | (1L << to);
+
+		int them = board.getTurn() ^ 1;
+		int base = them*ChessPiece.TYPES;
+		long queens = board.getBitboard(base + QUEEN);
+
+		//A knight or pawn checker survives unless it's the pawn being captured; sliders are checked below
+		long steppers = board.getBitboard(base + PAWN) | board.getBitboard(base + KNIGHT);
+		if ((mCheckers & steppers & ~(1L << captured)) != 0)
+		{
+			return false;
+		}
+
+		return ((ChessAttacks.rook(mKing, occupied) & (board.getBitboard(base + ROOK) | queens)) == 0)
+				&&((ChessAttacks.bishop(mKing, occupied) & (board.getBitboard(base + BISHOP) | queens)) == 0);
+	}
 }
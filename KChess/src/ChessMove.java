@@ -1,4 +1,190 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public class ChessMove {
+import ksk.game.Move;
 
+//Represents a single move, including castling (which is represented by the King's move).
+//
+//A move includes a start and end location, and a reference to the ChessPlayer making the move.  Each
+//ChessPlayer reference is only ever revealed to the ChessEngine and the player itself, so this is a way
+//to prevent spoofing moves.  All publicly exposed player info uses the player's NUMBER.
+//
+//Move generation works with moves packed into ints, so it doesn't have to allocate; the static methods
+//here pack and unpack them.  Bits 0-5 hold the start square, bits 6-11 the end square (square = rank*8 +
+//file), bits 12-14 the ChessPieceType ordinal of a promotion (0 for none), and bits 15-16 the kind of move.
+//Bit 17 marks captures, where the code comes from a generator that knows (see ChessState).
+//
+//ChessMoves are also GameAlgos Moves, so searches can use them; the move string is coordinate notation
+//(e.g. "e2e4", "e7e8q").  get() gives shared instances without a player, for move generation.
+
+public class ChessMove extends Move {
+
+	//Kinds of move
+	public static final int NORMAL = 0;
+	public static final int DOUBLE_PUSH = 1;
+	public static final int EN_PASSANT = 2;
+	public static final int CASTLE = 3;
+
+	//Not a move (a1 to a1)
+	public static final int NONE = 0;
+
+	//Flag for moves known to be captures
+	public static final int CAPTURE = 1 << 17;
+
+	private static final String PROMOTION_LETTERS = " nbrq";
+
+	//Shared instances, made as they're needed
+	private static final AtomicReferenceArray<ChessMove> SHARED = new AtomicReferenceArray<ChessMove>(CAPTURE << 1);
+
+	private ChessPlayer mPlayer;
+	private final int mCode;
+
+	//Set by decode(), which runs in the Move constructor, so it mustn't have an initializer
+	private int mParsedCode;
+
+	//Create a move for a specific player, given start and end rank and file (0-7; rank 0 is white's back
+	//rank).  Any promotion is to a queen
+	public ChessMove(ChessPlayer player, int startRank, int startFile, int endRank, int endFile)
+	{
+		this(player, encode(ChessBoard.square(startRank, startFile), ChessBoard.square(endRank, endFile), NORMAL, 0));
+	}
+
+	//Create a move from its packed form
+	public ChessMove(ChessPlayer player, int code)
+	{
+		super(toString(code));
+
+		mPlayer = player;
+		mCode = code;
+	}
+
+	//Create a move from coordinate notation, e.g. "e2e4" or "e7e8q".  Only the start, end and promotion are
+	//known; ChessJudge.findMove() fills in the rest.  Unreadable strings give ChessMove.NONE
+	public ChessMove(String str)
+	{
+		super(str);
+
+		mCode = mParsedCode;
+	}
+
+	//The shared instance (with no player) for a packed move
+	public static ChessMove get(int code)
+	{
+		ChessMove move = SHARED.get(code);
+		if (move == null)
+		{
+			move = new ChessMove(null, code);
+			SHARED.lazySet(code, move);
+		}
+
+		return move;
+	}
+
+	//Pack a move into an int.  promotion is a ChessPieceType ordinal, or 0 for none
+	public static int encode(int from, int to, int kind, int promotion)
+	{
+		return from | (to << 6) | (promotion << 12) | (kind << 15);
+	}
+
+	public static int getFrom(int move)
+	{
+		return move & 0x3F;
+	}
+
+	public static int getTo(int move)
+	{
+		return (move >>> 6) & 0x3F;
+	}
+
+	//ChessPieceType ordinal of the promotion, or 0 for none
+	public static int getPromotion(int move)
+	{
+		return (move >>> 12) & 0x7;
+	}
+
+	public static int getKind(int move)
+	{
+		return (move >>> 15) & 0x3;
+	}
+
+	public static boolean isCapture(int move)
+	{
+		return (move & CAPTURE) != 0;
+	}
+
+	//Coordinate notation e.g. "e2e4", "e7e8q"
+	public static String toString(int move)
+	{
+		String str = ChessBoard.getSquareName(getFrom(move)) + ChessBoard.getSquareName(getTo(move));
+
+		int promotion = getPromotion(move);
+		return (promotion == 0)?str:(str + PROMOTION_LETTERS.charAt(promotion));
+	}
+
+	ChessPlayer getPlayer()
+	{
+		return mPlayer;
+	}
+
+	public int getCode()
+	{
+		return mCode;
+	}
+
+	//[rank, file]
+	public int[] getStart()
+	{
+		int from = getFrom(mCode);
+		return new int[] {ChessBoard.getRank(from), ChessBoard.getFile(from)};
+	}
+
+	//[rank, file]
+	public int[] getEnd()
+	{
+		int to = getTo(mCode);
+		return new int[] {ChessBoard.getRank(to), ChessBoard.getFile(to)};
+	}
+
+	public ChessPiece.ChessPieceType getPromotion()
+	{
+		int promotion = getPromotion(mCode);
+		return (promotion == 0)?null:ChessPiece.ChessPieceType.values()[promotion];
+	}
+
+	@Override
+	public boolean isCapture()
+	{
+		return isCapture(mCode);
+	}
+
+	@Override
+	protected void decode()
+	{
+		String str = mMoveString.trim().toLowerCase();
+		mParsedCode = NONE;
+
+		if ((str.length() < 4)||(str.length() > 5))
+		{
+			return;
+		}
+
+		try
+		{
+			int from = ChessBoard.parseSquare(str.substring(0, 2));
+			int to = ChessBoard.parseSquare(str.substring(2, 4));
+			int promotion = (str.length() == 5)?PROMOTION_LETTERS.indexOf(str.charAt(4)):0;
+
+			if (promotion > 0)
+			{
+				mParsedCode = encode(from, to, NORMAL, promotion);
+			}
+			else if (promotion == 0)
+			{
+				mParsedCode = encode(from, to, NORMAL, 0);
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			mParsedCode = NONE;
+		}
+	}
 }
@@ -0,0 +1,110 @@
+
+//Checks ChessBoard and ChessJudge against published perft counts (the number of legal move sequences of
+//each length), and reports how fast legal moves are generated.
+//
+//Usage:  ChessPerft [max depth]                 (the standard test positions)
+//        ChessPerft divide <depth> <FEN...>     (counts under each move, for tracking down a wrong count)
+
+public class ChessPerft {
+
+	private static final String[] FENS = {
+		ChessBoard.START_FEN,
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+	};
+
+	private static final long[][] EXPECTED = {
+		{20, 400, 8902, 197281, 4865609},
+		{48, 2039, 97862, 4085603},
+		{14, 191, 2812, 43238, 674624},
+		{6, 264, 9467, 422333},
+		{44, 1486, 62379, 2103487},
+	};
+
+	public static void main(String[] args)
+	{
+		if ((args.length > 2)&&args[0].equals("divide"))
+		{
+			divide(joinFen(args, 2), Integer.parseInt(args[1]));
+			return;
+		}
+
+		int maxDepth = (args.length > 0)?Integer.parseInt(args[0]):5;
+		ChessJudge judge = new ChessJudge();
+		boolean passed = true;
+
+		for (int i=0; i<FENS.length; i++)
+		{
+			ChessBoard board = ChessBoard.fromFen(FENS[i]);
+
+			for (int depth=1; depth<=Math.min(maxDepth, EXPECTED[i].length); depth++)
+			{
+				long startTime = System.nanoTime();
+				long count = perft(judge, board, depth, new int[depth*ChessBoard.MAX_MOVES], 0);
+				double seconds = (System.nanoTime() - startTime)/1e9;
+
+				boolean ok = count == EXPECTED[i][depth-1];
+				passed &= ok;
+
+				System.out.println(String.format("position %d depth %d: %d %s (%.1fms, %d leaves/sec)", i + 1, depth, count,
+						ok?"ok":("WRONG, expected " + EXPECTED[i][depth-1]), seconds*1000, Math.round(count/seconds)));
+			}
+		}
+
+		System.out.println(passed?"All counts correct":"Some counts WRONG");
+	}
+
+	//Legal move sequences of length depth.  The last ply is counted without making the moves
+	public static long perft(ChessJudge judge, ChessBoard board, int depth, int[] moves, int start)
+	{
+		int end = judge.generateLegalMoves(board, moves, start);
+		if (depth <= 1)
+		{
+			return (depth == 1)?(end - start):1;
+		}
+
+		long count = 0;
+		for (int i=start; i<end; i++)
+		{
+			board.makeMove(moves[i]);
+			count += perft(judge, board, depth - 1, moves, end);
+			board.unmakeMove(moves[i]);
+		}
+
+		return count;
+	}
+
+	private static void divide(String fen, int depth)
+	{
+		ChessJudge judge = new ChessJudge();
+		ChessBoard board = ChessBoard.fromFen(fen);
+		int[] moves = new int[(depth + 1)*ChessBoard.MAX_MOVES];
+
+		int end = judge.generateLegalMoves(board, moves, 0);
+		long total = 0;
+		for (int i=0; i<end; i++)
+		{
+			board.makeMove(moves[i]);
+			long count = perft(judge, board, depth - 1, moves, end);
+			board.unmakeMove(moves[i]);
+
+			System.out.println(ChessMove.toString(moves[i]) + ": " + count);
+			total += count;
+		}
+
+		System.out.println("Total: " + total);
+	}
+
+	private static String joinFen(String[] args, int start)
+	{
+		StringBuilder fen = new StringBuilder();
+		for (int i=start; i<args.length; i++)
+		{
+			fen.append((i > start)?" ":"").append(args[i]);
+		}
+
+		return fen.toString();
+	}
+}
@@ -1,4 +1,178 @@
 
+//Represents a particular type of chess piece, belonging to one player (white is player 0).
+//
+//Each piece knows its own movement and capture patterns, as offsets [rankOffset, fileOffset...].  Sliding
+//pieces (bishop, rook, queen) can repeat their offsets until they hit another piece; the others move one
+//offset at a time.  Only the pawn needs to know which side of the board it's on.
+//
+//Pieces are immutable, so the shared instances from get() can be used anywhere.  Each piece also has an
+//index (0-11, white pieces first), which ChessBoard uses to number its bitboards.
+
 public class ChessPiece {
 
+	public static enum ChessPieceType {PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING};
+
+	//Number of piece types, and of distinct pieces (types for each player)
+	public static final int TYPES = 6;
+	public static final int PIECES = 2*TYPES;
+
+	private static final ChessPieceType[] TYPE_VALUES = ChessPieceType.values();
+
+	//Indexed by ChessPieceType.ordinal()
+	private static final int[] VALUES = {1, 3, 3, 5, 9, 0};
+	private static final char[] SYMBOLS = {'P', 'N', 'B', 'R', 'Q', 'K'};
+
+	private static final int[] KNIGHT_OFFSETS = {2, 1, 1, 2, -1, 2, -2, 1, -2, -1, -1, -2, 1, -2, 2, -1};
+	private static final int[] BISHOP_OFFSETS = {1, 1, 1, -1, -1, 1, -1, -1};
+	private static final int[] ROOK_OFFSETS = {1, 0, -1, 0, 0, 1, 0, -1};
+	private static final int[] ROYAL_OFFSETS = {1, 0, -1, 0, 0, 1, 0, -1, 1, 1, 1, -1, -1, 1, -1, -1};
+
+	private static final ChessPiece[] PIECE_LIST = new ChessPiece[PIECES];
+	static
+	{
+		for (int i=0; i<PIECES; i++)
+		{
+			PIECE_LIST[i] = new ChessPiece(TYPE_VALUES[i % TYPES], i/TYPES);
+		}
+	}
+
+	private ChessPieceType mType;
+	private int mOwner;
+
+	public ChessPiece(ChessPieceType type, int owner)
+	{
+		if ((owner < 0)||(owner > 1))
+		{
+			throw new IllegalArgumentException("Invalid owner " + owner);
+		}
+
+		mType = type;
+		mOwner = owner;
+	}
+
+	//The shared instance of a piece
+	public static ChessPiece get(ChessPieceType type, int owner)
+	{
+		return PIECE_LIST[owner*TYPES + type.ordinal()];
+	}
+
+	//The shared instance for a piece index (see getIndex())
+	public static ChessPiece get(int index)
+	{
+		return PIECE_LIST[index];
+	}
+
+	//The piece for a FEN letter (upper case for white), or null
+	public static ChessPiece fromSymbol(char symbol)
+	{
+		for (int i=0; i<TYPES; i++)
+		{
+			if (SYMBOLS[i] == symbol)
+			{
+				return PIECE_LIST[i];
+			}
+			else if (Character.toLowerCase(SYMBOLS[i]) == symbol)
+			{
+				return PIECE_LIST[TYPES + i];
+			}
+		}
+
+		return null;
+	}
+
+	public ChessPieceType getType()
+	{
+		return mType;
+	}
+
+	public int getOwner()
+	{
+		return mOwner;
+	}
+
+	//0-5 for white's pieces, 6-11 for black's, in ChessPieceType order
+	public int getIndex()
+	{
+		return mOwner*TYPES + mType.ordinal();
+	}
+
+	//Standard chess valuation e.g. Pawn = 1, Bishop = 3.  The king is 0, since it's never traded
+	public int getValue()
+	{
+		return VALUES[mType.ordinal()];
+	}
+
+	//FEN letter:  upper case for white, lower case for black
+	public char getSymbol()
+	{
+		char symbol = SYMBOLS[mType.ordinal()];
+		return (mOwner == 0)?symbol:Character.toLowerCase(symbol);
+	}
+
+	//Offsets that represent valid moves for this piece, as [rankOffset, fileOffset...].  The pawn's
+	//double step from its starting rank isn't included
+	public int[] getMoveOffsets()
+	{
+		switch (mType)
+		{
+		case PAWN:
+			return new int[] {(mOwner == 0)?1:-1, 0};
+		case KNIGHT:
+			return KNIGHT_OFFSETS.clone();
+		case BISHOP:
+			return BISHOP_OFFSETS.clone();
+		case ROOK:
+			return ROOK_OFFSETS.clone();
+		default:
+			return ROYAL_OFFSETS.clone();
+		}
+	}
+
+	//Offsets for captures; only different from getMoveOffsets() for pawns
+	public int[] getCaptureOffset()
+	{
+		if (mType == ChessPieceType.PAWN)
+		{
+			int forward = (mOwner == 0)?1:-1;
+			return new int[] {forward, -1, forward, 1};
+		}
+
+		return getMoveOffsets();
+	}
+
+	//True if this piece can move even if there are pieces between its starting and ending point
+	public boolean canJump()
+	{
+		return mType == ChessPieceType.KNIGHT;
+	}
+
+	//True if this piece can repeat its offsets (move any distance along a line)
+	public boolean isSliding()
+	{
+		return (mType == ChessPieceType.BISHOP)||(mType == ChessPieceType.ROOK)||(mType == ChessPieceType.QUEEN);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof ChessPiece))
+		{
+			return false;
+		}
+
+		ChessPiece other = (ChessPiece)obj;
+		return (mType == other.mType)&&(mOwner == other.mOwner);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return getIndex();
+	}
+
+	@Override
+	public String toString()
+	{
+		return Character.toString(getSymbol());
+	}
 }
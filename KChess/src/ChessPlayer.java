@@ -1,4 +1,91 @@
 
-public class ChessPlayer {
+//Represents a source of Chess moves.  Subclasses support human or algorithmic play.
+//
+//Players don't get threads of their own.  When it's a player's turn the ChessEngine runs the player (as
+//a Runnable) on a shared executor; run() asks chooseMove() for a move and submits it.  When time runs
+//out, or the game is paused or ended, the engine interrupts the thread, so long computations should check
+//isStopped() now and then and give up promptly.  Any move submitted after that is ignored.
+//
+//While the opponent is thinking, the engine calls ponder() on another pooled thread, so a player can
+//use the opponent's time (e.g. by searching the expected reply and keeping its results); it's
+//interrupted as soon as the opponent moves.
+//
+//In a standard game, white is player 0.
 
+public abstract class ChessPlayer implements Runnable {
+
+	private ChessEngine mEngine;
+	private int mNumber;
+
+	//Create a numbered player.  The engine can be null if the player is handed to an engine's constructor
+	public ChessPlayer(ChessEngine engine, int number)
+	{
+		mEngine = engine;
+		mNumber = number;
+	}
+
+	public int getNumber()
+	{
+		return mNumber;
+	}
+
+	public ChessEngine getEngine()
+	{
+		return mEngine;
+	}
+
+	void setEngine(ChessEngine engine)
+	{
+		mEngine = engine;
+	}
+
+	//Make a single move on the board, through the ChessEngine
+	public void run()
+	{
+		ChessBoard board = mEngine.getBoard();
+		if (board.getTurn() != mNumber)
+		{
+			return;
+		}
+
+		int move = chooseMove(board, mEngine.getClock());
+		if ((move != ChessMove.NONE)&&!isStopped())
+		{
+			mEngine.move(new ChessMove(this, move));
+		}
+	}
+
+	//Choose a move (in ChessMove's packed form) for this position, or ChessMove.NONE.  The board is a copy,
+	//so it can be changed freely
+	protected abstract int chooseMove(ChessBoard board, ChessClock clock);
+
+	//Think on the opponent's time.  board is the position with the opponent to move.  Should return when
+	//isStopped() is true.  Only called if wantsToPonder() is true
+	protected void ponder(ChessBoard board)
+	{
+	}
+
+	//Players that ponder should return true, so the engine gives them a thread on the opponent's time
+	protected boolean wantsToPonder()
+	{
+		return false;
+	}
+
+	//Respond to a draw offer
+	protected boolean acceptDraw(ChessBoard board)
+	{
+		return false;
+	}
+
+	//True once this player's computation should stop (its thread has been interrupted)
+	protected boolean isStopped()
+	{
+		return Thread.currentThread().isInterrupted();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + " " + mNumber;
+	}
 }
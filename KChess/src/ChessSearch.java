@@ -0,0 +1,132 @@
+import java.util.List;
+
+import ksk.game.HistoryOrdering;
+import ksk.game.IterativeDeepening;
+import ksk.game.KillerOrdering;
+import ksk.game.Move;
+import ksk.game.SearchStats;
+import ksk.game.TranspositionTable;
+
+//An iterative deepening search of chess positions, with its own transposition table and move orderings,
+//kept from search to search.  Used by SearchChessPlayer, the UCI front-end and BatchAnalysis.
+//
+//A ChessSearch searches on one thread at a time.  stop() can be called from any thread; it aborts the
+//search in progress (keeping the deepest completed result) and any later ones until resume() is called,
+//so it's safe to call stop() before the search has even started.  Interrupting the searching thread also
+//aborts it.
+
+public class ChessSearch {
+
+	public static final int DEFAULT_TABLE_MEGABYTES = 16;
+
+	private ChessAlgo mAlgo;
+	private IterativeDeepening mSearch;
+
+	public ChessSearch(int tableMegabytes)
+	{
+		mAlgo = new ChessAlgo();
+		mAlgo.setTranspositionTable(TranspositionTable.withMegabytes(tableMegabytes));
+		mAlgo.addMoveOrdering(new ChessAlgo.CaptureValueOrdering());
+		mAlgo.addMoveOrdering(new KillerOrdering());
+		mAlgo.addMoveOrdering(new HistoryOrdering());
+
+		mSearch = new IterativeDeepening(mAlgo);
+	}
+
+	public ChessSearch()
+	{
+		this(DEFAULT_TABLE_MEGABYTES);
+	}
+
+	public ChessAlgo getAlgo()
+	{
+		return mAlgo;
+	}
+
+	public void stop()
+	{
+		mAlgo.stop();
+	}
+
+	public void resume()
+	{
+		mAlgo.resume();
+	}
+
+	//Score positions found in these tablebases by their lookups (null for none)
+	public void setTablebases(Tablebases tablebases)
+	{
+		mAlgo.setTablebases(tablebases);
+		clear();
+	}
+
+	//Forget everything learned from earlier searches (e.g. for a new game)
+	public void clear()
+	{
+		mAlgo.getTranspositionTable().clear();
+	}
+
+	//Search a position to at most maxDepth (0 for no limit), giving up at the deadline (a
+	//System.currentTimeMillis() value, or -1 for none).  The listener (which may be null) hears about each
+	//completed depth.  Returns the deepest completed result, or null if the search was stopped before
+	//depth 1 finished
+	public SearchStats search(ChessBoard board, int maxDepth, long deadline, IterativeDeepening.Listener listener)
+	{
+		return search(board, maxDepth, deadline, deadline, listener);
+	}
+
+	//As above, but no new depth is started after the soft deadline
+	public SearchStats search(ChessBoard board, int maxDepth, long softDeadline, long hardDeadline, IterativeDeepening.Listener listener)
+	{
+		mSearch.setMaxDepth((maxDepth > 0)?maxDepth:IterativeDeepening.DEFAULT_MAX_DEPTH);
+
+		ChessState state = new ChessState(board);
+		state.setEvaluation(mAlgo.newEvaluation());
+
+		return mSearch.search(state, board.getTurn() == ChessBoard.WHITE, softDeadline, hardDeadline, listener);
+	}
+
+	//The best line found from this position, as far as the transposition table remembers it
+	public int[] getPrincipalVariation(ChessBoard board, int maxLength)
+	{
+		List<Move> line = mAlgo.getPrincipalVariation(new ChessState(board), maxLength);
+
+		int[] moves = new int[line.size()];
+		for (int i=0; i<moves.length; i++)
+		{
+			moves[i] = ((ChessMove)line.get(i)).getCode() & ~ChessMove.CAPTURE;
+		}
+
+		return moves;
+	}
+
+	//The best move from a search result, in ChessMove's packed form, or ChessMove.NONE
+	public static int getBestMove(SearchStats stats)
+	{
+		if ((stats == null)||(stats.getBestMove() == null))
+		{
+			return ChessMove.NONE;
+		}
+
+		return ((ChessMove)stats.getBestMove()).getCode() & ~ChessMove.CAPTURE;
+	}
+
+	//A search score (from white's point of view) as UCI reports it, from the point of view of the player to
+	//move:  "cp <centipawns>" or "mate <moves>", negative if they're losing
+	public static String formatScore(double score, ChessBoard board)
+	{
+		if (board.getTurn() != ChessBoard.WHITE)
+		{
+			score = -score;
+		}
+
+		if (ChessAlgo.isMateScore(score))
+		{
+			int plies = ChessAlgo.getMatePlies(score, 2*(board.getFullMoveNumber() - 1) + board.getTurn());
+			int moves = (plies + 1)/2;
+			return "mate " + ((score > 0)?moves:-moves);
+		}
+
+		return "cp " + Math.round(score);
+	}
+}
@@ -0,0 +1,255 @@
+import java.util.Arrays;
+
+import ksk.game.Move;
+import ksk.game.MoveIterator;
+import ksk.game.MutableGameState;
+
+//A chess position as a GameAlgos MutableGameState, so the generic searches (MinimaxAlgo, Perft, ...) can
+//play chess.  It wraps a ChessBoard, which moves are made and unmade on in place, and a ChessJudge for
+//legality.
+//
+//Legal moves are generated in two stages:  captures (including en passant) first, then everything else.
+//The moves are the shared ChessMove instances (see ChessMove.get()), flagged as captures where they are,
+//so generation doesn't allocate.  The codes generated at each undo depth are remembered, with the hash key
+//of the position they were generated for, so a move generated here for the current position can be made
+//without checking it again.  Any other move (parsed from a string, or a shared instance generated for some
+//other position) is checked with the judge before it's made.
+//
+//White is player 0, and is the maximizing player.
+
+public class ChessState extends MutableGameState {
+
+	private ChessBoard mBoard;
+	private ChessJudge mJudge;
+
+	private int[] mMoves = new int[ChessBoard.MAX_MOVES];
+
+	//For each undo depth:  the codes of the moves generated there, how many, the position's hash key and
+	//how many stages have been recorded (0 for none)
+	private int[][] mGenerated = new int[16][];
+	private int[] mGeneratedCount = new int[16];
+	private long[] mGeneratedKey = new long[16];
+	private int[] mGeneratedStages = new int[16];
+
+	//Board modification count when move generation last found no legal moves, so evaluation can tell
+	//mate and stalemate apart from positions that just haven't been searched
+	private int mNoMoves;
+
+	public ChessState(ChessBoard board)
+	{
+		super();
+
+		mBoard = new ChessBoard(board);
+		mJudge = new ChessJudge();
+		mNoMoves = -1;
+	}
+
+	//The standard starting position
+	public ChessState()
+	{
+		this(ChessBoard.newGame());
+	}
+
+	//The board itself, not a copy; changing it changes this state
+	public ChessBoard getBoard()
+	{
+		return mBoard;
+	}
+
+	public ChessJudge getJudge()
+	{
+		return mJudge;
+	}
+
+	public int getTurn()
+	{
+		return mBoard.getTurn();
+	}
+
+	//Number of half moves played since the start of the game (not just on this state), so scores based on it
+	//are the same however the position was reached
+	public int getPly()
+	{
+		return 2*(mBoard.getFullMoveNumber() - 1) + mBoard.getTurn();
+	}
+
+	//True if the last move generation found that the player to move has no legal moves, and nothing has
+	//changed since
+	public boolean isKnownToHaveNoMoves()
+	{
+		return mNoMoves == mBoard.getModCount();
+	}
+
+	@Override
+	public long getHashKey()
+	{
+		return mBoard.getHashKey();
+	}
+
+	@Override
+	public ChessState copy()
+	{
+		ChessState copy = new ChessState(mBoard);
+		if (getEvaluation() != null)
+		{
+			copy.setEvaluation(getEvaluation().copy());
+		}
+
+		return copy;
+	}
+
+	@Override
+	protected int getMoveStageCount()
+	{
+		return 2;
+	}
+
+	@Override
+	protected void generateMoves(int stage, MoveIterator moves)
+	{
+		boolean record = startRecording(stage);
+
+		if (stage == 0)
+		{
+			int count = mJudge.generateLegalCaptures(mBoard, mMoves, 0);
+			for (int i=0; i<count; i++)
+			{
+				addMove(moves, mMoves[i] | ChessMove.CAPTURE, record);
+			}
+			return;
+		}
+
+		//Everything again, skipping the captures from the first stage
+		int count = mJudge.generateLegalMoves(mBoard, mMoves, 0);
+		if (count == 0)
+		{
+			mNoMoves = mBoard.getModCount();
+		}
+
+		long enemy = mBoard.getOccupied(mBoard.getTurn() ^ 1);
+		for (int i=0; i<count; i++)
+		{
+			int move = mMoves[i];
+			if ((((1L << ChessMove.getTo(move)) & enemy) == 0)&&(ChessMove.getKind(move) != ChessMove.EN_PASSANT))
+			{
+				addMove(moves, move, record);
+			}
+		}
+	}
+
+	//Whether to record the moves of this stage at the current depth:  a new position starts again at stage 0,
+	//and a stage that's already been recorded (by another iterator over the same moves) isn't recorded twice
+	private boolean startRecording(int stage)
+	{
+		int depth = getUndoDepth();
+		if (depth >= mGenerated.length)
+		{
+			int length = 2*depth;
+			mGenerated = Arrays.copyOf(mGenerated, length);
+			mGeneratedCount = Arrays.copyOf(mGeneratedCount, length);
+			mGeneratedKey = Arrays.copyOf(mGeneratedKey, length);
+			mGeneratedStages = Arrays.copyOf(mGeneratedStages, length);
+		}
+
+		if ((mGeneratedStages[depth] == 0)||(mGeneratedKey[depth] != mBoard.getHashKey()))
+		{
+			if (stage != 0)
+			{
+				mGeneratedStages[depth] = 0;
+				return false;
+			}
+
+			if (mGenerated[depth] == null)
+			{
+				mGenerated[depth] = new int[2*ChessBoard.MAX_MOVES];
+			}
+			mGeneratedKey[depth] = mBoard.getHashKey();
+			mGeneratedCount[depth] = 0;
+			mGeneratedStages[depth] = 0;
+		}
+
+		if (mGeneratedStages[depth] != stage)
+		{
+			return false;
+		}
+
+		mGeneratedStages[depth]++;
+		return true;
+	}
+
+	private void addMove(MoveIterator moves, int code, boolean record)
+	{
+		if (record)
+		{
+			int depth = getUndoDepth();
+			mGenerated[depth][mGeneratedCount[depth]++] = code;
+		}
+
+		moves.add(ChessMove.get(code));
+	}
+
+	//True if the move was generated at this depth, for the current position
+	private boolean isGenerated(int code)
+	{
+		int depth = getUndoDepth();
+		if ((depth >= mGenerated.length)||(mGeneratedStages[depth] == 0)||(mGeneratedKey[depth] != mBoard.getHashKey()))
+		{
+			return false;
+		}
+
+		int[] generated = mGenerated[depth];
+		for (int i=mGeneratedCount[depth]-1; i>=0; i--)
+		{
+			if (generated[i] == code)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	protected boolean makeMove(Move move)
+	{
+		int code = resolveMove(move);
+		if (code == ChessMove.NONE)
+		{
+			return false;
+		}
+
+		mBoard.makeMove(code);
+		pushUndo(code);
+		return true;
+	}
+
+	//The packed code of a move from this position, or ChessMove.NONE if it's illegal.  Moves generated here
+	//for this position are known to be legal; anything else has to be found among the legal moves
+	int resolveMove(Move move)
+	{
+		int code = ((ChessMove)move).getCode();
+		if (!isGenerated(code))
+		{
+			code = mJudge.findMove(mBoard, (ChessMove)move);
+		}
+
+		return code;
+	}
+
+	//The packed code of the last move made
+	int getLastMoveCode()
+	{
+		return (int)peekUndo();
+	}
+
+	@Override
+	protected void unmakeMove(Move move)
+	{
+		mBoard.unmakeMove((int)popUndo());
+	}
+
+	public String toString()
+	{
+		return mBoard.toFen();
+	}
+}
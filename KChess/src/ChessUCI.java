@@ -0,0 +1,366 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ksk.game.IterativeDeepening;
+import ksk.game.SearchStats;
+import ksk.game.TimeAllocation;
+
+//A line-protocol front-end for the search, speaking the subset of UCI (the Universal Chess Interface)
+//needed for analysis and for playing under a GUI or match runner:
+//
+//   uci, isready, ucinewgame, quit
+//   position [startpos | fen <fen>] [moves <move>...]
+//   go [depth <n>] [movetime <ms>] [wtime <ms>] [btime <ms>] [winc <ms>] [binc <ms>] [movestogo <n>] [infinite]
+//   stop
+//
+//Moves are in coordinate notation ("e2e4", "e7e8q").  The search runs on a background thread, so stop
+//and isready are answered while it's thinking.  After each completed depth it reports
+//"info depth ... score cp|mate ... nodes ... nps ... time ... pv ...", and finally "bestmove".
+//Unknown commands are ignored, as the protocol asks.
+//
+//Given an opening book, "go" answers at once with the book's best move while the position is in the book
+//(except for "go infinite", which is analysis).  Likewise, given a directory of tablebases (see
+//TablebaseGenerator), it answers with the tablebase move in positions they cover, and the search uses them.
+//
+//Usage:  ChessUCI [table megabytes] [book file | -] [tablebase directory]
+
+public class ChessUCI {
+
+	//Moves assumed to be left when the clock doesn't say
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+
+	private ChessSearch mSearch;
+	private OpeningBook mBook;
+	private Tablebases mTablebases;
+	private ChessJudge mJudge = new ChessJudge();
+	private ChessBoard mBoard = ChessBoard.newGame();
+
+	private ExecutorService mThinker;
+	private Future<?> mThinking;
+
+	//Released by stop, for "go infinite" searches that finish before they're told to stop
+	private CountDownLatch mStopSignal = new CountDownLatch(0);
+
+	public ChessUCI(int tableMegabytes)
+	{
+		mSearch = new ChessSearch(tableMegabytes);
+		mThinker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "UCI search");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	//Answer from this book where possible (null for none)
+	public void setOpeningBook(OpeningBook book)
+	{
+		mBook = book;
+	}
+
+	//Answer from, and search with, these tablebases where possible (null for none)
+	public void setTablebases(Tablebases tablebases)
+	{
+		mTablebases = tablebases;
+		mSearch.setTablebases(tablebases);
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int megabytes = (args.length > 0)?Integer.parseInt(args[0]):ChessSearch.DEFAULT_TABLE_MEGABYTES;
+
+		ChessUCI uci = new ChessUCI(megabytes);
+		if ((args.length > 1)&&!args[1].equals("-"))
+		{
+			uci.setOpeningBook(new OpeningBook(new File(args[1])));
+		}
+		if (args.length > 2)
+		{
+			uci.setTablebases(new Tablebases(new File(args[2])));
+		}
+
+		uci.run(new BufferedReader(new InputStreamReader(System.in)));
+	}
+
+	//Read and carry out commands until quit or the end of the input
+	public void run(BufferedReader in) throws IOException
+	{
+		String line;
+		while ((line = in.readLine()) != null)
+		{
+			String[] words = line.trim().split("\\s+");
+			if (words[0].equals("quit"))
+			{
+				break;
+			}
+
+			try
+			{
+				command(words);
+			}
+			catch (IllegalArgumentException e)
+			{
+				send("info string " + e.getMessage());
+			}
+		}
+
+		stopThinking();
+		mThinker.shutdown();
+	}
+
+	private void command(String[] words)
+	{
+		switch (words[0])
+		{
+		case "uci":
+			send("id name KChess");
+			send("uciok");
+			break;
+		case "isready":
+			send("readyok");
+			break;
+		case "ucinewgame":
+			stopThinking();
+			mSearch.clear();
+			mBoard = ChessBoard.newGame();
+			break;
+		case "position":
+			stopThinking();
+			setPosition(words);
+			break;
+		case "go":
+			stopThinking();
+			go(words);
+			break;
+		case "stop":
+			stopThinking();
+			break;
+		}
+	}
+
+	/******
+	 * Commands
+	 ******/
+
+	private void setPosition(String[] words)
+	{
+		int index = 1;
+		ChessBoard board;
+
+		if ((words.length > 1)&&(words[1].equals("fen")))
+		{
+			StringBuilder fen = new StringBuilder();
+			for (index=2; (index < words.length)&&!words[index].equals("moves"); index++)
+			{
+				fen.append(words[index]).append(' ');
+			}
+			board = ChessBoard.fromFen(fen.toString());
+		}
+		else
+		{
+			board = ChessBoard.newGame();
+			index = 2;
+		}
+
+		//Moves up to the first bad one are kept
+		mBoard = board;
+		if ((index < words.length)&&(words[index].equals("moves")))
+		{
+			for (index++; index < words.length; index++)
+			{
+				int move = mJudge.findMove(mBoard, new ChessMove(words[index]));
+				if (move == ChessMove.NONE)
+				{
+					throw new IllegalArgumentException("Illegal move " + words[index]);
+				}
+				mBoard.makeMove(move);
+			}
+		}
+	}
+
+	private void go(String[] words)
+	{
+		int depth = 0;
+		long moveTime = -1;
+		long[] time = {-1, -1};
+		long[] increment = {0, 0};
+		int movesToGo = DEFAULT_MOVES_TO_GO;
+		boolean infinite = false;
+
+		for (int i=1; i<words.length; i++)
+		{
+			String value = (i+1 < words.length)?words[i+1]:"0";
+			switch (words[i])
+			{
+			case "depth":      depth = Integer.parseInt(value); i++; break;
+			case "movetime":   moveTime = Long.parseLong(value); i++; break;
+			case "wtime":      time[ChessBoard.WHITE] = Long.parseLong(value); i++; break;
+			case "btime":      time[ChessBoard.BLACK] = Long.parseLong(value); i++; break;
+			case "winc":       increment[ChessBoard.WHITE] = Long.parseLong(value); i++; break;
+			case "binc":       increment[ChessBoard.BLACK] = Long.parseLong(value); i++; break;
+			case "movestogo":  movesToGo = Math.max(1, Integer.parseInt(value)); i++; break;
+			case "infinite":   infinite = true; break;
+			}
+		}
+
+		if ((mBook != null)&&!infinite)
+		{
+			int move = mBook.getBestMove(mBoard);
+			if (move != ChessMove.NONE)
+			{
+				send("info string book move");
+				send("bestmove " + ChessMove.toString(move));
+				return;
+			}
+		}
+
+		if ((mTablebases != null)&&!infinite)
+		{
+			int move = mTablebases.getBestMove(mBoard);
+			if (move != ChessMove.NONE)
+			{
+				send("info string tablebase move");
+				send("bestmove " + ChessMove.toString(move));
+				return;
+			}
+		}
+
+		//Work out the deadlines; a fixed move time is used in full, a clock is shared between the moves to go
+		long now = System.currentTimeMillis();
+		long softDeadline = -1;
+		long hardDeadline = -1;
+		int turn = mBoard.getTurn();
+
+		if (moveTime >= 0)
+		{
+			softDeadline = hardDeadline = now + moveTime;
+		}
+		else if ((time[turn] >= 0)&&!infinite)
+		{
+			long available = Math.min(time[turn]/movesToGo + increment[turn], time[turn] - Math.min(time[turn]/10, 1000));
+			TimeAllocation allocation = new TimeAllocation();
+
+			softDeadline = now + allocation.getSoftLimit(Math.max(0, available));
+			hardDeadline = now + allocation.getHardLimit(Math.max(0, available));
+		}
+
+		mStopSignal = new CountDownLatch(infinite?1:0);
+		mSearch.resume();
+		mThinking = mThinker.submit(new Thinker(new ChessBoard(mBoard), depth, softDeadline, hardDeadline, mStopSignal));
+	}
+
+	//Stop the search in progress (which then reports its best move), and wait for it to finish
+	private void stopThinking()
+	{
+		mSearch.stop();
+		mStopSignal.countDown();
+
+		if (mThinking != null)
+		{
+			try
+			{
+				mThinking.get();
+			}
+			catch (Exception e)
+			{
+				send("info string Search failed: " + e);
+			}
+			mThinking = null;
+		}
+	}
+
+	private static void send(String message)
+	{
+		synchronized (System.out)
+		{
+			System.out.println(message);
+			System.out.flush();
+		}
+	}
+
+	/******
+	 * Searching
+	 ******/
+
+	//Runs one "go" on the search thread
+	private class Thinker implements Runnable, IterativeDeepening.Listener
+	{
+		private ChessBoard mRoot;
+		private int mDepth;
+		private long mSoftDeadline;
+		private long mHardDeadline;
+		private CountDownLatch mStopped;
+
+		private long mStartTime;
+		private long mNodes;
+
+		public Thinker(ChessBoard root, int depth, long softDeadline, long hardDeadline, CountDownLatch stopped)
+		{
+			mRoot = root;
+			mDepth = depth;
+			mSoftDeadline = softDeadline;
+			mHardDeadline = hardDeadline;
+			mStopped = stopped;
+		}
+
+		public void run()
+		{
+			mStartTime = System.nanoTime();
+			mNodes = 0;
+
+			SearchStats result = mSearch.search(mRoot, mDepth, mSoftDeadline, mHardDeadline, this);
+			int best = ChessSearch.getBestMove(result);
+
+			//Nothing completed (e.g. stopped at once):  any legal move is better than none
+			if (best == ChessMove.NONE)
+			{
+				int[] moves = new int[ChessBoard.MAX_MOVES];
+				if (mJudge.generateLegalMoves(mRoot, moves, 0) > 0)
+				{
+					best = moves[0];
+				}
+			}
+
+			//An infinite search doesn't report its move until it's stopped
+			try
+			{
+				mStopped.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			send("bestmove " + ((best == ChessMove.NONE)?"0000":ChessMove.toString(best)));
+		}
+
+		public void depthCompleted(SearchStats stats)
+		{
+			mNodes += stats.getNodes();
+			long millis = Math.max(1, (System.nanoTime() - mStartTime)/1000000);
+
+			StringBuilder info = new StringBuilder();
+			info.append("info depth ").append(stats.getDepth());
+			info.append(" score ").append(ChessSearch.formatScore(stats.getScore(), mRoot));
+			info.append(" nodes ").append(mNodes);
+			info.append(" nps ").append(mNodes*1000/millis);
+			info.append(" time ").append(millis);
+			info.append(" pv");
+			for (int move : mSearch.getPrincipalVariation(mRoot, stats.getDepth()))
+			{
+				info.append(' ').append(ChessMove.toString(move));
+			}
+
+			send(info.toString());
+		}
+	}
+}
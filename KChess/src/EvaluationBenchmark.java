@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+import ksk.game.Evaluation;
+import ksk.game.EvaluationCache;
+import ksk.game.Move;
+import ksk.game.MoveIterator;
+
+//Measures static evaluation speed on ChessState, the way a search uses it:  walks the tree of legal moves
+//to a fixed depth from a few positions, with doMove()/undoMove(), and evaluates every leaf.
+//
+//   none          the walk alone, without evaluating, to subtract from the others
+//   scratch       every term worked out from scratch at each leaf
+//   incremental   a ChessEvaluation attached to the state, updated as moves are made and unmade
+//   cached        incremental, with an EvaluationCache (the walk repeats, so the second time round hits)
+//
+//Reports leaves per second and evaluations per second (leaves over the time beyond the bare walk), and
+//checks that the incremental scores agree with the ones from scratch.  Every mode is run once untimed to
+//warm up the JIT, then timed [repeats] times, taking turns so that drift affects them all alike; the
+//fastest time for each is reported.  When a mode is no slower than the bare walk, the evaluation time is
+//lost in the noise, and evals/sec is shown as "-".
+//
+//Usage:  EvaluationBenchmark [depth] [repeats]
+
+public class EvaluationBenchmark {
+
+	private static final String[] POSITIONS = {
+		ChessBoard.START_FEN,
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+	};
+
+	private static final String[] MODES = {"none", "scratch", "incremental", "cached"};
+
+	public static void main(String[] args)
+	{
+		int depth = (args.length > 0)?Integer.parseInt(args[0]):3;
+		int repeats = (args.length > 1)?Integer.parseInt(args[1]):3;
+
+		//Check the incremental scores (which also warms up the JIT)
+		long mismatches = 0;
+		for (String fen : POSITIONS)
+		{
+			mismatches += check(ChessBoard.fromFen(fen), depth);
+		}
+		System.out.println(mismatches + " incremental scores differing from scratch");
+
+		//Warm up the JIT on every mode
+		for (int i=0; i<POSITIONS.length; i++)
+		{
+			for (int mode=0; mode<MODES.length; mode++)
+			{
+				time(POSITIONS[i], mode, depth);
+			}
+		}
+
+		System.out.println(String.format("%-6s %-12s %12s %14s %14s %10s", "pos", "mode", "leaves", "leaves/sec", "evals/sec", "ms"));
+
+		for (int i=0; i<POSITIONS.length; i++)
+		{
+			long leaves = walk(new ChessState(ChessBoard.fromFen(POSITIONS[i])), null, 0, depth);
+
+			double[] best = new double[MODES.length];
+			Arrays.fill(best, Double.POSITIVE_INFINITY);
+			for (int r=0; r<repeats; r++)
+			{
+				for (int mode=0; mode<MODES.length; mode++)
+				{
+					best[mode] = Math.min(best[mode], time(POSITIONS[i], mode, depth));
+				}
+			}
+
+			double baseline = best[0];
+			for (int mode=0; mode<MODES.length; mode++)
+			{
+				double seconds = best[mode];
+				String evals = ((mode == 0)||(seconds <= baseline))?"-":Long.toString(Math.round(leaves/(seconds - baseline)));
+				System.out.println(String.format("%-6d %-12s %12d %14d %14s %10.1f", i + 1, MODES[mode], leaves,
+						Math.round(leaves/seconds), evals, seconds*1000));
+			}
+		}
+	}
+
+	//Time one walk of a position in one mode, in seconds (the cached mode walks once beforehand, untimed,
+	//to fill the cache)
+	private static double time(String fen, int mode, int depth)
+	{
+		ChessState state = new ChessState(ChessBoard.fromFen(fen));
+		ChessEvaluation evaluation = new ChessEvaluation((mode == 3)?new EvaluationCache(1 << 16):null);
+		if (mode >= 2)
+		{
+			state.setEvaluation(evaluation);
+		}
+		if (mode == 3)
+		{
+			walk(state, evaluation, mode, depth);
+		}
+
+		long startTime = System.nanoTime();
+		walk(state, evaluation, mode, depth);
+		return (System.nanoTime() - startTime)/1e9;
+	}
+
+	//Walk the tree, evaluating the leaves.  Returns the number of leaves
+	private static long walk(ChessState state, Evaluation evaluation, int mode, int depth)
+	{
+		if (depth == 0)
+		{
+			if (mode == 1)
+			{
+				sink += evaluation.evaluateFromScratch(state);
+			}
+			else if (mode >= 2)
+			{
+				sink += evaluation.evaluate(state);
+			}
+			return 1;
+		}
+
+		long leaves = 0;
+		for (MoveIterator moves = state.moves(); moves.hasNext();)
+		{
+			Move move = moves.next();
+			state.doMove(move);
+			leaves += walk(state, evaluation, mode, depth - 1);
+			state.undoMove();
+		}
+
+		return leaves;
+	}
+
+	//Keeps the JIT from throwing the evaluations away
+	private static long sink;
+
+	//Walk the tree with an attached evaluation, comparing every node's score with one from scratch.  Returns
+	//the number that differ
+	private static long check(ChessBoard board, int depth)
+	{
+		ChessState state = new ChessState(board);
+		Evaluation evaluation = new ChessEvaluation();
+		state.setEvaluation(evaluation);
+
+		return check(state, evaluation, depth);
+	}
+
+	private static long check(ChessState state, Evaluation evaluation, int depth)
+	{
+		long mismatches = (evaluation.evaluate(state) != evaluation.evaluateFromScratch(state))?1:0;
+		if (depth == 0)
+		{
+			return mismatches;
+		}
+
+		for (MoveIterator moves = state.moves(); moves.hasNext();)
+		{
+			Move move = moves.next();
+			state.doMove(move);
+			mismatches += check(state, evaluation, depth - 1);
+			state.undoMove();
+		}
+
+		return mismatches;
+	}
+}
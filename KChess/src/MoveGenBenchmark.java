@@ -0,0 +1,73 @@
+
+//Measures pseudo-legal move generation speed on ChessBoard.
+//
+//Walks the tree of pseudo-legal moves to a fixed depth from a few positions, with makeMove()/unmakeMove(),
+//and counts the moves generated at the last ply without making them.  Reports moves generated per second,
+//and positions made per second.
+//
+//Usage:  MoveGenBenchmark [depth] [repeats]
+
+public class MoveGenBenchmark {
+
+	private static final String[] POSITIONS = {
+		ChessBoard.START_FEN,
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+	};
+
+	public static void main(String[] args)
+	{
+		int depth = (args.length > 0)?Integer.parseInt(args[0]):4;
+		int repeats = (args.length > 1)?Integer.parseInt(args[1]):3;
+
+		//Warm up the JIT
+		for (String fen : POSITIONS)
+		{
+			walk(ChessBoard.fromFen(fen), depth - 1);
+		}
+
+		System.out.println(String.format("%-6s %14s %14s %14s %12s", "pos", "moves", "moves/sec", "makes/sec", "ms"));
+
+		for (int r=0; r<repeats; r++)
+		{
+			for (int i=0; i<POSITIONS.length; i++)
+			{
+				ChessBoard board = ChessBoard.fromFen(POSITIONS[i]);
+
+				long startTime = System.nanoTime();
+				long[] counts = walk(board, depth);
+				double seconds = (System.nanoTime() - startTime)/1e9;
+
+				System.out.println(String.format("%-6d %14d %14d %14d %12.1f", i + 1, counts[0],
+						Math.round(counts[0]/seconds), Math.round(counts[1]/seconds), seconds*1000));
+			}
+		}
+	}
+
+	//Returns {moves generated, moves made}
+	private static long[] walk(ChessBoard board, int depth)
+	{
+		long[] counts = new long[2];
+		walk(board, depth, new int[depth*ChessBoard.MAX_MOVES], 0, counts);
+		return counts;
+	}
+
+	private static void walk(ChessBoard board, int depth, int[] moves, int start, long[] counts)
+	{
+		int end = board.generateMoves(moves, start);
+		counts[0] += end - start;
+
+		if (depth <= 1)
+		{
+			return;
+		}
+
+		for (int i=start; i<end; i++)
+		{
+			board.makeMove(moves[i]);
+			counts[1]++;
+			walk(board, depth - 1, moves, end, counts);
+			board.unmakeMove(moves[i]);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+//An opening book:  for positions seen in (good) games, the moves that were played and how often.
+//
+//The file is a header followed by fixed-width entries of (position hash, move, weight), 16 bytes each,
+//sorted by hash and then move:
+//
+//   header:  int magic ("KBK1"), int entry size, long entry count
+//   entry:   long ChessBoard.getHashKey(), int ChessMove packed move, int weight
+//
+//The file is memory mapped and binary searched, so opening a book costs nothing however big it is, and
+//only the pages that are actually looked at are read.  Lookups use absolute reads of the shared buffer,
+//so a book can be used by any number of threads.  Moves are checked for legality before they're returned,
+//so a hash collision can't produce an illegal move.  See OpeningBookBuilder for making books.
+
+public class OpeningBook {
+
+	public static final int MAGIC = 0x4B424B31;
+	public static final int ENTRY_SIZE = 16;
+	public static final int HEADER_SIZE = 16;
+
+	private ByteBuffer mEntries;
+	private int mCount;
+
+	public OpeningBook(File file) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if ((size < HEADER_SIZE)||(size > Integer.MAX_VALUE))
+			{
+				throw new IOException("Not an opening book: " + file);
+			}
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			long count = buffer.getLong(8);
+			if ((buffer.getInt(0) != MAGIC)||(buffer.getInt(4) != ENTRY_SIZE)||(count != (size - HEADER_SIZE)/ENTRY_SIZE))
+			{
+				throw new IOException("Not an opening book: " + file);
+			}
+
+			buffer.position(HEADER_SIZE);
+			mEntries = buffer.slice();
+			mCount = (int)count;
+		}
+	}
+
+	//Number of (position, move) entries
+	public int size()
+	{
+		return mCount;
+	}
+
+	public long getHash(int index)
+	{
+		return mEntries.getLong(index*ENTRY_SIZE);
+	}
+
+	public int getMove(int index)
+	{
+		return mEntries.getInt(index*ENTRY_SIZE + 8);
+	}
+
+	public int getWeight(int index)
+	{
+		return mEntries.getInt(index*ENTRY_SIZE + 12);
+	}
+
+	//Index of the first entry for a position hash, or -1 if there isn't one
+	public int find(long hash)
+	{
+		int low = 0;
+		int high = mCount;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (getHash(middle) < hash)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return ((low < mCount)&&(getHash(low) == hash))?low:-1;
+	}
+
+	//Put the book's legal moves for the position (and their weights, if weights isn't null) in moves.
+	//Returns how many there are.  The arrays need room for ChessBoard.MAX_MOVES
+	public int getMoves(ChessBoard board, int[] moves, int[] weights)
+	{
+		long hash = board.getHashKey();
+		int index = find(hash);
+		if (index < 0)
+		{
+			return 0;
+		}
+
+		ChessJudge judge = new ChessJudge();
+		int count = 0;
+		for (; (index < mCount)&&(getHash(index) == hash)&&(count < moves.length); index++)
+		{
+			int move = judge.findMove(board, ChessMove.get(getMove(index) & (ChessMove.CAPTURE - 1)));
+			if (move != ChessMove.NONE)
+			{
+				if (weights != null)
+				{
+					weights[count] = getWeight(index);
+				}
+				moves[count++] = move;
+			}
+		}
+
+		return count;
+	}
+
+	//A book move chosen at random, in proportion to the weights, or ChessMove.NONE if the position isn't in
+	//the book
+	public int chooseMove(ChessBoard board, Random random)
+	{
+		int[] moves = new int[ChessBoard.MAX_MOVES];
+		int[] weights = new int[ChessBoard.MAX_MOVES];
+		int count = getMoves(board, moves, weights);
+
+		long total = 0;
+		for (int i=0; i<count; i++)
+		{
+			total += weights[i];
+		}
+		if (total <= 0)
+		{
+			return ChessMove.NONE;
+		}
+
+		long choice = (long)(random.nextDouble()*total);
+		for (int i=0; i<count; i++)
+		{
+			choice -= weights[i];
+			if (choice < 0)
+			{
+				return moves[i];
+			}
+		}
+
+		return moves[count - 1];
+	}
+
+	//The book move with the highest weight, or ChessMove.NONE
+	public int getBestMove(ChessBoard board)
+	{
+		int[] moves = new int[ChessBoard.MAX_MOVES];
+		int[] weights = new int[ChessBoard.MAX_MOVES];
+		int count = getMoves(board, moves, weights);
+
+		int best = -1;
+		for (int i=0; i<count; i++)
+		{
+			if ((best < 0)||(weights[i] > weights[best]))
+			{
+				best = i;
+			}
+		}
+
+		return (best < 0)?ChessMove.NONE:moves[best];
+	}
+}
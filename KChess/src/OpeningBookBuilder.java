@@ -0,0 +1,269 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Makes OpeningBook files from games.
+//
+//The first maxPly moves of each game are counted, per (position hash, move), in a ConcurrentHashMap, so
+//games can be added from any number of threads at once; addPgn() reads a PGN file in parallel (see
+//PgnReader.readParallel()) straight into it.  Games with errors count up to the first bad move.
+//
+//An entry's weight is the number of games that played the move, with won games counting double for the
+//winner's moves, so the book prefers moves that did well.  Entries weighing less than minCount are left
+//out when the book is written, which keeps one-off games from filling it up.
+//
+//Usage:  OpeningBookBuilder <book file> <pgn file>... [-ply n] [-min n] [-threads n]
+
+public class OpeningBookBuilder {
+
+	public static final int DEFAULT_MAX_PLY = 24;
+	public static final int DEFAULT_MIN_COUNT = 2;
+
+	private int mMaxPly;
+	private int mMinCount;
+
+	private ConcurrentHashMap<Entry, AtomicInteger> mCounts = new ConcurrentHashMap<Entry, AtomicInteger>();
+	private AtomicLong mGames = new AtomicLong();
+
+	public OpeningBookBuilder(int maxPly, int minCount)
+	{
+		mMaxPly = maxPly;
+		mMinCount = minCount;
+	}
+
+	public OpeningBookBuilder()
+	{
+		this(DEFAULT_MAX_PLY, DEFAULT_MIN_COUNT);
+	}
+
+	public long getGameCount()
+	{
+		return mGames.get();
+	}
+
+	//Number of distinct (position, move) pairs counted so far
+	public int getEntryCount()
+	{
+		return mCounts.size();
+	}
+
+	//Count the opening moves of a game.  Can be called from several threads at once
+	public void addGame(PgnGame game)
+	{
+		ChessBoard board;
+		try
+		{
+			board = game.getStartingPosition();
+		}
+		catch (IllegalArgumentException e)
+		{
+			return;
+		}
+
+		//Winner's moves count double
+		String result = game.getResult();
+		int winner = result.equals("1-0")?ChessBoard.WHITE:(result.equals("0-1")?ChessBoard.BLACK:-1);
+
+		int plies = Math.min(mMaxPly, game.getMoveCount());
+		for (int i=0; i<plies; i++)
+		{
+			int move = game.getMove(i);
+			add(board.getHashKey(), move, (board.getTurn() == winner)?2:1);
+			board.makeMove(move);
+		}
+
+		mGames.incrementAndGet();
+	}
+
+	//Count the games in a PGN file, reading it on the executor
+	public void addPgn(File file, ExecutorService executor, int pieces) throws IOException
+	{
+		PgnReader.readParallel(file, executor, pieces, new PgnReader.GameHandler() {
+			public void game(PgnGame game)
+			{
+				addGame(game);
+			}
+		});
+	}
+
+	private void add(long hash, int move, int weight)
+	{
+		Entry key = new Entry(hash, move);
+
+		AtomicInteger count = mCounts.get(key);
+		if (count == null)
+		{
+			AtomicInteger added = new AtomicInteger();
+			count = mCounts.putIfAbsent(key, added);
+			if (count == null)
+			{
+				count = added;
+			}
+		}
+
+		count.addAndGet(weight);
+	}
+
+	//Write the book:  the entries with enough games, sorted.  Returns the number of entries written
+	public int write(File file) throws IOException
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Map.Entry<Entry, AtomicInteger> count : mCounts.entrySet())
+		{
+			if (count.getValue().get() >= mMinCount)
+			{
+				Entry entry = count.getKey();
+				entry.mWeight = count.getValue().get();
+				entries.add(entry);
+			}
+		}
+		Collections.sort(entries);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(OpeningBook.ENTRY_SIZE*4096);
+			buffer.putInt(OpeningBook.MAGIC).putInt(OpeningBook.ENTRY_SIZE).putLong(entries.size());
+
+			for (Entry entry : entries)
+			{
+				if (!buffer.hasRemaining())
+				{
+					flush(channel, buffer);
+				}
+				buffer.putLong(entry.mHash).putInt(entry.mMove).putInt(entry.mWeight);
+			}
+			flush(channel, buffer);
+		}
+
+		return entries.size();
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	//A (position, move) pair; the weight is only filled in for writing
+	private static class Entry implements Comparable<Entry>
+	{
+		long mHash;
+		int mMove;
+		int mWeight;
+
+		Entry(long hash, int move)
+		{
+			mHash = hash;
+			mMove = move;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Entry))
+			{
+				return false;
+			}
+
+			Entry other = (Entry)o;
+			return (mHash == other.mHash)&&(mMove == other.mMove);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int)(mHash ^ (mHash >>> 32))*31 + mMove;
+		}
+
+		//By hash, then move; OpeningBook searches in this order
+		public int compareTo(Entry other)
+		{
+			if (mHash != other.mHash)
+			{
+				return (mHash < other.mHash)?-1:1;
+			}
+
+			return (mMove < other.mMove)?-1:((mMove == other.mMove)?0:1);
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int maxPly = DEFAULT_MAX_PLY;
+		int minCount = DEFAULT_MIN_COUNT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<File> inputs = new ArrayList<File>();
+		File book = null;
+
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-ply")&&(i+1 < args.length))
+			{
+				maxPly = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-min")&&(i+1 < args.length))
+			{
+				minCount = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-threads")&&(i+1 < args.length))
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (book == null)
+			{
+				book = new File(args[i]);
+			}
+			else
+			{
+				inputs.add(new File(args[i]));
+			}
+		}
+
+		if (inputs.isEmpty())
+		{
+			System.err.println("Usage:  OpeningBookBuilder <book file> <pgn file>... [-ply n] [-min n] [-threads n]");
+			return;
+		}
+
+		OpeningBookBuilder builder = new OpeningBookBuilder(maxPly, minCount);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long startTime = System.nanoTime();
+
+		try
+		{
+			for (File input : inputs)
+			{
+				builder.addPgn(input, executor, 4*threads);
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		double readSeconds = (System.nanoTime() - startTime)/1e9;
+		int written = builder.write(book);
+		double seconds = (System.nanoTime() - startTime)/1e9;
+
+		System.out.println(String.format("%d games (%.0f games/sec), %d positions and moves, %d written to %s in %.2fs",
+				builder.getGameCount(), builder.getGameCount()/readSeconds, builder.getEntryCount(), written, book, seconds));
+	}
+}
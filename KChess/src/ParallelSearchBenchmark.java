@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import ksk.game.HistoryOrdering;
+import ksk.game.KillerOrdering;
+import ksk.game.MinimaxAlgo;
+import ksk.game.ParallelSearch;
+
+//Measures ParallelSearch on chess positions:  searches each position to a fixed depth with 1, 2, 4, ...
+//threads (up to the number of processors, by default), in both modes, and reports the time, nodes and
+//speedup over one thread.  Each algo is set up the way ChessSearch sets up its own.
+//
+//Speedups only mean something on a machine with at least as many free cores as threads; with fewer,
+//the extra threads just take turns, and the table shows what the parallel search costs instead.
+//
+//Usage:  ParallelSearchBenchmark [depth] [max threads]
+
+public class ParallelSearchBenchmark {
+
+	private static final String[] POSITIONS = {
+		ChessBoard.START_FEN,
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+	};
+
+	public static void main(String[] args)
+	{
+		int depth = (args.length > 0)?Integer.parseInt(args[0]):5;
+		int maxThreads = (args.length > 1)?Integer.parseInt(args[1]):Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		List<Integer> counts = new ArrayList<Integer>();
+		for (int threads = 1; threads < maxThreads; threads *= 2)
+		{
+			counts.add(threads);
+		}
+		counts.add(maxThreads);
+
+		int[] threadCounts = new int[counts.size()];
+		for (int i=0; i<threadCounts.length; i++)
+		{
+			threadCounts[i] = counts.get(i);
+		}
+
+		ParallelSearch.AlgoFactory factory = new ParallelSearch.AlgoFactory() {
+			public MinimaxAlgo createAlgo()
+			{
+				ChessAlgo algo = new ChessAlgo();
+				algo.addMoveOrdering(new ChessAlgo.CaptureValueOrdering());
+				algo.addMoveOrdering(new KillerOrdering());
+				algo.addMoveOrdering(new HistoryOrdering());
+				return algo;
+			}
+		};
+
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors");
+		for (String fen : POSITIONS)
+		{
+			ChessBoard board = ChessBoard.fromFen(fen);
+			boolean white = (board.getTurn() == ChessBoard.WHITE);
+
+			System.out.println();
+			System.out.println(fen);
+			for (ParallelSearch.Mode mode : ParallelSearch.Mode.values())
+			{
+				System.out.print(ParallelSearch.measureSpeedup(factory, mode, new ChessState(board), depth, white, threadCounts));
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//One game read from a PGN file (see PgnReader):  its tags, its moves (in ChessMove's packed form), and its
+//result.  If a move couldn't be read or wasn't legal, the game keeps the moves before it and has an error
+//message.
+//
+//toString() writes the game back out in PGN export format, with the moves in SAN.
+
+public class PgnGame {
+
+	private Map<String, String> mTags;
+	private int[] mMoves;
+	private String mResult;
+	private String mError;
+
+	public PgnGame(Map<String, String> tags, int[] moves, String result, String error)
+	{
+		mTags = Collections.unmodifiableMap(new LinkedHashMap<String, String>(tags));
+		mMoves = moves;
+		mResult = (result == null)?"*":result;
+		mError = error;
+	}
+
+	//The tags, in the order they were read
+	public Map<String, String> getTags()
+	{
+		return mTags;
+	}
+
+	//A tag's value, or null
+	public String getTag(String name)
+	{
+		return mTags.get(name);
+	}
+
+	public int getMoveCount()
+	{
+		return mMoves.length;
+	}
+
+	public int getMove(int index)
+	{
+		return mMoves[index];
+	}
+
+	public int[] getMoves()
+	{
+		return mMoves.clone();
+	}
+
+	//"1-0", "0-1", "1/2-1/2" or "*"
+	public String getResult()
+	{
+		return mResult;
+	}
+
+	//What went wrong reading the moves, or null
+	public String getError()
+	{
+		return mError;
+	}
+
+	public boolean isValid()
+	{
+		return mError == null;
+	}
+
+	//The position the game started from:  the FEN tag if there is one, otherwise the usual start
+	public ChessBoard getStartingPosition()
+	{
+		String fen = mTags.get("FEN");
+		return (fen == null)?ChessBoard.newGame():ChessBoard.fromFen(fen);
+	}
+
+	//The position after all the moves
+	public ChessBoard getFinalPosition()
+	{
+		ChessBoard board = getStartingPosition();
+		for (int move : mMoves)
+		{
+			board.makeMove(move);
+		}
+
+		return board;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder pgn = new StringBuilder();
+		for (Map.Entry<String, String> tag : mTags.entrySet())
+		{
+			pgn.append('[').append(tag.getKey()).append(" \"");
+			pgn.append(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\"")).append("\"]\n");
+		}
+		pgn.append('\n');
+
+		ChessBoard board = getStartingPosition();
+		ChessJudge judge = new ChessJudge();
+		int lineStart = pgn.length();
+
+		for (int i=0; i<mMoves.length; i++)
+		{
+			StringBuilder token = new StringBuilder();
+			if ((board.getTurn() == ChessBoard.WHITE)||(i == 0))
+			{
+				token.append(board.getFullMoveNumber()).append((board.getTurn() == ChessBoard.WHITE)?". ":"... ");
+			}
+			token.append(judge.toSan(board, mMoves[i]));
+			board.makeMove(mMoves[i]);
+
+			//Export format keeps lines under 80 characters
+			if (pgn.length() - lineStart + token.length() >= 80)
+			{
+				pgn.append('\n');
+				lineStart = pgn.length();
+			}
+			else if (pgn.length() > lineStart)
+			{
+				pgn.append(' ');
+			}
+			pgn.append(token);
+		}
+
+		if (pgn.length() - lineStart + mResult.length() >= 80)
+		{
+			pgn.append('\n');
+		}
+		else if (pgn.length() > lineStart)
+		{
+			pgn.append(' ');
+		}
+		pgn.append(mResult).append('\n');
+
+		return pgn.toString();
+	}
+}
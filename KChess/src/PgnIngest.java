@@ -0,0 +1,75 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Reads a PGN file as fast as possible, replaying every move, and reports the throughput in games per
+//second.  With a thread count the file is split up and read in parallel (see PgnReader.readParallel());
+//with 0 threads it's streamed through a single reader, for comparison.
+//
+//Usage:  PgnIngest <file> [threads]
+
+public class PgnIngest {
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.err.println("Usage:  PgnIngest <file> [threads]");
+			return;
+		}
+
+		File file = new File(args[0]);
+		int threads = (args.length > 1)?Integer.parseInt(args[1]):Runtime.getRuntime().availableProcessors();
+
+		final AtomicLong moves = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		PgnReader.GameHandler handler = new PgnReader.GameHandler() {
+			public void game(PgnGame game)
+			{
+				moves.addAndGet(game.getMoveCount());
+				if (!game.isValid())
+				{
+					errors.incrementAndGet();
+				}
+			}
+		};
+
+		long startTime = System.nanoTime();
+		long games = 0;
+
+		if (threads <= 0)
+		{
+			try (PgnReader reader = PgnReader.open(file))
+			{
+				PgnGame game;
+				while ((game = reader.next()) != null)
+				{
+					handler.game(game);
+					games++;
+				}
+			}
+		}
+		else
+		{
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try
+			{
+				//A few pieces per thread, so one slow piece doesn't hold everything up
+				games = PgnReader.readParallel(file, executor, 4*threads, handler);
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+		}
+
+		double seconds = (System.nanoTime() - startTime)/1e9;
+
+		System.out.println(String.format("%d games (%d with errors), %d moves in %.2fs on %d threads",
+				games, errors.get(), moves.get(), seconds, Math.max(1, threads)));
+		System.out.println(String.format("%.0f games/sec, %.0f moves/sec, %.1f MB/sec",
+				games/seconds, moves.get()/seconds, file.length()/seconds/(1 << 20)));
+	}
+}
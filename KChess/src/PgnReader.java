@@ -0,0 +1,490 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+//Reads games from PGN (Portable Game Notation), one at a time, without ever holding more than a buffer of
+//the file.  Bytes are read through a channel into a reused buffer (or straight from a ByteBuffer, e.g. a
+//mapped file), and tokens are collected in a reused StringBuilder; only tag values and the finished games
+//are allocated.
+//
+//Moves are decoded from SAN by playing them on a ChessBoard with ChessJudge.parseSan(), so a game's moves
+//are checked as they're read.  Comments, variations, NAGs and % escape lines are skipped.  A game whose
+//moves go wrong keeps the moves up to that point, with an error message (see PgnGame).
+//
+//readParallel() splits a file at game boundaries (a tag at the start of a line, after a blank line) and
+//reads the pieces on an executor, each with its own mapped buffer and PgnReader.
+//
+//A PgnReader is not thread safe.
+
+public class PgnReader implements Closeable {
+
+	//Receives games from readParallel(), from several threads at once
+	public static interface GameHandler
+	{
+		public void game(PgnGame game);
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	//Largest piece of a file mapped at once
+	private static final long MAX_CHUNK = 1L << 30;
+
+	private static final int EOF = -1;
+
+	private static final String[] RESULTS = {"1-0", "0-1", "1/2-1/2", "*"};
+
+	//Where bytes come from; the channel is null when reading a ByteBuffer
+	private ReadableByteChannel mChannel;
+	private ByteBuffer mBuffer;
+
+	private ChessJudge mJudge = new ChessJudge();
+	private StringBuilder mToken = new StringBuilder();
+	private byte[] mValue = new byte[256];
+	private int[] mMoves = new int[256];
+
+	//Read from a channel, which is closed by close()
+	public PgnReader(ReadableByteChannel channel)
+	{
+		mChannel = channel;
+		mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		mBuffer.flip();
+	}
+
+	//Read the remaining bytes of a buffer
+	public PgnReader(ByteBuffer buffer)
+	{
+		mChannel = null;
+		mBuffer = buffer;
+	}
+
+	public static PgnReader open(File file) throws IOException
+	{
+		return new PgnReader(new FileInputStream(file).getChannel());
+	}
+
+	public void close() throws IOException
+	{
+		if (mChannel != null)
+		{
+			mChannel.close();
+		}
+	}
+
+	//The next game, or null at the end of the input
+	public PgnGame next() throws IOException
+	{
+		Map<String, String> tags = new LinkedHashMap<String, String>();
+
+		int c = skipSpace();
+		if (c == EOF)
+		{
+			return null;
+		}
+
+		while (c == '[')
+		{
+			readTag(tags);
+			c = skipSpace();
+		}
+
+		//The moves
+		ChessBoard board;
+		String error = null;
+		try
+		{
+			String fen = tags.get("FEN");
+			board = (fen == null)?ChessBoard.newGame():ChessBoard.fromFen(fen);
+		}
+		catch (IllegalArgumentException e)
+		{
+			board = null;
+			error = e.getMessage();
+		}
+
+		int count = 0;
+		String result = null;
+
+		while ((c != EOF)&&(result == null))
+		{
+			switch (c)
+			{
+			case '{':
+				skipComment();
+				break;
+			case ';':
+			case '%':
+				skipLine();
+				break;
+			case '(':
+				skipVariation();
+				break;
+			case '$':
+				read();
+				readToken();
+				break;
+			case '[':
+				//A new game, without a result for this one
+				return new PgnGame(tags, Arrays.copyOf(mMoves, count), null, error);
+			default:
+				readToken();
+				stripMoveNumber();
+
+				if (isResult(mToken))
+				{
+					result = mToken.toString();
+				}
+				else if ((mToken.length() > 0)&&(error == null))
+				{
+					int move = mJudge.parseSan(board, mToken);
+					if (move == ChessMove.NONE)
+					{
+						error = "Illegal move " + mToken + " at " + board.getFullMoveNumber()
+								+ ((board.getTurn() == ChessBoard.WHITE)?".":"...");
+					}
+					else
+					{
+						board.makeMove(move);
+						if (count == mMoves.length)
+						{
+							mMoves = Arrays.copyOf(mMoves, 2*count);
+						}
+						mMoves[count++] = move;
+					}
+				}
+			}
+
+			if (result == null)
+			{
+				c = skipSpace();
+			}
+		}
+
+		return new PgnGame(tags, Arrays.copyOf(mMoves, count), result, error);
+	}
+
+	//Remove a move number ("12." or "12..."), which may be stuck to the move, from the front of mToken
+	private void stripMoveNumber()
+	{
+		int start = 0;
+		while ((start < mToken.length())&&Character.isDigit(mToken.charAt(start)))
+		{
+			start++;
+		}
+
+		if ((start < mToken.length())&&(mToken.charAt(start) == '.'))
+		{
+			while ((start < mToken.length())&&(mToken.charAt(start) == '.'))
+			{
+				start++;
+			}
+			mToken.delete(0, start);
+		}
+	}
+
+	private static boolean isResult(CharSequence token)
+	{
+		for (String result : RESULTS)
+		{
+			if ((token.length() == result.length())&&result.contentEquals(token))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/******
+	 * Lexing
+	 ******/
+
+	//Read a tag, e.g. [White "Fischer, Robert J."], at the '['
+	private void readTag(Map<String, String> tags) throws IOException
+	{
+		read();
+		skipSpace();
+
+		mToken.setLength(0);
+		int c;
+		while (((c = peek()) != EOF)&&(c > ' ')&&(c != '"')&&(c != ']'))
+		{
+			mToken.append((char)read());
+		}
+		String name = mToken.toString();
+
+		//The value is UTF-8 (PGN says Latin-1, but most files in the wild aren't)
+		int length = 0;
+		if (skipSpace() == '"')
+		{
+			read();
+			while (((c = read()) != EOF)&&(c != '"')&&(c != '\n'))
+			{
+				if (c == '\\')
+				{
+					c = read();
+				}
+
+				if (length == mValue.length)
+				{
+					mValue = Arrays.copyOf(mValue, 2*length);
+				}
+				mValue[length++] = (byte)c;
+			}
+		}
+
+		//Anything else up to the end of the tag
+		while (((c = read()) != EOF)&&(c != ']')&&(c != '\n'))
+		{
+		}
+
+		tags.put(name, new String(mValue, 0, length, StandardCharsets.UTF_8));
+	}
+
+	//Read a token (up to white space or a character that starts something else) into mToken
+	private void readToken() throws IOException
+	{
+		mToken.setLength(0);
+
+		int c;
+		while (((c = peek()) != EOF)&&(c > ' ')&&(c != '{')&&(c != '(')&&(c != ')')&&(c != ';')&&(c != '$')&&(c != '['))
+		{
+			mToken.append((char)read());
+		}
+
+		//A stray character that isn't the start of anything
+		if ((mToken.length() == 0)&&(c != EOF))
+		{
+			read();
+		}
+	}
+
+	private void skipComment() throws IOException
+	{
+		int c;
+		while (((c = read()) != EOF)&&(c != '}'))
+		{
+		}
+	}
+
+	private void skipLine() throws IOException
+	{
+		int c;
+		while (((c = read()) != EOF)&&(c != '\n'))
+		{
+		}
+	}
+
+	//Skip a variation, which can contain variations and comments of its own
+	private void skipVariation() throws IOException
+	{
+		int depth = 0;
+		int c;
+		while ((c = read()) != EOF)
+		{
+			if (c == '(')
+			{
+				depth++;
+			}
+			else if (c == ')')
+			{
+				if (--depth == 0)
+				{
+					return;
+				}
+			}
+			else if (c == '{')
+			{
+				skipComment();
+			}
+			else if (c == ';')
+			{
+				skipLine();
+			}
+		}
+	}
+
+	//Skip white space, and return the next character without reading it
+	private int skipSpace() throws IOException
+	{
+		int c;
+		while (((c = peek()) != EOF)&&(c <= ' '))
+		{
+			read();
+		}
+
+		return c;
+	}
+
+	private int peek() throws IOException
+	{
+		if (!mBuffer.hasRemaining()&&!fill())
+		{
+			return EOF;
+		}
+
+		return mBuffer.get(mBuffer.position()) & 0xFF;
+	}
+
+	private int read() throws IOException
+	{
+		if (!mBuffer.hasRemaining()&&!fill())
+		{
+			return EOF;
+		}
+
+		return mBuffer.get() & 0xFF;
+	}
+
+	//Refill the empty buffer from the channel.  Returns false at the end of the input
+	private boolean fill() throws IOException
+	{
+		if (mChannel == null)
+		{
+			return false;
+		}
+
+		mBuffer.clear();
+		int n = 0;
+		while (n == 0)
+		{
+			n = mChannel.read(mBuffer);
+		}
+		mBuffer.flip();
+
+		return n > 0;
+	}
+
+	/******
+	 * Parallel reading
+	 ******/
+
+	//Read a whole file, splitting it into (at least) the given number of pieces, which are read on the
+	//executor.  The handler is called for every game, from several threads.  Returns the number of games
+	public static long readParallel(File file, ExecutorService executor, int pieces, final GameHandler handler) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			final FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			pieces = (int)Math.max(pieces, size/MAX_CHUNK + 1);
+
+			//Each piece starts at the first game after its share of the file
+			long[] starts = new long[pieces + 1];
+			for (int i=1; i<pieces; i++)
+			{
+				starts[i] = findGameStart(channel, Math.max(size*i/pieces, starts[i-1]));
+			}
+			starts[pieces] = size;
+
+			List<Future<Long>> results = new ArrayList<Future<Long>>();
+			for (int i=0; i<pieces; i++)
+			{
+				final long start = starts[i];
+				final long length = starts[i+1] - start;
+				if (length == 0)
+				{
+					continue;
+				}
+
+				results.add(executor.submit(new Callable<Long>() {
+					public Long call() throws IOException
+					{
+						PgnReader reader = new PgnReader(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+
+						long games = 0;
+						PgnGame game;
+						while ((game = reader.next()) != null)
+						{
+							handler.game(game);
+							games++;
+						}
+
+						return games;
+					}
+				}));
+			}
+
+			long games = 0;
+			for (Future<Long> result : results)
+			{
+				games += waitFor(result);
+			}
+
+			return games;
+		}
+	}
+
+	//Wait for a piece to be read, passing on its exception
+	private static long waitFor(Future<Long> result) throws IOException
+	{
+		try
+		{
+			return result.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	//The position of the first '[' at or after position that starts a line after a blank line, or the end
+	//of the file
+	private static long findGameStart(FileChannel channel, long position) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		int newlines = 0;
+
+		while (true)
+		{
+			buffer.clear();
+			int n = channel.read(buffer, position);
+			if (n < 0)
+			{
+				return channel.size();
+			}
+
+			for (int i=0; i<n; i++)
+			{
+				byte b = buffer.get(i);
+				if (b == '\n')
+				{
+					newlines++;
+				}
+				else if ((b == '[')&&(newlines >= 2))
+				{
+					return position + i;
+				}
+				else if ((b != '\r')&&(b != ' ')&&(b != '\t'))
+				{
+					newlines = 0;
+				}
+			}
+
+			position += n;
+		}
+	}
+}
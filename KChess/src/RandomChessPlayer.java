@@ -0,0 +1,28 @@
+import java.util.Random;
+
+//A player that makes random legal moves.  Useful as a weak opponent, and for load testing the engine
+
+public class RandomChessPlayer extends ChessPlayer {
+
+	private Random mRandom;
+	private ChessJudge mJudge = new ChessJudge();
+	private int[] mMoves = new int[ChessBoard.MAX_MOVES];
+
+	public RandomChessPlayer(ChessEngine engine, int number, long seed)
+	{
+		super(engine, number);
+		mRandom = new Random(seed);
+	}
+
+	public RandomChessPlayer(ChessEngine engine, int number)
+	{
+		this(engine, number, System.nanoTime());
+	}
+
+	@Override
+	protected int chooseMove(ChessBoard board, ChessClock clock)
+	{
+		int count = mJudge.generateLegalMoves(board, mMoves, 0);
+		return (count == 0)?ChessMove.NONE:mMoves[mRandom.nextInt(count)];
+	}
+}
@@ -0,0 +1,128 @@
+import java.util.Random;
+
+import ksk.game.SearchStats;
+
+//A computer player that chooses moves with ChessSearch (iterative deepening alpha-beta).  With a timed
+//clock it spends the time ChessClock suggests; otherwise it searches to a fixed depth.  A player that
+//ponders keeps searching on the opponent's time, which fills its transposition table for the reply.
+//Given an OpeningBook, it plays book moves (chosen at random by weight) for as long as it can.  Given
+//Tablebases, it plays their best move in positions they cover, and the search scores positions by them.
+
+public class SearchChessPlayer extends ChessPlayer {
+
+	//Moves assumed to be left in the game, for sharing out the clock
+	private static final int MOVES_TO_GO = 30;
+
+	//Depth to search to with no clock and no depth limit
+	private static final int UNTIMED_DEPTH = 6;
+
+	private ChessSearch mSearch = new ChessSearch();
+	private int mMaxDepth;
+	private boolean mPonder;
+
+	private OpeningBook mBook;
+	private Tablebases mTablebases;
+	private Random mRandom = new Random();
+
+	private volatile SearchStats mLastStats;
+
+	//maxDepth limits every search (0 for no limit, other than the clock)
+	public SearchChessPlayer(ChessEngine engine, int number, int maxDepth, boolean ponder)
+	{
+		super(engine, number);
+		mMaxDepth = maxDepth;
+		mPonder = ponder;
+	}
+
+	public SearchChessPlayer(ChessEngine engine, int number)
+	{
+		this(engine, number, 0, true);
+	}
+
+	//Statistics from the last completed depth of the last move
+	public SearchStats getLastSearchStats()
+	{
+		return mLastStats;
+	}
+
+	//Play from this book while the position is in it (null for none)
+	public void setOpeningBook(OpeningBook book)
+	{
+		mBook = book;
+	}
+
+	//Play perfectly, and search using, these tablebases (null for none)
+	public void setTablebases(Tablebases tablebases)
+	{
+		mTablebases = tablebases;
+		synchronized (mSearch)
+		{
+			mSearch.setTablebases(tablebases);
+		}
+	}
+
+	@Override
+	protected int chooseMove(ChessBoard board, ChessClock clock)
+	{
+		if (mBook != null)
+		{
+			int move = mBook.chooseMove(board, mRandom);
+			if (move != ChessMove.NONE)
+			{
+				return move;
+			}
+		}
+
+		if (mTablebases != null)
+		{
+			int move = mTablebases.getBestMove(board);
+			if (move != ChessMove.NONE)
+			{
+				return move;
+			}
+		}
+
+		long millis = (clock == null)?-1:clock.getSuggestedMillis(getNumber(), MOVES_TO_GO);
+		long deadline = (millis < 0)?-1:(System.currentTimeMillis() + millis);
+		int depth = ((mMaxDepth <= 0)&&(deadline < 0))?UNTIMED_DEPTH:mMaxDepth;
+
+		//Wait for any pondering to give up the search
+		synchronized (mSearch)
+		{
+			SearchStats stats = mSearch.search(board, depth, deadline, null);
+			if (stats != null)
+			{
+				mLastStats = stats;
+			}
+
+			int move = ChessSearch.getBestMove(stats);
+			if (move == ChessMove.NONE)
+			{
+				//Out of time before even depth 1:  any legal move will do
+				int[] moves = new int[ChessBoard.MAX_MOVES];
+				if (new ChessJudge().generateLegalMoves(board, moves, 0) > 0)
+				{
+					move = moves[0];
+				}
+			}
+
+			return move;
+		}
+	}
+
+	@Override
+	protected void ponder(ChessBoard board)
+	{
+		synchronized (mSearch)
+		{
+			//Runs until the engine interrupts this thread
+			mSearch.search(board, 0, -1, null);
+		}
+	}
+
+	@Override
+	protected boolean wantsToPonder()
+	{
+		return mPonder;
+	}
+}
@@ -0,0 +1,457 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+//An endgame tablebase for one set of pieces, e.g. "KQK" or "KRKP":  for every position with exactly those
+//pieces, whether the side to move wins, loses or draws with best play, and in how many half moves the mate
+//comes (distance to mate).  See TablebaseGenerator for making them, and Tablebases for probing positions
+//whatever their pieces.
+//
+//The signature lists white's pieces and then black's, each side starting with its king, strongest first
+//(K, Q, R, B, N, P).  A position is indexed by the side to move and the squares of its pieces in signature
+//order, after using the board's symmetries to put the white king in a standard place.  Without pawns the
+//board can be reflected and turned, so the white king is always on one of the 10 squares of the a1-d1-d4
+//triangle (and when it's on the diagonal, the smaller of the two reflections is used); with pawns it can
+//only be mirrored left to right, so the king is on one of 32 squares.  Identical pieces are sorted by
+//square, and pawns only have 48 squares.  Castling and en passant rights are ignored.
+//
+//Each entry is a small code, packed bit after bit into longs with just enough bits for the longest mate:
+//0 for a draw (or an index that isn't a legal position), otherwise 1 + the half moves to mate, which is
+//even when the side to move wins and odd when it loses.  The file is:
+//
+//   header:  int magic ("KTB1"), int bits per entry, long entry count, 16 bytes signature (ASCII, 0 padded)
+//   entries: longs; entry i is bits i*bits to (i+1)*bits - 1, counting up from the low bit of each long
+//
+//The file is memory mapped, so opening a tablebase costs nothing and probing only reads the pages it
+//needs.  Probing uses absolute reads of the shared buffer, so any number of threads can probe at once.
+
+public class Tablebase {
+
+	public static final int MAGIC = 0x4B544231;
+	public static final int HEADER_SIZE = 32;
+	public static final int SIGNATURE_SIZE = 16;
+
+	public static final int DRAW = 0;
+
+	//Signature letters, weakest first, by ChessPieceType
+	private static final String PIECE_LETTERS = "PNBRQK";
+
+	private static final int PAWN = ChessPiece.ChessPieceType.PAWN.ordinal();
+
+	//The squares the white king is moved to when there are no pawns, and each square's place among them
+	private static final int[] TRIANGLE = {0, 1, 2, 3, 9, 10, 11, 18, 19, 27};
+	private static final int[] TRIANGLE_INDEX = new int[64];
+
+	private static final int MIRROR_FILE = 1;
+	private static final int MIRROR_RANK = 2;
+	private static final int TRANSPOSE = 4;
+
+	static
+	{
+		for (int square=0; square<64; square++)
+		{
+			TRIANGLE_INDEX[square] = -1;
+		}
+		for (int i=0; i<TRIANGLE.length; i++)
+		{
+			TRIANGLE_INDEX[TRIANGLE[i]] = i;
+		}
+	}
+
+	private String mSignature;
+
+	//ChessPiece indexes, in signature order
+	private int[] mPieces;
+	private boolean mPawns;
+	private int mKingSquares;
+	private long mSize;
+
+	//The entries; null for a tablebase that's only used for indexing
+	private ByteBuffer mData;
+	private int mBits;
+	private long mMask;
+
+	//A tablebase without data, for indexing positions (e.g. while generating it)
+	public Tablebase(String signature)
+	{
+		mSignature = normalize(signature);
+
+		mPieces = new int[mSignature.length()];
+		int player = ChessBoard.BLACK;
+		for (int i=0; i<mPieces.length; i++)
+		{
+			int type = PIECE_LETTERS.indexOf(mSignature.charAt(i));
+			if (type == ChessPiece.ChessPieceType.KING.ordinal())
+			{
+				player ^= 1;
+			}
+
+			mPieces[i] = player*ChessPiece.TYPES + type;
+			mPawns |= (type == PAWN);
+		}
+
+		mKingSquares = mPawns?32:TRIANGLE.length;
+		mSize = 2*mKingSquares;
+		for (int i=1; i<mPieces.length; i++)
+		{
+			mSize *= isPawn(i)?48:64;
+		}
+	}
+
+	//Open a tablebase file
+	public Tablebase(File file) throws IOException
+	{
+		this(readSignature(file));
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			mBits = buffer.getInt(4);
+			if ((buffer.getInt(0) != MAGIC)||(mBits < 1)||(mBits > 32)||(buffer.getLong(8) != mSize)
+					||(size != HEADER_SIZE + getDataSize(mSize, mBits)))
+			{
+				throw new IOException("Not a tablebase: " + file);
+			}
+
+			buffer.position(HEADER_SIZE);
+			mData = buffer.slice();
+			mMask = (1L << mBits) - 1;
+		}
+	}
+
+	private static String readSignature(File file) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			byte[] header = new byte[HEADER_SIZE];
+			raf.readFully(header);
+			if (ByteBuffer.wrap(header).getInt() != MAGIC)
+			{
+				throw new IOException("Not a tablebase: " + file);
+			}
+
+			String signature = new String(header, HEADER_SIZE - SIGNATURE_SIZE, SIGNATURE_SIZE, StandardCharsets.US_ASCII);
+			try
+			{
+				return normalize(signature.trim());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IOException("Not a tablebase: " + file, e);
+			}
+		}
+	}
+
+	//Bytes of packed entries, a whole number of longs
+	public static long getDataSize(long entries, int bits)
+	{
+		return ((entries*bits + 63) >>> 6) << 3;
+	}
+
+	//A signature with each side's pieces in order, e.g. "KQRK" for "krqk".  Throws IllegalArgumentException
+	//if it isn't two kings and their pieces
+	public static String normalize(String signature)
+	{
+		String upper = signature.toUpperCase();
+		int black = upper.indexOf('K', 1);
+		if (!upper.startsWith("K")||(black < 0)||(upper.indexOf('K', black + 1) >= 0))
+		{
+			throw new IllegalArgumentException("Bad tablebase signature: " + signature);
+		}
+
+		return sortSide(upper.substring(0, black)) + sortSide(upper.substring(black));
+	}
+
+	//The king, then the other pieces strongest first
+	private static String sortSide(String side)
+	{
+		StringBuilder sorted = new StringBuilder("K");
+		for (int type=ChessPiece.ChessPieceType.QUEEN.ordinal(); type>=PAWN; type--)
+		{
+			for (int i=1; i<side.length(); i++)
+			{
+				if (side.charAt(i) == PIECE_LETTERS.charAt(type))
+				{
+					sorted.append(side.charAt(i));
+				}
+			}
+		}
+
+		if (sorted.length() != side.length())
+		{
+			throw new IllegalArgumentException("Bad tablebase signature: " + side);
+		}
+		return sorted.toString();
+	}
+
+	//The signature of a board's pieces, with the colours swapped if flipped
+	public static String getSignature(ChessBoard board, boolean flipped)
+	{
+		StringBuilder signature = new StringBuilder();
+		for (int side=0; side<2; side++)
+		{
+			int base = (side ^ (flipped?1:0))*ChessPiece.TYPES;
+			for (int type=ChessPiece.ChessPieceType.KING.ordinal(); type>=PAWN; type--)
+			{
+				for (int count=Long.bitCount(board.getBitboard(base + type)); count>0; count--)
+				{
+					signature.append(PIECE_LETTERS.charAt(type));
+				}
+			}
+		}
+
+		return signature.toString();
+	}
+
+	public String getSignature()
+	{
+		return mSignature;
+	}
+
+	//Number of pieces, kings included
+	public int getPieceCount()
+	{
+		return mPieces.length;
+	}
+
+	//The ChessPiece index of the piece whose square is at this place in a squares array
+	public int getPiece(int place)
+	{
+		return mPieces[place];
+	}
+
+	//Number of entries
+	public long size()
+	{
+		return mSize;
+	}
+
+	//Bits per entry (0 when there's no data)
+	public int getBits()
+	{
+		return mBits;
+	}
+
+	private boolean isPawn(int place)
+	{
+		return mPieces[place] % ChessPiece.TYPES == PAWN;
+	}
+
+	/******
+	 * Indexing
+	 ******/
+
+	//Put the squares of a board's pieces in squares, in signature order, with the colours swapped and the
+	//board turned around if flipped.  False if the board doesn't have exactly this tablebase's pieces
+	public boolean getSquares(ChessBoard board, boolean flipped, int[] squares)
+	{
+		if (Long.bitCount(board.getOccupied()) != mPieces.length)
+		{
+			return false;
+		}
+
+		int colours = flipped?ChessPiece.TYPES:0;
+		int flip = flipped?56:0;
+		for (int place=0; place<mPieces.length; )
+		{
+			int piece = mPieces[place];
+			long bits = board.getBitboard((piece + colours) % ChessPiece.PIECES);
+
+			for (; (place < mPieces.length)&&(mPieces[place] == piece); place++)
+			{
+				if (bits == 0)
+				{
+					return false;
+				}
+				squares[place] = Long.numberOfTrailingZeros(bits) ^ flip;
+				bits &= bits - 1;
+			}
+
+			if (bits != 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//The index of a board's position, with the colours swapped if flipped, or -1 if the board doesn't have
+	//exactly this tablebase's pieces
+	public long getIndex(ChessBoard board, boolean flipped)
+	{
+		int[] squares = new int[mPieces.length];
+		if (!getSquares(board, flipped, squares))
+		{
+			return -1;
+		}
+
+		return getIndex(squares, board.getTurn() ^ (flipped?1:0));
+	}
+
+	//The index of a position given the squares of its pieces in signature order (which are changed) and the
+	//player to move.  -1 if a pawn is on the first or last rank
+	public long getIndex(int[] squares, int turn)
+	{
+		int king = squares[0];
+		int transform = (ChessBoard.getFile(king) > 3)?MIRROR_FILE:0;
+		if (!mPawns)
+		{
+			transform |= (ChessBoard.getRank(king) > 3)?MIRROR_RANK:0;
+			king = transform(king, transform);
+			if (ChessBoard.getRank(king) > ChessBoard.getFile(king))
+			{
+				transform |= TRANSPOSE;
+			}
+		}
+
+		//On the diagonal, the king stays put when the board is reflected in it, so try both ways
+		if (!mPawns&&(ChessBoard.getRank(king) == ChessBoard.getFile(king)))
+		{
+			int[] reflected = squares.clone();
+			long index = encode(reflected, turn, transform | TRANSPOSE);
+			return Math.min(index, encode(squares, turn, transform));
+		}
+
+		return encode(squares, turn, transform);
+	}
+
+	private long encode(int[] squares, int turn, int transform)
+	{
+		for (int place=0; place<squares.length; place++)
+		{
+			squares[place] = transform(squares[place], transform);
+		}
+
+		//Identical pieces in square order
+		for (int place=2; place<squares.length; place++)
+		{
+			int square = squares[place];
+			int other = place;
+			for (; (other > 1)&&(mPieces[other - 1] == mPieces[place])&&(squares[other - 1] > square); other--)
+			{
+				squares[other] = squares[other - 1];
+			}
+			squares[other] = square;
+		}
+
+		int king = squares[0];
+		long index = turn*mKingSquares + (mPawns?(ChessBoard.getRank(king)*4 + ChessBoard.getFile(king)):TRIANGLE_INDEX[king]);
+		for (int place=1; place<squares.length; place++)
+		{
+			if (isPawn(place))
+			{
+				int rank = ChessBoard.getRank(squares[place]);
+				if ((rank == 0)||(rank == 7))
+				{
+					return -1;
+				}
+				index = index*48 + squares[place] - 8;
+			}
+			else
+			{
+				index = index*64 + squares[place];
+			}
+		}
+
+		return index;
+	}
+
+	private static int transform(int square, int transform)
+	{
+		if ((transform & MIRROR_FILE) != 0)
+		{
+			square ^= 7;
+		}
+		if ((transform & MIRROR_RANK) != 0)
+		{
+			square ^= 56;
+		}
+		if ((transform & TRANSPOSE) != 0)
+		{
+			square = ((square & 7) << 3) | (square >>> 3);
+		}
+
+		return square;
+	}
+
+	//Put the squares of the pieces for an index in squares, and return the player to move.  Not every index
+	//is a position:  squares can clash, and the index of the squares may not be this one (see getIndex())
+	public int decode(long index, int[] squares)
+	{
+		for (int place=squares.length-1; place>0; place--)
+		{
+			if (isPawn(place))
+			{
+				squares[place] = (int)(index % 48) + 8;
+				index /= 48;
+			}
+			else
+			{
+				squares[place] = (int)(index % 64);
+				index /= 64;
+			}
+		}
+
+		int king = (int)(index % mKingSquares);
+		squares[0] = mPawns?ChessBoard.square(king/4, king%4):TRIANGLE[king];
+
+		return (int)(index/mKingSquares);
+	}
+
+	/******
+	 * Probing
+	 ******/
+
+	//The code for an index:  DRAW, or 1 + the half moves to mate (see isWin())
+	public int probe(long index)
+	{
+		long bit = index*mBits;
+		int offset = (int)(bit >>> 6) << 3;
+		int shift = (int)(bit & 63);
+
+		long value = mData.getLong(offset) >>> shift;
+		if (shift + mBits > 64)
+		{
+			value |= mData.getLong(offset + 8) << (64 - shift);
+		}
+
+		return (int)(value & mMask);
+	}
+
+	//The code for a board, with the colours swapped if flipped.  The board must have this tablebase's pieces
+	public int probe(ChessBoard board, boolean flipped)
+	{
+		long index = getIndex(board, flipped);
+		if (index < 0)
+		{
+			throw new IllegalArgumentException("Position isn't " + mSignature + ": " + board.toFen());
+		}
+
+		return probe(index);
+	}
+
+	//True if the side to move wins, for a code
+	public static boolean isWin(int code)
+	{
+		return (code != DRAW)&&((code & 1) == 0);
+	}
+
+	//True if the side to move loses, for a code
+	public static boolean isLoss(int code)
+	{
+		return (code & 1) != 0;
+	}
+
+	//The number of half moves to mate, for a code that isn't a draw
+	public static int getPlies(int code)
+	{
+		return code - 1;
+	}
+}
@@ -0,0 +1,876 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//Makes Tablebase files by retrograde analysis:  starting from the mates, work backwards a half move at a
+//time.  Each position that's lost in n half moves makes every position that can move into it won in n+1,
+//and a position whose moves all lead to positions won for the opponent is lost, in one more than the
+//longest of them.  Whatever is left when nothing changes is a draw.
+//
+//Every position keeps a count of its moves that stay in the tablebase (a move that captures or promotes
+//leaves it), and the best result of the moves that leave, looked up in tablebases made earlier.  Going
+//backwards is done by "unmoving" the pieces of the player who just moved, to find the positions that lead
+//to a newly decided one.  Positions that are the same under the board's symmetries share an index (see
+//Tablebase), so moves and unmoves are counted by the distinct positions they reach.
+//
+//The positions are split into ranges that are worked on in parallel, first to set them up and then for
+//each half move of distance, with the counts and results packed into an AtomicIntegerArray so positions
+//can be updated from any thread.  Everything is held in memory, 8 bytes per position, which limits
+//generation to MAX_PIECES (a 4 piece tablebase with a pawn is about 12.6 million positions).
+//
+//Usage:  TablebaseGenerator <directory> <signature>... [-threads n]
+//
+//e.g. "TablebaseGenerator tb KQK KRK KPK KQKR" makes those four, and the tablebases they lead into, in tb.
+
+public class TablebaseGenerator {
+
+	public static final int MAX_PIECES = 4;
+
+	//A position's state:  bits 0-9 are the number of distinct positions its moves can reach inside the
+	//tablebase that aren't yet known to be won by the opponent, bits 10-17 the half moves to mate, and
+	//bits 18 up the status
+	private static final int COUNT_MASK = 0x3FF;
+	private static final int PLIES_SHIFT = 10;
+	private static final int PLIES_MASK = 0xFF;
+	private static final int STATUS_SHIFT = 18;
+
+	private static final int UNKNOWN = 0;
+	private static final int WIN = 1;
+	private static final int LOSS = 2;
+	private static final int DRAW = 3;
+	private static final int INVALID = 4;
+
+	private static final int PAWN = ChessPiece.ChessPieceType.PAWN.ordinal();
+	private static final int KNIGHT = ChessPiece.ChessPieceType.KNIGHT.ordinal();
+	private static final int BISHOP = ChessPiece.ChessPieceType.BISHOP.ordinal();
+	private static final int ROOK = ChessPiece.ChessPieceType.ROOK.ordinal();
+	private static final int QUEEN = ChessPiece.ChessPieceType.QUEEN.ordinal();
+
+	//Ranges of positions per thread, so threads that finish early can take more
+	private static final int RANGES_PER_THREAD = 16;
+
+	private Tablebase mTable;
+	private Tablebases mSubtables;
+	private ExecutorService mExecutor;
+	private int mRanges;
+
+	private int mSize;
+	private AtomicIntegerArray mState;
+
+	//For each position, the best result (a state without a count) of the moves that leave the tablebase
+	private int[] mConversions;
+
+	//Half move counts at which some position wins by leaving the tablebase
+	private boolean[] mConversionWins = new boolean[PLIES_MASK + 1];
+
+	//Results, filled in by generate()
+	private long[] mResults = new long[INVALID + 1];
+	private int mLongest;
+	private int mLongestIndex = -1;
+
+	//Generate the tablebase for a signature, looking up moves that leave it in subtables, on the executor
+	public TablebaseGenerator(String signature, Tablebases subtables, ExecutorService executor, int threads)
+	{
+		mTable = new Tablebase(signature);
+		if (mTable.getPieceCount() > MAX_PIECES)
+		{
+			throw new IllegalArgumentException("Can't generate tablebases of more than " + MAX_PIECES + " pieces: " + signature);
+		}
+
+		mSubtables = subtables;
+		mExecutor = executor;
+		mRanges = Math.max(1, threads)*RANGES_PER_THREAD;
+		mSize = (int)mTable.size();
+	}
+
+	public Tablebase getTable()
+	{
+		return mTable;
+	}
+
+	//Number of positions (not counting illegal indexes) that are wins for the side to move
+	public long getWins()
+	{
+		return mResults[WIN];
+	}
+
+	public long getLosses()
+	{
+		return mResults[LOSS];
+	}
+
+	public long getDraws()
+	{
+		return mResults[DRAW] + mResults[UNKNOWN];
+	}
+
+	//The longest distance to mate, in half moves
+	public int getLongestMate()
+	{
+		return mLongest;
+	}
+
+	//A position with the longest distance to mate, or null if nobody can win
+	public ChessBoard getLongestMatePosition()
+	{
+		if (mLongestIndex < 0)
+		{
+			return null;
+		}
+
+		ChessBoard board = new ChessBoard();
+		setUp(board, mLongestIndex, new int[mTable.getPieceCount()], new int[mTable.getPieceCount()]);
+		return board;
+	}
+
+	private static int state(int status, int plies, int count)
+	{
+		return (status << STATUS_SHIFT) | (plies << PLIES_SHIFT) | count;
+	}
+
+	private static int getStatus(int state)
+	{
+		return state >>> STATUS_SHIFT;
+	}
+
+	private static int getPlies(int state)
+	{
+		return (state >>> PLIES_SHIFT) & PLIES_MASK;
+	}
+
+	private static int getCount(int state)
+	{
+		return state & COUNT_MASK;
+	}
+
+	/******
+	 * Generating
+	 ******/
+
+	//Work out every position, and write the tablebase file
+	public void generate(File file) throws IOException
+	{
+		mState = new AtomicIntegerArray(mSize);
+		mConversions = new int[mSize];
+
+		int longest = runRanges(new RangeTask() {
+			public int run(int start, int end)
+			{
+				return initialize(start, end);
+			}
+		});
+
+		for (int plies=0; plies<=longest; plies++)
+		{
+			if (plies > PLIES_MASK - 1)
+			{
+				throw new IllegalStateException("Mate too long for " + mTable.getSignature());
+			}
+
+			final int distance = plies;
+			if (mConversionWins[distance])
+			{
+				runRanges(new RangeTask() {
+					public int run(int start, int end)
+					{
+						convert(start, end, distance);
+						return 0;
+					}
+				});
+			}
+
+			longest = Math.max(longest, runRanges(new RangeTask() {
+				public int run(int start, int end)
+				{
+					return propagate(start, end, distance);
+				}
+			}));
+		}
+
+		write(file);
+
+		mState = null;
+		mConversions = null;
+	}
+
+	//Set up the positions in a range:  count their moves, look up the ones that leave the tablebase, and
+	//decide the ones that have no moves inside it.  Returns the most half moves to mate decided
+	private int initialize(int start, int end)
+	{
+		ChessBoard board = new ChessBoard();
+		ChessJudge judge = new ChessJudge();
+		int[] squares = new int[mTable.getPieceCount()];
+		int[] scratch = new int[mTable.getPieceCount()];
+		int[] moves = new int[ChessBoard.MAX_MOVES];
+		int[] children = new int[ChessBoard.MAX_MOVES];
+		int longest = 0;
+
+		for (int index=start; index<end; index++)
+		{
+			if (!setUp(board, index, squares, scratch))
+			{
+				mState.set(index, state(INVALID, 0, 0));
+				continue;
+			}
+
+			int count = judge.generateLegalMoves(board, moves, 0);
+			int distinct = 0;
+			int conversion = state(UNKNOWN, 0, 0);
+
+			for (int i=0; i<count; i++)
+			{
+				int move = moves[i];
+				boolean leaves = (ChessMove.getPromotion(move) != 0)||(ChessMove.getKind(move) == ChessMove.EN_PASSANT)
+						||(board.getPieceIndex(ChessMove.getTo(move)) != ChessBoard.EMPTY);
+
+				board.makeMove(move);
+				if (leaves)
+				{
+					conversion = better(conversion, reply(probeSubtable(board, judge)));
+				}
+				else
+				{
+					mTable.getSquares(board, false, scratch);
+					int child = (int)mTable.getIndex(scratch, board.getTurn());
+					distinct = addDistinct(children, distinct, child);
+				}
+				board.unmakeMove(move);
+			}
+
+			int state;
+			if (count == 0)
+			{
+				state = judge.isCheck(board)?state(LOSS, 0, 0):state(DRAW, 0, 0);
+			}
+			else if (distinct == 0)
+			{
+				state = conversion;
+			}
+			else
+			{
+				state = state(UNKNOWN, 0, distinct);
+				if (getStatus(conversion) == WIN)
+				{
+					mConversionWins[getPlies(conversion)] = true;
+				}
+			}
+
+			mConversions[index] = conversion;
+			mState.set(index, state);
+			longest = Math.max(longest, getPlies(conversion));
+		}
+
+		return longest;
+	}
+
+	//The tablebase code for a position outside this tablebase
+	private int probeSubtable(ChessBoard board, ChessJudge judge)
+	{
+		if (judge.isInsufficientMaterial(board))
+		{
+			return Tablebase.DRAW;
+		}
+
+		int code = mSubtables.probe(board);
+		if (code == Tablebases.NOT_FOUND)
+		{
+			throw new IllegalStateException("No tablebase for " + Tablebase.getSignature(board, false));
+		}
+		return code;
+	}
+
+	//The state of a position with a move to a position with this code
+	private static int reply(int code)
+	{
+		if (Tablebase.isLoss(code))
+		{
+			return state(WIN, Tablebase.getPlies(code) + 1, 0);
+		}
+
+		return Tablebase.isWin(code)?state(LOSS, Tablebase.getPlies(code) + 1, 0):state(DRAW, 0, 0);
+	}
+
+	//The better of two results for the side to move:  the quickest win, then a draw, then the slowest loss.
+	//An UNKNOWN result means there's nothing to choose
+	private static int better(int a, int b)
+	{
+		return (rank(a) >= rank(b))?a:b;
+	}
+
+	private static int rank(int state)
+	{
+		switch (getStatus(state))
+		{
+		case WIN:   return 1000 - getPlies(state);
+		case DRAW:  return 0;
+		case LOSS:  return -1000 + getPlies(state);
+		default:    return Integer.MIN_VALUE;
+		}
+	}
+
+	private static int addDistinct(int[] list, int count, int value)
+	{
+		for (int i=0; i<count; i++)
+		{
+			if (list[i] == value)
+			{
+				return count;
+			}
+		}
+
+		list[count] = value;
+		return count + 1;
+	}
+
+	//Positions in a range that are still undecided, and can win in this many half moves by leaving the
+	//tablebase, are wins.  (Done for all positions before any are propagated at this distance, since
+	//propagating can also decide them, but only at greater distances)
+	private void convert(int start, int end, int plies)
+	{
+		for (int index=start; index<end; index++)
+		{
+			int conversion = mConversions[index];
+			if ((getStatus(conversion) == WIN)&&(getPlies(conversion) == plies))
+			{
+				int state = mState.get(index);
+				if (getStatus(state) == UNKNOWN)
+				{
+					mState.compareAndSet(index, state, conversion);
+				}
+			}
+		}
+	}
+
+	//Work backwards from the positions in a range decided at this distance.  Returns the most half moves to
+	//mate decided
+	private int propagate(int start, int end, int plies)
+	{
+		ChessBoard board = null;
+		int[] squares = new int[mTable.getPieceCount()];
+		int[] scratch = new int[mTable.getPieceCount()];
+		int[] parents = new int[4*ChessBoard.MAX_MOVES];
+		int longest = 0;
+
+		for (int index=start; index<end; index++)
+		{
+			int state = mState.get(index);
+			int status = getStatus(state);
+			if (((status != WIN)&&(status != LOSS))||(getPlies(state) != plies))
+			{
+				continue;
+			}
+
+			if (board == null)
+			{
+				board = new ChessBoard();
+			}
+			setUp(board, index, squares, scratch);
+
+			int count = getParents(board, parents, scratch);
+			for (int i=0; i<count; i++)
+			{
+				int decided = (status == LOSS)?win(parents[i], plies + 1):refute(parents[i], plies);
+				longest = Math.max(longest, decided);
+			}
+		}
+
+		return longest;
+	}
+
+	//A position can move to one lost in plies - 1, so it's won in plies unless it's already decided.
+	//Returns the half moves to mate, or 0 if nothing changed
+	private int win(int index, int plies)
+	{
+		while (true)
+		{
+			int state = mState.get(index);
+			if (getStatus(state) != UNKNOWN)
+			{
+				return 0;
+			}
+			if (mState.compareAndSet(index, state, state(WIN, plies, 0)))
+			{
+				return plies;
+			}
+		}
+	}
+
+	//One of a position's moves leads to a position won (in plies) for the opponent.  If it was the last one
+	//that wasn't, the position is lost, unless a move that leaves the tablebase does better.  Returns the
+	//half moves to mate if the position was decided, otherwise 0
+	private int refute(int index, int plies)
+	{
+		while (true)
+		{
+			int state = mState.get(index);
+			if ((getStatus(state) != UNKNOWN)||(getCount(state) == 0))
+			{
+				return 0;
+			}
+
+			int next = state - 1;
+			if (getCount(next) == 0)
+			{
+				int conversion = mConversions[index];
+				switch (getStatus(conversion))
+				{
+				case UNKNOWN:
+					next = state(LOSS, plies + 1, 0);
+					break;
+				case LOSS:
+					next = state(LOSS, Math.max(plies + 1, getPlies(conversion)), 0);
+					break;
+				}
+			}
+
+			if (mState.compareAndSet(index, state, next))
+			{
+				return (getStatus(next) == LOSS)?getPlies(next):0;
+			}
+		}
+	}
+
+	/******
+	 * Positions
+	 ******/
+
+	//Put the position for an index on the board (which must only have pieces put there by setUp()).  False
+	//if the index isn't a legal position with these squares, or isn't the index for them
+	private boolean setUp(ChessBoard board, int index, int[] squares, int[] scratch)
+	{
+		for (long bits = board.getOccupied(); bits != 0; bits &= bits - 1)
+		{
+			int square = Long.numberOfTrailingZeros(bits);
+			board.removePiece(ChessBoard.getRank(square), ChessBoard.getFile(square));
+		}
+
+		int turn = mTable.decode(index, squares);
+		System.arraycopy(squares, 0, scratch, 0, squares.length);
+		if (mTable.getIndex(scratch, turn) != index)
+		{
+			return false;
+		}
+
+		for (int place=0; place<squares.length; place++)
+		{
+			int square = squares[place];
+			if (!board.addPiece(ChessPiece.get(mTable.getPiece(place)), ChessBoard.getRank(square), ChessBoard.getFile(square)))
+			{
+				return false;
+			}
+		}
+		board.setTurn(turn);
+
+		//The player who just moved can't be in check
+		return !board.isAttacked(board.getKingSquare(turn ^ 1), turn);
+	}
+
+	//Put the distinct indexes of the positions that can move into the board's position without capturing or
+	//promoting in parents.  The board is left as it was.  Returns how many there are
+	private int getParents(ChessBoard board, int[] parents, int[] scratch)
+	{
+		int turn = board.getTurn();
+		int mover = turn ^ 1;
+		int back = (mover == ChessBoard.WHITE)?-8:8;
+		long occupied = board.getOccupied();
+		int count = 0;
+
+		for (long pieces = board.getOccupied(mover); pieces != 0; pieces &= pieces - 1)
+		{
+			int to = Long.numberOfTrailingZeros(pieces);
+			int piece = board.getPieceIndex(to);
+			int type = piece % ChessPiece.TYPES;
+
+			long from;
+			if (type == PAWN)
+			{
+				//A push from one square back, or two from the fourth rank
+				int rank = ChessBoard.getRank(to);
+				int relativeRank = (mover == ChessBoard.WHITE)?rank:(7 - rank);
+				from = 0;
+				if ((relativeRank >= 2)&&((occupied & (1L << (to + back))) == 0))
+				{
+					from = 1L << (to + back);
+					if ((relativeRank == 3)&&((occupied & (1L << (to + 2*back))) == 0))
+					{
+						from |= 1L << (to + 2*back);
+					}
+				}
+			}
+			else
+			{
+				from = getAttacks(type, to, occupied) & ~occupied;
+			}
+
+			ChessPiece moving = ChessPiece.get(piece);
+			board.removePiece(ChessBoard.getRank(to), ChessBoard.getFile(to));
+			board.setTurn(mover);
+
+			for (; from != 0; from &= from - 1)
+			{
+				int square = Long.numberOfTrailingZeros(from);
+				board.addPiece(moving, ChessBoard.getRank(square), ChessBoard.getFile(square));
+
+				//The player to move now can't have been in check
+				if (!board.isAttacked(board.getKingSquare(turn), mover))
+				{
+					mTable.getSquares(board, false, scratch);
+					count = addDistinct(parents, count, (int)mTable.getIndex(scratch, mover));
+				}
+
+				board.removePiece(ChessBoard.getRank(square), ChessBoard.getFile(square));
+			}
+
+			board.addPiece(moving, ChessBoard.getRank(to), ChessBoard.getFile(to));
+			board.setTurn(turn);
+		}
+
+		return count;
+	}
+
+	private static long getAttacks(int type, int square, long occupied)
+	{
+		if (type == KNIGHT)
+		{
+			return ChessAttacks.knight(square);
+		}
+		else if (type == BISHOP)
+		{
+			return ChessAttacks.bishop(square, occupied);
+		}
+		else if (type == ROOK)
+		{
+			return ChessAttacks.rook(square, occupied);
+		}
+		else if (type == QUEEN)
+		{
+			return ChessAttacks.queen(square, occupied);
+		}
+
+		return ChessAttacks.king(square);
+	}
+
+	/******
+	 * Running in parallel
+	 ******/
+
+	//Work on a range of positions; returns the most half moves to mate it decided
+	private static interface RangeTask
+	{
+		public int run(int start, int end);
+	}
+
+	//Run a task over all the positions, in ranges on the executor.  Returns the most half moves decided
+	private int runRanges(final RangeTask task)
+	{
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int i=0; i<mRanges; i++)
+		{
+			final int start = (int)((long)mSize*i/mRanges);
+			final int end = (int)((long)mSize*(i + 1)/mRanges);
+			results.add(mExecutor.submit(new Callable<Integer>() {
+				public Integer call()
+				{
+					return task.run(start, end);
+				}
+			}));
+		}
+
+		int longest = 0;
+		for (Future<Integer> result : results)
+		{
+			try
+			{
+				longest = Math.max(longest, result.get());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted", e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException)e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		return longest;
+	}
+
+	/******
+	 * Writing
+	 ******/
+
+	//Pack the codes with as few bits as the longest mate needs, and count up the results
+	private void write(File file) throws IOException
+	{
+		for (int index=0; index<mSize; index++)
+		{
+			int state = mState.get(index);
+			int status = getStatus(state);
+			mResults[status]++;
+			if ((status == WIN)&&(getPlies(state) > mLongest))
+			{
+				mLongest = getPlies(state);
+				mLongestIndex = index;
+			}
+		}
+
+		int bits = 32 - Integer.numberOfLeadingZeros(mLongest + 1);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+			byte[] signature = mTable.getSignature().getBytes(StandardCharsets.US_ASCII);
+			buffer.putInt(Tablebase.MAGIC).putInt(bits).putLong(mSize);
+			buffer.put(signature).put(new byte[Tablebase.SIGNATURE_SIZE - signature.length]);
+
+			long word = 0;
+			int used = 0;
+			for (int index=0; index<mSize; index++)
+			{
+				int state = mState.get(index);
+				int status = getStatus(state);
+				long code = ((status == WIN)||(status == LOSS))?(getPlies(state) + 1):Tablebase.DRAW;
+
+				word |= code << used;
+				used += bits;
+				if (used >= 64)
+				{
+					put(channel, buffer, word);
+					used -= 64;
+					word = (used == 0)?0:(code >>> (bits - used));
+				}
+			}
+			if (used > 0)
+			{
+				put(channel, buffer, word);
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+	}
+
+	private static void put(FileChannel channel, ByteBuffer buffer, long word) throws IOException
+	{
+		if (buffer.remaining() < 8)
+		{
+			buffer.flip();
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		buffer.putLong(word);
+	}
+
+	/******
+	 * Making sets of tablebases
+	 ******/
+
+	//Make the tablebase for a signature in a directory, after (recursively) the tablebases for the pieces
+	//its captures and promotions lead to.  Tablebases already in tables aren't made again; new ones are
+	//added to it
+	public static void generate(String signature, File directory, Tablebases tables, ExecutorService executor, int threads) throws IOException
+	{
+		for (String converted : getConversions(signature))
+		{
+			if (!isDrawn(converted)&&(tables.get(converted) == null)&&(tables.get(flip(converted)) == null))
+			{
+				generate(converted, directory, tables, executor, threads);
+			}
+		}
+
+		if (tables.get(signature) != null)
+		{
+			return;
+		}
+
+		long startTime = System.nanoTime();
+		TablebaseGenerator generator = new TablebaseGenerator(signature, tables, executor, threads);
+		File file = Tablebases.getFile(directory, signature);
+		generator.generate(file);
+
+		Tablebase table = new Tablebase(file);
+		tables.add(table);
+
+		double seconds = (System.nanoTime() - startTime)/1e9;
+		ChessBoard longest = generator.getLongestMatePosition();
+		System.out.println(String.format("%s: %d positions (%.0f/sec), %d wins, %d losses, %d draws, %d bits, %d bytes in %.2fs",
+				table.getSignature(), table.size(), table.size()/seconds, generator.getWins(), generator.getLosses(),
+				generator.getDraws(), table.getBits(), file.length(), seconds));
+		if (longest != null)
+		{
+			System.out.println("   longest mate: " + (generator.getLongestMate() + 1)/2 + " moves, " + longest.toFen());
+		}
+	}
+
+	//The signatures a capture, a promotion, or both can turn a signature into, stronger side first
+	public static Set<String> getConversions(String signature)
+	{
+		signature = Tablebase.normalize(signature);
+		int split = signature.indexOf('K', 1);
+		String[] sides = {signature.substring(0, split), signature.substring(split)};
+
+		Set<String> conversions = new LinkedHashSet<String>();
+		for (int side=0; side<2; side++)
+		{
+			String own = sides[side];
+			String other = sides[side ^ 1];
+
+			//Captures of the other side's pieces
+			for (String captured : removeEach(other))
+			{
+				conversions.add(orient(own, captured, side));
+			}
+
+			//Promotions, with or without a capture
+			int pawn = own.indexOf('P');
+			if (pawn >= 0)
+			{
+				for (char promotion : "QRBN".toCharArray())
+				{
+					String promoted = own.substring(0, pawn) + promotion + own.substring(pawn + 1);
+					conversions.add(orient(promoted, other, side));
+					for (String captured : removeEach(other))
+					{
+						conversions.add(orient(promoted, captured, side));
+					}
+				}
+			}
+		}
+
+		return conversions;
+	}
+
+	//A side with each of its pieces (except the king) taken away in turn
+	private static Set<String> removeEach(String side)
+	{
+		Set<String> removed = new LinkedHashSet<String>();
+		for (int i=1; i<side.length(); i++)
+		{
+			removed.add(side.substring(0, i) + side.substring(i + 1));
+		}
+
+		return removed;
+	}
+
+	//A signature from one side and the other, with white being the side with more material
+	private static String orient(String own, String other, int side)
+	{
+		String signature = Tablebase.normalize((side == 0)?(own + other):(other + own));
+		String flipped = flip(signature);
+		return (getMaterial(flipped) > getMaterial(signature))?flipped:signature;
+	}
+
+	//The same pieces with the colours swapped
+	public static String flip(String signature)
+	{
+		signature = Tablebase.normalize(signature);
+		int split = signature.indexOf('K', 1);
+		return signature.substring(split) + signature.substring(0, split);
+	}
+
+	//White's material less black's
+	private static int getMaterial(String signature)
+	{
+		int split = signature.indexOf('K', 1);
+		int material = 0;
+		for (int i=0; i<signature.length(); i++)
+		{
+			int type = "PNBRQK".indexOf(signature.charAt(i));
+			material += ((i < split)?1:-1)*ChessAlgo.PIECE_VALUES[type];
+		}
+
+		return material;
+	}
+
+	//True if neither side can mate (see ChessJudge.isInsufficientMaterial()), so there's no tablebase
+	private static boolean isDrawn(String signature)
+	{
+		int minors = 0;
+		for (char c : signature.toCharArray())
+		{
+			if ((c == 'P')||(c == 'R')||(c == 'Q'))
+			{
+				return false;
+			}
+			if ((c == 'B')||(c == 'N'))
+			{
+				minors++;
+			}
+		}
+
+		return minors <= 1;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> signatures = new ArrayList<String>();
+		File directory = null;
+
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i].equals("-threads")&&(i+1 < args.length))
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (directory == null)
+			{
+				directory = new File(args[i]);
+			}
+			else
+			{
+				signatures.add(args[i]);
+			}
+		}
+
+		if (signatures.isEmpty())
+		{
+			System.err.println("Usage:  TablebaseGenerator <directory> <signature>... [-threads n]");
+			return;
+		}
+
+		directory.mkdirs();
+		Tablebases tables = new Tablebases(directory);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try
+		{
+			for (String signature : signatures)
+			{
+				generate(signature, directory, tables, executor, threads);
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}
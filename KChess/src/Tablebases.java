@@ -0,0 +1,179 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//A set of Tablebases, for probing positions whatever their pieces:  a position is looked up in the
+//tablebase for its pieces, or, with the colours swapped, in the one for the same pieces the other way
+//round (so "KQK" also answers for a black queen).  Positions with too many pieces, or pieces there's no
+//tablebase for, aren't found.
+//
+//The tablebases ignore castling and en passant, so positions with castling rights aren't found either, and
+//a position where an en passant capture is possible is scored by looking up the positions after each move.
+//
+//Tablebases can be added while others are probing, from any thread.
+
+public class Tablebases {
+
+	public static final String EXTENSION = ".ktb";
+
+	//probe() for a position that isn't in any tablebase
+	public static final int NOT_FOUND = -1;
+
+	private Map<String, Tablebase> mTables = new ConcurrentHashMap<String, Tablebase>();
+	private volatile int mMaxPieces;
+
+	public Tablebases()
+	{
+	}
+
+	//All the tablebase files in a directory
+	public Tablebases(File directory) throws IOException
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			throw new IOException("Not a directory: " + directory);
+		}
+
+		for (File file : files)
+		{
+			if (file.getName().endsWith(EXTENSION))
+			{
+				add(new Tablebase(file));
+			}
+		}
+	}
+
+	//The usual file name for a tablebase
+	public static File getFile(File directory, String signature)
+	{
+		return new File(directory, Tablebase.normalize(signature) + EXTENSION);
+	}
+
+	public synchronized void add(Tablebase table)
+	{
+		mTables.put(table.getSignature(), table);
+		mMaxPieces = Math.max(mMaxPieces, table.getPieceCount());
+	}
+
+	//The tablebase for a signature (as it is, not the other way round), or null
+	public Tablebase get(String signature)
+	{
+		return mTables.get(Tablebase.normalize(signature));
+	}
+
+	public int size()
+	{
+		return mTables.size();
+	}
+
+	//The most pieces in any of the tablebases
+	public int getMaxPieces()
+	{
+		return mMaxPieces;
+	}
+
+	//The tablebase code for a position (see Tablebase.probe()), or NOT_FOUND
+	public int probe(ChessBoard board)
+	{
+		if ((Long.bitCount(board.getOccupied()) > mMaxPieces)||(board.getCastlingRights() != 0))
+		{
+			return NOT_FOUND;
+		}
+
+		if ((board.getEnPassantSquare() != ChessBoard.NO_SQUARE)&&canCaptureEnPassant(board))
+		{
+			int[] best = searchMoves(board);
+			if (best == null)
+			{
+				return NOT_FOUND;
+			}
+
+			//One half move further from mate than the best reply's position
+			return (best[1] == Tablebase.DRAW)?Tablebase.DRAW:(best[1] + 1);
+		}
+
+		for (int flip=0; flip<2; flip++)
+		{
+			Tablebase table = mTables.get(Tablebase.getSignature(board, flip == 1));
+			if (table != null)
+			{
+				return table.probe(board, flip == 1);
+			}
+		}
+
+		return NOT_FOUND;
+	}
+
+	//The move that mates soonest (or, losing, puts off mate longest, or keeps a draw), or ChessMove.NONE if
+	//the position isn't found or has no moves
+	public int getBestMove(ChessBoard board)
+	{
+		int[] best = searchMoves(board);
+
+		return (best == null)?ChessMove.NONE:best[0];
+	}
+
+	//The best move by the tablebases and the code of the position it leads to, as {move, code}; the move is
+	//ChessMove.NONE if there are no moves.  null if the position after a move isn't found
+	private int[] searchMoves(ChessBoard board)
+	{
+		ChessJudge judge = new ChessJudge();
+		int[] moves = new int[ChessBoard.MAX_MOVES];
+		int count = judge.generateLegalMoves(board, moves, 0);
+
+		int best = ChessMove.NONE;
+		int bestCode = NOT_FOUND;
+		int bestRank = Integer.MIN_VALUE;
+		for (int i=0; i<count; i++)
+		{
+			board.makeMove(moves[i]);
+			int code = judge.isInsufficientMaterial(board)?Tablebase.DRAW:probe(board);
+			board.unmakeMove(moves[i]);
+
+			if (code == NOT_FOUND)
+			{
+				return null;
+			}
+
+			int rank = rankReply(code);
+			if (rank > bestRank)
+			{
+				best = moves[i];
+				bestCode = code;
+				bestRank = rank;
+			}
+		}
+
+		return new int[] {best, bestCode};
+	}
+
+	//True if the side to move has a legal en passant capture
+	private static boolean canCaptureEnPassant(ChessBoard board)
+	{
+		int[] moves = new int[ChessBoard.MAX_MOVES];
+		int count = new ChessJudge().generateLegalMoves(board, moves, 0);
+		for (int i=0; i<count; i++)
+		{
+			if (ChessMove.getKind(moves[i]) == ChessMove.EN_PASSANT)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//How good a position's code is for the player who just moved there:  the opponent losing soonest is
+	//best, then a draw, then the opponent winning as late as possible
+	private static int rankReply(int code)
+	{
+		if (Tablebase.isLoss(code))
+		{
+			return 1000 - Tablebase.getPlies(code);
+		}
+
+		return Tablebase.isWin(code)?(-1000 + Tablebase.getPlies(code)):0;
+	}
+}
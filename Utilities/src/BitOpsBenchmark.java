@@ -0,0 +1,127 @@
+import java.util.BitSet;
+import java.util.Random;
+
+import ksk.math.BitOps;
+
+//Compares the BitOps kernels (plain loops, and the same with the bit count unrolled) with BitSet, for the bulk
+//operations on strings from 1 Kbit to 64 Mbit.  Each operation is repeated until it has run for a while;
+//the table gives the time per operation in ns for each, and which kernel BitBlock is using.
+//
+//The kernel is chosen with -Dksk.math.bitops=simple (or unrolled).
+//
+//Usage:  BitOpsBenchmark [max bits]
+
+public class BitOpsBenchmark {
+
+	private static final String[] OPERATIONS = {"xor", "and", "or", "not", "cardinality"};
+
+	//Minimum time to spend on each measurement
+	private static final long MIN_NANOS = 100000000L;
+
+	public static void main(String[] args)
+	{
+		int maxBits = (args.length > 0)?Integer.parseInt(args[0]):(1 << 26);
+
+		System.out.println("BitBlock kernel:  " + BitOps.getKernel().getName());
+		System.out.println(String.format("%-10s %-12s %14s %14s %14s", "bits", "operation", "simple ns/op", "unrolled ns/op", "BitSet ns/op"));
+
+		Random r = new Random(1);
+		for (int length = 1 << 10; length <= maxBits; length <<= 4)
+		{
+			long[] a = new long[length/Long.SIZE];
+			long[] b = new long[a.length];
+			for (int i=0; i<a.length; i++)
+			{
+				a[i] = r.nextLong();
+				b[i] = r.nextLong();
+			}
+
+			for (int op=0; op<OPERATIONS.length; op++)
+			{
+				//Once round to warm up, then again to measure
+				time(BitOps.getSimple(), a.clone(), b, op);
+				time(BitOps.getUnrolled(), a.clone(), b, op);
+				time(BitSet.valueOf(a), BitSet.valueOf(b), length, op);
+
+				double simple = time(BitOps.getSimple(), a.clone(), b, op);
+				double unrolled = time(BitOps.getUnrolled(), a.clone(), b, op);
+				double bitSet = time(BitSet.valueOf(a), BitSet.valueOf(b), length, op);
+
+				System.out.println(String.format("%-10d %-12s %14.0f %14.0f %14.0f", length, OPERATIONS[op], simple, unrolled, bitSet));
+			}
+		}
+	}
+
+	//Keeps the JIT from throwing the results away
+	private static long sink;
+
+	//Time per operation with a kernel, in ns
+	private static double time(BitOps kernel, long[] a, long[] b, int op)
+	{
+		long count = 0;
+		long startTime = System.nanoTime();
+		long elapsed;
+		do
+		{
+			switch (op)
+			{
+			case 0:
+				kernel.xor(a, b, a.length);
+				break;
+			case 1:
+				kernel.and(a, b, a.length);
+				break;
+			case 2:
+				kernel.or(a, b, a.length);
+				break;
+			case 3:
+				kernel.not(a, a.length);
+				break;
+			default:
+				sink += kernel.cardinality(a, a.length);
+				break;
+			}
+			count++;
+			elapsed = System.nanoTime() - startTime;
+		}
+		while (elapsed < MIN_NANOS);
+
+		sink += a[0];
+		return (double)elapsed/count;
+	}
+
+	//Time per operation with BitSet, in ns
+	private static double time(BitSet a, BitSet b, int length, int op)
+	{
+		long count = 0;
+		long startTime = System.nanoTime();
+		long elapsed;
+		do
+		{
+			switch (op)
+			{
+			case 0:
+				a.xor(b);
+				break;
+			case 1:
+				a.and(b);
+				break;
+			case 2:
+				a.or(b);
+				break;
+			case 3:
+				a.flip(0, length);
+				break;
+			default:
+				sink += a.cardinality();
+				break;
+			}
+			count++;
+			elapsed = System.nanoTime() - startTime;
+		}
+		while (elapsed < MIN_NANOS);
+
+		sink += a.size();
+		return (double)elapsed/count;
+	}
+}
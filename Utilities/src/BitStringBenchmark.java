@@ -0,0 +1,141 @@
+import java.util.BitSet;
+import java.util.Random;
+
+import ksk.math.BitString;
+
+//Compares BitString's word-at-a-time shifts and rotations with shifting one bit at a time (the way
+//BitString used to, walking the set bits of a BitSet), on random strings from 1 Kbit to 64 Mbit.
+//
+//Each operation is repeated until it has run for a while, and the table gives the time per operation and
+//the speed-up.  The bit-at-a-time results are checked against BitString's.
+//
+//Usage:  BitStringBenchmark [distance] [max bits]
+
+public class BitStringBenchmark {
+
+	private static final String[] OPERATIONS = {"shiftLeft", "shiftRight", "rotLeft", "rotRight"};
+
+	//Minimum time to spend on each measurement
+	private static final long MIN_NANOS = 200000000L;
+
+	public static void main(String[] args)
+	{
+		int distance = (args.length > 0)?Integer.parseInt(args[0]):13;
+		int maxBits = (args.length > 1)?Integer.parseInt(args[1]):(1 << 26);
+
+		Random r = new Random(1);
+		System.out.println(String.format("%-10s %-11s %14s %14s %9s", "bits", "operation", "words ns/op", "bits ns/op", "speed-up"));
+
+		for (int length = 1 << 10; length <= maxBits; length <<= 2)
+		{
+			long[] values = new long[length/Long.SIZE];
+			for (int i=0; i<values.length; i++)
+			{
+				values[i] = r.nextLong();
+			}
+			BitString original = new BitString(values);
+
+			for (int op=0; op<OPERATIONS.length; op++)
+			{
+				//Check the two agree
+				BitString words = new BitString(original);
+				run(words, op, distance);
+				BitSet bits = BitSet.valueOf(original.toLongArray());
+				bits = runBits(bits, length, op, distance);
+				if (!bits.equals(BitSet.valueOf(words.toLongArray())))
+				{
+					System.out.println(OPERATIONS[op] + " differs at " + length + " bits");
+				}
+
+				double wordNanos = timeWords(original, op, distance);
+				double bitNanos = timeBits(original, length, op, distance);
+
+				System.out.println(String.format("%-10d %-11s %14.0f %14.0f %8.1fx", length, OPERATIONS[op], wordNanos, bitNanos,
+						bitNanos/wordNanos));
+			}
+		}
+	}
+
+	//Time per operation on a BitString, in ns
+	private static double timeWords(BitString original, int op, int distance)
+	{
+		BitString bits = new BitString(original);
+		long count = 0;
+		long startTime = System.nanoTime();
+		long elapsed;
+		do
+		{
+			//The time doesn't depend on the bits, so keep working on the same string, shifting back and forth
+			run(bits, op, ((op < 2)&&((count & 1) != 0))?-distance:distance);
+			count++;
+			elapsed = System.nanoTime() - startTime;
+		}
+		while (elapsed < MIN_NANOS);
+
+		return (double)elapsed/count;
+	}
+
+	//Time per operation shifting a bit at a time, in ns
+	private static double timeBits(BitString original, int length, int op, int distance)
+	{
+		//This builds a new BitSet each time, so it can start from the same bits every time
+		BitSet bits = BitSet.valueOf(original.toLongArray());
+		long count = 0;
+		long startTime = System.nanoTime();
+		long elapsed;
+		do
+		{
+			sink += runBits(bits, length, op, distance).size();
+			count++;
+			elapsed = System.nanoTime() - startTime;
+		}
+		while (elapsed < MIN_NANOS);
+
+		return (double)elapsed/count;
+	}
+
+	//Keeps the JIT from throwing the results away
+	private static long sink;
+
+	private static void run(BitString bits, int op, int distance)
+	{
+		switch (op)
+		{
+		case 0:
+			bits.shiftLeft(distance);
+			break;
+		case 1:
+			bits.shiftRight(distance);
+			break;
+		case 2:
+			bits.rotLeft(distance);
+			break;
+		default:
+			bits.rotRight(distance);
+			break;
+		}
+	}
+
+	//The same operations a bit at a time:  every set bit is moved up by distance places (down if negative)
+	private static BitSet runBits(BitSet bits, int length, int op, int distance)
+	{
+		int up = ((op & 1) == 0)?distance:-distance;
+		boolean rotate = (op >= 2);
+
+		BitSet result = new BitSet(length);
+		for (int index = bits.nextSetBit(0); (index >= 0)&&(index < length); index = bits.nextSetBit(index + 1))
+		{
+			int to = index + up;
+			if (rotate)
+			{
+				to = ((to % length) + length) % length;
+			}
+			if ((to >= 0)&&(to < length))
+			{
+				result.set(to);
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,89 @@
+import java.util.Random;
+
+import ksk.math.BitString;
+import ksk.math.BitStringCodec;
+
+//Measures BitStringCodec on a large random BitString (100 MB by default):  encoding to hex, base64 and
+//8-bit text into preallocated arrays, and decoding them again.  Reports MB of bits per second, and
+//checks that every decoded string matches the original.
+//
+//For comparison, the copy line is the time for BitString to hand over its words (which every encoder
+//does first) and a plain copy of an array the size of the output.
+//
+//Usage:  BitStringCodecBenchmark [MB] [repeats]
+
+public class BitStringCodecBenchmark {
+
+	public static void main(String[] args)
+	{
+		int megabytes = (args.length > 0)?Integer.parseInt(args[0]):100;
+		int repeats = (args.length > 1)?Integer.parseInt(args[1]):3;
+
+		Random r = new Random(1);
+		long[] values = new long[megabytes*(1 << 20)/8];
+		for (int i=0; i<values.length; i++)
+		{
+			values[i] = r.nextLong();
+		}
+		BitString bits = new BitString(values);
+		values = null;
+
+		char[] hex = new char[BitStringCodec.hexLength(bits)];
+		byte[] base64 = new byte[BitStringCodec.base64Length(bits)];
+		char[] text = new char[BitStringCodec.textLength(bits, 8)];
+		char[] copy = new char[hex.length];
+
+		System.out.println(String.format("%-14s %10s %10s", "operation", "ms", "MB/sec"));
+		for (int repeat=0; repeat<repeats; repeat++)
+		{
+			long startTime = System.nanoTime();
+			bits.toLongArray();
+			System.arraycopy(hex, 0, copy, 0, hex.length);
+			report("copy", startTime, megabytes);
+
+			startTime = System.nanoTime();
+			BitStringCodec.encodeHex(bits, hex, 0);
+			report("encode hex", startTime, megabytes);
+
+			startTime = System.nanoTime();
+			BitString decoded = BitStringCodec.decodeHex(hex, 0, hex.length);
+			report("decode hex", startTime, megabytes);
+			check(bits, decoded);
+			decoded = null;
+
+			startTime = System.nanoTime();
+			BitStringCodec.encodeBase64(bits, base64, 0);
+			report("encode base64", startTime, megabytes);
+
+			startTime = System.nanoTime();
+			decoded = BitStringCodec.decodeBase64(base64, 0, base64.length);
+			report("decode base64", startTime, megabytes);
+			check(bits, decoded);
+			decoded = null;
+
+			startTime = System.nanoTime();
+			BitStringCodec.encodeText(bits, 8, text, 0);
+			report("encode text", startTime, megabytes);
+
+			startTime = System.nanoTime();
+			decoded = BitStringCodec.decodeText(text, 0, text.length, 8);
+			report("decode text", startTime, megabytes);
+			check(bits, decoded);
+			decoded = null;
+		}
+	}
+
+	private static void report(String operation, long startTime, int megabytes)
+	{
+		double seconds = (System.nanoTime() - startTime)/1e9;
+		System.out.println(String.format("%-14s %10.0f %10.0f", operation, seconds*1000, megabytes/seconds));
+	}
+
+	private static void check(BitString bits, BitString decoded)
+	{
+		if (!bits.equals(decoded))
+		{
+			System.out.println("Decoded string differs");
+		}
+	}
+}
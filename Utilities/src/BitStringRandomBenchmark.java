@@ -0,0 +1,66 @@
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ksk.math.BitString;
+import ksk.util.SplitMix64;
+
+//Measures BitString.randomize() on a large string (64 Mbit by default):  a bit at a time from
+//Random.nextDouble() (as randomize() used to), then a word at a time from Random, SplitMix64 and
+//SecureRandom, and the parallel fill from split SplitMix64s with 1, 2 and 4 threads.  Reports Mbit per
+//second.
+//
+//Usage:  BitStringRandomBenchmark [Mbit] [repeats]
+
+public class BitStringRandomBenchmark {
+
+	private static final int[] THREADS = {1, 2, 4};
+
+	public static void main(String[] args)
+	{
+		int megabits = (args.length > 0)?Integer.parseInt(args[0]):64;
+		int repeats = (args.length > 1)?Integer.parseInt(args[1]):3;
+
+		BitString bits = new BitString(megabits << 20);
+
+		System.out.println(String.format("%-22s %10s %10s", "generator", "ms", "Mbit/sec"));
+		for (int repeat=0; repeat<repeats; repeat++)
+		{
+			long startTime = System.nanoTime();
+			Random r = new Random(1);
+			for (int i=0; i<bits.getLength(); i++)
+			{
+				bits.set(i, r.nextDouble() > 0.5);
+			}
+			report("bits from Random", startTime, megabits);
+
+			startTime = System.nanoTime();
+			bits.randomize(new Random(1));
+			report("Random", startTime, megabits);
+
+			startTime = System.nanoTime();
+			bits.randomize(new SplitMix64(1));
+			report("SplitMix64", startTime, megabits);
+
+			startTime = System.nanoTime();
+			bits.randomize(new SecureRandom());
+			report("SecureRandom", startTime, megabits);
+
+			for (int threads : THREADS)
+			{
+				ExecutorService executor = Executors.newFixedThreadPool(threads);
+				startTime = System.nanoTime();
+				bits.randomize(new SplitMix64(1), executor);
+				report("SplitMix64, " + threads + " threads", startTime, megabits);
+				executor.shutdown();
+			}
+		}
+	}
+
+	private static void report(String generator, long startTime, int megabits)
+	{
+		double seconds = (System.nanoTime() - startTime)/1e9;
+		System.out.println(String.format("%-22s %10.0f %10.0f", generator, seconds*1000, megabits/seconds));
+	}
+}
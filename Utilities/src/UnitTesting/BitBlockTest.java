@@ -2,6 +2,8 @@ package UnitTesting;
 
 import static org.junit.Assert.assertEquals;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.concurrent.TimeUnit;
 
 import ksk.math.BitBlock;
@@ -35,4 +37,84 @@ public class BitBlockTest
 		BitBlock textBlock = BitBlock.valueOfTextString(text,8);
 		assertEquals(expected, textBlock.toHexString());
 	}
-}	
\ No newline at end of file
+
+	@Test
+	public void valueOfHexStringTest()
+	{
+		BitBlock hexBlock = BitBlock.valueOfHexString("0x6c73d5240a948c86981bc294814d");
+		assertEquals("6C73D5240A948C86981BC294814D", hexBlock.toHexString());
+		assertEquals(112, hexBlock.getLength());
+		assertEquals(true, hexBlock.get(1));
+		assertEquals(false, hexBlock.get(0));
+	}
+
+	//Trailing zeros are part of the block
+	@Test
+	public void lengthTest()
+	{
+		BitBlock block = new BitBlock(0x5, 12);
+		assertEquals("000000000101", block.toString());
+		block.setLength(70);
+		assertEquals(70, block.getLength());
+		assertEquals("00500000000000000", block.toHexString());
+	}
+
+	@Test
+	public void xorTest()
+	{
+		BitBlock cipher = BitBlock.valueOfHexString("6c73d5240a948c86981bc294814d");
+		BitBlock message = BitBlock.valueOfTextString("attack at dawn", 8);
+		BitBlock key = new BitBlock(cipher);
+		key.xor(message);
+
+		BitBlock newCipher = BitBlock.valueOfTextString("attack at dusk", 8);
+		newCipher.xor(key);
+		assertEquals("6C73D5240A948C86981BC2808548", newCipher.toHexString());
+	}
+
+	//The result of an operation is as long as the longer operand
+	@Test
+	public void xorLengthTest()
+	{
+		BitBlock block = BitBlock.valueOfHexString("FF");
+		block.xor(BitBlock.valueOfHexString("0F0F"));
+		assertEquals("F00F", block.toHexString());
+	}
+
+	@Test
+	public void byteArrayTest()
+	{
+		String hex = "00112233445566778899AABBCCDDEEFF0123456789ABCDEF";
+		BitBlock block = BitBlock.valueOfHexString(hex);
+		byte[] bytes = block.toByteArray();
+		assertEquals(24, bytes.length);
+		assertEquals((byte)0x11, bytes[1]);
+		assertEquals((byte)0xEF, bytes[23]);
+
+		assertEquals(block, BitBlock.valueOf(bytes));
+
+		//Into an existing array, and back into an existing block
+		byte[] buffer = new byte[30];
+		block.toByteArray(buffer, 3);
+		assertEquals((byte)0x22, buffer[5]);
+		BitBlock copy = new BitBlock(block.getLength());
+		copy.setBytes(buffer, 3);
+		assertEquals(block, copy);
+	}
+
+	//Lengths that aren't whole bytes are padded with zeros
+	@Test
+	public void byteBufferTest()
+	{
+		BitBlock block = BitBlock.valueOfHexString("ABC");
+		ByteBuffer buffer = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+		block.toByteBuffer(buffer);
+		assertEquals((byte)0xAB, buffer.get(0));
+		assertEquals((byte)0xC0, buffer.get(1));
+
+		buffer.flip();
+		BitBlock copy = new BitBlock(12);
+		copy.setBytes(buffer);
+		assertEquals(block, copy);
+	}
+}
@@ -0,0 +1,230 @@
+package UnitTesting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import ksk.math.BitString;
+import ksk.math.BitStringCodec;
+import ksk.util.SplitMix64;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class BitStringTest
+{
+	//********************************
+	//   JUnit Tests
+	//********************************
+
+	public @Rule Timeout timer = new Timeout(1, TimeUnit.SECONDS); //1 second limit
+
+	//Hex digits are read from bit 0 up, so shifting left (up) moves digits towards the end of the string
+	@Test
+	public void shiftLeftTest1()
+	{
+		BitString bits = BitString.valueOfHexString("80F1");
+		bits.shiftLeft(4);
+		assertEquals("080F", bits.toHexString());
+	}
+
+	@Test
+	public void shiftRightTest1()
+	{
+		BitString bits = BitString.valueOfHexString("80F1");
+		bits.shiftRight(4);
+		assertEquals("0F10", bits.toHexString());
+	}
+
+	@Test
+	public void rotLeftTest1()
+	{
+		BitString bits = BitString.valueOfHexString("80F1");
+		bits.rotLeft(8);
+		assertEquals("F180", bits.toHexString());
+	}
+
+	@Test
+	public void rotRightTest1()
+	{
+		BitString bits = BitString.valueOfHexString("80F1");
+		bits.rotRight(4);
+		assertEquals("0F18", bits.toHexString());
+	}
+
+	//Shifting a string that's mostly ones must clear the bits it vacates (and finish)
+	@Test
+	public void shiftRightOnesTest()
+	{
+		BitString bits = new BitString(100);
+		bits.not();
+		bits.shiftRight(3);
+		assertEquals(97, bits.cardinality());
+		assertEquals(97, bits.nextClearBit(0));
+	}
+
+	@Test
+	public void shiftPastEndTest()
+	{
+		BitString bits = BitString.valueOfHexString("FFFF");
+		bits.shiftLeft(16);
+		assertEquals(true, bits.isEmpty());
+	}
+
+	//Shifts and rotations by many distances across several words, checked bit by bit
+	@Test
+	public void shiftWordsTest()
+	{
+		Random r = new Random(45);
+		int length = 300;
+		long[] values = new long[5];
+		for (int i=0; i<values.length; i++)
+		{
+			values[i] = r.nextLong();
+		}
+		BitString original = new BitString(values, Long.SIZE);
+		original.setLength(length);
+
+		for (int distance = -length - 1; distance <= length + 1; distance += 7)
+		{
+			BitString shifted = new BitString(original);
+			shifted.shiftLeft(distance);
+			BitString rotated = new BitString(original);
+			rotated.rotLeft(distance);
+
+			for (int i=0; i<length; i++)
+			{
+				int from = i - distance;
+				boolean expected = (from >= 0)&&(from < length)&&original.get(from);
+				assertEquals(expected, shifted.get(i));
+				assertEquals(original.get(((from % length) + length) % length), rotated.get(i));
+			}
+
+			//And back again
+			rotated.rotRight(distance);
+			assertEquals(original, rotated);
+		}
+	}
+
+	//Values go in most significant bit first, negative ones included
+	@Test
+	public void valuesTest()
+	{
+		BitString bits = new BitString(new long[]{0x5, -1L, 0x8000000000000000L}, 64);
+		assertEquals(67, bits.cardinality());
+		assertEquals(61, bits.nextSetBit(0));
+		assertEquals(63, bits.nextSetBit(62));
+		assertEquals(128, bits.nextSetBit(128));
+		assertEquals(129, bits.nextClearBit(128));
+
+		BitString fives = new BitString(new long[]{0x15, 0x7}, 5);
+		assertEquals("A9", fives.toHexString());
+		assertEquals(3, fives.toLong(8, 10));
+	}
+
+	@Test
+	public void hexTest()
+	{
+		assertEquals("00680065006C006C006F", BitString.valueOfTextString("hello").toHexString());
+		assertEquals("68656C6C6F", BitString.valueOfTextString("hello", 8).toHexString());
+		assertEquals("hello", BitString.valueOfHexString("0x68656c6c6f").toTextString(8));
+		assertEquals(null, BitString.valueOfHexString("68656G"));
+		assertEquals(null, BitString.valueOfHexString("0123456789ABCDEG0123"));
+		assertEquals(null, BitString.valueOfHexString("0123456789ABCDE\u00C60123"));
+		assertEquals(null, BitString.valueOfBase64String("aGVs\u00E1G8="));
+		assertEquals("ABC", BitString.valueOfHexString("ABC").toHexString());
+	}
+
+	@Test
+	public void base64Test()
+	{
+		assertEquals("aGVsbG8=", BitString.valueOfTextString("hello", 8).toBase64String());
+		assertEquals("aGVsbA==", BitString.valueOfTextString("hell", 8).toBase64String());
+		assertEquals("aGVs", BitString.valueOfTextString("hel", 8).toBase64String());
+		assertEquals("hello", BitString.valueOfBase64String("aGVsbG8=").toTextString(8));
+		assertEquals("hell", BitString.valueOfBase64String("aGVsbA==").toTextString(8));
+		assertEquals(null, BitString.valueOfBase64String("aGVsb"));
+	}
+
+	//Encoding into arrays, and back, for lengths across several words, checked bit by bit
+	@Test
+	public void codecTest()
+	{
+		Random r = new Random(49);
+		for (int length = 0; length < 300; length += 11)
+		{
+			BitString bits = new BitString(length);
+			for (int i=0; i<length; i++)
+			{
+				bits.set(i, r.nextBoolean());
+			}
+
+			char[] hex = new char[BitStringCodec.hexLength(bits) + 3];
+			assertEquals(length/4, BitStringCodec.encodeHex(bits, hex, 3));
+			BitString fromHex = BitStringCodec.decodeHex(hex, 3, length/4);
+			byte[] base64 = new byte[BitStringCodec.base64Length(bits) + 2];
+			assertEquals(base64.length - 2, BitStringCodec.encodeBase64(bits, base64, 2));
+			BitString fromBase64 = BitStringCodec.decodeBase64(base64, 2, base64.length - 2);
+			char[] text = new char[BitStringCodec.textLength(bits, 7)];
+			BitStringCodec.encodeText(bits, 7, text, 0);
+			BitString fromText = BitStringCodec.decodeText(text, 0, text.length, 7);
+
+			for (int i=0; i<length; i++)
+			{
+				if (i < fromHex.getLength())
+				{
+					assertEquals(bits.get(i), fromHex.get(i));
+				}
+				if (i < fromText.getLength())
+				{
+					assertEquals(bits.get(i), fromText.get(i));
+				}
+				assertEquals(bits.get(i), fromBase64.get(i));
+			}
+		}
+	}
+
+	//The same seed gives the same bits, and bits past the length stay clear
+	@Test
+	public void randomizeTest()
+	{
+		BitString first = new BitString(1000);
+		first.randomize(new SplitMix64(50));
+		BitString second = new BitString(1000);
+		second.randomize(new SplitMix64(50));
+
+		assertEquals(first, second);
+		assertEquals(true, first.cardinality() > 400);
+		assertEquals(true, first.cardinality() < 600);
+		assertEquals(true, first.toLongArray().length <= 16);
+		assertEquals(0, first.toLongArray()[15] >>> 40);
+	}
+
+	//The parallel fill depends on the generator, not on the number of threads
+	@Test
+	public void randomizeParallelTest()
+	{
+		int length = 5*(1 << 20) + 17;
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try
+		{
+			BitString first = new BitString(length);
+			first.randomize(new SplitMix64(50), single);
+			BitString second = new BitString(length);
+			second.randomize(new SplitMix64(50), pool);
+
+			assertEquals(first, second);
+			assertEquals(true, Math.abs(first.cardinality() - length/2) < 10000);
+		}
+		finally
+		{
+			single.shutdown();
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package UnitTesting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import ksk.math.OffHeapBitString;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class OffHeapBitStringTest
+{
+	//********************************
+	//   JUnit Tests
+	//********************************
+
+	public @Rule Timeout timer = new Timeout(1, TimeUnit.SECONDS); //1 second limit
+
+	@Test
+	public void setGetTest()
+	{
+		OffHeapBitString bits = OffHeapBitString.allocate(1000);
+		bits.set(0);
+		bits.set(63);
+		bits.set(64);
+		bits.set(999);
+		bits.flip(500);
+		bits.flip(64);
+
+		assertEquals(4, bits.cardinality());
+		assertEquals(true, bits.get(63));
+		assertEquals(false, bits.get(64));
+		assertEquals(63, bits.nextSetBit(1));
+		assertEquals(500, bits.nextSetBit(64));
+		assertEquals(999, bits.nextSetBit(501));
+	}
+
+	@Test
+	public void nextClearBitTest()
+	{
+		OffHeapBitString bits = OffHeapBitString.allocate(130);
+		bits.not();
+		assertEquals(130, bits.cardinality());
+		assertEquals(-1, bits.nextClearBit(0));
+
+		bits.clear(129);
+		assertEquals(129, bits.nextClearBit(0));
+	}
+
+	@Test
+	public void xorTest()
+	{
+		OffHeapBitString a = OffHeapBitString.allocate(200);
+		OffHeapBitString b = OffHeapBitString.allocate(300);
+		a.set(10);
+		a.set(150);
+		b.set(150);
+		b.set(199);
+		b.set(250);
+
+		a.xor(b);
+		assertEquals(2, a.cardinality());
+		assertEquals(10, a.nextSetBit(0));
+		assertEquals(199, a.nextSetBit(11));
+	}
+
+	//The file holds the bits as BitSet.toByteArray() would, and keeps them when mapped again
+	@Test
+	public void mapTest() throws IOException
+	{
+		File file = File.createTempFile("bits", ".bin");
+		try
+		{
+			OffHeapBitString bits = OffHeapBitString.map(file, 100);
+			bits.set(3);
+			bits.set(70);
+			bits.force();
+			assertEquals(16, file.length());
+
+			BitSet expected = new BitSet();
+			expected.set(3);
+			expected.set(70);
+			assertEquals(expected, BitSet.valueOf(Files.readAllBytes(file.toPath())));
+
+			OffHeapBitString again = OffHeapBitString.map(file);
+			assertEquals(128, again.getLength());
+			assertEquals(70, again.nextSetBit(4));
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
@@ -1,11 +1,515 @@
 package ksk.math;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
 /*
- * This subclass is a fixed-length BitSet (BitSets grow as required, without limit)
- * 
- * BitBlocks can generate signextended or truncated copies of themselves.
+ * A fixed-length block of bits (BitSets grow as required, without limit, and forget trailing zeros)
+ *
+ * Bits are numbered from the start of the block, and stored most significant bit first in an array of
+ * longs:  bit 0 is the top bit of the first word.  So a block reads the same way as its hex or text
+ * String, and the first byte of toByteArray() is the first 8 bits.  Bits past the length are always zero.
+ *
  * The length of the result of a BitBlock operation is the max of the length of the operands
  */
-public class BitBlock extends BitSet {
+public class BitBlock {
+	private static final int WORD_BYTES = Long.SIZE/Byte.SIZE;
+
+	private int mLength;
+	private long[] mWords;
+
+	//Constructor:  BitBlock of zeros.  Length is in bits
+	public BitBlock(int length)
+	{
+		if (length < 0)
+		{
+			throw new NegativeArraySizeException();
+		}
+
+		mLength = length;
+		mWords = new long[wordCount(length)];
+	}
+
+	//Constructor:  BitBlock containing the low bits of a long value
+	public BitBlock(long val, int length)
+	{
+		this(new long[]{val}, length);
+	}
+
+	//Constructor:  BitBlock containing the low bitsPerValue bits of each value in a long array, in the
+	//order that they appear in the array
+	public BitBlock(long[] values, int bitsPerValue)
+	{
+		this(checkLength(values, bitsPerValue));
+
+		for (int i=0; (values != null)&&(i<values.length); i++)
+		{
+			setBits(i*bitsPerValue, bitsPerValue, values[i]);
+		}
+	}
+
+	public BitBlock(long[] values)
+	{
+		this(values, Long.SIZE);
+	}
+
+	//Constructor:  Copy
+	public BitBlock(BitBlock src)
+	{
+		mLength = src.mLength;
+		mWords = Arrays.copyOf(src.mWords, src.mWords.length);
+	}
+
+	//Length of a block built from an array of values
+	private static int checkLength(long[] values, int bitsPerValue)
+	{
+		if ((bitsPerValue < 0)||(bitsPerValue > Long.SIZE))
+		{
+			throw new IllegalArgumentException("Bits per value must be from 0 to 64: " + bitsPerValue);
+		}
+
+		return (values == null)?0:values.length*bitsPerValue;
+	}
+
+	//Getters/Setters
+	public int getLength()
+	{
+		return mLength;
+	}
+
+	//Change the length of this block.  If the new length is shorter, then the bits at the end are lost.
+	//If longer, then false bits are added at the end
+	public void setLength(int length)
+	{
+		if (length < 0)
+		{
+			throw new NegativeArraySizeException();
+		}
+
+		//There are always just enough words for the length
+		mWords = Arrays.copyOf(mWords, wordCount(length));
+		mLength = length;
+		clearUnused();
+	}
+
+	//Bit-wise methods
+	public boolean get(int index)
+	{
+		validateIndex(index);
+
+		return (mWords[index >>> 6] & mask(index)) != 0;
+	}
+
+	public void set(int index)
+	{
+		validateIndex(index);
+		mWords[index >>> 6] |= mask(index);
+	}
+
+	public void set(int index, boolean value)
+	{
+		if (value)
+		{
+			set(index);
+		}
+		else
+		{
+			clear(index);
+		}
+	}
+
+	public void clear(int index)
+	{
+		validateIndex(index);
+		mWords[index >>> 6] &= ~mask(index);
+	}
+
+	public void clear()
+	{
+		Arrays.fill(mWords, 0);
+	}
+
+	public void flip(int index)
+	{
+		validateIndex(index);
+		mWords[index >>> 6] ^= mask(index);
+	}
+
+	public int cardinality()
+	{
+		return (int)BitOps.getKernel().cardinality(mWords, mWords.length);
+	}
+
+	public boolean isEmpty()
+	{
+		for (long word : mWords)
+		{
+			if (word != 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//Logical operation methods.  These work a word at a time, with the BitOps kernel; if block is longer,
+	//this block is first lengthened to match
+	public void xor(BitBlock block)
+	{
+		matchLength(block);
+		BitOps.getKernel().xor(mWords, block.mWords, block.mWords.length);
+	}
+
+	public void and(BitBlock block)
+	{
+		matchLength(block);
+		BitOps.getKernel().and(mWords, block.mWords, block.mWords.length);
+		Arrays.fill(mWords, block.mWords.length, mWords.length, 0);
+	}
+
+	public void or(BitBlock block)
+	{
+		matchLength(block);
+		BitOps.getKernel().or(mWords, block.mWords, block.mWords.length);
+	}
+
+	public void not()
+	{
+		BitOps.getKernel().not(mWords, mWords.length);
+		clearUnused();
+	}
+
+	private void matchLength(BitBlock block)
+	{
+		if (block.mLength > mLength)
+		{
+			setLength(block.mLength);
+		}
+	}
+
+	//Set all of the bits in the BitBlock to random values
+	public void randomize()
+	{
+		randomize(new Random());
+	}
+
+	//Set all of the bits to random values from a generator, 64 at a time:  a SecureRandom for a one-time
+	//pad, say, or a seeded one to get the same bits again
+	public void randomize(Random random)
+	{
+		BitString.fillRandom(random, mWords, 0, mWords.length);
+		clearUnused();
+	}
+
+	//Miscellaneous methods
+
+	//Number of longs needed to hold a number of bits
+	private static int wordCount(int bits)
+	{
+		return (int)(((long)bits + Long.SIZE - 1)/Long.SIZE);
+	}
+
+	//The bit for an index within its word
+	private static long mask(int index)
+	{
+		return Long.MIN_VALUE >>> (index & 63);
+	}
+
+	//Clear the bits of the last word that are past the end of the block
+	private void clearUnused()
+	{
+		int used = mLength & 63;
+		if (used != 0)
+		{
+			mWords[mWords.length - 1] &= -1L << (Long.SIZE - used);
+		}
+	}
+
+	//Check if a particular index is valid; throw an exception if it is not
+	private void validateIndex(int index)
+	{
+		if ((index<0)||(index>=mLength))
+		{
+			throw new IndexOutOfBoundsException("Bit " + index + " of " + mLength);
+		}
+	}
+
+	//Check that a range of bits is in the block
+	private void validateRange(int from, int count)
+	{
+		if ((from < 0)||(count < 0)||(from > mLength - count))
+		{
+			throw new IndexOutOfBoundsException("Bits " + from + " to " + ((long)from + count) + " of " + mLength);
+		}
+	}
+
+	//Put the low count bits (up to 64) of value into the block, starting from bit index
+	private void setBits(int index, int count, long value)
+	{
+		if (count == 0)
+		{
+			return;
+		}
+
+		//Line the bits up at the top of a long, then split them across (at most) two words
+		long bits = value << (Long.SIZE - count);
+		long field = -1L << (Long.SIZE - count);
+		int word = index >>> 6;
+		int offset = index & 63;
+
+		mWords[word] = (mWords[word] & ~(field >>> offset)) | (bits >>> offset);
+		if (offset + count > Long.SIZE)
+		{
+			int shift = Long.SIZE - offset;
+			mWords[word + 1] = (mWords[word + 1] & ~(field << shift)) | (bits << shift);
+		}
+	}
+
+	//Get count bits (up to 64) starting from bit index, as the low bits of a long
+	private long getBits(int index, int count)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+
+		int word = index >>> 6;
+		int offset = index & 63;
+
+		long bits = mWords[word] << offset;
+		if (offset + count > Long.SIZE)
+		{
+			bits |= mWords[word + 1] >>> (Long.SIZE - offset);
+		}
+
+		return bits >>> (Long.SIZE - count);
+	}
+
+	public boolean equals(Object obj)
+	{
+		if (this == obj) return true;
+		if (!(obj instanceof BitBlock)) return false;
+
+		BitBlock src = (BitBlock)obj;
+
+		//Bits past the length are always zero, so the words can be compared directly
+		return (mLength == src.mLength)&&Arrays.equals(mWords, src.mWords);
+	}
+
+	public int hashCode()
+	{
+		return Arrays.hashCode(mWords) ^ mLength;
+	}
+
+	public String toString()
+	{
+		char[] result = new char[mLength];
+		for (int i=0; i<mLength; i++)
+		{
+			result[i] = ((mWords[i >>> 6] & mask(i)) != 0)?'1':'0';
+		}
+
+		return new String(result);
+	}
+
+	//Create a BitBlock from a text String, using default encoding
+	public static BitBlock valueOfTextString(String val, int bitsPerCharacter)
+	{
+		BitBlock result = new BitBlock(val.length()*bitsPerCharacter);
+		for (int i=0; i < val.length(); i++)
+		{
+			result.setBits(i*bitsPerCharacter, bitsPerCharacter, val.charAt(i));
+		}
+
+		return result;
+	}
+
+	public static BitBlock valueOfTextString(String val)
+	{
+		return valueOfTextString(val, Character.SIZE);
+	}
+
+	//Create a BitBlock from a String of Hex digits (with or without a leading 0x).  Returns null if there
+	//are any other characters
+	public static BitBlock valueOfHexString(String val)
+	{
+		String hexString = val.trim();
+
+		//If the first or second character is an x, skip past it (e.g. 0xFF)
+		int xLocation = hexString.toLowerCase().indexOf('x');
+		if ((xLocation==0)||(xLocation==1))
+		{
+			hexString = hexString.substring(xLocation+1,  hexString.length());
+		}
+
+		BitBlock result = new BitBlock(hexString.length()*4);
+		for (int i = 0 ; i<hexString.length(); i++)
+		{
+			int digit = Character.digit(hexString.charAt(i), 16);
+			if (digit < 0)
+			{
+				return null;
+			}
+
+			result.setBits(i*4, 4, digit);
+		}
+
+		return result;
+	}
+
+	//Convert BitBlock to a String of Hex digits.  Bits past the last whole digit are left out
+	public String toHexString()
+	{
+		char[] result = new char[mLength/4];
+		for (int i=0; i<result.length; i++)
+		{
+			int nibble = (int)(mWords[i >>> 4] >>> (60 - 4*(i & 15))) & 0xF;
+			result[i] = Character.toUpperCase(Character.forDigit(nibble, 16));
+		}
+
+		return new String(result);
+	}
+
+	//Convert BitBlock to a Text String
+	public String toTextString()
+	{
+		return toTextString(Character.SIZE);
+	}
+
+	//Bits past the last whole character are left out
+	public String toTextString(int bitsPerCharacter)
+	{
+		char[] result = new char[mLength/bitsPerCharacter];
+		for (int i=0; i<result.length; i++)
+		{
+			result[i] = (char)getBits(i*bitsPerCharacter, bitsPerCharacter);
+		}
+
+		return new String(result);
+	}
+
+	//Get a subset of the bits as a long value
+	//Convert the first 64 bits (if available) to a long
+	public long toLong()
+	{
+		return toLong(0, Math.min(mLength, Long.SIZE));
+	}
+
+	//Convert the specified range of bits to a long, with the first bit the most significant
+	//If the range is longer than 64 bits, only the last 64 bits will be used
+	//Note that starting index is inclusive, ending is exclusive
+	public long toLong(int from, int to)
+	{
+		validateRange(from, to - from);
+		from = Math.max(from, to - Long.SIZE);
+
+		return getBits(from, to - from);
+	}
+
+	//The bits as an array of longs, 64 bits to each, the first bit the top bit of the first long
+	public long[] toLongArray()
+	{
+		return Arrays.copyOf(mWords, mWords.length);
+	}
+
+	/******
+	 * Byte conversions
+	 ******/
+
+	//Bytes are filled from the first bit, the first bit of each the most significant; a length that isn't
+	//a whole number of bytes is padded with zero bits at the end of the last byte.  Whole words are
+	//copied at a time where they can be
+
+	//Create a BitBlock holding all of the bytes of an array
+	public static BitBlock valueOf(byte[] bytes)
+	{
+		BitBlock result = new BitBlock(bytes.length*Byte.SIZE);
+		result.setBytes(bytes, 0);
+
+		return result;
+	}
+
+	//Create a BitBlock holding the remaining bytes of a buffer (which are consumed)
+	public static BitBlock valueOf(ByteBuffer buffer)
+	{
+		BitBlock result = new BitBlock(buffer.remaining()*Byte.SIZE);
+		result.setBytes(buffer);
+
+		return result;
+	}
+
+	//Number of bytes needed to hold the block
+	public int getByteLength()
+	{
+		return (int)(((long)mLength + Byte.SIZE - 1)/Byte.SIZE);
+	}
+
+	public byte[] toByteArray()
+	{
+		byte[] result = new byte[getByteLength()];
+		toByteArray(result, 0);
+
+		return result;
+	}
+
+	//Copy the block into an existing array, starting at offset; getByteLength() bytes are written
+	public void toByteArray(byte[] dst, int offset)
+	{
+		toByteBuffer(ByteBuffer.wrap(dst, offset, getByteLength()));
+	}
+
+	//Put the block into a buffer, at its position (which is moved past it); getByteLength() bytes are
+	//written
+	public void toByteBuffer(ByteBuffer dst)
+	{
+		int byteLength = getByteLength();
+		boolean bigEndian = (dst.order() == ByteOrder.BIG_ENDIAN);
+
+		int words = byteLength/WORD_BYTES;
+		for (int i=0; i<words; i++)
+		{
+			dst.putLong(bigEndian?mWords[i]:Long.reverseBytes(mWords[i]));
+		}
+
+		for (int i=words*WORD_BYTES; i<byteLength; i++)
+		{
+			dst.put((byte)(mWords[i >>> 3] >>> (56 - 8*(i & 7))));
+		}
+	}
+
+	//Overwrite the block with bytes from an array, starting at offset; getByteLength() bytes are read
+	public void setBytes(byte[] src, int offset)
+	{
+		setBytes(ByteBuffer.wrap(src, offset, getByteLength()));
+	}
+
+	//Overwrite the block with bytes from a buffer, at its position (which is moved past them);
+	//getByteLength() bytes are read
+	public void setBytes(ByteBuffer src)
+	{
+		int byteLength = getByteLength();
+		boolean bigEndian = (src.order() == ByteOrder.BIG_ENDIAN);
+
+		int words = byteLength/WORD_BYTES;
+		for (int i=0; i<words; i++)
+		{
+			long word = src.getLong();
+			mWords[i] = bigEndian?word:Long.reverseBytes(word);
+		}
+
+		if (words < mWords.length)
+		{
+			long word = 0;
+			for (int i=words*WORD_BYTES; i<byteLength; i++)
+			{
+				word |= (src.get() & 0xFFL) << (56 - 8*(i & 7));
+			}
+			mWords[words] = word;
+		}
 
+		clearUnused();
+	}
 }
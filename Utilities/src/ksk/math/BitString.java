@@ -1,13 +1,18 @@
 package ksk.math;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import org.junit.Rule;
-import org.junit.Test;
-import org.junit.rules.Timeout;
-import static org.junit.Assert.assertEquals;
+import ksk.util.SplitMix64;
 
 /*
  * Okay planning a redesign of my bithandling class, levearaging the power of BitSet and
@@ -54,39 +59,36 @@ public class BitString {
 	}
 
 	//Constructor:  BitBlock containing all of the bits from a long array (overflow bits are ignored)
-	//Note that bits are added to the stream in the order that they appear in the array
+	//Note that bits are added to the stream in the order that they appear in the array, each value's most
+	//significant bit first
 	public BitString(long[] values, int bitsPerValue)
 	{
 		if (bitsPerValue<0)
 		{
 			throw new NegativeArraySizeException();
 		}
+		if (bitsPerValue>Long.SIZE)
+		{
+			throw new IllegalArgumentException("Bits per value must be at most 64: " + bitsPerValue);
+		}
 
-		//Create the BitSet
-		mBits = new BitSet(mLength);
-
-		if (values==null)
+		if ((values==null)||(bitsPerValue==0))
 		{
 			mLength = 0;
+			mBits = new BitSet();
 		}
 		else
 		{
 			mLength = values.length*bitsPerValue;
 
-			//Wanted to use the BitSet.valueOf(long[]) method, but to allow different numbers of
-			//bits per character, we need to do this manually
-			int mBitIndex = 0;
-			for (int arrayIndex = 0; arrayIndex<values.length; arrayIndex++)
+			//Put the values straight into words (a word or two for each), rather than setting bit by bit
+			long[] words = new long[BitStringCodec.wordCount(mLength)];
+			for (int i=0; i<values.length; i++)
 			{
-				for (int bit = 0; bit<bitsPerValue; bit++)
-				{
-					//Get the value of the current bit
-					boolean bitValue = (values[arrayIndex] >> (bitsPerValue - bit - 1))%2 == 1;
-
-					//Set the current bit
-					mBits.set(mBitIndex++, bitValue);
-				}
+				BitStringCodec.putValue(words, (long)i*bitsPerValue, values[i], bitsPerValue);
 			}
+
+			mBits = BitSet.valueOf(words);
 		}
 	}
 
@@ -242,6 +244,9 @@ public class BitString {
 
 
 	//Logical operation methods
+	//These (and cardinality()) work on the BitSet in place, a word at a time.  They don't go through BitOps,
+	//since BitSet's words can only be reached by copying them out and back in, which costs far more than
+	//the kernel could save (see BitOps).
 	public boolean isEmpty()
 	{
 		return mBits.isEmpty();
@@ -259,7 +264,7 @@ public class BitString {
 
 	public void and(BitString block)
 	{
-		mBits.andNot(block.mBits);
+		mBits.and(block.mBits);
 	}
 
 	public void or(BitString block)
@@ -273,52 +278,19 @@ public class BitString {
 	}
 
 	//Shift methods
+	//Shifts and rotations move bits by index, as BitSet does:  shiftLeft() moves bit i to bit i+bits, and
+	//shiftRight() moves it to bit i-bits.  A negative distance shifts the other way.  They work on whole
+	//64-bit words, carrying bits from one word into the next, so they take time in proportion to the number
+	//of words rather than the number of bits
 	public void shiftRight()
 	{
 		shiftRight(1);
 	}
 
+	//Bits shifted below bit 0 are lost, and the bits at the top are cleared
 	public void shiftRight(int bits)
 	{
-		//Create a new BitSet
-		BitSet newBits = new BitSet(mLength);
-
-		//Check to see if it's faster to copy over the set or cleared bits
-		if (mBits.cardinality() < mLength/2) //Less than half of the bits are set
-		{
-			//Search for set bits
-			int index = mBits.nextSetBit(0);
-			while ( index >=0 )
-			{
-				if (checkIndex(index - bits))
-				{
-					newBits.set(index - bits);
-				}
-
-				index = mBits.nextSetBit(index + 1);
-			}
-		}
-		else
-		{
-			//Set all of the bits
-			newBits.flip(0, mLength);
-
-			//Search for cleared bits
-			int index = mBits.nextClearBit(0);
-			while ( index >=0 )
-			{
-				if (checkIndex(index - bits))
-				{
-					newBits.clear(index - bits);
-				}
-
-				index = mBits.nextClearBit(index + 1);
-			}
-
-		}
-
-		//Done!
-		mBits = newBits;
+		shift(-(long)bits);
 	}
 
 	public void shiftLeft()
@@ -326,10 +298,10 @@ public class BitString {
 		shiftLeft(1);
 	}
 
+	//Bits shifted past the end are lost, and the bits at the bottom are cleared
 	public void shiftLeft(int bits)
 	{
-		//I intentionally designed the right-shift so that it's reversible
-		shiftRight(-bits);
+		shift(bits);
 	}
 
 	public void rotRight()
@@ -337,23 +309,10 @@ public class BitString {
 		rotRight(1);
 	}
 
+	//Bits shifted below bit 0 come back in at the top
 	public void rotRight(int bits)
 	{
-		//Save the rightmost bits
-		BitSet temp = mBits.get(0,  bits);
-
-		//Shift right
-		shiftRight(bits);
-
-		//Copy the saved bits back in on the left
-		for (int i=0; i<bits; i++)
-		{
-			if (temp.get(i))
-			{
-				mBits.set(mLength-bits+i);
-			}
-		}
-
+		rotate(-(long)bits);
 	}
 
 	public void rotLeft()
@@ -361,38 +320,165 @@ public class BitString {
 		rotLeft(1);
 	}
 
+	//Bits shifted past the end come back in at the bottom
 	public void rotLeft(int bits)
 	{
-		//Save the leftmost bits
-		BitSet temp = mBits.get(mLength-bits,  mLength);
+		rotate(bits);
+	}
 
-		//Shift right
-		shiftLeft(bits);
+	//Move every bit up by distance places (down if it's negative)
+	private void shift(long distance)
+	{
+		long[] words = new long[wordCount(mLength)];
+		orShifted(mBits.toLongArray(), words, distance);
 
-		//Copy the saved bits back in on the right
-		for (int i=0; i<bits; i++)
+		setWords(words);
+	}
+
+	//Move every bit up by distance places (down if it's negative), wrapping round at the ends
+	private void rotate(long distance)
+	{
+		if (mLength == 0)
+		{
+			return;
+		}
+
+		//Rotating up by distance is the same as shifting up by distance and down by the rest of the length
+		long up = ((distance % mLength) + mLength) % mLength;
+		long[] source = mBits.toLongArray();
+		long[] words = new long[wordCount(mLength)];
+		orShifted(source, words, up);
+		orShifted(source, words, up - mLength);
+
+		setWords(words);
+	}
+
+	//OR the bits of source into result, moved up by distance places (down if it's negative).  Bits moved
+	//outside result are dropped
+	private static void orShifted(long[] source, long[] result, long distance)
+	{
+		long limit = (long)result.length*Long.SIZE;
+		if ((distance >= limit)||(-distance >= limit))
 		{
-			if (temp.get(i))
+			return;
+		}
+
+		//Bit b of word i in the result comes from word i-wordShift:  from bit b-bitShift of it if that's
+		//not negative, otherwise from the top of the word below
+		int wordShift = (int)(distance >> 6);
+		int bitShift = (int)(distance & 63);
+
+		int from = Math.max(0, wordShift);
+		int to = Math.min(result.length, source.length + wordShift + 1);
+		for (int i=from; i<to; i++)
+		{
+			int src = i - wordShift;
+			long value = (src < source.length)?(source[src] << bitShift):0;
+			if ((bitShift != 0)&&(src > 0))
 			{
-				mBits.set(i);
+				value |= source[src - 1] >>> (Long.SIZE - bitShift);
 			}
+			result[i] |= value;
 		}
 	}
 
+	//Replace the bits with the given words, clearing anything past the length
+	private void setWords(long[] words)
+	{
+		int extra = words.length*Long.SIZE - mLength;
+		if (extra > 0)
+		{
+			words[words.length - 1] &= -1L >>> extra;
+		}
+
+		mBits = BitSet.valueOf(words);
+	}
+
+	//Number of 64-bit words needed to hold a number of bits
+	private static int wordCount(int bits)
+	{
+		return (int)(((long)bits + Long.SIZE - 1)/Long.SIZE);
+	}
+
 	//Set all of the bits in the BitBlock to random values
 	public void randomize()
 	{
-		Random r = new Random();
-		
-		for (int i=0; i<mLength; i++)
+		randomize(new Random());
+	}
+
+	//Set all of the bits to random values from a generator, 64 at a time:  a SecureRandom for a one-time
+	//pad, say, or a seeded one to get the same bits again
+	public void randomize(Random random)
+	{
+		long[] words = new long[wordCount(mLength)];
+		fillRandom(random, words, 0, words.length);
+
+		setWords(words);
+	}
+
+	//Number of words the parallel randomize() fills from each split of the generator
+	private static final int RANDOM_SEGMENT_WORDS = 1 << 14;
+
+	//Set all of the bits to random values, filling segments of the string in parallel on an executor, each
+	//from its own split of generator.  The splits are made in order, so the bits depend only on generator,
+	//not on the number of threads
+	public void randomize(SplitMix64 generator, ExecutorService executor)
+	{
+		final long[] words = new long[wordCount(mLength)];
+
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int start=0; start<words.length; start += RANDOM_SEGMENT_WORDS)
 		{
-			if (r.nextDouble()>0.5)
+			final SplitMix64 random = generator.split();
+			final int from = start;
+			final int to = Math.min(words.length, start + RANDOM_SEGMENT_WORDS);
+			results.add(executor.submit(new Runnable() {
+				public void run()
+				{
+					fillRandom(random, words, from, to);
+				}
+			}));
+		}
+
+		for (Future<?> result : results)
+		{
+			try
 			{
-				set(i);
+				result.get();
 			}
-			else
+			catch (InterruptedException e)
 			{
-				clear(i);
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted", e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException)e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		setWords(words);
+	}
+
+	//Fill words from to to with random values.  A SecureRandom makes its bits a byte array at a time (its
+	//nextLong() would make two 4-byte arrays), so it fills bytes instead
+	static void fillRandom(Random random, long[] words, int from, int to)
+	{
+		if (random instanceof SecureRandom)
+		{
+			byte[] bytes = new byte[(to - from)*(Long.SIZE/Byte.SIZE)];
+			random.nextBytes(bytes);
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words, from, to - from);
+		}
+		else
+		{
+			for (int i=from; i<to; i++)
+			{
+				words[i] = random.nextLong();
 			}
 		}
 	}
@@ -453,17 +539,12 @@ public class BitString {
 		return result;
 	}
 
+	//Conversions to and from Strings, through BitStringCodec (which can also work on arrays)
+
 	//Create a BitBlock from a text String, using default encoding
 	public static BitString valueOfTextString(String val, int bitsPerCharacter)
 	{
-		//Create a long array containing all of the characters from the String
-		long[] chars = new long[val.length()];
-		for (int i=0; i < chars.length; i++)
-		{
-			chars[i] = val.charAt(i);
-		}
-
-		return new BitString(chars, bitsPerCharacter);
+		return BitStringCodec.decodeText(val, bitsPerCharacter);
 	}
 
 	public static BitString valueOfTextString(String val)
@@ -475,64 +556,49 @@ public class BitString {
 	public static BitString valueOfHexString(String val)
 	{
 		//Fix up the text
-		String hexString = val.trim().toUpperCase();
-
+		String hexString = val.trim();
 
 		//If the first or second character is an x, skip past it (e.g. 0xFF)
-		int xLocation = hexString.indexOf('x');
+		int xLocation = hexString.toLowerCase().indexOf('x');
 		if ((xLocation==0)||(xLocation==1))
 		{
 			hexString = hexString.substring(xLocation+1,  hexString.length());
 		}
 
-		//Loop through the HexString, building an array of values
 		//Any problems and we return null
-		long[] values = new long[hexString.length()];
-
-		for (int i = 0 ; i<values.length; i++)
+		try
 		{
-			char hexDigit = hexString.charAt(i);
-
-			if ((hexDigit>='0')&&(hexDigit<='9'))
-			{
-				values[i] = hexDigit-'0';
-			}
-			else if ((hexDigit>='A')&&(hexDigit<='F'))
-			{
-				values[i] = hexDigit - 'A' + 10;
-			}
-			else
-			{
-				return null;
-			}
+			return BitStringCodec.decodeHex(hexString);
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
 		}
+	}
 
-		//Return this array of 4-bit values
-		return new BitString(values, 4);
+	//Create a BitBlock from a String of base64 digits; null if it isn't valid base64
+	public static BitString valueOfBase64String(String val)
+	{
+		try
+		{
+			return BitStringCodec.decodeBase64(val.trim());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
 	}
 
 	//Convert BitBlock to a String of Hex digits
 	public String toHexString()
 	{
-		String result = "";
-		
-		//Loop through all of the "nibbles" in the BitBlock
-		for (int index = 0; index<=mLength-4; index += 4)
-		{
-			//Get the nibble
-			long nibble = toLong(index, index+4);
-			
-			if (nibble <10)
-			{
-				result += (char)(nibble + '0');
-			}
-			else
-			{
-				result += (char)(nibble -10 + 'A');
-			}
-		}
+		return BitStringCodec.encodeHex(this);
+	}
 
-		return result;		
+	//Convert BitBlock to a String of base64 digits, padded with zero bits to a whole number of bytes
+	public String toBase64String()
+	{
+		return BitStringCodec.encodeBase64(this);
 	}
 
 	//Convert BitBlock to a Text String
@@ -540,18 +606,11 @@ public class BitString {
 	{
 		return toTextString(Character.SIZE);
 	}
-	
+
+	//Bits past the last whole character are left out
 	public String toTextString(int bitsPerCharacter)
 	{
-		String result = "";
-
-		//Loop through all of the characters in the BitBlock
-		for (int index = 0; index < mLength; index += bitsPerCharacter)
-		{
-			result += (char)toLong(index, index+bitsPerCharacter);
-		}
-
-		return result;
+		return BitStringCodec.encodeText(this, bitsPerCharacter);
 	}
 
 	//Get a subset of the bits as a long value
@@ -594,6 +653,25 @@ public class BitString {
 		return 0;
 	}
 	
+	//The bits as words, bit i in bit i%64 of word i/64, with every word up to the length (BitSet leaves off
+	//trailing zero words).  For BitStringCodec
+	long[] getWords()
+	{
+		long[] words = mBits.toLongArray();
+		int count = BitStringCodec.wordCount(mLength);
+
+		return (words.length >= count)?words:Arrays.copyOf(words, count);
+	}
+
+	//A BitString of the given length holding words, laid out as by getWords()
+	static BitString valueOfWords(long[] words, int length)
+	{
+		BitString result = new BitString(length);
+		result.mBits = BitSet.valueOf(words);
+
+		return result;
+	}
+
 	//Basically just wrappers on BitSet methods to get an array of values
 	public long[] toLongArray()
 	{
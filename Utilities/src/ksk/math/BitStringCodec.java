@@ -0,0 +1,471 @@
+package ksk.math;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Converts BitStrings to and from hex, base64 and fixed-width text, a byte or a character at a time from
+ * whole words, with lookup tables in place of the per-bit loops.  The encoders write into arrays that the
+ * caller supplies (with the length from hexLength() and the like), so large strings can be encoded
+ * without building up Strings, and the decoders read from arrays.
+ *
+ * As everywhere in BitString, the text reads from bit 0 up, and each digit or character takes its bits
+ * most significant first:  the first hex digit is bits 0-3, with bit 0 its top bit, and base64 encodes
+ * the bytes made of bits 0-7, 8-15 and so on.  BitString keeps bit i as bit i%64 of word i/64, so every
+ * byte is bit-reversed on the way in or out.
+ *
+ * The decoders throw an IllegalArgumentException for anything that isn't a digit.
+ */
+public class BitStringCodec {
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	private static final byte[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+	private static final byte BASE64_PAD = '=';
+
+	//Every byte with its bits reversed
+	private static final int[] REVERSED = new int[256];
+
+	//The two hex digits for every byte of a word (so of its bits reversed)
+	private static final char[] HEX_PAIRS = new char[512];
+
+	//Value of every hex or base64 digit (the ASCII characters), or -1
+	private static final int[] HEX_VALUES = new int[128];
+	private static final int[] BASE64_VALUES = new int[128];
+
+	static
+	{
+		for (int i=0; i<256; i++)
+		{
+			REVERSED[i] = Integer.reverse(i) >>> 24;
+			HEX_PAIRS[2*i] = HEX_DIGITS[REVERSED[i] >>> 4];
+			HEX_PAIRS[2*i + 1] = HEX_DIGITS[REVERSED[i] & 0xF];
+		}
+
+		for (int i=0; i<128; i++)
+		{
+			HEX_VALUES[i] = Character.digit((char)i, 16);
+			BASE64_VALUES[i] = -1;
+		}
+		for (int i=0; i<BASE64_DIGITS.length; i++)
+		{
+			BASE64_VALUES[BASE64_DIGITS[i]] = i;
+		}
+	}
+
+	/******
+	 * Hex
+	 ******/
+
+	//Number of hex digits for a BitString:  bits past the last whole digit are left out
+	public static int hexLength(BitString bits)
+	{
+		return bits.getLength()/4;
+	}
+
+	//Write the hex digits of bits into dst, starting at offset.  Returns the number written
+	public static int encodeHex(BitString bits, char[] dst, int offset)
+	{
+		int digits = hexLength(bits);
+		long[] words = bits.getWords();
+
+		//Two digits for each byte; whole words first
+		int bytes = digits/2;
+		int out = offset;
+		int wholeWords = bytes/8;
+		for (int w=0; w<wholeWords; w++)
+		{
+			long word = words[w];
+			for (int shift=0; shift<Long.SIZE; shift += 8)
+			{
+				int pair = ((int)(word >>> shift) & 0xFF)*2;
+				dst[out] = HEX_PAIRS[pair];
+				dst[out + 1] = HEX_PAIRS[pair + 1];
+				out += 2;
+			}
+		}
+
+		for (int i=wholeWords*8; i<bytes; i++)
+		{
+			int pair = rawByte(words, i)*2;
+			dst[out] = HEX_PAIRS[pair];
+			dst[out + 1] = HEX_PAIRS[pair + 1];
+			out += 2;
+		}
+
+		//And half a byte
+		if ((digits & 1) != 0)
+		{
+			dst[out] = HEX_PAIRS[rawByte(words, bytes)*2];
+		}
+
+		return digits;
+	}
+
+	public static String encodeHex(BitString bits)
+	{
+		char[] result = new char[hexLength(bits)];
+		encodeHex(bits, result, 0);
+
+		return new String(result);
+	}
+
+	//A BitString from length hex digits of src, starting at offset (4 bits to each digit)
+	public static BitString decodeHex(char[] src, int offset, int length)
+	{
+		long[] words = new long[wordCount((long)length*4)];
+
+		//A word (16 digits) at a time, looking for bad digits once per word:  a character past ASCII or a
+		//value of -1 sets bits above the bottom 7 in the flags
+		int wholeWords = length/16;
+		for (int w=0; w<wholeWords; w++)
+		{
+			int in = offset + w*16;
+			int flags = 0;
+			long word = 0;
+			for (int shift=0; shift<Long.SIZE; shift += 8)
+			{
+				char high = src[in];
+				char low = src[in + 1];
+				int highValue = HEX_VALUES[high & 0x7F];
+				int lowValue = HEX_VALUES[low & 0x7F];
+				flags |= high | low | highValue | lowValue;
+
+				word |= (long)REVERSED[((highValue << 4) | lowValue) & 0xFF] << shift;
+				in += 2;
+			}
+
+			if ((flags & ~0x7F) != 0)
+			{
+				for (int i=offset + w*16; i<in; i++)
+				{
+					hexValue(src, i);
+				}
+			}
+			words[w] = word;
+		}
+
+		//Then the rest a byte at a time
+		int bytes = length/2;
+		for (int i=wholeWords*8; i<bytes; i++)
+		{
+			putByte(words, i, (hexValue(src, offset + 2*i) << 4) | hexValue(src, offset + 2*i + 1));
+		}
+
+		if ((length & 1) != 0)
+		{
+			putByte(words, bytes, hexValue(src, offset + length - 1) << 4);
+		}
+
+		return BitString.valueOfWords(words, length*4);
+	}
+
+	public static BitString decodeHex(String src)
+	{
+		return decodeHex(src.toCharArray(), 0, src.length());
+	}
+
+	private static int hexValue(char[] src, int index)
+	{
+		char c = src[index];
+		int value = (c < 128)?HEX_VALUES[c]:-1;
+		if (value < 0)
+		{
+			throw new IllegalArgumentException("Not a hex digit at " + index + ": " + c);
+		}
+
+		return value;
+	}
+
+	/******
+	 * Base64
+	 ******/
+
+	//Number of base64 digits for a BitString, including padding.  The bits are padded with zeros to a
+	//whole number of bytes
+	public static int base64Length(BitString bits)
+	{
+		long bytes = byteCount(bits.getLength());
+
+		return (int)((bytes + 2)/3*4);
+	}
+
+	//Write the bits in base64 (as ASCII) into dst, starting at offset.  Returns the number of bytes written
+	public static int encodeBase64(BitString bits, byte[] dst, int offset)
+	{
+		long[] words = bits.getWords();
+		int bytes = (int)byteCount(bits.getLength());
+
+		//Three bytes to each four digits
+		int out = offset;
+		int i = 0;
+		for (; i + 2 < bytes; i += 3)
+		{
+			int group = (reversedByte(words, i) << 16) | (reversedByte(words, i + 1) << 8) | reversedByte(words, i + 2);
+			dst[out] = BASE64_DIGITS[group >>> 18];
+			dst[out + 1] = BASE64_DIGITS[(group >>> 12) & 0x3F];
+			dst[out + 2] = BASE64_DIGITS[(group >>> 6) & 0x3F];
+			dst[out + 3] = BASE64_DIGITS[group & 0x3F];
+			out += 4;
+		}
+
+		//And one or two bytes left over, padded
+		if (i < bytes)
+		{
+			int group = reversedByte(words, i) << 16;
+			if (i + 1 < bytes)
+			{
+				group |= reversedByte(words, i + 1) << 8;
+			}
+
+			dst[out] = BASE64_DIGITS[group >>> 18];
+			dst[out + 1] = BASE64_DIGITS[(group >>> 12) & 0x3F];
+			dst[out + 2] = (i + 1 < bytes)?BASE64_DIGITS[(group >>> 6) & 0x3F]:BASE64_PAD;
+			dst[out + 3] = BASE64_PAD;
+			out += 4;
+		}
+
+		return out - offset;
+	}
+
+	public static String encodeBase64(BitString bits)
+	{
+		byte[] result = new byte[base64Length(bits)];
+		encodeBase64(bits, result, 0);
+
+		return new String(result, StandardCharsets.US_ASCII);
+	}
+
+	//A BitString from length base64 digits (as ASCII) of src, starting at offset.  The length must be a
+	//multiple of 4, with any padding at the end
+	public static BitString decodeBase64(byte[] src, int offset, int length)
+	{
+		if ((length & 3) != 0)
+		{
+			throw new IllegalArgumentException("Base64 length isn't a multiple of 4: " + length);
+		}
+
+		int padding = 0;
+		while ((padding < Math.min(2, length))&&(src[offset + length - 1 - padding] == BASE64_PAD))
+		{
+			padding++;
+		}
+
+		int bytes = length/4*3 - padding;
+		long[] words = new long[wordCount((long)bytes*8)];
+
+		//Whole groups of 3 bytes, looking for bad digits once per group:  a byte past ASCII (so negative) or a
+		//value of -1 makes the flags negative
+		int in = offset;
+		int wholeGroups = bytes/3;
+		for (int g=0; g<wholeGroups; g++)
+		{
+			byte c0 = src[in];
+			byte c1 = src[in + 1];
+			byte c2 = src[in + 2];
+			byte c3 = src[in + 3];
+			int v0 = BASE64_VALUES[c0 & 0x7F];
+			int v1 = BASE64_VALUES[c1 & 0x7F];
+			int v2 = BASE64_VALUES[c2 & 0x7F];
+			int v3 = BASE64_VALUES[c3 & 0x7F];
+			if ((c0 | c1 | c2 | c3 | v0 | v1 | v2 | v3) < 0)
+			{
+				for (int i=in; i<in + 4; i++)
+				{
+					base64Value(src, i);
+				}
+			}
+
+			int group = (v0 << 18) | (v1 << 12) | (v2 << 6) | v3;
+			putByte(words, 3*g, group >>> 16);
+			putByte(words, 3*g + 1, (group >>> 8) & 0xFF);
+			putByte(words, 3*g + 2, group & 0xFF);
+			in += 4;
+		}
+
+		//And one or two bytes in the padded group at the end
+		int i = wholeGroups*3;
+		if (i < bytes)
+		{
+			int group = (base64Value(src, in) << 18) | (base64Value(src, in + 1) << 12);
+			putByte(words, i, group >>> 16);
+			if (i + 1 < bytes)
+			{
+				group |= base64Value(src, in + 2) << 6;
+				putByte(words, i + 1, (group >>> 8) & 0xFF);
+			}
+		}
+
+		return BitString.valueOfWords(words, bytes*8);
+	}
+
+	public static BitString decodeBase64(String src)
+	{
+		byte[] digits = src.getBytes(StandardCharsets.US_ASCII);
+
+		return decodeBase64(digits, 0, digits.length);
+	}
+
+	private static int base64Value(byte[] src, int index)
+	{
+		byte c = src[index];
+		int value = (c >= 0)?BASE64_VALUES[c]:-1;
+		if (value < 0)
+		{
+			throw new IllegalArgumentException("Not a base64 digit at " + index + ": " + (char)(c & 0xFF));
+		}
+
+		return value;
+	}
+
+	/******
+	 * Fixed-width text
+	 ******/
+
+	//Number of characters for a BitString:  bits past the last whole character are left out
+	public static int textLength(BitString bits, int bitsPerCharacter)
+	{
+		checkBitsPerCharacter(bitsPerCharacter);
+
+		return bits.getLength()/bitsPerCharacter;
+	}
+
+	//Write the bits as text into dst, starting at offset, each character made of the next bitsPerCharacter
+	//bits (1 to 16).  Returns the number of characters written
+	public static int encodeText(BitString bits, int bitsPerCharacter, char[] dst, int offset)
+	{
+		int length = textLength(bits, bitsPerCharacter);
+		long[] words = bits.getWords();
+
+		if (bitsPerCharacter == Byte.SIZE)
+		{
+			for (int i=0; i<length; i++)
+			{
+				dst[offset + i] = (char)reversedByte(words, i);
+			}
+		}
+		else if (bitsPerCharacter == Character.SIZE)
+		{
+			for (int i=0; i<length; i++)
+			{
+				dst[offset + i] = (char)((reversedByte(words, 2*i) << 8) | reversedByte(words, 2*i + 1));
+			}
+		}
+		else
+		{
+			for (int i=0; i<length; i++)
+			{
+				long bitsAt = getBits(words, (long)i*bitsPerCharacter, bitsPerCharacter);
+				dst[offset + i] = (char)(Long.reverse(bitsAt) >>> (Long.SIZE - bitsPerCharacter));
+			}
+		}
+
+		return length;
+	}
+
+	public static String encodeText(BitString bits, int bitsPerCharacter)
+	{
+		char[] result = new char[textLength(bits, bitsPerCharacter)];
+		encodeText(bits, bitsPerCharacter, result, 0);
+
+		return new String(result);
+	}
+
+	//A BitString from length characters of src, starting at offset, taking the low bitsPerCharacter bits
+	//(1 to 16) of each
+	public static BitString decodeText(char[] src, int offset, int length, int bitsPerCharacter)
+	{
+		checkBitsPerCharacter(bitsPerCharacter);
+		long[] words = new long[wordCount((long)length*bitsPerCharacter)];
+
+		if (bitsPerCharacter == Byte.SIZE)
+		{
+			for (int i=0; i<length; i++)
+			{
+				putByte(words, i, src[offset + i] & 0xFF);
+			}
+		}
+		else
+		{
+			for (int i=0; i<length; i++)
+			{
+				putValue(words, (long)i*bitsPerCharacter, src[offset + i], bitsPerCharacter);
+			}
+		}
+
+		return BitString.valueOfWords(words, length*bitsPerCharacter);
+	}
+
+	public static BitString decodeText(String src, int bitsPerCharacter)
+	{
+		return decodeText(src.toCharArray(), 0, src.length(), bitsPerCharacter);
+	}
+
+	private static void checkBitsPerCharacter(int bitsPerCharacter)
+	{
+		if ((bitsPerCharacter < 1)||(bitsPerCharacter > Character.SIZE))
+		{
+			throw new IllegalArgumentException("Bits per character must be from 1 to 16: " + bitsPerCharacter);
+		}
+	}
+
+	/******
+	 * Words
+	 ******/
+
+	static int wordCount(long bits)
+	{
+		return (int)((bits + Long.SIZE - 1)/Long.SIZE);
+	}
+
+	private static long byteCount(long bits)
+	{
+		return (bits + Byte.SIZE - 1)/Byte.SIZE;
+	}
+
+	//Byte i of the words, as stored (bit 0 of the string in bit 0 of the byte)
+	private static int rawByte(long[] words, int i)
+	{
+		return (int)(words[i >>> 3] >>> ((i & 7)*8)) & 0xFF;
+	}
+
+	//Byte i of the string, with its first bit the most significant
+	private static int reversedByte(long[] words, int i)
+	{
+		return REVERSED[rawByte(words, i)];
+	}
+
+	//Set byte i of the string (which must be clear), with its first bit the most significant
+	private static void putByte(long[] words, int i, int value)
+	{
+		words[i >>> 3] |= (long)REVERSED[value] << ((i & 7)*8);
+	}
+
+	//count bits (up to 64) from bit index of the words, bit index in the lowest bit
+	private static long getBits(long[] words, long index, int count)
+	{
+		int word = (int)(index >>> 6);
+		int shift = (int)(index & 63);
+
+		long bits = words[word] >>> shift;
+		if (shift + count > Long.SIZE)
+		{
+			bits |= words[word + 1] << (Long.SIZE - shift);
+		}
+
+		return (count == Long.SIZE)?bits:(bits & ((1L << count) - 1));
+	}
+
+	//Set the count bits (1 to 64) from bit index of the words (which must be clear) to the low count bits
+	//of value, its most significant first
+	static void putValue(long[] words, long index, long value, int count)
+	{
+		long bits = Long.reverse(value) >>> (Long.SIZE - count);
+		int word = (int)(index >>> 6);
+		int shift = (int)(index & 63);
+
+		words[word] |= bits << shift;
+		if (shift + count > Long.SIZE)
+		{
+			words[word + 1] |= bits >>> (Long.SIZE - shift);
+		}
+	}
+}
@@ -0,0 +1,334 @@
+package ksk.math;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * A BitString whose bits are kept off the Java heap, in direct ByteBuffers or memory mapped from a file,
+ * for bitmaps too big to want on the heap (maze wall masks, one-time pads and the like).  They don't add
+ * to GC pauses, and a mapped one only needs the pages that are used to be in memory.
+ *
+ * Indexes are longs, so a string can hold far more than 2^31 bits.  A ByteBuffer can't hold more than
+ * 2GB, so the bits are split across buffers of 1GB each.
+ *
+ * Bits are numbered as in BitString (and BitSet):  bit i is bit i%64 of word i/64, and the words are
+ * stored little-endian, so bit i is bit i%8 of byte i/8.  A file of bits reads back with
+ * BitSet.valueOf(bytes).  The file holds a whole number of words; bits past the length are always zero.
+ *
+ * The memory is freed when the string is garbage collected.
+ */
+public class OffHeapBitString {
+	//Each buffer holds 2^SEGMENT_SHIFT bytes (apart from the last)
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+
+	//Words per buffer
+	private static final int WORD_SHIFT = SEGMENT_SHIFT - 3;
+	private static final long WORD_MASK = (1L << WORD_SHIFT) - 1;
+
+	private long mLength;
+	private long mWordCount;
+	private ByteBuffer[] mSegments;
+
+	private OffHeapBitString(long length, ByteBuffer[] segments)
+	{
+		mLength = length;
+		mWordCount = wordCount(length);
+		mSegments = segments;
+	}
+
+	//Create a string of zeros in direct buffers.  Length is in bits
+	public static OffHeapBitString allocate(long length)
+	{
+		long bytes = byteCount(length);
+
+		ByteBuffer[] segments = new ByteBuffer[segmentCount(bytes)];
+		for (int i=0; i<segments.length; i++)
+		{
+			segments[i] = ByteBuffer.allocateDirect(segmentSize(bytes, i)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		return new OffHeapBitString(length, segments);
+	}
+
+	//Map a string of the given length from a file, which is created or lengthened (with zeros) if it's too
+	//short.  Changes are written back to the file
+	public static OffHeapBitString map(File file, long length) throws IOException
+	{
+		long bytes = byteCount(length);
+
+		ByteBuffer[] segments = new ByteBuffer[segmentCount(bytes)];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			if (raf.length() < bytes)
+			{
+				raf.setLength(bytes);
+			}
+
+			//The mappings stay valid after the file is closed
+			FileChannel channel = raf.getChannel();
+			for (int i=0; i<segments.length; i++)
+			{
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long)i << SEGMENT_SHIFT, segmentSize(bytes, i));
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		OffHeapBitString result = new OffHeapBitString(length, segments);
+		result.clearUnused();
+
+		return result;
+	}
+
+	//Map all of a file, 8 bits to each byte (a file that isn't a whole number of words is lengthened)
+	public static OffHeapBitString map(File file) throws IOException
+	{
+		return map(file, file.length()*Byte.SIZE);
+	}
+
+	//Write any changes to a mapped string out to its file
+	public void force()
+	{
+		for (ByteBuffer segment : mSegments)
+		{
+			if (segment instanceof MappedByteBuffer)
+			{
+				((MappedByteBuffer)segment).force();
+			}
+		}
+	}
+
+	//Getters
+	public long getLength()
+	{
+		return mLength;
+	}
+
+	/******
+	 * Words
+	 ******/
+
+	private static long wordCount(long bits)
+	{
+		if (bits < 0)
+		{
+			throw new NegativeArraySizeException();
+		}
+
+		return (bits + Long.SIZE - 1)/Long.SIZE;
+	}
+
+	private static long byteCount(long bits)
+	{
+		return wordCount(bits)*(Long.SIZE/Byte.SIZE);
+	}
+
+	private static int segmentCount(long bytes)
+	{
+		return (int)((bytes + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT);
+	}
+
+	//Size of a buffer:  all are full size but the last
+	private static int segmentSize(long bytes, int segment)
+	{
+		return (int)Math.min(SEGMENT_BYTES, bytes - ((long)segment << SEGMENT_SHIFT));
+	}
+
+	private long getWord(long word)
+	{
+		return mSegments[(int)(word >>> WORD_SHIFT)].getLong((int)(word & WORD_MASK) << 3);
+	}
+
+	private void setWord(long word, long value)
+	{
+		mSegments[(int)(word >>> WORD_SHIFT)].putLong((int)(word & WORD_MASK) << 3, value);
+	}
+
+	//Clear the bits of the last word that are past the end of the string
+	private void clearUnused()
+	{
+		int used = (int)(mLength & 63);
+		if (used != 0)
+		{
+			setWord(mWordCount - 1, getWord(mWordCount - 1) & (-1L >>> (Long.SIZE - used)));
+		}
+	}
+
+	/******
+	 * Bit-wise methods
+	 ******/
+
+	public boolean get(long index)
+	{
+		validateIndex(index);
+
+		return (getWord(index >>> 6) & (1L << index)) != 0;
+	}
+
+	public void set(long index)
+	{
+		validateIndex(index);
+		setWord(index >>> 6, getWord(index >>> 6) | (1L << index));
+	}
+
+	public void set(long index, boolean value)
+	{
+		if (value)
+		{
+			set(index);
+		}
+		else
+		{
+			clear(index);
+		}
+	}
+
+	public void clear(long index)
+	{
+		validateIndex(index);
+		setWord(index >>> 6, getWord(index >>> 6) & ~(1L << index));
+	}
+
+	public void flip(long index)
+	{
+		validateIndex(index);
+		setWord(index >>> 6, getWord(index >>> 6) ^ (1L << index));
+	}
+
+	//Clear every bit
+	public void clear()
+	{
+		for (long i=0; i<mWordCount; i++)
+		{
+			setWord(i, 0);
+		}
+	}
+
+	public long cardinality()
+	{
+		long count = 0;
+		for (long i=0; i<mWordCount; i++)
+		{
+			count += Long.bitCount(getWord(i));
+		}
+
+		return count;
+	}
+
+	public boolean isEmpty()
+	{
+		for (long i=0; i<mWordCount; i++)
+		{
+			if (getWord(i) != 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//The first set bit from index on, or -1 if there isn't one
+	public long nextSetBit(long index)
+	{
+		validateIndex(index);
+
+		long word = index >>> 6;
+		long bits = getWord(word) & (-1L << index);
+		while (bits == 0)
+		{
+			if (++word == mWordCount)
+			{
+				return -1;
+			}
+			bits = getWord(word);
+		}
+
+		return word*Long.SIZE + Long.numberOfTrailingZeros(bits);
+	}
+
+	//The first clear bit from index on, or -1 if there isn't one
+	public long nextClearBit(long index)
+	{
+		validateIndex(index);
+
+		long word = index >>> 6;
+		long bits = ~getWord(word) & (-1L << index);
+		while (bits == 0)
+		{
+			if (++word == mWordCount)
+			{
+				return -1;
+			}
+			bits = ~getWord(word);
+		}
+
+		long result = word*Long.SIZE + Long.numberOfTrailingZeros(bits);
+
+		return (result < mLength)?result:-1;
+	}
+
+	/******
+	 * Logical operation methods
+	 ******/
+
+	//These work a word at a time.  Bits of string past this one's length are ignored; for and(), bits of
+	//this string past string's length are cleared
+	public void xor(OffHeapBitString string)
+	{
+		long count = Math.min(mWordCount, string.mWordCount);
+		for (long i=0; i<count; i++)
+		{
+			setWord(i, getWord(i) ^ string.getWord(i));
+		}
+		clearUnused();
+	}
+
+	public void and(OffHeapBitString string)
+	{
+		long count = Math.min(mWordCount, string.mWordCount);
+		for (long i=0; i<count; i++)
+		{
+			setWord(i, getWord(i) & string.getWord(i));
+		}
+		for (long i=count; i<mWordCount; i++)
+		{
+			setWord(i, 0);
+		}
+	}
+
+	public void or(OffHeapBitString string)
+	{
+		long count = Math.min(mWordCount, string.mWordCount);
+		for (long i=0; i<count; i++)
+		{
+			setWord(i, getWord(i) | string.getWord(i));
+		}
+		clearUnused();
+	}
+
+	public void not()
+	{
+		for (long i=0; i<mWordCount; i++)
+		{
+			setWord(i, ~getWord(i));
+		}
+		clearUnused();
+	}
+
+	//Miscellaneous methods
+
+	//Check if a particular index is valid; throw an exception if it is not
+	private void validateIndex(long index)
+	{
+		if ((index<0)||(index>=mLength))
+		{
+			throw new IndexOutOfBoundsException("Bit " + index + " of " + mLength);
+		}
+	}
+}
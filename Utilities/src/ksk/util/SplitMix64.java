@@ -0,0 +1,94 @@
+package ksk.util;
+
+import java.util.Random;
+
+//A fast, splittable pseudo-random generator:  SplitMix64 (Steele, Lea and Flood, "Fast Splittable
+//Pseudorandom Number Generators"), the algorithm behind Java 8's SplittableRandom, and giving the same
+//values for the same seed.  Each value is a counter, stepped by an odd gamma, put through a 64-bit mixing
+//function, so a value costs a few multiplies.
+//
+//split() makes a new generator with its own seed and gamma, taken from this one, whose values are
+//independent of this one's for all practical purposes.  Splitting a generator in the same order always
+//gives the same generators, so work that's split across threads can still be reproducible.
+//
+//It extends Random so it can be passed anywhere a Random can, but unlike Random it isn't thread-safe:
+//give each thread its own split.
+
+public class SplitMix64 extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	//The default gamma, 2^64 divided by the golden ratio
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long mSeed;
+	private long mGamma;
+
+	public SplitMix64()
+	{
+		this(System.nanoTime() ^ new Random().nextLong());
+	}
+
+	public SplitMix64(long seed)
+	{
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private SplitMix64(long seed, long gamma)
+	{
+		super(seed);
+		mSeed = seed;
+		mGamma = gamma;
+	}
+
+	//A new generator, from the next two values of this one
+	public SplitMix64 split()
+	{
+		return new SplitMix64(mix64(nextSeed()), mixGamma(nextSeed()));
+	}
+
+	//Restart the sequence (with the default gamma)
+	public void setSeed(long seed)
+	{
+		super.setSeed(seed);
+		mSeed = seed;
+		mGamma = GOLDEN_GAMMA;
+	}
+
+	public long nextLong()
+	{
+		return mix64(nextSeed());
+	}
+
+	//Random builds all of its other methods on this
+	protected int next(int bits)
+	{
+		return (int)(mix64(nextSeed()) >>> (Long.SIZE - bits));
+	}
+
+	private long nextSeed()
+	{
+		mSeed += mGamma;
+
+		return mSeed;
+	}
+
+	//Stafford's variant 13 of the MurmurHash3 finalizer
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+
+		return z ^ (z >>> 31);
+	}
+
+	//An odd gamma from a seed, with enough bit transitions that the sequence doesn't look too regular
+	private static long mixGamma(long z)
+	{
+		z = (z ^ (z >>> 33))*0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33))*0xC4CEB9FE1A85EC53L;
+		z = (z ^ (z >>> 33)) | 1L;
+
+		return (Long.bitCount(z ^ (z >>> 1)) < 24)?(z ^ 0xAAAAAAAAAAAAAAAAL):z;
+	}
+}